@@ -0,0 +1,152 @@
+package com.example.groupchatdemo.jmh;
+
+import com.example.groupchatdemo.GroupchatDemoApplication;
+import com.example.groupchatdemo.model.Attachment;
+import com.example.groupchatdemo.service.AttachmentService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 附件下载的两种方式：Tomcat的sendfile（chat.attachment.sendfile=true，由连接器直接把文件写到socket）
+ * 和在请求线程上写响应流（false）。每种方式启动一个应用实例，存入一个fileMb大小的随机文件，
+ * 4个线程并发地完整下载，一次操作是一次下载，吞吐量乘以文件大小就是MB/s。
+ * 每轮结束时打印Tomcat线程（http-nio-*）在这一轮中每GB消耗的CPU时间和每次下载分配的堆内存。
+ * 客户端与服务器在同一个JVM中，吞吐量受本机CPU和回环网络的限制，主要用于比较两种方式的差异。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class AttachmentDownloadBenchmark {
+
+    @Param({"true", "false"})
+    public boolean sendfile;
+
+    @Param({"32"})
+    public int fileMb;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private URI uri;
+    private long size;
+    private final AtomicLong downloads = new AtomicLong();
+    private long[] usageBefore;
+
+    @Setup
+    public void setUp() throws Exception {
+        Path dir = Files.createTempDirectory("attachment-bench");
+        context = new SpringApplicationBuilder(GroupchatDemoApplication.class)
+                .run("--server.port=0",
+                        "--chat.attachment.dir=" + dir,
+                        "--chat.attachment.sendfile=" + sendfile,
+                        "--chat.store.enabled=false",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN");
+        byte[] content = new byte[fileMb << 20];
+        new Random(42).nextBytes(content);
+        size = content.length;
+        Attachment attachment = store(context.getBean(AttachmentService.class), content);
+        int port = context.getEnvironment().getProperty("local.server.port", Integer.class);
+        uri = URI.create("http://127.0.0.1:" + port + "/api/attachments/" + attachment.id() + "/" + attachment.name());
+        httpClient = HttpClient.newHttpClient();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        downloads.set(0);
+        usageBefore = tomcatThreadUsage();
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportIteration() {
+        long[] after = tomcatThreadUsage();
+        long count = downloads.get();
+        if (count == 0) {
+            return;
+        }
+        double gigabytes = (double) count * size / (1 << 30);
+        System.out.printf("%n%s: %d downloads, tomcat cpu %.0f ms/GB, heap %.1f KB/download%n",
+                sendfile ? "sendfile" : "stream", count, (after[0] - usageBefore[0]) / 1e6 / gigabytes,
+                (after[1] - usageBefore[1]) / 1024.0 / count);
+    }
+
+    @Benchmark
+    public long download() throws IOException, InterruptedException {
+        long received = httpClient.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofInputStream())
+                .body().transferTo(OutputStream.nullOutputStream());
+        if (received != size) {
+            throw new IllegalStateException("Short download: " + received + " of " + size);
+        }
+        downloads.incrementAndGet();
+        return received;
+    }
+
+    /**
+     * 按客户端的方式分块上传，返回附件引用。
+     */
+    private static Attachment store(AttachmentService service, byte[] content) throws Exception {
+        AttachmentService.UploadState state = service.startUpload("bench", "bench.bin", content.length);
+        int chunk = service.maxChunkBytes();
+        while (state.status() == AttachmentService.Status.ACCEPTED) {
+            int offset = (int) state.received();
+            int length = Math.min(chunk, content.length - offset);
+            state = service.append(state.uploadId(), offset, new ByteArrayInputStream(content, offset, length));
+        }
+        if (state.status() != AttachmentService.Status.COMPLETE) {
+            throw new IllegalStateException("Upload failed: " + state.status());
+        }
+        return state.attachment();
+    }
+
+    /**
+     * @return Tomcat的请求线程和连接器线程（名称以http-nio开头）累计消耗的CPU时间（纳秒）和分配的堆内存（字节）
+     */
+    private static long[] tomcatThreadUsage() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] ids = Arrays.stream(threads.getThreadInfo(threads.getAllThreadIds()))
+                .filter(info -> info != null && info.getThreadName().startsWith("http-nio"))
+                .mapToLong(ThreadInfo::getThreadId)
+                .toArray();
+        long cpu = Arrays.stream(threads.getThreadCpuTime(ids)).filter(nanos -> nanos > 0).sum();
+        long heap = Arrays.stream(threads.getThreadAllocatedBytes(ids)).filter(bytes -> bytes > 0).sum();
+        return new long[]{cpu, heap};
+    }
+}
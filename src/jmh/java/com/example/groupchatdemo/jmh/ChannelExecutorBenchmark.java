@@ -0,0 +1,183 @@
+package com.example.groupchatdemo.jmh;
+
+import com.example.groupchatdemo.GroupchatDemoApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 比较不同STOMP通道执行器模式（chat.channel.mode）下私聊消息的发送到接收延迟。
+ * 每种模式启动一个应用实例，建立connections个原生WebSocket连接；16个线程各自在随机的两个用户之间发送私聊，
+ * 一次操作是从发送到接收方收到这条私聊（发送者的回显不计）。SampleTime模式报告延迟的分位数，
+ * 操作数除以测量时间就是吞吐量。virtual模式需要在JDK 21上运行，否则应用会退回到platform。
+ * 客户端与服务器在同一个JVM中，连接数较大时需要调高文件描述符上限（ulimit -n）。
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class ChannelExecutorBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    @Param({"10000"})
+    public int connections;
+
+    private ConfigurableApplicationContext context;
+    private Client[] clients;
+    // 消息ID -> 等待接收方收到的操作
+    private final Map<Long, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong messageIds = new AtomicLong();
+
+    @Setup
+    public void setUp() throws Exception {
+        context = new SpringApplicationBuilder(GroupchatDemoApplication.class)
+                .run("--server.port=0",
+                        "--chat.channel.mode=" + mode,
+                        "--chat.store.enabled=false",
+                        "--chat.gateway.enabled=false",
+                        "--server.tomcat.max-connections=" + (connections + 1000),
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN");
+        int port = context.getEnvironment().getProperty("local.server.port", Integer.class);
+        clients = connect(port);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (Client client : clients) {
+            client.webSocket.abort();
+        }
+        context.close();
+    }
+
+    @Benchmark
+    public void privateMessage() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int fromIndex = random.nextInt(clients.length);
+        int toIndex = random.nextInt(clients.length - 1); // 不给自己发
+        if (toIndex >= fromIndex) {
+            toIndex++;
+        }
+        long id = messageIds.incrementAndGet();
+        CompletableFuture<Void> received = new CompletableFuture<>();
+        pending.put(id, received);
+        try {
+            clients[fromIndex].send("SEND\ndestination:/app/chat.sendPrivateMessage\ncontent-type:application/json\n\n"
+                    + "{\"to\":\"" + clients[toIndex].username + "\",\"content\":\"" + id + "\"}");
+            received.get(10, TimeUnit.SECONDS); // 超时说明消息丢失，基准失败
+        } finally {
+            pending.remove(id);
+        }
+    }
+
+    private Client[] connect(int port) throws InterruptedException {
+        HttpClient httpClient = HttpClient.newHttpClient();
+        URI uri = URI.create("ws://127.0.0.1:" + port + "/ws/websocket");
+        Client[] connected = new Client[connections];
+        CountDownLatch joinedAll = new CountDownLatch(connections);
+        Semaphore handshakes = new Semaphore(256);
+        for (int i = 0; i < connections; i++) {
+            handshakes.acquire();
+            Client client = new Client("bench-" + i, joinedAll);
+            connected[i] = client;
+            client.webSocket = httpClient.newWebSocketBuilder()
+                    .subprotocols("v12.stomp")
+                    .buildAsync(uri, client)
+                    .whenComplete((ws, error) -> handshakes.release())
+                    .join();
+            client.send("CONNECT\naccept-version:1.2\nhost:localhost\nheart-beat:0,0\nusername:" + client.username + "\n\n");
+        }
+        if (!joinedAll.await(120, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Only " + (connections - joinedAll.getCount()) + " sessions joined");
+        }
+        return connected;
+    }
+
+    /**
+     * 一个STOMP客户端。收到CONNECTED后订阅私聊队列并加入聊天室；收到发给自己的私聊时完成对应的操作。
+     */
+    private final class Client implements WebSocket.Listener {
+        private final String username;
+        private final String recipientField;
+        private final CountDownLatch joinedAll;
+        private final StringBuilder partial = new StringBuilder();
+        private boolean joined;
+        private volatile WebSocket webSocket;
+        // 同一个WebSocket上一次只能有一个未完成的发送，用链式Future串行化
+        private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
+
+        Client(String username, CountDownLatch joinedAll) {
+            this.username = username;
+            this.recipientField = "\"to\":\"" + username + "\"";
+            this.joinedAll = joinedAll;
+        }
+
+        synchronized void send(String frame) {
+            WebSocket ws = webSocket;
+            lastSend = lastSend.thenCompose(ignored -> ws.sendText(frame + "\0", true))
+                    .exceptionally(error -> null);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                String frame = partial.toString();
+                partial.setLength(0);
+                onFrame(frame);
+            }
+            ws.request(1);
+            return null;
+        }
+
+        private void onFrame(String frame) {
+            if (frame.startsWith("CONNECTED")) {
+                send("SUBSCRIBE\nid:q\ndestination:/user/queue/messages\n\n");
+                // 加入后才算在线，否则私聊会进入离线信箱
+                send("SEND\ndestination:/app/chat.addUser\ncontent-type:application/json\n\n"
+                        + "{\"from\":\"" + username + "\",\"content\":\"\",\"command\":\"JOIN\"}");
+            } else if (!joined) {
+                // 私聊队列上的第一帧是加入时收到的在线用户快照
+                joined = true;
+                joinedAll.countDown();
+            } else if (frame.startsWith("MESSAGE") && frame.contains("\"PRIVATE_CHAT\"") && frame.contains(recipientField)) {
+                int contentStart = frame.indexOf("\"content\":\"") + 11;
+                long id = Long.parseLong(frame.substring(contentStart, frame.indexOf('"', contentStart)));
+                CompletableFuture<Void> received = pending.get(id);
+                if (received != null) {
+                    received.complete(null);
+                }
+            }
+        }
+    }
+}
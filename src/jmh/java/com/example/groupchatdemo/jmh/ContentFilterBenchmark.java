@@ -0,0 +1,130 @@
+package com.example.groupchatdemo.jmh;
+
+import com.example.groupchatdemo.filter.AhoCorasick;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 违禁词扫描的单线程吞吐量。词表有terms个词条，一半是2到4个汉字，一半是4到10个英文字母，
+ * 消息由一组中英文词语随机组合（与SearchBenchmark相同），每100条中有一条夹带一个词条。
+ * scanCorpus扫描全部消息拼接成的文本，每秒的操作数乘以Setup打印的UTF-8字节数即每核每秒扫描的MB数；
+ * scanMessage扫描单条消息；naiveContains是对每个词条调用String.contains的做法，作为对照。
+ * 编译词表的耗时和状态数在Setup结束时打印。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ContentFilterBenchmark {
+
+    private static final String[] WORDS = {
+            "好的", "收到", "今天", "明天", "会议", "上线", "发布", "测试", "版本", "问题", "服务器", "数据库",
+            "部署", "回滚", "周五", "下午", "晚上", "吃饭", "咖啡", "谢谢", "没问题", "辛苦了", "哈哈",
+            "ok", "deploy", "release", "bug", "fix", "review", "merge", "api", "latency", "cpu", "memory",
+            "websocket", "stomp", "redis", "kafka", "docker", "k8s", "lunch", "meeting", "tomorrow", "thanks"
+    };
+
+    @Param({"50000"})
+    public int terms;
+
+    private AhoCorasick automaton;
+    private List<String> termList;
+    private String[] messages;
+    private String corpus;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        termList = new ArrayList<>(terms);
+        for (int i = 0; i < terms; i++) {
+            StringBuilder term = new StringBuilder();
+            if (i % 2 == 0) {
+                int length = 2 + random.nextInt(3);
+                for (int c = 0; c < length; c++) {
+                    term.append((char) (0x4E00 + random.nextInt(0x5000)));
+                }
+            } else {
+                int length = 4 + random.nextInt(7);
+                for (int c = 0; c < length; c++) {
+                    term.append((char) ('a' + random.nextInt(26)));
+                }
+            }
+            termList.add(term.toString());
+        }
+        int[] flags = new int[terms];
+        Arrays.fill(flags, 1);
+        long started = System.nanoTime();
+        automaton = AhoCorasick.compile(termList, flags);
+        long compileMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        messages = new String[10000];
+        StringBuilder all = new StringBuilder();
+        int hits = 0;
+        for (int i = 0; i < messages.length; i++) {
+            StringBuilder content = new StringBuilder();
+            int words = 3 + random.nextInt(10);
+            for (int w = 0; w < words; w++) {
+                content.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(4) == 0 ? " " : "");
+            }
+            if (i % 100 == 0) {
+                content.insert(random.nextInt(content.length()), termList.get(random.nextInt(terms)).toUpperCase(Locale.ROOT));
+            }
+            messages[i] = content.toString();
+            if (automaton.scan(messages[i], 0) != 0) {
+                hits++;
+            }
+            all.append(messages[i]).append('\n');
+        }
+        corpus = all.toString();
+        System.out.printf("%nCompiled %d terms into %d states in %d ms; corpus %d chars, %d UTF-8 bytes, %d of %d messages match%n",
+                automaton.termCount(), automaton.stateCount(), compileMs, corpus.length(),
+                corpus.getBytes(StandardCharsets.UTF_8).length, hits, messages.length);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int scanCorpus() {
+        return automaton.scan(corpus, 0);
+    }
+
+    @Benchmark
+    public int scanMessage() {
+        String message = messages[next];
+        next = next == messages.length - 1 ? 0 : next + 1;
+        return automaton.scan(message, 0);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean naiveContains() {
+        String message = messages[next].toLowerCase(Locale.ROOT);
+        next = next == messages.length - 1 ? 0 : next + 1;
+        for (String term : termList) {
+            if (message.contains(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
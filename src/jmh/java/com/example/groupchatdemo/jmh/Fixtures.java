@@ -0,0 +1,67 @@
+package com.example.groupchatdemo.jmh;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+
+import java.security.Principal;
+
+/**
+ * 基准测试共用的对象，配置与应用中的保持一致。
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return 与Spring Boot相同配置的ObjectMapper（Message没有无参构造器，依赖参数名模块）
+     */
+    static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    /**
+     * @param channel 模板发送消息的通道
+     * @return 与应用中一样使用Jackson转换负载的消息模板
+     */
+    static SimpMessagingTemplate messagingTemplate(MessageChannel channel) {
+        SimpMessagingTemplate template = new SimpMessagingTemplate(channel);
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper());
+        template.setMessageConverter(converter);
+        return template;
+    }
+
+    /**
+     * @return 丢弃所有消息的通道
+     */
+    static MessageChannel discardingChannel() {
+        return (message, timeout) -> true;
+    }
+
+    /**
+     * 向用户注册表登记用户，与STOMP连接成功时Spring发布的事件相同，每个用户一个会话。
+     * @param registry 用户注册表
+     * @param users 用户数，用户名为 user0 ... user{users-1}
+     */
+    static void connectUsers(DefaultSimpUserRegistry registry, int users) {
+        for (int i = 0; i < users; i++) {
+            String name = "user" + i;
+            Principal principal = () -> name;
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+            accessor.setSessionId("session" + i);
+            accessor.setUser(principal);
+            Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+            registry.onApplicationEvent(new SessionConnectedEvent(Fixtures.class, message, principal));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.groupchatdemo.jmh;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 比较两次JMH运行的JSON结果（-rf json），按基准名和参数逐项列出变化。
+ * 变差超过阈值（默认10%）且超出两次结果误差之和的基准标记为REGRESSION，有回归时以状态码1退出，便于在CI中使用。
+ * 用法：JmhResultComparison 基线.json 本次.json [阈值百分比]
+ */
+public final class JmhResultComparison {
+
+    private JmhResultComparison() {
+    }
+
+    private record Score(double value, double error, String unit, boolean higherIsBetter) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: JmhResultComparison <baseline.json> <current.json> [threshold-percent]");
+            System.exit(2);
+        }
+        Map<String, Score> baseline = read(new File(args[0]));
+        Map<String, Score> current = read(new File(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        int regressions = 0;
+        System.out.printf("%-70s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score now = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-70s %14s %14.3f %9s  %s%n", entry.getKey(), "-", now.value(), "", "NEW");
+                continue;
+            }
+            double change = (now.value() - before.value()) / before.value() * 100;
+            // 吞吐量越高越好，其余模式（平均时间等）越低越好
+            double worse = now.higherIsBetter() ? -change : change;
+            boolean beyondError = Math.abs(now.value() - before.value()) > now.error() + before.error();
+            String verdict = "";
+            if (worse > threshold && beyondError) {
+                verdict = "REGRESSION";
+                regressions++;
+            } else if (-worse > threshold && beyondError) {
+                verdict = "improved";
+            }
+            System.out.printf("%-70s %14.3f %14.3f %+8.1f%%  %s %s%n", entry.getKey(), before.value(), now.value(),
+                    change, now.unit(), verdict);
+        }
+        for (String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                System.out.printf("%-70s %14.3f %14s %9s  %s%n", name, baseline.get(name).value(), "-", "", "MISSING");
+            }
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed by more than " + threshold + "%");
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Score> read(File file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText()
+                    .replace("com.example.groupchatdemo.jmh.", ""));
+            JsonNode params = run.path("params");
+            for (Iterator<Map.Entry<String, JsonNode>> it = params.fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> param = it.next();
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            JsonNode metric = run.path("primaryMetric");
+            double error = metric.path("scoreError").asDouble(0);
+            scores.put(key.toString(), new Score(metric.path("score").asDouble(),
+                    Double.isNaN(error) ? 0 : error, metric.path("scoreUnit").asText(),
+                    "thrpt".equals(run.path("mode").asText())));
+        }
+        return scores;
+    }
+}
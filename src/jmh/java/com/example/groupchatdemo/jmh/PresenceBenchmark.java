@@ -0,0 +1,94 @@
+package com.example.groupchatdemo.jmh;
+
+import com.example.groupchatdemo.model.PresenceUpdate;
+import com.example.groupchatdemo.service.PresenceService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在线用户列表的构建。
+ * registryUserList 是原来broadcastUserListFromRegistry的做法：每次加入或离开都遍历SimpUserRegistry
+ * 生成完整的用户列表并序列化，再广播给所有人；
+ * snapshot/snapshotJson 是PresenceService为新加入的用户生成的快照，只私发给这一个用户；
+ * joinAndLeave 是其他用户加入再离开的开销（userJoined同时为新用户生成快照）；
+ * directoryPage/directorySearch 是 /api/users 的分页（从中间开始的50个用户）和前缀搜索（10个匹配）。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PresenceBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    private int users;
+
+    private ObjectMapper objectMapper;
+    private DefaultSimpUserRegistry registry;
+    private PresenceService presenceService;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Fixtures.objectMapper();
+        registry = new DefaultSimpUserRegistry();
+        Fixtures.connectUsers(registry, users);
+        SimpMessagingTemplate template = Fixtures.messagingTemplate(Fixtures.discardingChannel());
+        presenceService = new PresenceService(template);
+        for (int i = 0; i < users; i++) {
+            presenceService.userJoined("user" + i, "session" + i);
+        }
+        presenceService.flush();
+    }
+
+    @Benchmark
+    public byte[] registryUserList() throws IOException {
+        List<String> names = registry.getUsers().stream().map(SimpUser::getName).toList();
+        return objectMapper.writeValueAsBytes(names);
+    }
+
+    @Benchmark
+    public PresenceUpdate snapshot() {
+        return presenceService.snapshot();
+    }
+
+    @Benchmark
+    public byte[] snapshotJson() throws IOException {
+        return objectMapper.writeValueAsBytes(presenceService.snapshot());
+    }
+
+    @Benchmark
+    public List<String> directoryPage() {
+        return presenceService.directory().page("user" + users / 2, 50);
+    }
+
+    @Benchmark
+    public List<String> directorySearch() {
+        return presenceService.directory().search("USER" + users / 20, 10);
+    }
+
+    @Benchmark
+    public PresenceUpdate joinAndLeave() {
+        PresenceUpdate snapshot = presenceService.userJoined("newcomer", "newcomer-session");
+        presenceService.userLeft("newcomer", "newcomer-session");
+        presenceService.flush();
+        return snapshot;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.groupchatdemo.jmh;
+
+import com.example.groupchatdemo.controller.ChatController;
+import com.example.groupchatdemo.filter.MessageFilterChain;
+import com.example.groupchatdemo.metrics.LogSampler;
+import com.example.groupchatdemo.model.Message;
+import com.example.groupchatdemo.service.BacklogService;
+import com.example.groupchatdemo.service.MessageFanout;
+import com.example.groupchatdemo.service.OfflineMailbox;
+import com.example.groupchatdemo.service.PresenceService;
+import com.example.groupchatdemo.service.ResumeService;
+import com.example.groupchatdemo.store.MessageStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.DefaultUserDestinationResolver;
+import org.springframework.messaging.simp.user.UserDestinationResult;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatController.sendPrivateMessage的路由：构建消息、一次JSON序列化、追加到最近消息缓存（不写磁盘）、确认接收方在线，
+ * 以及把 /user/{name}/queue/messages 解析为接收方和发送方的会话目的地。
+ * 解析后的消息交给Blackhole，不经过代理和网络。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2) // 路径较长，JIT需要更久才能稳定
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrivateRoutingBenchmark {
+
+    private static final Principal SENDER = () -> "user1";
+
+    @Param({"1000"})
+    private int users;
+
+    private MessageStore messageStore;
+    private ChatController controller;
+    private Message message;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws IOException {
+        this.blackhole = blackhole;
+        DefaultSimpUserRegistry registry = new DefaultSimpUserRegistry();
+        Fixtures.connectUsers(registry, users);
+        DefaultUserDestinationResolver resolver = new DefaultUserDestinationResolver(registry);
+        MessageChannel brokerChannel = (sent, timeout) -> {
+            UserDestinationResult result = resolver.resolveDestination(sent);
+            this.blackhole.consume(result);
+            return true;
+        };
+        SimpMessagingTemplate template = Fixtures.messagingTemplate(brokerChannel);
+
+        messageStore = new MessageStore(Fixtures.objectMapper(), false, null, 64, 64, 10, 50, 32, true, false, 1000);
+        MessageFanout fanout = new MessageFanout(template, Fixtures.objectMapper());
+        PresenceService presenceService = new PresenceService(template);
+        presenceService.userJoined("user2", "session2"); // 接收方在线，不进入离线信箱
+        presenceService.flush();
+        controller = new ChatController(template, presenceService, messageStore,
+                new BacklogService(fanout, messageStore), new LogSampler(0), fanout,
+                new OfflineMailbox(true, 100, 72, 16, "", 256, fanout),
+                new ResumeService(120, messageStore, fanout, new ExecutorSubscribableChannel(), new SimpleMeterRegistry()),
+                new MessageFilterChain(List.of(), template));
+        message = new Message("user1", "user2", "hello there", true, "PRIVATE_CHAT");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        messageStore.destroy();
+    }
+
+    @Benchmark
+    public void sendPrivateMessage() {
+        controller.sendPrivateMessage(message, SENDER);
+    }
+}
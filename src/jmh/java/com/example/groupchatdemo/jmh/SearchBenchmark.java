@@ -0,0 +1,119 @@
+package com.example.groupchatdemo.jmh;
+
+import com.example.groupchatdemo.model.Conversation;
+import com.example.groupchatdemo.search.SearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 全文检索一页（20条）结果的耗时。索引中有documents条消息，分布在公共聊天室、20个房间和1000对私聊中，
+ * 内容由一组中英文词语按Zipf分布随机组合，查询者能看到公共聊天室、房间和自己参与的私聊。
+ * rare是只出现在约0.1%消息中的词，common是出现在约一半消息中的词（命中数多，需要为每个命中打分），
+ * phrase是一个四字的中文短语（三个二元组求交集），mixed是一个常见词和一个少见词（用跳表前进）。
+ * 建立索引的耗时和倒排表大小在Setup结束时打印。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    private static final String[] WORDS = {
+            "好的", "收到", "今天", "明天", "会议", "上线", "发布", "测试", "版本", "问题", "服务器", "数据库",
+            "部署", "回滚", "周五", "下午", "晚上", "吃饭", "咖啡", "谢谢", "没问题", "辛苦了", "哈哈",
+            "ok", "deploy", "release", "bug", "fix", "review", "merge", "api", "latency", "cpu", "memory",
+            "websocket", "stomp", "redis", "kafka", "docker", "k8s", "lunch", "meeting", "tomorrow", "thanks"
+    };
+
+    @Param({"1000000"})
+    public int documents;
+
+    private SearchIndex index;
+    private Predicate<String> visibleToAlice;
+
+    @Setup
+    public void setUp() {
+        index = new SearchIndex();
+        Random random = new Random(42);
+        List<String> privatePairs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            privatePairs.add(Conversation.privatePair(i < 10 ? "alice" : "user-" + i, "user-" + (i + 1000)));
+        }
+        long[] ordinals = new long[1 + 20 + privatePairs.size()];
+        long started = System.nanoTime();
+        for (int i = 0; i < documents; i++) {
+            int action = random.nextInt(100);
+            int slot;
+            String conversation;
+            if (action < 60) {
+                slot = 21 + random.nextInt(privatePairs.size());
+                conversation = privatePairs.get(slot - 21);
+            } else if (action < 90) {
+                slot = 1 + random.nextInt(20);
+                conversation = Conversation.room("room-" + (slot - 1));
+            } else {
+                slot = 0;
+                conversation = Conversation.PUBLIC;
+            }
+            index.add(conversation, ++ordinals[slot], content(random, i));
+        }
+        System.out.printf("%nIndexed %d messages in %d ms: %d terms, %d KB of postings%n", index.documents(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), index.terms(), index.postingBytes() / 1024);
+        visibleToAlice = conversation -> Conversation.isVisibleTo(conversation, "alice");
+    }
+
+    // 3到12个词，按Zipf分布选词；每1000条中有一条包含少见词，每500条中有一条包含固定的短语
+    private static String content(Random random, int i) {
+        StringBuilder content = new StringBuilder();
+        int words = 3 + random.nextInt(10);
+        for (int w = 0; w < words; w++) {
+            double u = random.nextDouble();
+            int rank = (int) Math.min(WORDS.length - 1, Math.floor(Math.pow(WORDS.length, u)) - 1);
+            content.append(WORDS[rank]).append(random.nextInt(4) == 0 ? " " : "");
+        }
+        if (i % 1000 == 7) {
+            content.append(" flamegraph");
+        }
+        if (i % 500 == 3) {
+            content.append("灰度发布计划");
+        }
+        return content.toString();
+    }
+
+    @Benchmark
+    public SearchIndex.Result rare() {
+        return index.search("flamegraph", visibleToAlice, 0, 20);
+    }
+
+    @Benchmark
+    public SearchIndex.Result common() {
+        return index.search("好的", visibleToAlice, 0, 20);
+    }
+
+    @Benchmark
+    public SearchIndex.Result phrase() {
+        return index.search("灰度发布", visibleToAlice, 0, 20);
+    }
+
+    @Benchmark
+    public SearchIndex.Result mixed() {
+        return index.search("好的 flamegraph", visibleToAlice, 0, 20);
+    }
+}
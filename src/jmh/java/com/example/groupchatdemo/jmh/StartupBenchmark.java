@@ -0,0 +1,198 @@
+package com.example.groupchatdemo.jmh;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 比较几种启动方式从启动进程到第一个STOMP CONNECT成功（收到CONNECTED帧）的时间，
+ * 以及之后第一条消息的往返时间（订阅私聊队列、发送 /app/chat.addUser、收到在线用户快照），延迟初始化的代价体现在这里。
+ * 每种方式启动一个独立的进程，客户端从进程启动起每10毫秒尝试连接一次 "/ws/websocket"。
+ * 测量的是整个JVM进程的冷启动，每次只有一个样本，JMH在同一个进程里反复调用的方式不适用，
+ * 所以这是一个普通的main程序，与JmhResultComparison一样放在jmh profile里运行，不属于常规测试。
+ * 需要先用快速启动的profile打包：
+ * <pre>
+ * mvn -Pfast-startup package -DskipTests
+ * mvn -Pjmh test-compile exec:exec@startup -Dbench.runs=5
+ * </pre>
+ * 用法：StartupBenchmark [每种方式的次数，默认5] [方式，默认 jar,lazy,aot,cds]，后一种方式包含前一种的全部设置：
+ * jar是直接运行可执行jar；lazy运行解压后的jar并启用fast-startup配置（延迟初始化）；aot再加上AOT生成的代码；cds再加上AppCDS归档。
+ */
+public final class StartupBenchmark {
+
+    private static final PrintStream REPORT = System.out;
+    private static final Path TARGET = Path.of("target");
+    private static final Path FAST_STARTUP = TARGET.resolve("fast-startup");
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String[] modes = (args.length > 1 ? args[1] : "jar,lazy,aot,cds").split(",");
+        Path extractedJar = findJar(FAST_STARTUP);
+        Path executableJar = TARGET.resolve(extractedJar.getFileName());
+
+        List<String> rows = new ArrayList<>();
+        for (String mode : modes) {
+            long[] connect = new long[runs];
+            long[] firstMessage = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                long[] result = launch(command(mode.trim(), executableJar, extractedJar));
+                connect[i] = result[0];
+                firstMessage[i] = result[1];
+            }
+            rows.add(summary(mode.trim(), connect, firstMessage));
+        }
+        REPORT.printf("%n%-6s %12s %12s %12s %16s%n", "mode", "min(ms)", "median(ms)", "max(ms)", "first msg(ms)");
+        rows.forEach(REPORT::println);
+    }
+
+    private static List<String> command(String mode, Path executableJar, Path extractedJar) {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        switch (mode) {
+            case "jar" -> {
+            }
+            case "lazy" -> {
+            }
+            case "aot" -> command.add("-Dspring.aot.enabled=true");
+            case "cds" -> {
+                command.add("-Dspring.aot.enabled=true");
+                command.add("-XX:SharedArchiveFile=" + FAST_STARTUP.resolve("application.jsa"));
+                command.add("-Xlog:cds=off");
+            }
+            default -> throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+        command.add("-jar");
+        command.add((mode.equals("jar") ? executableJar : extractedJar).toString());
+        if (!mode.equals("jar")) {
+            command.add("--spring.profiles.active=fast-startup");
+        }
+        return command;
+    }
+
+    /**
+     * 启动一个进程并等待第一个CONNECTED帧和第一条MESSAGE帧。
+     * @return 启动到CONNECTED的时间和CONNECTED到第一条消息的时间（纳秒）
+     */
+    private static long[] launch(List<String> command) throws Exception {
+        int port = freePort();
+        Path storeDir = Files.createTempDirectory("startup-bench");
+        List<String> args = new ArrayList<>(command);
+        args.add("--server.port=" + port);
+        args.add("--chat.gateway.enabled=false");
+        args.add("--chat.store.dir=" + storeDir);
+        args.add("--logging.level.root=WARN");
+        ProcessBuilder builder = new ProcessBuilder(args)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+            URI uri = URI.create("ws://127.0.0.1:" + port + "/ws/websocket");
+            long deadline = start + TimeUnit.SECONDS.toNanos(120);
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Process exited with " + process.exitValue() + ": " + command);
+                }
+                Client client = new Client();
+                WebSocket webSocket;
+                try {
+                    webSocket = httpClient.newWebSocketBuilder()
+                            .subprotocols("v12.stomp")
+                            .buildAsync(uri, client)
+                            .get(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    // 端口还没有监听，或者握手失败
+                    TimeUnit.MILLISECONDS.sleep(10);
+                    continue;
+                }
+                webSocket.sendText("CONNECT\naccept-version:1.2\nhost:localhost\nheart-beat:0,0\nusername:bench\n\n\0", true).join();
+                client.connected.get(30, TimeUnit.SECONDS);
+                long connected = System.nanoTime();
+                webSocket.sendText("SUBSCRIBE\nid:q\ndestination:/user/queue/messages\n\n\0", true).join();
+                webSocket.sendText("SEND\ndestination:/app/chat.addUser\ncontent-type:application/json\n\n"
+                        + "{\"from\":\"bench\",\"command\":\"JOIN\"}\0", true).join();
+                client.message.get(30, TimeUnit.SECONDS);
+                long firstMessage = System.nanoTime();
+                webSocket.abort();
+                return new long[]{connected - start, firstMessage - connected};
+            }
+            throw new IllegalStateException("No CONNECTED frame within 120 seconds: " + command);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+            try (Stream<Path> files = Files.walk(storeDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static String summary(String mode, long[] connect, long[] firstMessage) {
+        Arrays.sort(connect);
+        Arrays.sort(firstMessage);
+        return String.format("%-6s %12.0f %12.0f %12.0f %16.1f", mode,
+                connect[0] / 1e6, connect[connect.length / 2] / 1e6, connect[connect.length - 1] / 1e6,
+                firstMessage[firstMessage.length / 2] / 1e6);
+    }
+
+    private static Path findJar(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            throw new IllegalStateException(dir + " not found, run mvn -Pfast-startup package -DskipTests first");
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.toString().endsWith(".jar"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No jar in " + dir));
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * 等待第一个CONNECTED帧和第一条MESSAGE帧。
+     */
+    private static final class Client implements WebSocket.Listener {
+        private final CompletableFuture<Void> connected = new CompletableFuture<>();
+        private final CompletableFuture<Void> message = new CompletableFuture<>();
+        private final StringBuilder partial = new StringBuilder();
+
+        @Override
+        public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                String frame = partial.toString();
+                partial.setLength(0);
+                if (frame.startsWith("CONNECTED")) {
+                    connected.complete(null);
+                } else if (frame.startsWith("MESSAGE")) {
+                    message.complete(null);
+                }
+            }
+            ws.request(1);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.groupchatdemo.jmh;
+
+import com.example.groupchatdemo.service.TimerWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 心跳和空闲检查每一格（100毫秒）的耗时。sessions个会话的检查间隔都是intervalSeconds秒，检查时间均匀分布，
+ * 每一格约有sessions * 0.1 / intervalSeconds个会话到期，到期的会话处理后（这里只累加ID）按一个间隔后重新登记。
+ * 10秒对应使用心跳的会话，1800秒对应只做空闲检查（chat.session.idle-timeout-ms的默认值）的会话。
+ * wheel是HeartbeatService使用的哈希时间轮（1024个槽），每格只访问当前槽中的任务（超过一圈的任务只减圈数）；
+ * priorityQueue是每个会话一个定时任务的做法（ScheduledThreadPoolExecutor的延迟队列同样是堆），
+ * 每个到期的任务出堆、入堆各一次，O(log N)；
+ * scan每格遍历ConcurrentHashMap中全部的会话对象比较下一次检查的时间，即简单代理的心跳任务的做法在同样精度下的开销
+ * （简单代理每个心跳间隔才遍历一次，精度是一个间隔，每次遍历仍是O(N)，集中在一个线程上）。
+ * wheel的耗时只随到期的会话数（和每个槽中的任务数）增长，scan随会话总数增长。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class TimerWheelBenchmark {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Param({"1000", "100000"})
+    public int sessions;
+
+    @Param({"10", "1800"})
+    public int intervalSeconds;
+
+    /**
+     * 一个会话的检查状态，三种做法共用。
+     */
+    static final class Session {
+        final int id;
+        volatile long nextCheck;
+
+        Session(int id, long nextCheck) {
+            this.id = id;
+            this.nextCheck = nextCheck;
+        }
+    }
+
+    private long intervalNanos;
+
+    private TimerWheel<Session> wheel;
+    private long wheelNow;
+    private long wheelSum;
+
+    private PriorityQueue<Session> heap;
+    private long heapNow;
+
+    private Map<String, Session> registry;
+    private long scanNow;
+
+    @Setup
+    public void setUp() {
+        intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+        wheel = new TimerWheel<>(100, 1024, 0);
+        heap = new PriorityQueue<>(sessions, (a, b) -> Long.compare(a.nextCheck, b.nextCheck));
+        registry = new ConcurrentHashMap<>();
+        for (int i = 0; i < sessions; i++) {
+            long deadline = intervalNanos * i / sessions + 1;
+            wheel.schedule(new Session(i, deadline), deadline);
+            heap.add(new Session(i, deadline));
+            registry.put("session-" + i, new Session(i, deadline));
+        }
+    }
+
+    @Benchmark
+    public long wheel() {
+        long now = wheelNow += TICK_NANOS;
+        wheel.advance(now, session -> {
+            wheelSum += session.id;
+            wheel.schedule(session, now + intervalNanos);
+        });
+        return wheelSum;
+    }
+
+    @Benchmark
+    public long priorityQueue() {
+        long now = heapNow += TICK_NANOS;
+        long sum = 0;
+        while (heap.peek().nextCheck <= now) {
+            Session session = heap.poll();
+            sum += session.id;
+            session.nextCheck = now + intervalNanos;
+            heap.add(session);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long scan() {
+        long now = scanNow += TICK_NANOS;
+        long sum = 0;
+        for (Session session : registry.values()) {
+            if (session.nextCheck <= now) {
+                sum += session.id;
+                session.nextCheck = now + intervalNanos;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.groupchatdemo.jmh;
+
+import com.example.groupchatdemo.interceptor.UserInterceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserInterceptor.preSend的开销。它在入站通道上对每一帧执行：
+ * CONNECT帧设置Principal，其他帧（绝大多数是SEND）只做一次命令判断。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserInterceptorBenchmark {
+
+    private UserInterceptor interceptor;
+    private Message<byte[]> connect;
+    private Message<byte[]> send;
+
+    @Setup
+    public void setUp() {
+        interceptor = new UserInterceptor();
+
+        StompHeaderAccessor connectAccessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connectAccessor.setSessionId("session1");
+        connectAccessor.setNativeHeader("username", "alice");
+        connectAccessor.setLeaveMutable(true); // 与STOMP解码器产生的消息一样，拦截器可以修改消息头
+        connect = MessageBuilder.createMessage(new byte[0], connectAccessor.getMessageHeaders());
+
+        StompHeaderAccessor sendAccessor = StompHeaderAccessor.create(StompCommand.SEND);
+        sendAccessor.setSessionId("session1");
+        sendAccessor.setDestination("/app/chat.sendMessage");
+        sendAccessor.setLeaveMutable(true);
+        send = MessageBuilder.createMessage(
+                "{\"from\":\"alice\",\"content\":\"hi\",\"command\":\"CHAT\"}".getBytes(StandardCharsets.UTF_8),
+                sendAccessor.getMessageHeaders());
+    }
+
+    @Benchmark
+    public Message<?> preSendConnect() {
+        return interceptor.preSend(connect, null);
+    }
+
+    @Benchmark
+    public Message<?> preSendSend() {
+        return interceptor.preSend(send, null);
+    }
+}
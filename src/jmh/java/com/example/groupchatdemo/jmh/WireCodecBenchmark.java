@@ -0,0 +1,144 @@
+package com.example.groupchatdemo.jmh;
+
+import com.example.groupchatdemo.codec.BinaryMessageCodec;
+import com.example.groupchatdemo.codec.UsernameDictionary;
+import com.example.groupchatdemo.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天消息在Jackson（json）、二进制编码（binary）、带用户名字典的二进制编码（binary-dict）三种格式下的编码、解码耗时和字节数。
+ * 消息集合模拟一个房间的聊天：users个用户轮流发言，内容长度随机。
+ * binary-dict每轮过完整个消息集合时重置字典，模拟一个新会话，因此字典定义的开销也计入平均值。
+ * 每条消息的字节数是辅助计数器 encodedBytes 除以 messages。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WireCodecBenchmark {
+
+    private static final int MESSAGES = 1024;
+
+    @Param({"json", "binary", "binary-dict"})
+    public String codec;
+
+    @Param({"200"})
+    public int users;
+
+    private ObjectMapper objectMapper;
+    private Message[] messages;
+    private byte[][] encoded;
+    private UsernameDictionary encoder;
+    private UsernameDictionary decoder;
+    private int nextEncode;
+    private int nextDecode;
+
+    /**
+     * 每条消息的字节数 = encodedBytes / messages。
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Size {
+        public long encodedBytes;
+        public long messages;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            encodedBytes = 0;
+            messages = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Fixtures.objectMapper();
+        messages = messages(users);
+        // 按顺序编码整个集合，解码时字典定义出现在引用之前
+        encoder = newDictionary();
+        encoded = new byte[MESSAGES][];
+        for (int i = 0; i < MESSAGES; i++) {
+            encoded[i] = encode(messages[i]);
+        }
+        encoder = newDictionary();
+        decoder = newDictionary();
+    }
+
+    @Benchmark
+    public int encode(Size size) throws IOException {
+        if (nextEncode == 0) {
+            encoder = newDictionary();
+        }
+        byte[] bytes = encode(messages[nextEncode]);
+        nextEncode = (nextEncode + 1) & (MESSAGES - 1);
+        size.encodedBytes += bytes.length;
+        size.messages++;
+        return bytes.length;
+    }
+
+    @Benchmark
+    public Message decode() throws IOException {
+        if (nextDecode == 0) {
+            decoder = newDictionary();
+        }
+        byte[] bytes = encoded[nextDecode];
+        nextDecode = (nextDecode + 1) & (MESSAGES - 1);
+        return switch (codec) {
+            case "json" -> objectMapper.readValue(bytes, Message.class);
+            default -> BinaryMessageCodec.decode(bytes, decoder);
+        };
+    }
+
+    private byte[] encode(Message message) throws IOException {
+        return switch (codec) {
+            case "json" -> objectMapper.writeValueAsBytes(message);
+            default -> BinaryMessageCodec.encode(message, encoder);
+        };
+    }
+
+    /**
+     * @return binary-dict的新字典；其他格式不使用字典，返回null
+     */
+    private UsernameDictionary newDictionary() {
+        return codec.equals("binary-dict") ? new UsernameDictionary() : null;
+    }
+
+    private static Message[] messages(int users) {
+        Random random = new Random(42);
+        String[] names = new String[users];
+        for (int i = 0; i < users; i++) {
+            names[i] = "user-" + Integer.toHexString(0x10000 + random.nextInt(0xEFFFF));
+        }
+        String alphabet = "abcdefghijklmnopqrstuvwxyz     ,.!?";
+        Message[] messages = new Message[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            StringBuilder content = new StringBuilder();
+            int length = 10 + random.nextInt(70);
+            for (int c = 0; c < length; c++) {
+                content.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            Message message = new Message(names[random.nextInt(users)], null, content.toString(), false, "ROOM_CHAT");
+            message.setRoom("general");
+            messages[i] = message;
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.groupchatdemo.jmh;
+
+import com.example.groupchatdemo.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.sockjs.frame.Jackson2SockJsMessageCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * 服务器发给一个会话的帧在线路上的字节数和编码开销，比较 "/ws" 的SockJS传输和 "/ws-native" 原生端点，以及是否启用permessage-deflate。
+ * 帧按负载生成器的默认比例（private=60,room=30,chat=5,join=5）生成，内容格式与负载生成器相同，
+ * 用Spring的StompEncoder编码为MESSAGE帧。压缩与Tomcat的permessage-deflate相同：每个会话一个Deflater，
+ * 保留上下文（context takeover），每条消息SYNC_FLUSH后去掉结尾的00 00 ff ff。
+ * threshold是压缩的大小下限（字节），小于它的帧不压缩，0表示全部压缩。
+ * 每帧的线路字节数是辅助计数器 wireBytes 除以 frames（包含WebSocket帧头）。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WireFormatBenchmark {
+
+    private static final int FRAMES = 1024;
+    // SYNC_FLUSH结尾的空存储块 00 00 ff ff，permessage-deflate不发送它
+    private static final int DEFLATE_TAIL = 4;
+
+    @Param({"0", "256"})
+    public int threshold;
+
+    private final Jackson2SockJsMessageCodec sockJsCodec = new Jackson2SockJsMessageCodec();
+    private byte[][] stompFrames;
+    private String[] stompText;
+    private Deflater deflater;
+    private final byte[] deflateBuffer = new byte[64 * 1024];
+    private int next;
+
+    /**
+     * 每帧的线路字节数 = wireBytes / frames。
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Wire {
+        public long wireBytes;
+        public long frames;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            wireBytes = 0;
+            frames = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        ObjectMapper objectMapper = Fixtures.objectMapper();
+        StompEncoder encoder = new StompEncoder();
+        List<byte[]> frames = new ArrayList<>(FRAMES);
+        Random random = new Random(42);
+        long seq = 1;
+        for (int i = 0; i < FRAMES; i++) {
+            int action = random.nextInt(100);
+            String from = "load-" + random.nextInt(1000);
+            String content = "lg:" + (1_000_000_000_000L + random.nextInt(Integer.MAX_VALUE));
+            if (action < 60) {
+                Message message = new Message(from, "load-" + random.nextInt(1000), content, true, "PRIVATE_CHAT");
+                frames.add(frame(encoder, random, "/user/queue/messages", "private", objectMapper.writeValueAsBytes(message)));
+            } else if (action < 90) {
+                Message message = new Message(from, null, content, false, "ROOM_CHAT");
+                message.setRoom("room-" + random.nextInt(10));
+                message.setSeq(seq++);
+                frames.add(frame(encoder, random, "/topic/room/" + message.getRoom(), "room", objectMapper.writeValueAsBytes(message)));
+            } else if (action < 95) {
+                Message message = new Message(from, null, content, false, "CHAT");
+                message.setSeq(seq++);
+                frames.add(frame(encoder, random, "/topic/public", "public", objectMapper.writeValueAsBytes(message)));
+            } else {
+                Message message = new Message(from, null, "", false, "JOIN");
+                frames.add(frame(encoder, random, "/topic/public", "public", objectMapper.writeValueAsBytes(message)));
+            }
+        }
+        Collections.shuffle(frames, random);
+        stompFrames = frames.toArray(new byte[0][]);
+        stompText = new String[stompFrames.length];
+        for (int i = 0; i < stompFrames.length; i++) {
+            stompText[i] = new String(stompFrames[i], StandardCharsets.UTF_8);
+        }
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        deflater.end();
+    }
+
+    /**
+     * "/ws"的WebSocket传输：STOMP帧作为JSON字符串放进SockJS的 a[...] 帧。
+     */
+    @Benchmark
+    public int sockJs(Wire wire) {
+        byte[] frame = sockJsFrame();
+        return count(wire, frame.length);
+    }
+
+    /**
+     * "/ws"的WebSocket传输，浏览器协商了permessage-deflate。
+     */
+    @Benchmark
+    public int sockJsDeflate(Wire wire) {
+        return count(wire, deflate(sockJsFrame()));
+    }
+
+    /**
+     * "/ws-native"：STOMP帧原样作为WebSocket文本帧。
+     */
+    @Benchmark
+    public int nativeText(Wire wire) {
+        return count(wire, nextFrame().length);
+    }
+
+    /**
+     * "/ws-native"，协商了permessage-deflate。
+     */
+    @Benchmark
+    public int nativeDeflate(Wire wire) {
+        return count(wire, deflate(nextFrame()));
+    }
+
+    private byte[] nextFrame() {
+        byte[] frame = stompFrames[next];
+        next = (next + 1) & (FRAMES - 1);
+        return frame;
+    }
+
+    private byte[] sockJsFrame() {
+        String text = stompText[next];
+        next = (next + 1) & (FRAMES - 1);
+        return sockJsCodec.encode(text).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private int deflate(byte[] payload) {
+        if (payload.length < threshold) {
+            return payload.length;
+        }
+        deflater.setInput(payload);
+        int length = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.SYNC_FLUSH);
+        return length - DEFLATE_TAIL;
+    }
+
+    private static int count(Wire wire, int payloadLength) {
+        // 服务器发出的帧不加掩码：2字节帧头，126到65535字节时再加2字节长度
+        int wireLength = payloadLength + (payloadLength < 126 ? 2 : 4);
+        wire.wireBytes += wireLength;
+        wire.frames++;
+        return wireLength;
+    }
+
+    private static byte[] frame(StompEncoder encoder, Random random, String destination, String subscription, byte[] payload) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setSubscriptionId(subscription);
+        // 与SimpleBrokerMessageHandler相同：会话ID加计数器
+        accessor.setMessageId(Integer.toHexString(random.nextInt()) + "-" + random.nextInt(100_000));
+        accessor.setContentLength(payload.length);
+        accessor.setLeaveMutable(true);
+        return encoder.encode(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.groupchatdemo.attachment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 按内容寻址的附件文件：文件名就是内容的SHA-256，保存在 {dir}/{前两个字符}/{SHA-256}，相同内容只保存一份。
+ * 文件一旦加入就不再修改，可以被任意多个下载同时读取。所有文件的大小保存在内存中，
+ * 检查消息中的附件引用和下载时都不需要访问磁盘的元数据。
+ */
+public final class BlobStore {
+
+    private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path dir;
+    // SHA-256 -> 字节数
+    private final Map<String, Long> sizes = new ConcurrentHashMap<>();
+
+    /**
+     * 打开目录并读取已有文件的大小。
+     * @param dir 目录，不存在时创建
+     */
+    public BlobStore(Path dir) {
+        this.dir = dir;
+        try {
+            Files.createDirectories(dir);
+            try (Stream<Path> files = Files.walk(dir, 2)) {
+                files.filter(Files::isRegularFile).forEach(file -> {
+                    String id = file.getFileName().toString();
+                    if (isValidId(id) && file.getParent().getFileName().toString().equals(id.substring(0, 2))) {
+                        try {
+                            sizes.put(id, Files.size(file));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open attachment directory " + dir, e);
+        }
+    }
+
+    /**
+     * @param id 文件ID
+     * @return 是否是合法的ID（64个小写十六进制字符）
+     */
+    public static boolean isValidId(String id) {
+        return id != null && ID_PATTERN.matcher(id).matches();
+    }
+
+    /**
+     * @param id 文件ID
+     * @return 文件的字节数；文件不存在时返回-1
+     */
+    public long size(String id) {
+        Long size = id != null ? sizes.get(id) : null;
+        return size != null ? size : -1;
+    }
+
+    /**
+     * @param id 已存在的文件ID
+     * @return 文件的路径
+     */
+    public Path path(String id) {
+        return dir.resolve(id.substring(0, 2)).resolve(id);
+    }
+
+    /**
+     * 把一个已写完的临时文件加入存储。相同内容的文件已经存在时删除临时文件。
+     * @param file 临时文件，必须与存储目录在同一个文件系统中
+     * @param id 临时文件内容的SHA-256
+     * @return 是否是新的内容（false表示与已有的文件重复）
+     * @throws IOException 移动或删除失败
+     */
+    public boolean add(Path file, String id) throws IOException {
+        long size = Files.size(file);
+        Path target = path(id);
+        if (!sizes.containsKey(id)) {
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+                sizes.put(id, size);
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                // 另一个上传同时完成了相同的内容
+            }
+        }
+        Files.deleteIfExists(file);
+        sizes.putIfAbsent(id, size);
+        return false;
+    }
+
+    /**
+     * @return 文件数
+     */
+    public int count() {
+        return sizes.size();
+    }
+
+    /**
+     * @return 全部文件的字节数
+     */
+    public long totalBytes() {
+        long total = 0;
+        for (long size : sizes.values()) {
+            total += size;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.groupchatdemo.attachment;
+
+/**
+ * HTTP Range请求头中的一个字节范围（RFC 9110 14.1.2）。
+ * 只支持单个范围；多个范围的请求当作没有Range头，返回完整的内容，这也是规范允许的。
+ * @param start 第一个字节的位置
+ * @param end 最后一个字节之后的位置
+ */
+public record ByteRange(long start, long end) {
+
+    // 范围不能满足时返回的标记，应答416
+    public static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+    /**
+     * 解析Range请求头。
+     * @param header Range请求头，可以为null
+     * @param size 内容的字节数
+     * @return 请求的范围；没有Range头、格式不支持或包含多个范围时返回null；范围不在内容之内时返回UNSATISFIABLE
+     */
+    public static ByteRange parse(String header, long size) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // bytes=-N：最后N个字节
+                long suffix = Long.parseLong(last);
+                if (suffix < 0) {
+                    return null;
+                }
+                return suffix == 0 || size == 0 ? UNSATISFIABLE : new ByteRange(Math.max(0, size - suffix), size);
+            }
+            long start = Long.parseLong(first);
+            long lastPosition = last.isEmpty() ? Long.MAX_VALUE - 1 : Long.parseLong(last);
+            if (start < 0 || lastPosition < start) {
+                return null;
+            }
+            return start >= size ? UNSATISFIABLE : new ByteRange(start, Math.min(lastPosition, size - 1) + 1);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return 范围内的字节数
+     */
+    public long length() {
+        return end - start;
+    }
+}
@@ -2,20 +2,28 @@ package com.example.groupchatdemo.client;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import com.example.groupchatdemo.codec.BinaryMessageCodec;
+import com.example.groupchatdemo.gateway.TcpFrames;
 import com.example.groupchatdemo.model.Message;
 import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * ChatClient类是聊天室客户端的主入口点（命令行版本）。
- * 它负责连接服务器，发送和接收聊天消息，并在控制台显示交互。
- * 客户端使用对象流进行网络通信，实现消息对象的序列化传输。
+ * 它负责连接服务器的TCP网关，发送和接收聊天消息，并在控制台显示交互。
+ * 客户端使用长度前缀的二进制帧进行网络通信（格式见TcpFrames），聊天消息由BinaryMessageCodec编码，
+ * 与浏览器客户端在同一个聊天室里。
  */
 public class ChatClient {
+    // 离线消息帧的批次号，客户端不依赖JSON库，只取出这一个字段
+    private static final Pattern OFFLINE_BATCH = Pattern.compile("^\\{\"command\":\"OFFLINE_MESSAGES\",\"batchId\":(\\d+)");
     private Socket socket;
-    // 用于向服务器发送序列化的Java对象（Message）
-    private ObjectOutputStream objOut;
-    // 用于从服务器接收序列化的Java对象（Message）
-    private ObjectInputStream objIn;
+    // 用于向服务器发送帧
+    private DataOutputStream out;
+    // 用于从服务器接收帧
+    private DataInputStream in;
     private String username;
 
     /**
@@ -36,15 +44,11 @@ public class ChatClient {
     public void connect(String host, int port) throws IOException {
         socket = new Socket(host, port);
         System.out.println("尝试连接到服务器: " + host + ":" + port);
-        // 获取原始输出流并包装成ObjectOutputStream，用于发送Message对象
-        objOut = new ObjectOutputStream(socket.getOutputStream());
-        // 获取原始输入流并包装成ObjectInputStream，用于接收Message对象
-        // 注意：ObjectInputStream的创建可能会阻塞，直到ObjectOutputStream的头部信息被写入
-        objIn = new ObjectInputStream(socket.getInputStream());
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
 
         // 发送登录消息给服务器，告知服务器自己的用户名和命令类型为"LOGIN"
-        objOut.writeObject(new Message(username, null, "", false, "LOGIN"));
-        objOut.flush(); // 确保消息立即发送
+        sendMessage(new Message(username, null, "", false, "LOGIN"));
         System.out.println("已连接到服务器，并发送用户名: " + username);
 
         // 启动一个新线程来专门接收消息，避免阻塞主线程（用户输入）
@@ -58,16 +62,41 @@ public class ChatClient {
     private void receiveMessages() {
         try {
             while (true) {
-                // 从输入流读取并反序列化Message对象
-                Message msg = (Message) objIn.readObject();
+                // 读取一帧：长度、类型和帧体
+                int length = in.readInt();
+                byte type = in.readByte();
+                byte[] body = new byte[length - 1];
+                in.readFully(body);
+                if (type == TcpFrames.JSON) {
+                    // 在线状态和历史补发等不是聊天消息的帧以JSON原样显示
+                    String json = new String(body, StandardCharsets.UTF_8);
+                    System.out.println("[系统] " + json);
+                    // 离线消息显示后确认，否则下次登录时会重新收到
+                    Matcher offline = OFFLINE_BATCH.matcher(json);
+                    if (offline.find()) {
+                        sendMessage(new Message(username, null, offline.group(1), false, "MAILBOX_ACK"));
+                    }
+                    continue;
+                }
+                Message msg = BinaryMessageCodec.decode(body, null);
                 if (msg != null) {
                     // 根据消息的命令类型进行处理
                     switch (msg.getCommand()) {
                         case "CHAT": // 普通聊天消息
                             System.out.println("[" + msg.getFrom() + "]: " + msg.getContent());
                             break;
-                        case "PRIVATE_CHAT": // 私聊消息
-                            System.out.println("[私聊] " + msg.getFrom() + " 对你说: " + msg.getContent());
+                        case "PRIVATE_CHAT": // 私聊消息（包括自己发出的回显）
+                            System.out.println("[私聊] " + msg.getFrom() + " 对 " + msg.getTo() + " 说: " + msg.getContent());
+                            break;
+                        case "ROOM_CHAT": // 房间消息
+                            System.out.println("[" + msg.getRoom() + "] " + msg.getFrom() + ": " + msg.getContent());
+                            break;
+                        case "JOIN":
+                        case "LEAVE":
+                        case "ROOM_JOIN":
+                        case "ROOM_LEAVE": // 成员变化通知
+                            System.out.println("[系统] " + msg.getFrom() + " " + msg.getCommand()
+                                    + (msg.getRoom() != null ? " " + msg.getRoom() : ""));
                             break;
                         case "USER_LIST_UPDATE": // 用户列表更新消息
                             System.out.println("[系统] 在线用户: " + msg.getContent());
@@ -84,15 +113,15 @@ public class ChatClient {
         } catch (EOFException e) {
             // 服务器正常关闭或连接断开
             System.out.println("[系统] 服务器连接已关闭或断开。");
-        } catch (IOException | ClassNotFoundException e) {
-            // 捕获其他I/O异常或类找不到异常
+        } catch (IOException | IllegalArgumentException e) {
+            // 捕获其他I/O异常或格式错误的帧
             System.err.println("[系统] 接收消息时发生错误: " + e.getMessage());
             // e.printStackTrace(); // 调试时可以取消注释查看详细堆栈
         } finally {
             // 确保在连接断开时关闭资源
             try {
-                if (objIn != null) objIn.close();
-                if (objOut != null) objOut.close();
+                if (in != null) in.close();
+                if (out != null) out.close();
                 if (socket != null && !socket.isClosed()) {
                     socket.close();
                 }
@@ -104,14 +133,16 @@ public class ChatClient {
 
     /**
      * 向服务器发送消息。
-     * 将Message对象序列化并写入输出流。
+     * 将Message对象编码后作为一个帧写入输出流。
      * @param msg 要发送的Message对象
      */
-    public void sendMessage(Message msg) {
+    public synchronized void sendMessage(Message msg) {
         try {
-            // 将Message对象写入输出流，进行序列化
-            objOut.writeObject(msg);
-            objOut.flush(); // 立即清空缓冲区，确保消息发送
+            byte[] body = BinaryMessageCodec.encode(msg, null);
+            out.writeInt(body.length + 1);
+            out.writeByte(TcpFrames.MESSAGE);
+            out.write(body);
+            out.flush(); // 立即清空缓冲区，确保消息发送
         } catch (IOException e) {
             System.err.println("[系统] 发送消息失败: " + e.getMessage());
             // e.printStackTrace();
@@ -132,10 +163,16 @@ public class ChatClient {
     /**
      * 客户端程序的入口点。
      * 允许用户输入用户名，然后连接到服务器并开始发送/接收消息。
-     * @param args 命令行参数 (未使用)
+     * 第一个参数为 --load 时改为运行无界面的负载生成器，其余参数交给 {@link LoadGenerator}。
+     * @param args 命令行参数
      * @throws IOException 如果发生I/O错误
+     * @throws InterruptedException 负载生成器运行时被中断
      */
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--load")) {
+            LoadGenerator.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         Scanner scanner = new Scanner(System.in);
         System.out.print("请输入用户名: ");
         String username = scanner.nextLine();
@@ -143,7 +180,8 @@ public class ChatClient {
         ChatClient client = new ChatClient(username);
         client.connect("127.0.0.1", 12345);
 
-        System.out.println("已连接到聊天室，可以开始发送消息了。输入 /private <用户名> <消息> 发送私聊，或直接输入消息发送群聊。");
+        System.out.println("已连接到聊天室，可以开始发送消息了。输入 /private <用户名> <消息> 发送私聊，"
+                + "/join <房间> 和 /leave <房间> 加入或离开房间，/room <房间> <消息> 发送房间消息，或直接输入消息发送群聊。");
         // 在主线程中循环读取用户输入并发送消息
         while (true) {
             String input = scanner.nextLine();
@@ -157,6 +195,23 @@ public class ChatClient {
                 } else {
                     System.out.println("[系统] 私聊命令格式错误。请使用: /private <用户名> <消息>");
                 }
+            } else if (input.startsWith("/join ") || input.startsWith("/leave ")) {
+                // 加入或离开房间: /join <房间>、/leave <房间>
+                String[] parts = input.split(" ", 2);
+                Message roomMessage = new Message(username, null, "", false,
+                        parts[0].equals("/join") ? "ROOM_JOIN" : "ROOM_LEAVE");
+                roomMessage.setRoom(parts[1].trim());
+                client.sendMessage(roomMessage);
+            } else if (input.startsWith("/room ")) {
+                // 发送房间消息: /room <房间> <消息>
+                String[] parts = input.split(" ", 3);
+                if (parts.length >= 3) {
+                    Message roomMessage = new Message(username, null, parts[2], false, "ROOM_CHAT");
+                    roomMessage.setRoom(parts[1]);
+                    client.sendMessage(roomMessage);
+                } else {
+                    System.out.println("[系统] 房间消息格式错误。请使用: /room <房间> <消息>");
+                }
             } else if (input.startsWith("/list")) {
                 // 客户端请求在线用户列表（服务器会自动发送，此处仅为提示，无需额外发送消息）
                 System.out.println("[系统] 正在请求在线用户列表...");
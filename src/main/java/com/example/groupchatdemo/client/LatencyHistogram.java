@@ -0,0 +1,82 @@
+package com.example.groupchatdemo.client;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的对数分桶延迟直方图（单位微秒），相对误差约3%。
+ * 小于64的值各占一个桶；更大的值按最高位所在的2的幂分组，每组32个桶。
+ * 记录只是一次原子加一，可以在接收线程上直接调用。
+ */
+final class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 64;
+    private static final int SUB_BUCKETS = 32;
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - 6 + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long micros) {
+        counts.incrementAndGet(indexOf(Math.max(0, micros)));
+    }
+
+    /**
+     * @return 当前各桶计数的副本，用来计算两个时刻之间的区间分布
+     */
+    long[] snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * @param counts snapshot()的结果，或两个结果之差
+     * @param quantile 0到1之间的分位数
+     * @return 分位数所在桶的上界（微秒）；没有样本时返回0
+     */
+    static long quantile(long[] counts, double quantile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * quantile));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(counts.length - 1);
+    }
+
+    static long[] difference(long[] later, long[] earlier) {
+        long[] delta = new long[later.length];
+        for (int i = 0; i < later.length; i++) {
+            delta[i] = later[i] - earlier[i];
+        }
+        return delta;
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int top = (int) (value >>> (msb - 5)); // 最高的6位，范围[32, 63]
+        return LINEAR_BUCKETS + (msb - 6) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int group = (index - LINEAR_BUCKETS) / SUB_BUCKETS;
+        long top = SUB_BUCKETS + (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return ((top + 1) << (group + 1)) - 1;
+    }
+}
@@ -0,0 +1,435 @@
+package com.example.groupchatdemo.client;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无界面的负载生成器：在一个JVM里建立大量STOMP over WebSocket会话（JDK HttpClient，基于NIO，不为每个连接占用线程），
+ * 按目标速率混合发送公共聊天、房间聊天、私聊、正在输入的信号和重新加入（断开后重连并再次加入聊天室），
+ * 报告发送到接收的延迟分位数、吞吐量和丢失的帧数，用来找出单台服务器的极限。
+ * 只依赖JDK，编译后可以直接运行：
+ * <pre>
+ * java -cp target/classes com.example.groupchatdemo.client.ChatClient --load --connections=5000 --rate=20000 --seconds=60
+ * </pre>
+ * 参数（--名称=值）：
+ * url（默认 ws://127.0.0.1:8090/ws/websocket，即 "/ws" 端点的原生WebSocket传输），
+ * connections（会话数，默认1000），rate（每秒发送的动作数，默认1000），seconds（计时时长，默认30），
+ * warmup（预热秒数，默认5），rooms（房间数，会话按编号平均分到各房间，默认10），
+ * mix（各动作的权重，默认 private=60,room=30,chat=5,join=5；typing向所属房间的瞬时信号通道发送typing或idle，不计延迟），user-prefix（用户名前缀，默认load-），
+ * handshakes（同时进行的握手数，默认256），drain（结束后等待在途消息的秒数，默认3）。
+ * 公共聊天会发给所有会话，会话数较大时应调低chat的权重。连接数较大时需要调高文件描述符上限（ulimit -n）。
+ */
+public final class LoadGenerator {
+
+    private static final String WARMUP = "warmup";
+    private static final String MARKER = "lg:";
+
+    /**
+     * 发送的动作。
+     */
+    private enum Action {
+        CHAT, ROOM, PRIVATE, TYPING, JOIN
+    }
+
+    private final URI uri;
+    private final int connections;
+    private final int rate;
+    private final int seconds;
+    private final int warmupSeconds;
+    private final int rooms;
+    private final int drainSeconds;
+    private final String userPrefix;
+    private final Action[] actionTable; // 按权重展开的动作表，随机取一项
+    private final Semaphore handshakes;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final Session[] sessions;
+    private final AtomicInteger readySessions = new AtomicInteger();
+    private final AtomicIntegerArray readyPerRoom;
+    private final CountDownLatch initialJoins;
+
+    private volatile boolean measuring;
+    private final LongAdder[] sent = new LongAdder[Action.values().length];
+    private final LongAdder expected = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder errorFrames = new LongAdder();
+    private final LongAdder serverCloses = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram joinLatency = new LatencyHistogram();
+
+    private LoadGenerator(Map<String, String> options) {
+        this.uri = URI.create(options.getOrDefault("url", "ws://127.0.0.1:8090/ws/websocket"));
+        this.connections = Integer.parseInt(options.getOrDefault("connections", "1000"));
+        this.rate = Integer.parseInt(options.getOrDefault("rate", "1000"));
+        this.seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        this.warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        this.rooms = Math.max(1, Integer.parseInt(options.getOrDefault("rooms", "10")));
+        this.drainSeconds = Integer.parseInt(options.getOrDefault("drain", "3"));
+        this.userPrefix = options.getOrDefault("user-prefix", "load-");
+        this.actionTable = parseMix(options.getOrDefault("mix", "private=60,room=30,chat=5,join=5"));
+        this.handshakes = new Semaphore(Integer.parseInt(options.getOrDefault("handshakes", "256")));
+        this.sessions = new Session[connections];
+        this.readyPerRoom = new AtomicIntegerArray(rooms);
+        this.initialJoins = new CountDownLatch(connections);
+        for (int i = 0; i < sent.length; i++) {
+            sent[i] = new LongAdder();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.err.println("Unrecognized argument " + arg + ", expected --name=value");
+                System.exit(2);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new LoadGenerator(options).run();
+    }
+
+    private void run() throws InterruptedException {
+        System.out.println("连接 " + connections + " 个会话到 " + uri + " ...");
+        long connectStart = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            sessions[i] = new Session(userPrefix + i, i % rooms);
+            handshakes.acquire();
+            sessions[i].open();
+        }
+        if (!initialJoins.await(Math.max(60, connections / 50), TimeUnit.SECONDS)) {
+            System.out.println("警告：只有 " + (connections - initialJoins.getCount()) + " 个会话完成加入");
+        }
+        System.out.printf("%d 个会话就绪，用时 %.1f 秒，连接失败 %d%n", readySessions.get(),
+                (System.nanoTime() - connectStart) / 1e9, connectFailures.sum());
+
+        if (warmupSeconds > 0) {
+            System.out.println("预热 " + warmupSeconds + " 秒 ...");
+            drive(warmupSeconds);
+            TimeUnit.SECONDS.sleep(1);
+        }
+
+        measuring = true;
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "load-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[][] previous = {latency.snapshot()};
+        long[] previousReceived = {0};
+        AtomicInteger elapsed = new AtomicInteger();
+        reporter.scheduleAtFixedRate(() -> {
+            long[] now = latency.snapshot();
+            long[] interval = LatencyHistogram.difference(now, previous[0]);
+            long total = received.sum();
+            System.out.printf("t=%3ds 会话 %6d  收到 %8d/s  p50 %7.2fms  p99 %7.2fms%n", elapsed.incrementAndGet(),
+                    readySessions.get(), total - previousReceived[0],
+                    LatencyHistogram.quantile(interval, 0.50) / 1000.0, LatencyHistogram.quantile(interval, 0.99) / 1000.0);
+            previous[0] = now;
+            previousReceived[0] = total;
+        }, 1, 1, TimeUnit.SECONDS);
+
+        long driveStart = System.nanoTime();
+        drive(seconds);
+        double driveSeconds = (System.nanoTime() - driveStart) / 1e9;
+        measuring = false;
+        TimeUnit.SECONDS.sleep(drainSeconds); // 等待在途消息到达
+        reporter.shutdownNow();
+        report(driveSeconds);
+
+        for (Session session : sessions) {
+            session.abort();
+        }
+    }
+
+    /**
+     * 按目标速率发送动作，每毫秒补齐一批。
+     */
+    private void drive(int durationSeconds) {
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long done = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            long due = (System.nanoTime() - start) * rate / 1_000_000_000L;
+            for (; done < due; done++) {
+                Session from = sessions[random.nextInt(connections)];
+                if (!from.ready) {
+                    continue; // 正在重连的会话不发送，这一次动作算作跳过
+                }
+                Action action = actionTable[random.nextInt(actionTable.length)];
+                switch (action) {
+                    case CHAT -> {
+                        from.sendMessage("/app/chat.sendMessage", "CHAT", null, readySessions.get());
+                    }
+                    case ROOM -> {
+                        from.sendMessage("/app/room/" + from.roomId() + "/send", "ROOM_CHAT", null,
+                                readyPerRoom.get(from.room));
+                    }
+                    case PRIVATE -> {
+                        Session to = sessions[random.nextInt(connections)];
+                        if (to == from || !to.ready) {
+                            continue;
+                        }
+                        from.sendMessage("/app/chat.sendPrivateMessage", "PRIVATE_CHAT", to.username, 2);
+                    }
+                    case TYPING -> from.send("SEND\ndestination:/app/ephemeral/room/" + from.roomId() + "\n\n"
+                            + (random.nextInt(4) == 0 ? "idle" : "typing"));
+                    case JOIN -> from.rejoin();
+                }
+                if (measuring) {
+                    sent[action.ordinal()].increment();
+                }
+            }
+            LockSupport.parkNanos(1_000_000L);
+        }
+    }
+
+    private void report(double driveSeconds) {
+        long[] counts = latency.snapshot();
+        long[] joins = joinLatency.snapshot();
+        long totalExpected = expected.sum();
+        long totalReceived = received.sum();
+        long dropped = Math.max(0, totalExpected - totalReceived);
+        long actions = 0;
+        StringBuilder mix = new StringBuilder();
+        for (Action action : Action.values()) {
+            long count = sent[action.ordinal()].sum();
+            actions += count;
+            mix.append(' ').append(action.name().toLowerCase()).append('=').append(count);
+        }
+        System.out.println();
+        System.out.printf("会话          %d（就绪 %d，连接失败 %d，服务器断开 %d，ERROR帧 %d）%n",
+                connections, readySessions.get(), connectFailures.sum(), serverCloses.sum(), errorFrames.sum());
+        System.out.printf("发送          %d 个动作，%.0f/s（目标 %d/s）:%s%n", actions, actions / driveSeconds, rate, mix);
+        System.out.printf("投递          预期 %d，收到 %d，丢失 %d（%.3f%%），%.0f 帧/s%n",
+                totalExpected, totalReceived, dropped, totalExpected == 0 ? 0.0 : dropped * 100.0 / totalExpected,
+                totalReceived / driveSeconds);
+        System.out.printf("延迟(ms)      p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                LatencyHistogram.quantile(counts, 0.50) / 1000.0, LatencyHistogram.quantile(counts, 0.90) / 1000.0,
+                LatencyHistogram.quantile(counts, 0.99) / 1000.0, LatencyHistogram.quantile(counts, 0.999) / 1000.0,
+                LatencyHistogram.quantile(counts, 1.0) / 1000.0);
+        System.out.printf("加入延迟(ms)  p50 %.2f  p99 %.2f%n",
+                LatencyHistogram.quantile(joins, 0.50) / 1000.0, LatencyHistogram.quantile(joins, 0.99) / 1000.0);
+    }
+
+    private static Action[] parseMix(String mix) {
+        List<Action> table = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            Action action = Action.valueOf(pair[0].trim().toUpperCase());
+            for (int i = Integer.parseInt(pair[1].trim()); i > 0; i--) {
+                table.add(action);
+            }
+        }
+        if (table.isEmpty()) {
+            throw new IllegalArgumentException("Empty mix: " + mix);
+        }
+        return table.toArray(new Action[0]);
+    }
+
+    /**
+     * 一个STOMP会话。连接后订阅公共聊天室、自己的私聊队列、所属房间和房间的瞬时信号，再发送加入请求；
+     * 收到在线用户快照即视为加入完成。
+     */
+    private final class Session implements WebSocket.Listener {
+        private final String username;
+        private final int room;
+        private final StringBuilder partial = new StringBuilder();
+        private volatile WebSocket webSocket;
+        private volatile boolean ready;
+        private volatile boolean rejoining;
+        private volatile boolean joinedOnce;
+        private long openedNanos;
+        // 同一个WebSocket上一次只能有一个未完成的发送，用链式Future串行化
+        private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
+
+        Session(String username, int room) {
+            this.username = username;
+            this.room = room;
+        }
+
+        String roomId() {
+            return userPrefix + "room" + room;
+        }
+
+        void open() {
+            openedNanos = System.nanoTime();
+            httpClient.newWebSocketBuilder()
+                    .subprotocols("v12.stomp")
+                    .buildAsync(uri, this)
+                    .whenComplete((ws, error) -> {
+                        handshakes.release();
+                        if (error != null) {
+                            connectFailures.increment();
+                            if (!joinedOnce) {
+                                joinedOnce = true;
+                                initialJoins.countDown();
+                            }
+                        }
+                    });
+        }
+
+        /**
+         * 断开后重新连接并加入，模拟用户进出。
+         */
+        void rejoin() {
+            WebSocket ws = webSocket;
+            if (ws == null || !markNotReady()) {
+                return;
+            }
+            rejoining = true;
+            send("DISCONNECT\n\n");
+            synchronized (this) {
+                lastSend = lastSend.thenCompose(ignored -> ws.sendClose(WebSocket.NORMAL_CLOSURE, "rejoin"))
+                        .exceptionally(error -> null);
+            }
+        }
+
+        void abort() {
+            WebSocket ws = webSocket;
+            if (ws != null) {
+                ws.abort();
+            }
+        }
+
+        /**
+         * 发送一条聊天消息，内容是发送时刻，接收方据此计算延迟。
+         * @param deliveries 这条消息预期被投递的帧数
+         */
+        void sendMessage(String destination, String command, String to, int deliveries) {
+            String content = measuring ? MARKER + System.nanoTime() : WARMUP;
+            if (measuring) {
+                expected.add(deliveries);
+            }
+            send("SEND\ndestination:" + destination + "\ncontent-type:application/json\n\n"
+                    + "{\"from\":\"" + username + "\"," + (to != null ? "\"to\":\"" + to + "\",\"isPrivate\":true," : "")
+                    + "\"content\":\"" + content + "\",\"command\":\"" + command + "\"}");
+        }
+
+        synchronized void send(String frame) {
+            WebSocket ws = webSocket;
+            if (ws == null) {
+                return;
+            }
+            lastSend = lastSend.thenCompose(ignored -> ws.sendText(frame + "\0", true))
+                    .exceptionally(error -> null);
+        }
+
+        @Override
+        public void onOpen(WebSocket ws) {
+            webSocket = ws;
+            send("CONNECT\naccept-version:1.2\nhost:localhost\nheart-beat:0,0\nusername:" + username + "\n\n");
+            ws.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                onFrame(partial.toString());
+                partial.setLength(0);
+            }
+            ws.request(1);
+            return null;
+        }
+
+        private void onFrame(String frame) {
+            if (frame.startsWith("MESSAGE")) {
+                int marker = frame.indexOf("\"content\":\"" + MARKER);
+                if (marker >= 0 && !frame.contains("\"command\":\"HISTORY_BACKLOG\"")) {
+                    int start = marker + 11 + MARKER.length();
+                    long sentNanos = Long.parseLong(frame, start, frame.indexOf('"', start), 10);
+                    received.increment();
+                    latency.record((System.nanoTime() - sentNanos) / 1000);
+                } else if (!ready && frame.contains("\"command\":\"PRESENCE_SNAPSHOT\"")) {
+                    joined();
+                }
+            } else if (frame.startsWith("CONNECTED")) {
+                send("SUBSCRIBE\nid:public\ndestination:/topic/public\n\n");
+                send("SUBSCRIBE\nid:private\ndestination:/user/queue/messages\n\n");
+                send("SUBSCRIBE\nid:room\ndestination:/topic/room/" + roomId() + "\n\n");
+                send("SUBSCRIBE\nid:ephemeral\ndestination:/topic/ephemeral/room/" + roomId() + "\n\n");
+                send("SEND\ndestination:/app/chat.addUser\ncontent-type:application/json\n\n"
+                        + "{\"from\":\"" + username + "\",\"content\":\"\",\"command\":\"JOIN\"}");
+            } else if (frame.startsWith("ERROR") && !rejoining) { // 服务器会用ERROR帧回应重新加入前的DISCONNECT
+                if (errorFrames.sum() == 0) {
+                    System.err.println("收到ERROR帧（只打印第一个）: " + frame.replace('\n', ' '));
+                }
+                errorFrames.increment();
+            }
+        }
+
+        private void joined() {
+            joinLatency.record((System.nanoTime() - openedNanos) / 1000);
+            ready = true;
+            readySessions.incrementAndGet();
+            readyPerRoom.incrementAndGet(room);
+            if (!joinedOnce) {
+                joinedOnce = true;
+                initialJoins.countDown();
+            }
+        }
+
+        /**
+         * @return 会话之前是否就绪
+         */
+        private synchronized boolean markNotReady() {
+            if (!ready) {
+                return false;
+            }
+            ready = false;
+            readySessions.decrementAndGet();
+            readyPerRoom.decrementAndGet(room);
+            return true;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+            closed();
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket ws, Throwable error) {
+            closed();
+        }
+
+        private void closed() {
+            if (rejoining) {
+                rejoining = false;
+                synchronized (this) {
+                    webSocket = null;
+                    lastSend = CompletableFuture.completedFuture(null);
+                    partial.setLength(0);
+                }
+                try {
+                    handshakes.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                open();
+            } else if (markNotReady()) {
+                serverCloses.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.example.groupchatdemo.cluster;
+
+import com.example.groupchatdemo.service.PresenceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.InterceptableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 集群模式（chat.cluster.enabled=true）：多个应用实例各自运行简单消息代理，由本类在节点之间转发。
+ * <ul>
+ * <li>广播：发布到代理通道的 /topic/* 消息（在线状态主题除外）原样复制到所有节点，由各节点的代理扇出给本地订阅者；</li>
+ * <li>私聊：/user/{用户名}/... 消息只转发给该用户有会话的节点，由对方的UserDestinationMessageHandler解析到本地会话；</li>
+ * <li>在线状态：本节点会话的加入和离开同步到所有节点，合并进各节点的PresenceService，
+ * 因此快照和JOIN/LEAVE增量覆盖整个集群，各节点独立计算并广播自己的增量。</li>
+ * </ul>
+ * 从其他节点收到的消息带有来源头，不会再被转发。节点间的传输由ClusterTransport负责，
+ * 记录成批发送；到某个节点的链路（重新）建立时先发送本节点会话的完整快照，对方用它替换该节点的旧状态。
+ * 持久化的历史和房间成员列表仍然只在各自的节点上。
+ */
+@Component
+public class ClusterNode implements SmartLifecycle, ChannelInterceptor,
+        ClusterTransport.Listener, PresenceService.LocalListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterNode.class);
+
+    // 非原生头，标记从其他节点收到的消息
+    static final String ORIGIN_HEADER = "chat.clusterOrigin";
+
+    // 记录类型
+    static final byte PUBLISH = 1; // 广播到主题
+    static final byte USER = 2;    // 用户目的地
+    static final byte JOIN = 3;    // 会话加入
+    static final byte LEAVE = 4;   // 会话离开
+    static final byte SYNC = 5;    // 节点的全部会话
+
+    private static final String USER_PREFIX = "/user/";
+
+    private final boolean enabled;
+    private final ClusterTransport transport;
+    private final SubscribableChannel brokerChannel;
+    private final PresenceService presenceService;
+
+    // 本节点已加入聊天室的会话：会话ID -> 用户名。广播JOIN/LEAVE和发送SYNC都在这个锁内，
+    // 保证对方收到的SYNC和之后的增量是连续的
+    private final Map<String, String> localSessions = new HashMap<>();
+    // 以下远程状态由remoteLock保护：节点ID -> (会话ID -> 用户名)
+    private final Object remoteLock = new Object();
+    private final Map<String, Map<String, String>> remoteSessions = new HashMap<>();
+    // 用户名 -> 该用户有会话的远程节点（不可变集合，写时复制），私聊路由时无锁读取
+    private final Map<String, Set<String>> nodesByUser = new ConcurrentHashMap<>();
+    private volatile boolean running;
+
+    public ClusterNode(@Value("${chat.cluster.enabled:false}") boolean enabled,
+                       ClusterTransport transport,
+                       @Qualifier("brokerChannel") SubscribableChannel brokerChannel,
+                       PresenceService presenceService) {
+        this.enabled = enabled;
+        this.transport = transport;
+        this.brokerChannel = brokerChannel;
+        this.presenceService = presenceService;
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        presenceService.setLocalListener(this);
+        // 停止后preSend直接放行；不移除拦截器，因为关闭中的会话仍在向代理通道发送消息
+        InterceptableChannel channel = (InterceptableChannel) brokerChannel;
+        if (!channel.getInterceptors().contains(this)) {
+            channel.addInterceptor(this);
+        }
+        transport.start(this);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        transport.stop();
+        presenceService.setLocalListener(null);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 代理通道上的发布：把需要其他节点处理的消息编码成记录交给传输层。
+     */
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        if (!running || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || headers.containsKey(ORIGIN_HEADER)
+                || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (destination == null) {
+            return message;
+        }
+        if (destination.startsWith("/topic/")) {
+            // 在线状态增量由各节点根据合并后的在线集合自行广播
+            if (!destination.startsWith(PresenceService.PRESENCE_TOPIC) && transport.reachablePeerCount() > 0) {
+                transport.broadcast(encodeMessage(PUBLISH, destination, headers, payload));
+            }
+        } else if (destination.startsWith(USER_PREFIX) && SimpMessageHeaderAccessor.getSessionId(headers) == null) {
+            // 带会话ID的用户目的地只发给本节点的那一个会话（例如历史补发），不转发
+            int end = destination.indexOf('/', USER_PREFIX.length());
+            if (end < 0) {
+                return message;
+            }
+            String username = StringUtils.replace(destination.substring(USER_PREFIX.length(), end), "%2F", "/");
+            Set<String> nodes = nodesByUser.get(username);
+            if (nodes != null) {
+                byte[] record = encodeMessage(USER, destination, headers, payload);
+                for (String node : nodes) {
+                    transport.send(node, record);
+                }
+            }
+        }
+        return message;
+    }
+
+    @Override
+    public void sessionJoined(String username, String sessionId) {
+        synchronized (localSessions) {
+            localSessions.put(sessionId, username);
+            transport.broadcast(encodeSession(JOIN, sessionId, username));
+        }
+    }
+
+    @Override
+    public void sessionLeft(String username, String sessionId) {
+        synchronized (localSessions) {
+            localSessions.remove(sessionId);
+            transport.broadcast(encodeSession(LEAVE, sessionId, username));
+        }
+    }
+
+    @Override
+    public void peerReachable(String nodeId) {
+        synchronized (localSessions) {
+            transport.send(nodeId, encodeSync(localSessions));
+        }
+    }
+
+    @Override
+    public void peerLost(String nodeId) {
+        synchronized (remoteLock) {
+            Map<String, String> sessions = remoteSessions.remove(nodeId);
+            if (sessions != null) {
+                // 节点上已经没有任何会话，每个用户都从路由表中去掉这个节点
+                sessions.forEach((sessionId, username) -> removeRemote(nodeId, sessionId, username, Map.of()));
+            }
+        }
+    }
+
+    @Override
+    public void received(String nodeId, byte[] record) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            byte type = in.readByte();
+            switch (type) {
+                case PUBLISH, USER -> deliver(nodeId, in);
+                case JOIN -> {
+                    String sessionId = in.readUTF();
+                    String username = in.readUTF();
+                    synchronized (remoteLock) {
+                        addRemote(nodeId, sessionId, username);
+                    }
+                }
+                case LEAVE -> {
+                    String sessionId = in.readUTF();
+                    String username = in.readUTF();
+                    synchronized (remoteLock) {
+                        Map<String, String> sessions = remoteSessions.get(nodeId);
+                        if (sessions != null && sessions.remove(sessionId) != null) {
+                            removeRemote(nodeId, sessionId, username, sessions);
+                        }
+                    }
+                }
+                case SYNC -> sync(nodeId, in);
+                default -> log.warn("Ignoring unknown cluster record type {} from {}", type, nodeId);
+            }
+        } catch (IOException e) {
+            log.warn("Ignoring a malformed cluster record from {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * 把其他节点转发来的消息发布到本节点的代理通道。
+     */
+    private void deliver(String nodeId, DataInputStream in) throws IOException {
+        String destination = in.readUTF();
+        String contentType = in.readUTF();
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        if (!contentType.isEmpty()) {
+            accessor.setContentType(MimeTypeUtils.parseMimeType(contentType));
+        }
+        accessor.setHeader(ORIGIN_HEADER, nodeId);
+        accessor.setLeaveMutable(true);
+        brokerChannel.send(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+    }
+
+    /**
+     * 用节点的完整快照替换它的旧状态，只把差异应用到PresenceService。
+     */
+    private void sync(String nodeId, DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, String> snapshot = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String sessionId = in.readUTF();
+            snapshot.put(sessionId, in.readUTF());
+        }
+        synchronized (remoteLock) {
+            Map<String, String> sessions = remoteSessions.computeIfAbsent(nodeId, key -> new HashMap<>());
+            for (var iterator = sessions.entrySet().iterator(); iterator.hasNext(); ) {
+                var entry = iterator.next();
+                if (!entry.getValue().equals(snapshot.get(entry.getKey()))) {
+                    iterator.remove();
+                    removeRemote(nodeId, entry.getKey(), entry.getValue(), sessions);
+                }
+            }
+            snapshot.forEach((sessionId, username) -> addRemote(nodeId, sessionId, username));
+        }
+        log.info("Cluster node {} synchronized {} sessions", nodeId, count);
+    }
+
+    private void addRemote(String nodeId, String sessionId, String username) {
+        Map<String, String> sessions = remoteSessions.computeIfAbsent(nodeId, key -> new HashMap<>());
+        if (sessions.put(sessionId, username) != null) {
+            return;
+        }
+        nodesByUser.compute(username, (user, nodes) -> {
+            if (nodes == null) {
+                return Set.of(nodeId);
+            }
+            if (nodes.contains(nodeId)) {
+                return nodes;
+            }
+            Set<String> copy = new HashSet<>(nodes);
+            copy.add(nodeId);
+            return Set.copyOf(copy);
+        });
+        presenceService.remoteJoined(username, nodeId + "/" + sessionId);
+    }
+
+    /**
+     * 会话已经从sessions中移除后调用；该用户在这个节点上没有其他会话时从路由表中去掉这个节点。
+     */
+    private void removeRemote(String nodeId, String sessionId, String username, Map<String, String> sessions) {
+        if (!sessions.containsValue(username)) {
+            nodesByUser.computeIfPresent(username, (user, nodes) -> {
+                Set<String> copy = new HashSet<>(nodes);
+                copy.remove(nodeId);
+                return copy.isEmpty() ? null : Set.copyOf(copy);
+            });
+        }
+        presenceService.remoteLeft(username, nodeId + "/" + sessionId);
+    }
+
+    private static byte[] encodeMessage(byte type, String destination, MessageHeaders headers, byte[] payload) {
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + destination.length() + 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            out.writeUTF(destination);
+            out.writeUTF(contentType == null ? "" : contentType.toString());
+            out.writeInt(payload.length);
+            out.write(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeSession(byte type, String sessionId, String username) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            out.writeUTF(sessionId);
+            out.writeUTF(username);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeSync(Map<String, String> sessions) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + sessions.size() * 48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(SYNC);
+            out.writeInt(sessions.size());
+            for (Map.Entry<String, String> entry : sessions.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
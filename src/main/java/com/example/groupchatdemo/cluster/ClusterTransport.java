@@ -0,0 +1,76 @@
+package com.example.groupchatdemo.cluster;
+
+/**
+ * 节点之间的传输层。记录对传输层是不透明的字节数组，由ClusterNode编码和解码；
+ * 实现负责把发往同一节点的记录合并成批发送，而不是每条记录一次网络往返，
+ * 并保证同一对节点之间的记录按发送顺序到达。
+ * 默认实现是TcpMeshTransport；提供另一个实现该接口的Bean（例如基于消息队列）即可替换。
+ */
+public interface ClusterTransport {
+
+    /**
+     * 传输层事件的回调。同一个节点的事件和记录按顺序在同一个线程上回调。
+     */
+    interface Listener {
+
+        /**
+         * 到该节点的发送链路已建立（包括断线重连后），此前发往它的记录可能已丢失，
+         * 应先发送本节点的完整状态。
+         * @param nodeId 节点ID
+         */
+        void peerReachable(String nodeId);
+
+        /**
+         * 来自该节点的接收链路已断开，应丢弃该节点的全部状态。
+         * @param nodeId 节点ID
+         */
+        void peerLost(String nodeId);
+
+        /**
+         * 收到该节点的一条记录。
+         * @param nodeId 发送记录的节点ID
+         * @param record 记录
+         */
+        void received(String nodeId, byte[] record);
+    }
+
+    /**
+     * @param listener 接收事件和记录的回调
+     */
+    void start(Listener listener);
+
+    void stop();
+
+    /**
+     * @return 本节点的ID
+     */
+    String nodeId();
+
+    /**
+     * 发送一条记录给指定节点；发送链路未建立时丢弃（链路建立后对方会收到完整状态）。
+     * @param nodeId 目标节点
+     * @param record 记录，调用后不能再修改
+     */
+    void send(String nodeId, byte[] record);
+
+    /**
+     * 发送一条记录给所有可达的节点，各节点共享同一个数组。
+     * @param record 记录，调用后不能再修改
+     */
+    void broadcast(byte[] record);
+
+    /**
+     * @return 发送链路已建立的节点数
+     */
+    int reachablePeerCount();
+
+    /**
+     * @return 已发送的记录数
+     */
+    long recordsSent();
+
+    /**
+     * @return 已发送的批次数，与recordsSent之比即平均每批的记录数
+     */
+    long batchesSent();
+}
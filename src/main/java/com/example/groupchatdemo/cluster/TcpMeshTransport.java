@@ -0,0 +1,297 @@
+package com.example.groupchatdemo.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于TCP的全互联传输层，适合少量节点，也可以在一台机器上用不同端口运行多个实例测试。
+ * 每个节点在chat.cluster.port上监听，并主动连接chat.cluster.peers中的每个地址，
+ * 因此每对节点之间有两条单向连接：自己发起的连接只用于发送，对方发起的连接只用于接收。
+ * 握手时双方交换节点ID。每个发送链路有一个有界队列和一个发送线程，
+ * 线程一次取走队列中积压的全部记录（最多max-batch-records条），作为一批写出并只flush一次，
+ * 负载越高每批越大；batch-linger-ms大于0时在队列为空后再等待一会儿凑批。
+ * 队列满时断开链路，重连后由对方重新接收完整状态，而不是悄悄丢掉部分记录。
+ * <pre>
+ * 握手      int MAGIC, UTF 节点ID（双向各一次）
+ * 批次      int 记录数, 每条记录: int 长度, byte[] 内容
+ * </pre>
+ */
+@Component
+public class TcpMeshTransport implements ClusterTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpMeshTransport.class);
+
+    private static final int MAGIC = 0x43484331; // "CHC1"
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final String nodeId;
+    private final int port;
+    private final List<String> peerAddresses;
+    private final int queueCapacity;
+    private final int maxBatchRecords;
+    private final long lingerNanos;
+
+    // 发送链路已建立的节点ID -> 链路
+    private final Map<String, Peer> reachable = new ConcurrentHashMap<>();
+    // 节点ID -> 当前的接收连接；同一节点重连时旧连接被替换
+    private final Map<String, Socket> inbound = new ConcurrentHashMap<>();
+    private final List<Peer> peers = new ArrayList<>();
+    private final LongAdder recordsSent = new LongAdder();
+    private final LongAdder batchesSent = new LongAdder();
+    private volatile Listener listener;
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+
+    public TcpMeshTransport(@Value("${chat.cluster.node-id:}") String nodeId,
+                            @Value("${chat.cluster.port:17000}") int port,
+                            @Value("${chat.cluster.peers:}") List<String> peerAddresses,
+                            @Value("${chat.cluster.queue-capacity:65536}") int queueCapacity,
+                            @Value("${chat.cluster.max-batch-records:1024}") int maxBatchRecords,
+                            @Value("${chat.cluster.batch-linger-ms:0}") long lingerMillis) {
+        this.nodeId = nodeId == null || nodeId.isBlank() ? "node-" + port : nodeId;
+        this.port = port;
+        this.peerAddresses = peerAddresses.stream().map(String::trim).filter(address -> !address.isEmpty()).toList();
+        this.queueCapacity = queueCapacity;
+        this.maxBatchRecords = maxBatchRecords;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+    }
+
+    /**
+     * 一个发送链路。
+     */
+    private final class Peer {
+        final String address;
+        final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(queueCapacity);
+        volatile String peerId;
+        volatile Socket socket;
+
+        Peer(String address) {
+            this.address = address;
+        }
+
+        void offer(byte[] record) {
+            if (!queue.offer(record)) {
+                log.warn("Cluster send queue to {} is full ({} records), resetting the link", peerId, queueCapacity);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        try {
+            serverSocket = new ServerSocket(port);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not listen for cluster peers on port " + port, e);
+        }
+        running = true;
+        startThread("cluster-accept", this::acceptLoop);
+        for (String address : peerAddresses) {
+            Peer peer = new Peer(address);
+            peers.add(peer);
+            startThread("cluster-out-" + address, () -> sendLoop(peer));
+        }
+        log.info("Cluster node {} listening on port {}, peers {}", nodeId, port, peerAddresses);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        closeQuietly(serverSocket);
+        for (Peer peer : peers) {
+            closeQuietly(peer.socket);
+        }
+        inbound.values().forEach(TcpMeshTransport::closeQuietly);
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void send(String nodeId, byte[] record) {
+        Peer peer = reachable.get(nodeId);
+        if (peer != null) {
+            peer.offer(record);
+        }
+    }
+
+    @Override
+    public void broadcast(byte[] record) {
+        for (Peer peer : reachable.values()) {
+            peer.offer(record);
+        }
+    }
+
+    @Override
+    public int reachablePeerCount() {
+        return reachable.size();
+    }
+
+    @Override
+    public long recordsSent() {
+        return recordsSent.sum();
+    }
+
+    @Override
+    public long batchesSent() {
+        return batchesSent.sum();
+    }
+
+    /**
+     * 发送线程：连接、握手，然后成批写出队列中的记录；链路断开后等待一会儿重连。
+     */
+    private void sendLoop(Peer peer) {
+        String[] hostAndPort = peer.address.split(":");
+        InetSocketAddress address = new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1]));
+        List<byte[]> batch = new ArrayList<>(maxBatchRecords);
+        while (running) {
+            try (Socket socket = new Socket()) {
+                socket.connect(address, (int) RECONNECT_DELAY_MILLIS);
+                socket.setTcpNoDelay(true);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out.writeInt(MAGIC);
+                out.writeUTF(nodeId);
+                out.flush();
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Peer " + peer.address + " is not a cluster node");
+                }
+                String peerId = in.readUTF();
+                if (peerId.equals(nodeId)) {
+                    log.error("Cluster peer {} is this node itself, not connecting to it", peer.address);
+                    return;
+                }
+                peer.peerId = peerId;
+                peer.socket = socket;
+                peer.queue.clear();
+                reachable.put(peerId, peer);
+                log.info("Cluster link {} -> {} ({}) established", nodeId, peerId, peer.address);
+                listener.peerReachable(peerId);
+                try {
+                    while (running) {
+                        byte[] first = peer.queue.poll(1, TimeUnit.SECONDS);
+                        if (first == null) {
+                            continue;
+                        }
+                        batch.add(first);
+                        if (lingerNanos > 0 && peer.queue.isEmpty()) {
+                            LockSupport.parkNanos(lingerNanos);
+                        }
+                        peer.queue.drainTo(batch, maxBatchRecords - 1);
+                        out.writeInt(batch.size());
+                        for (byte[] record : batch) {
+                            out.writeInt(record.length);
+                            out.write(record);
+                        }
+                        out.flush();
+                        recordsSent.add(batch.size());
+                        batchesSent.increment();
+                        batch.clear();
+                    }
+                } finally {
+                    reachable.remove(peerId, peer);
+                    batch.clear();
+                }
+            } catch (IOException e) {
+                if (peer.peerId != null && running) {
+                    log.warn("Cluster link to {} ({}) failed: {}", peer.peerId, peer.address, e.getMessage());
+                } else {
+                    log.debug("Cluster peer {} not reachable: {}", peer.address, e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RECONNECT_DELAY_MILLIS));
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                startThread("cluster-in-" + socket.getRemoteSocketAddress(), () -> receiveLoop(socket));
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Cluster accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 接收线程：握手后逐批读取记录并回调；连接断开时通知对方节点已失联。
+     */
+    private void receiveLoop(Socket socket) {
+        String peerId = null;
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            if (in.readInt() != MAGIC) {
+                log.warn("Rejected a cluster connection from {}: bad handshake", socket.getRemoteSocketAddress());
+                return;
+            }
+            peerId = in.readUTF();
+            out.writeInt(MAGIC);
+            out.writeUTF(nodeId);
+            out.flush();
+            Socket previous = inbound.put(peerId, socket);
+            closeQuietly(previous);
+            while (running) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    byte[] record = new byte[in.readInt()];
+                    in.readFully(record);
+                    listener.received(peerId, record);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Cluster link from {} closed: {}", peerId, e.getMessage());
+        } finally {
+            if (peerId != null && inbound.remove(peerId, socket)) {
+                log.info("Cluster link {} -> {} lost", peerId, nodeId);
+                listener.peerLost(peerId);
+            }
+        }
+    }
+
+    private static void startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // 关闭时的异常没有意义
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.groupchatdemo.codec;
+
+import com.example.groupchatdemo.model.Attachment;
+import com.example.groupchatdemo.model.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Message的紧凑二进制编码（版本1）：
+ * <pre>
+ * byte    版本号，目前为1
+ * byte    命令编号（见COMMANDS，从1开始）；0表示命令以字符串形式跟在flags之后
+ * byte    标志位：0x01 isPrivate，0x02 有from，0x04 有to，0x08 有content，0x10 有room，0x20 有附件
+ * [命令字符串] [from] [to] [content] [room]   只出现标志位中存在的字段
+ * [附件]  id、name、type三个字面量和一个varint的size
+ * </pre>
+ * 每个字符串以一个无符号varint开头，低两位表示形式，其余位是长度或下标：
+ * 0 字面量（后跟UTF-8字节）；1 字典引用；2 字面量并加入字典。
+ * 只有from、to、room使用字典，content总是字面量。不传字典时所有字符串都是字面量。
+ */
+public final class BinaryMessageCodec {
+
+    public static final byte VERSION = 1;
+
+    // 命令编号是协议的一部分，只能在末尾追加
+    private static final String[] COMMANDS = {
+            "CHAT", "JOIN", "LEAVE", "PRIVATE_CHAT", "ROOM_CHAT", "ROOM_JOIN", "ROOM_LEAVE",
+            "SERVER_INFO", "USER_LIST_UPDATE", "LOGIN"
+    };
+    private static final Map<String, Integer> COMMAND_CODES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < COMMANDS.length; i++) {
+            COMMAND_CODES.put(COMMANDS[i], i + 1);
+        }
+    }
+
+    private static final int FLAG_PRIVATE = 0x01;
+    private static final int FLAG_FROM = 0x02;
+    private static final int FLAG_TO = 0x04;
+    private static final int FLAG_CONTENT = 0x08;
+    private static final int FLAG_ROOM = 0x10;
+    private static final int FLAG_ATTACHMENT = 0x20;
+
+    private static final int LITERAL = 0;
+    private static final int REFERENCE = 1;
+    private static final int DEFINITION = 2;
+
+    private BinaryMessageCodec() {
+    }
+
+    /**
+     * 编码一条消息。
+     * @param message 消息
+     * @param dictionary 会话的字典；为null时不使用字典
+     * @return 编码后的字节
+     */
+    public static byte[] encode(Message message, UsernameDictionary dictionary) {
+        Writer out = new Writer(32 + (message.getContent() != null ? message.getContent().length() * 3 : 0));
+        Integer code = message.getCommand() != null ? COMMAND_CODES.get(message.getCommand()) : null;
+        int flags = (message.isPrivate() ? FLAG_PRIVATE : 0)
+                | (message.getFrom() != null ? FLAG_FROM : 0)
+                | (message.getTo() != null ? FLAG_TO : 0)
+                | (message.getContent() != null ? FLAG_CONTENT : 0)
+                | (message.getRoom() != null ? FLAG_ROOM : 0)
+                | (message.getAttachment() != null ? FLAG_ATTACHMENT : 0);
+        out.write(VERSION);
+        out.write(code != null ? code : 0);
+        out.write(flags);
+        if (code == null) {
+            out.writeLiteral(message.getCommand() != null ? message.getCommand() : "");
+        }
+        if (message.getFrom() != null) {
+            out.writeName(message.getFrom(), dictionary);
+        }
+        if (message.getTo() != null) {
+            out.writeName(message.getTo(), dictionary);
+        }
+        if (message.getContent() != null) {
+            out.writeLiteral(message.getContent());
+        }
+        if (message.getRoom() != null) {
+            out.writeName(message.getRoom(), dictionary);
+        }
+        Attachment attachment = message.getAttachment();
+        if (attachment != null) {
+            out.writeLiteral(attachment.id() != null ? attachment.id() : "");
+            out.writeLiteral(attachment.name() != null ? attachment.name() : "");
+            out.writeLiteral(attachment.type() != null ? attachment.type() : "");
+            out.writeVarint(attachment.size());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码一条消息。
+     * @param bytes 编码后的字节
+     * @param dictionary 会话的字典；为null时遇到字典引用会失败
+     * @return 消息
+     * @throws IllegalArgumentException 格式错误或版本不支持
+     */
+    public static Message decode(byte[] bytes, UsernameDictionary dictionary) {
+        Reader in = new Reader(bytes);
+        int version = in.read();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary message version " + version);
+        }
+        int code = in.read();
+        int flags = in.read();
+        String command;
+        if (code == 0) {
+            command = in.readString(null);
+        } else if (code <= COMMANDS.length) {
+            command = COMMANDS[code - 1];
+        } else {
+            throw new IllegalArgumentException("Unknown command code " + code);
+        }
+        String from = (flags & FLAG_FROM) != 0 ? in.readString(dictionary) : null;
+        String to = (flags & FLAG_TO) != 0 ? in.readString(dictionary) : null;
+        String content = (flags & FLAG_CONTENT) != 0 ? in.readString(null) : null;
+        String room = (flags & FLAG_ROOM) != 0 ? in.readString(dictionary) : null;
+        Message message = new Message(from, to, content, (flags & FLAG_PRIVATE) != 0, command);
+        message.setRoom(room);
+        if ((flags & FLAG_ATTACHMENT) != 0) {
+            String id = in.readString(null);
+            String name = in.readString(null);
+            String type = in.readString(null);
+            message.setAttachment(new Attachment(id, name, in.readVarint(), type));
+        }
+        return message;
+    }
+
+    private static final class Writer {
+        private byte[] buffer;
+        private int position;
+
+        Writer(int initialCapacity) {
+            this.buffer = new byte[initialCapacity];
+        }
+
+        void write(int b) {
+            ensure(1);
+            buffer[position++] = (byte) b;
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeLiteral(String value) {
+            writeBytes(value.getBytes(StandardCharsets.UTF_8), LITERAL);
+        }
+
+        void writeName(String value, UsernameDictionary dictionary) {
+            if (dictionary == null) {
+                writeLiteral(value);
+                return;
+            }
+            int index = dictionary.indexOf(value);
+            if (index >= 0) {
+                writeVarint(((long) index << 2) | REFERENCE);
+            } else if (dictionary.hasRoom()) {
+                dictionary.define(value);
+                writeBytes(value.getBytes(StandardCharsets.UTF_8), DEFINITION);
+            } else {
+                writeLiteral(value);
+            }
+        }
+
+        private void writeBytes(byte[] bytes, int form) {
+            writeVarint(((long) bytes.length << 2) | form);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int read() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Truncated binary message");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        String readString(UsernameDictionary dictionary) {
+            long header = readVarint();
+            int form = (int) (header & 3);
+            long value = header >>> 2;
+            if (form == REFERENCE) {
+                if (dictionary == null) {
+                    throw new IllegalArgumentException("Dictionary reference without a dictionary");
+                }
+                return dictionary.get((int) value);
+            }
+            if (form != LITERAL && form != DEFINITION) {
+                throw new IllegalArgumentException("Unknown string form " + form);
+            }
+            if (value > bytes.length - position) {
+                throw new IllegalArgumentException("Truncated binary message");
+            }
+            String string = new String(bytes, position, (int) value, StandardCharsets.UTF_8);
+            position += (int) value;
+            if (form == DEFINITION) {
+                if (dictionary == null) {
+                    throw new IllegalArgumentException("Dictionary definition without a dictionary");
+                }
+                dictionary.define(string);
+            }
+            return string;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.groupchatdemo.codec;
+
+import com.example.groupchatdemo.model.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.util.MimeType;
+
+import java.util.Map;
+
+/**
+ * 使用BinaryMessageCodec在Message和字节之间转换的消息转换器（不使用字典）。
+ * 只处理内容类型为 application/octet-stream;codec=chat1 的消息，其余内容类型仍由Jackson转换器处理，
+ * 因此发送JSON的客户端不受影响。
+ * 内容类型的主类型是application/octet-stream，STOMP处理器会把这样的帧作为WebSocket二进制帧发送。
+ */
+public class BinaryMessageConverter extends AbstractMessageConverter {
+
+    public static final MimeType MIME_TYPE = new MimeType("application", "octet-stream", Map.of("codec", "chat1"));
+
+    public BinaryMessageConverter() {
+        super(MIME_TYPE);
+        setStrictContentTypeMatch(true); // 没有内容类型的消息交给其他转换器
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Message.class == clazz;
+    }
+
+    @Override
+    protected boolean supportsMimeType(MessageHeaders headers) {
+        MimeType mimeType = getMimeType(headers);
+        return mimeType != null && MIME_TYPE.getParameter("codec").equals(mimeType.getParameter("codec"))
+                && super.supportsMimeType(headers);
+    }
+
+    @Override
+    protected Object convertFromInternal(org.springframework.messaging.Message<?> message, Class<?> targetClass,
+                                         Object conversionHint) {
+        if (!(message.getPayload() instanceof byte[] bytes)) {
+            return null;
+        }
+        try {
+            return BinaryMessageCodec.decode(bytes, null);
+        } catch (IllegalArgumentException e) {
+            throw new MessageConversionException(message, "Invalid binary chat message: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        return BinaryMessageCodec.encode((Message) payload, null);
+    }
+}
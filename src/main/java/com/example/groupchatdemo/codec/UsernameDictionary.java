@@ -0,0 +1,72 @@
+package com.example.groupchatdemo.codec;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 二进制编码的会话级字符串字典（用户名、房间ID）。
+ * 编码端和解码端各持有一份，字符串第一次出现时以"字面量+定义"编码并由双方按相同顺序加入字典，
+ * 之后只发送它在字典中的下标。因此双方必须看到完全相同的帧序列：定义了新条目的帧不能被丢弃或乱序。
+ * 不是线程安全的，由调用方按会话加锁。
+ */
+public final class UsernameDictionary {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final int capacity;
+    private final List<String> entries = new ArrayList<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    public UsernameDictionary() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 字典的最大条目数，满了以后新的字符串只以字面量发送
+     */
+    public UsernameDictionary(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return 字符串的下标；不在字典中时返回-1
+     */
+    int indexOf(String value) {
+        Integer index = indexes.get(value);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return 字典已满时返回false
+     */
+    boolean hasRoom() {
+        return entries.size() < capacity;
+    }
+
+    /**
+     * 把字符串加入字典。
+     * @return 新条目的下标
+     */
+    int define(String value) {
+        int index = entries.size();
+        entries.add(value);
+        indexes.put(value, index);
+        return index;
+    }
+
+    /**
+     * @throws IllegalArgumentException 下标不在字典中（说明双方的帧序列不一致）
+     */
+    String get(int index) {
+        if (index < 0 || index >= entries.size()) {
+            throw new IllegalArgumentException("Unknown dictionary entry " + index + " (size " + entries.size() + ")");
+        }
+        return entries.get(index);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
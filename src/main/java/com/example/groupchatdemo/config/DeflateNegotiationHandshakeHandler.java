@@ -0,0 +1,70 @@
+package com.example.groupchatdemo.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeFailureException;
+import org.springframework.web.socket.server.HandshakeHandler;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+
+/**
+ * 控制一个端点是否协商permessage-deflate。
+ * Tomcat在握手时自行协商客户端请求的扩展（浏览器总是请求permessage-deflate），Spring协商的结果不起作用，
+ * 所以关闭压缩时在握手前把请求中的 Sec-WebSocket-Extensions 头隐藏起来，Tomcat和Spring都看不到它。
+ * 每个压缩的会话在直接内存中有一对Deflater/Inflater（约300KB），每个发出的帧都要压缩一次，见README第21节。
+ */
+class DeflateNegotiationHandshakeHandler implements HandshakeHandler {
+
+    private static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+
+    private final boolean deflate;
+    private final HandshakeHandler delegate = new DefaultHandshakeHandler();
+
+    /**
+     * @param deflate 是否允许客户端协商permessage-deflate
+     */
+    DeflateNegotiationHandshakeHandler(boolean deflate) {
+        this.deflate = deflate;
+    }
+
+    @Override
+    public boolean doHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Map<String, Object> attributes) throws HandshakeFailureException {
+        if (!deflate && request instanceof ServletServerHttpRequest servletRequest) {
+            request = new ServletServerHttpRequest(new WithoutExtensions(servletRequest.getServletRequest()));
+        }
+        return delegate.doHandshake(request, response, wsHandler, attributes);
+    }
+
+    // 隐藏扩展协商头的请求
+    private static final class WithoutExtensions extends HttpServletRequestWrapper {
+
+        WithoutExtensions(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return EXTENSIONS_HEADER.equalsIgnoreCase(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return EXTENSIONS_HEADER.equalsIgnoreCase(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            return Collections.enumeration(Collections.list(super.getHeaderNames()).stream()
+                    .filter(name -> !EXTENSIONS_HEADER.equalsIgnoreCase(name))
+                    .toList());
+        }
+    }
+}
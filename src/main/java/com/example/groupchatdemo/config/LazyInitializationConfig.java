@@ -0,0 +1,40 @@
+package com.example.groupchatdemo.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+
+/**
+ * 快速启动模式（spring.main.lazy-initialization=true，见README第22节）的例外。
+ * 延迟初始化时，接受 "/ws" 连接不需要的单例在第一次被用到时才创建：控制器在第一条消息到达时创建，
+ * 事件监听器在第一个事件到达时创建。带@Scheduled方法的bean不能延迟，定时任务在bean创建时才登记，
+ * 延迟后在线状态的合并广播、重放窗口和离线信箱的清理都不会运行。
+ * 实现SmartLifecycle的bean（TCP网关、集群节点、断线续传）和STOMP基础设施本来就在启动时创建。
+ */
+@Configuration(proxyBeanMethods = false)
+public class LazyInitializationConfig {
+
+    @Bean
+    static LazyInitializationExcludeFilter scheduledBeansExcludeFilter() {
+        return (beanName, beanDefinition, beanType) -> hasScheduledMethods(beanType);
+    }
+
+    private static boolean hasScheduledMethods(Class<?> beanType) {
+        Class<?> userClass = ClassUtils.getUserClass(beanType);
+        if (!userClass.getName().startsWith("com.example.groupchatdemo.")) {
+            return false;
+        }
+        for (Method method : ReflectionUtils.getUniqueDeclaredMethods(userClass)) {
+            if (AnnotatedElementUtils.hasAnnotation(method, Scheduled.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.groupchatdemo.config;
+
+import com.example.groupchatdemo.interceptor.WireCodecInterceptor;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * "/ws-native" 端点的握手拦截器：在会话属性中标记该连接是原生WebSocket（不是SockJS），
+ * 只有这样的会话才能协商二进制编码，因为SockJS只能传输文本帧。
+ */
+class NativeTransportHandshakeInterceptor implements HandshakeInterceptor {
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        attributes.put(WireCodecInterceptor.NATIVE_TRANSPORT_ATTRIBUTE, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
@@ -1,25 +1,101 @@
 package com.example.groupchatdemo.config;
 
+import com.example.groupchatdemo.codec.BinaryMessageConverter;
+import com.example.groupchatdemo.interceptor.EphemeralInterceptor;
+import com.example.groupchatdemo.interceptor.MetricsChannelInterceptor;
+import com.example.groupchatdemo.interceptor.RateLimitInterceptor;
 import com.example.groupchatdemo.interceptor.UserInterceptor;
+import com.example.groupchatdemo.interceptor.WireCodecInterceptor;
+import com.example.groupchatdemo.service.BackpressureService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * WebSocket配置类，用于启用WebSocket消息代理。
- * 配置STOMP端点，消息代理，以及消息输入通道拦截器。
+ * 配置STOMP端点，消息代理，消息输入通道拦截器，以及入站、出站和代理通道的执行器。
+ * 执行器有两种模式（chat.channel.mode）：
+ * platform 使用可配置大小的线程池（chat.channel.{inbound,outbound,broker}.*）；
+ * virtual 为每条消息启动一个虚拟线程，需要JDK 21，更低版本的JDK上退回到platform模式。
+ * 每个会话的出站帧经过BackpressureService的出站队列，慢消费者不会阻塞出站通道；
+ * 入站的SEND帧先经过RateLimitInterceptor按会话和用户限流；正在输入等瞬时信号由EphemeralInterceptor在限流之前分流，不到达控制器。
+ * 通过"/ws-native"连接的客户端可以协商紧凑的二进制编码（见WireCodecInterceptor），其余客户端使用JSON。
+ * 两个端点是否允许permessage-deflate压缩分别由chat.websocket.deflate.*控制，Tomcat为每个会话分配的消息缓冲区由chat.websocket.*-buffer-kb设置。
+ * 简单代理不配置心跳：STOMP心跳的协商、发送和超时回收由HeartbeatService用一个时间轮完成，不为每个会话单独调度。
  */
 @Configuration
 @EnableWebSocketMessageBroker // 启用WebSocket消息处理
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private static final Logger log = LoggerFactory.getLogger(WebSocketConfig.class);
+
     private final UserInterceptor userInterceptor;
+    private final EphemeralInterceptor ephemeralInterceptor;
+    private final RateLimitInterceptor rateLimitInterceptor;
+    private final WireCodecInterceptor wireCodecInterceptor;
+    private final MetricsChannelInterceptor metricsInterceptor;
+    // 消息代理缓存的目的地数量上限。缓存命中时扇出只遍历该目的地的订阅者，
+    // 未命中时需要遍历全部订阅，因此应大于活跃房间数
+    private final int brokerCacheLimit;
+    // 通道执行器的各项大小按通道名从配置中读取
+    private final Environment environment;
+    private final boolean virtualThreads;
+    // 按会话保持入站处理和出站发送的顺序；通道有多个线程时，否则同一会话的消息可能乱序
+    private final boolean preserveOrder;
+    // 代理通道默认在发送者的线程上同步执行，RoomDispatcher依赖这一点保证房间内消息有序
+    private final boolean asyncBroker;
+    private final BackpressureService backpressureService;
+    // 两个端点是否允许协商permessage-deflate
+    private final boolean nativeDeflate;
+    private final boolean sockJsDeflate;
+    // Tomcat为每个会话预先分配的入站消息缓冲区（文本按字符计），也是单个入站消息的上限
+    private final int textBufferKb;
+    private final int binaryBufferKb;
 
-    public WebSocketConfig(UserInterceptor userInterceptor) {
+    public WebSocketConfig(UserInterceptor userInterceptor, EphemeralInterceptor ephemeralInterceptor,
+                           RateLimitInterceptor rateLimitInterceptor,
+                           WireCodecInterceptor wireCodecInterceptor,
+                           MetricsChannelInterceptor metricsInterceptor, BackpressureService backpressureService,
+                           @Value("${chat.broker.destination-cache-limit:16384}") int brokerCacheLimit,
+                           Environment environment,
+                           @Value("${chat.channel.mode:platform}") String channelMode,
+                           @Value("${chat.channel.preserve-order:true}") boolean preserveOrder,
+                           @Value("${chat.channel.broker.async:false}") boolean asyncBroker,
+                           @Value("${chat.websocket.deflate.native:true}") boolean nativeDeflate,
+                           @Value("${chat.websocket.deflate.sockjs:true}") boolean sockJsDeflate,
+                           @Value("${chat.websocket.text-buffer-kb:8}") int textBufferKb,
+                           @Value("${chat.websocket.binary-buffer-kb:8}") int binaryBufferKb) {
         this.userInterceptor = userInterceptor;
+        this.ephemeralInterceptor = ephemeralInterceptor;
+        this.rateLimitInterceptor = rateLimitInterceptor;
+        this.wireCodecInterceptor = wireCodecInterceptor;
+        this.metricsInterceptor = metricsInterceptor;
+        this.backpressureService = backpressureService;
+        this.brokerCacheLimit = brokerCacheLimit;
+        this.environment = environment;
+        this.virtualThreads = "virtual".equalsIgnoreCase(channelMode);
+        this.preserveOrder = preserveOrder;
+        this.asyncBroker = asyncBroker;
+        this.nativeDeflate = nativeDeflate;
+        this.sockJsDeflate = sockJsDeflate;
+        this.textBufferKb = textBufferKb;
+        this.binaryBufferKb = binaryBufferKb;
     }
 
     /**
@@ -31,7 +107,29 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         // 注册一个WebSocket端点，客户端将通过"/ws"连接
         // withSockJS() 启用SockJS备用选项，以便在WebSocket不可用时使用。
-        registry.addEndpoint("/ws").withSockJS();
+        registry.addEndpoint("/ws")
+                .setHandshakeHandler(new DeflateNegotiationHandshakeHandler(sockJsDeflate))
+                .withSockJS();
+        // 原生WebSocket端点，不使用SockJS，没有SockJS的 a["..."] 包装，可以收发二进制帧
+        registry.addEndpoint("/ws-native")
+                .setHandshakeHandler(new DeflateNegotiationHandshakeHandler(nativeDeflate))
+                .addInterceptors(new NativeTransportHandshakeInterceptor());
+        registry.setPreserveReceiveOrder(preserveOrder);
+    }
+
+    /**
+     * 设置Tomcat WebSocket容器的消息缓冲区。Tomcat在每个会话建立时就分配一个二进制缓冲区和一个文本缓冲区（字符），
+     * 完整的入站消息必须能放进缓冲区，否则连接以1009关闭；默认各8KB。
+     * StompSubProtocolHandler在会话开始时把文本缓冲区提高到至少16640个字符，所以文本缓冲区只在设得更大时起作用。
+     * 只在内嵌Tomcat启动时生效（测试中的模拟Servlet环境没有WebSocket容器）。
+     * @return Tomcat上下文参数的定制器
+     */
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> webSocketBufferCustomizer() {
+        return factory -> factory.addContextCustomizers(context -> {
+            context.addParameter("org.apache.tomcat.websocket.textBufferSize", String.valueOf(textBufferKb * 1024));
+            context.addParameter("org.apache.tomcat.websocket.binaryBufferSize", String.valueOf(binaryBufferKb * 1024));
+        });
     }
 
     /**
@@ -42,19 +140,101 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // 设置消息代理的前缀，当消息发送到这些前缀时，会路由到消息代理（如RabbitMQ, ActiveMQ或简单的内存代理）
-        config.enableSimpleBroker("/topic", "/queue"); // /topic 用于公共广播，/queue 用于私聊
+        config.enableSimpleBroker("/topic", "/queue"); // /topic 用于公共广播和房间广播，/queue 用于私聊
+        config.setCacheLimit(brokerCacheLimit);
         // 设置应用程序目的地的前缀。所有发送到此前缀的消息都将被路由到带有@MessageMapping注解的方法
         config.setApplicationDestinationPrefixes("/app");
         // 设置用户目的地的前缀。用于点对点消息发送（私聊），通常与 SimpMessagingTemplate.convertAndSendToUser() 结合使用
         config.setUserDestinationPrefix("/user");
+        config.setPreservePublishOrder(preserveOrder);
+        ChannelRegistration brokerChannel = config.configureBrokerChannel();
+        brokerChannel.interceptors(metricsInterceptor); // 统计发布的消息数和扇出
+        if (asyncBroker) {
+            configureExecutor(brokerChannel, "broker");
+        }
+    }
+
+    /**
+     * 配置WebSocket传输层：为每个会话加上出站队列（慢消费者保护）。
+     * Spring自带的会话装饰器的发送时间和缓冲区限制作为最后的保险，设为出站队列预算的上限。
+     * @param registration 传输层注册表
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.addDecoratorFactory(backpressureService::decorate);
+        registration.setSendTimeLimit(backpressureService.hardSendTimeLimitMillis());
+        registration.setSendBufferSizeLimit(backpressureService.hardBufferLimitBytes());
+    }
+
+    /**
+     * 在默认的转换器（包括Jackson）之外增加二进制编码的转换器，
+     * 客户端以 content-type:application/octet-stream;codec=chat1 发送的消息由它解码。
+     * @param messageConverters 转换器列表
+     * @return true，继续添加默认的转换器
+     */
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        messageConverters.add(new BinaryMessageConverter());
+        return true;
     }
 
     /**
-     * 配置客户端入站通道拦截器。
+     * 配置客户端入站通道拦截器。瞬时信号在设置Principal之后分流；限流在解码之前，超限的帧不再解码。
      * @param registration 通道注册表
      */
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
-        registration.interceptors(userInterceptor);
+        registration.interceptors(userInterceptor, ephemeralInterceptor, rateLimitInterceptor, wireCodecInterceptor);
+        configureExecutor(registration, "inbound");
+    }
+
+    /**
+     * 配置客户端出站通道（服务器到客户端）的拦截器和执行器。
+     * @param registration 通道注册表
+     */
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(wireCodecInterceptor, // 把发给二进制会话的聊天消息转码
+                metricsInterceptor); // 记录从发布到交给会话的延迟
+        configureExecutor(registration, "outbound");
+    }
+
+    /**
+     * 按chat.channel.mode为通道设置执行器。
+     * platform模式下的默认值与Spring相同：核心线程数为CPU核心数的2倍，队列无界（此时最大线程数不起作用）；
+     * 设置有界的queue-capacity后，线程数才会在队列满时增长到max-pool-size，两者都满时消息被拒绝。
+     * @param registration 通道注册表
+     * @param channel 通道名：inbound、outbound或broker
+     */
+    private void configureExecutor(ChannelRegistration registration, String channel) {
+        if (virtualThreads) {
+            Executor executor = virtualThreadExecutor("ws-" + channel + "-");
+            if (executor != null) {
+                registration.executor(executor);
+                return;
+            }
+        }
+        String prefix = "chat.channel." + channel + ".";
+        registration.taskExecutor()
+                .corePoolSize(environment.getProperty(prefix + "core-pool-size", Integer.class,
+                        Runtime.getRuntime().availableProcessors() * 2))
+                .maxPoolSize(environment.getProperty(prefix + "max-pool-size", Integer.class, Integer.MAX_VALUE))
+                .queueCapacity(environment.getProperty(prefix + "queue-capacity", Integer.class, Integer.MAX_VALUE))
+                .keepAliveSeconds(environment.getProperty(prefix + "keep-alive-seconds", Integer.class, 60));
+    }
+
+    /**
+     * @return 每个任务一个虚拟线程的执行器；当前JDK不支持虚拟线程时返回null
+     */
+    private static Executor virtualThreadExecutor(String threadNamePrefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        try {
+            executor.setVirtualThreads(true);
+        } catch (UnsupportedOperationException e) {
+            log.warn("Virtual threads require JDK 21 (running on {}), falling back to a platform thread pool for {}",
+                    Runtime.version().feature(), threadNamePrefix);
+            return null;
+        }
+        return executor;
     }
 }
@@ -0,0 +1,192 @@
+package com.example.groupchatdemo.controller;
+
+import com.example.groupchatdemo.attachment.ByteRange;
+import com.example.groupchatdemo.service.AttachmentService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 附件的上传和下载接口。
+ * 上传：POST /api/attachments/uploads 创建上传，PUT /api/attachments/uploads/{uploadId}?offset=N 按顺序写入各块，
+ * GET /api/attachments/uploads/{uploadId} 查询已收到的字节数以便断点续传；最后一块的应答中带有附件引用，
+ * 客户端把它放进聊天消息的attachment字段。
+ * 下载：GET /api/attachments/{id}/{name}，支持单个Range和If-None-Match。文件内容不可变，应答可以长期缓存。
+ * 内嵌Tomcat支持sendfile时，由连接器用FileChannel.transferTo直接从文件写到socket，内容不经过Java堆，
+ * 也不占用请求线程；否则（或chat.attachment.sendfile=false时）在请求线程上用transferTo写到响应流。
+ */
+@RestController
+public class AttachmentController {
+
+    // Tomcat的sendfile约定：连接器支持时请求属性SENDFILE_SUPPORT为true，设置其余三个属性后由连接器发送文件
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // 浏览器内嵌显示的类型，其他类型（包括可以执行脚本的SVG和HTML）都作为下载
+    private static final Set<String> INLINE_TYPES = Set.of("image/png", "image/jpeg", "image/gif", "image/webp");
+
+    private final AttachmentService attachmentService;
+    private final boolean sendfile;
+
+    public AttachmentController(AttachmentService attachmentService,
+                                @Value("${chat.attachment.sendfile:true}") boolean sendfile) {
+        this.attachmentService = attachmentService;
+        this.sendfile = sendfile;
+    }
+
+    /**
+     * 创建一次上传。
+     * @param user 上传者的用户名
+     * @param name 文件名
+     * @param size 文件的字节数
+     */
+    @PostMapping("/api/attachments/uploads")
+    public ResponseEntity<Map<String, Object>> startUpload(@RequestParam String user, @RequestParam String name,
+                                                           @RequestParam long size) throws IOException {
+        if (!attachmentService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        AttachmentService.UploadState state = attachmentService.startUpload(user, name, size);
+        if (state == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return respond(state);
+    }
+
+    /**
+     * 查询上传的状态。
+     * @param uploadId 上传ID
+     */
+    @GetMapping("/api/attachments/uploads/{uploadId}")
+    public ResponseEntity<Map<String, Object>> uploadStatus(@PathVariable String uploadId) {
+        return respond(attachmentService.status(uploadId));
+    }
+
+    /**
+     * 写入一块，请求体就是这一块的字节，类型必须是application/octet-stream
+     * （表单类型的请求体会被FormContentFilter当作表单解析）。
+     * @param uploadId 上传ID
+     * @param offset 这一块的起始位置，必须等于已收到的字节数，否则返回409和正确的位置
+     * @param request 用于读取请求体
+     */
+    @PutMapping(value = "/api/attachments/uploads/{uploadId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Map<String, Object>> appendChunk(@PathVariable String uploadId, @RequestParam long offset,
+                                                           HttpServletRequest request) throws IOException {
+        if (request.getContentLengthLong() > attachmentService.maxChunkBytes()) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+        return respond(attachmentService.append(uploadId, offset, request.getInputStream()));
+    }
+
+    /**
+     * 下载附件。路径中的文件名只用于推断类型和保存时的文件名，文件由ID确定。
+     * @param id 附件ID
+     * @param name 文件名
+     */
+    @RequestMapping(value = "/api/attachments/{id}/{name}", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void download(@PathVariable String id, @PathVariable String name,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long size = attachmentService.size(id);
+        if (size < 0) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        // 内容按SHA-256寻址，ID就是强ETag，而且同一个URL的内容永远不会变
+        String etag = "\"" + id + "\"";
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return;
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        ByteRange range = ifRange == null || ifRange.equals(etag)
+                ? ByteRange.parse(request.getHeader(HttpHeaders.RANGE), size)
+                : null;
+        // 416要在设置文件的类型之前返回，否则错误页会因为类型不匹配而无法写出
+        if (range == ByteRange.UNSATISFIABLE) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        MediaType type = MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        boolean inline = INLINE_TYPES.contains(type.toString());
+        response.setContentType(type.toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                (inline ? ContentDisposition.inline() : ContentDisposition.attachment())
+                        .filename(name, StandardCharsets.UTF_8).build().toString());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader("X-Content-Type-Options", "nosniff");
+
+        long start = 0;
+        long end = size;
+        if (range != null) {
+            start = range.start();
+            end = range.end();
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + size);
+        }
+        response.setContentLengthLong(end - start);
+        if (end == start || RequestMethod.HEAD.name().equals(request.getMethod())) {
+            return;
+        }
+
+        Path file = attachmentService.path(id);
+        if (sendfile && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            for (long position = start; position < end; ) {
+                position += channel.transferTo(position, end - position, out);
+            }
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> respond(AttachmentService.UploadState state) {
+        HttpStatus status = switch (state.status()) {
+            case ACCEPTED, COMPLETE -> HttpStatus.OK;
+            case OFFSET_MISMATCH -> HttpStatus.CONFLICT;
+            case TOO_LARGE -> HttpStatus.PAYLOAD_TOO_LARGE;
+            case NOT_FOUND -> HttpStatus.NOT_FOUND;
+            case BUSY -> HttpStatus.SERVICE_UNAVAILABLE;
+        };
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", state.status());
+        body.put("uploadId", state.uploadId());
+        body.put("size", state.size());
+        body.put("received", state.received());
+        body.put("chunkSize", attachmentService.maxChunkBytes());
+        if (state.attachment() != null) {
+            body.put("attachment", state.attachment());
+        }
+        return ResponseEntity.status(status).body(body);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.groupchatdemo.controller;
+
+import com.example.groupchatdemo.model.BackpressurePolicy;
+import com.example.groupchatdemo.service.BackpressureService;
+import com.example.groupchatdemo.service.RoomService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 慢消费者保护的HTTP接口：查看各策略的触发次数和积压的会话，按房间选择策略。
+ */
+@RestController
+public class BackpressureController {
+
+    private final BackpressureService backpressureService;
+
+    public BackpressureController(BackpressureService backpressureService) {
+        this.backpressureService = backpressureService;
+    }
+
+    /**
+     * @return 每种动作的累计次数，以及当前有积压或发生过丢弃的会话（用户、积压字节数、写入阻塞时间、最后一次动作）
+     */
+    @GetMapping("/api/backpressure")
+    public Map<String, Object> stats() {
+        return backpressureService.stats();
+    }
+
+    /**
+     * 查看房间的策略。
+     * @param roomId 房间ID
+     */
+    @GetMapping("/api/rooms/{roomId}/backpressure-policy")
+    public ResponseEntity<String> roomPolicy(@PathVariable String roomId) {
+        if (!RoomService.isValidRoomId(roomId)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(backpressureService.policyFor(roomId).propertyValue());
+    }
+
+    /**
+     * 修改房间的策略，例如 PUT /api/rooms/dev/backpressure-policy?policy=drop-oldest
+     * @param roomId 房间ID
+     * @param policy drop-oldest、drop-non-essential或disconnect
+     */
+    @PutMapping("/api/rooms/{roomId}/backpressure-policy")
+    public ResponseEntity<String> setRoomPolicy(@PathVariable String roomId, @RequestParam String policy) {
+        if (!RoomService.isValidRoomId(roomId)) {
+            return ResponseEntity.badRequest().build();
+        }
+        BackpressurePolicy parsed;
+        try {
+            parsed = BackpressurePolicy.parse(policy);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Unknown policy: " + policy);
+        }
+        backpressureService.setRoomPolicy(roomId, parsed);
+        return ResponseEntity.ok(parsed.propertyValue());
+    }
+}
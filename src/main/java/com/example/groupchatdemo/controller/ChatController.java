@@ -1,21 +1,26 @@
 package com.example.groupchatdemo.controller;
 
+import com.example.groupchatdemo.filter.MessageFilterChain;
+import com.example.groupchatdemo.metrics.LogSampler;
+import com.example.groupchatdemo.model.Conversation;
 import com.example.groupchatdemo.model.Message;
-import org.springframework.context.event.EventListener;
+import com.example.groupchatdemo.model.PresenceUpdate;
+import com.example.groupchatdemo.service.BacklogService;
+import com.example.groupchatdemo.service.MessageFanout;
+import com.example.groupchatdemo.service.OfflineMailbox;
+import com.example.groupchatdemo.service.PresenceService;
+import com.example.groupchatdemo.service.ResumeService;
+import com.example.groupchatdemo.store.MessageStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.messaging.simp.user.SimpUserRegistry;
 import org.springframework.stereotype.Controller;
-import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.security.Principal;
 
 /**
  * WebSocket消息控制器，处理来自客户端的聊天消息。
@@ -25,34 +30,70 @@ import java.util.stream.Collectors;
 @Controller
 public class ChatController {
 
+    private static final Logger log = LoggerFactory.getLogger(ChatController.class);
+
     // 用于向客户端发送消息的Spring工具类
     private final SimpMessagingTemplate messagingTemplate;
-    private final SimpUserRegistry simpUserRegistry;
-
-    public ChatController(SimpMessagingTemplate messagingTemplate, SimpUserRegistry simpUserRegistry) {
+    // 维护带版本号的在线用户集合，负责快照和增量
+    private final PresenceService presenceService;
+    // 发布带序号的公共消息，把私聊消息追加到持久化日志
+    private final MessageStore messageStore;
+    // 给新加入的用户补发公共聊天室最近的消息
+    private final BacklogService backlogService;
+    // 每条消息的日志按比例采样，避免在热路径上做同步的控制台I/O
+    private final LogSampler logSampler;
+    // 聊天消息只序列化一次，同一个JSON数组写入历史并发给所有目的地
+    private final MessageFanout messageFanout;
+    // 接收者不在线时保存私聊消息，下次加入时补发
+    private final OfflineMailbox offlineMailbox;
+    // 断线续传的确认游标
+    private final ResumeService resumeService;
+    // 发送前的内容过滤，被拒绝的消息不分配序号也不广播
+    private final MessageFilterChain messageFilters;
+
+    public ChatController(SimpMessagingTemplate messagingTemplate, PresenceService presenceService,
+                          MessageStore messageStore, BacklogService backlogService, LogSampler logSampler,
+                          MessageFanout messageFanout, OfflineMailbox offlineMailbox, ResumeService resumeService,
+                          MessageFilterChain messageFilters) {
         this.messagingTemplate = messagingTemplate;
-        this.simpUserRegistry = simpUserRegistry;
+        this.presenceService = presenceService;
+        this.messageStore = messageStore;
+        this.backlogService = backlogService;
+        this.logSampler = logSampler;
+        this.messageFanout = messageFanout;
+        this.offlineMailbox = offlineMailbox;
+        this.resumeService = resumeService;
+        this.messageFilters = messageFilters;
     }
 
     /**
      * 处理客户端发送的公共聊天消息。
      * 消息映射到 "/app/chat.sendMessage"，发送后将广播到 "/topic/public"。
      * @param chatMessage 客户端发送的聊天消息对象
-     * @return 将转发给所有订阅者的消息对象
+     * @param principal 发送消息的用户
      */
     @MessageMapping("/chat.sendMessage")
-    @SendTo("/topic/public") // 将消息广播到此主题
-    public Message sendMessage(@Payload Message chatMessage) {
-        // 简单地返回接收到的消息，Spring会自动将其广播到/topic/public
-        // 可以在这里添加消息存储、敏感词过滤等逻辑
-        System.out.println("收到公共消息: " + chatMessage);
-        return chatMessage;
+    public void sendMessage(@Payload Message chatMessage, Principal principal) {
+        if (principal == null) {
+            return;
+        }
+        // 发送者以Principal为准，避免冒用他人用户名
+        chatMessage.setFrom(principal.getName());
+        // 违禁词等过滤在分配序号之前执行，可能替换消息的内容
+        if (!messageFilters.admit(chatMessage.getFrom(), chatMessage)) {
+            return;
+        }
+        logSampler.log(log, "收到公共消息: {}", chatMessage);
+        // 分配序号后只序列化一次：同一个数组先追加到持久化日志和重放窗口，再广播到/topic/public
+        messageStore.publish(Conversation.PUBLIC, chatMessage,
+                json -> messageFanout.sendToDestination("/topic/public", json));
     }
 
     /**
      * 处理客户端发送的添加用户消息（用户加入聊天室）。
      * 消息映射到 "/app/chat.addUser"。
-     * 当用户加入时，会话信息会被存储，并广播更新的用户列表。
+     * 当用户加入时，会话信息会被存储，新用户收到一次在线用户快照、公共聊天室最近的历史和离线期间收到的私聊，
+     * 其他用户随后收到合并后的JOIN增量。
      * @param chatMessage 客户端发送的包含用户名信息的Message对象
      * @param headerAccessor 用于访问会话头的对象，可以获取sessionId
      * @return 广播给所有订阅者的用户加入消息
@@ -69,16 +110,20 @@ public class ChatController {
             headerAccessor.getSessionAttributes().put("username", username);
         }
 
-        System.out.println("用户 " + username + " 加入聊天室。SessionId: " + sessionId);
-        // 广播用户列表更新现在由WebSocketEventListener处理
-        // broadcastUserList(); // 移除此行
-
-        // 1. 将当前的在线用户列表私聊发送给新加入的用户
-        sendOnlineUsersToUser(username);
+        log.debug("用户 {} 加入聊天室。SessionId: {}", username, sessionId);
 
-        // 2. 广播用户加入消息给所有订阅了/topic/public的客户端
-        // 同时广播最新的用户列表给所有在线用户
-        broadcastUserListFromRegistry();
+        if (sessionId != null && username != null) {
+            // 1. 记录上线并将当前的在线用户快照私聊发送给新加入的用户
+            // 2. 其他用户会在合并窗口结束时收到包含此用户的JOIN增量，而不是完整列表
+            PresenceUpdate snapshot = presenceService.userJoined(username, sessionId);
+            messagingTemplate.convertAndSendToUser(username, "/queue/messages", snapshot);
+            // 3. 从内存缓存补发公共聊天室最近的消息，只发给这个会话；重连时已经续传了公共聊天室的会话不再补发
+            if (!Boolean.TRUE.equals(headerAccessor.getSessionAttributes().get(ResumeService.PUBLIC_RESUMED_ATTRIBUTE))) {
+                backlogService.sendBacklog(username, sessionId, Conversation.PUBLIC);
+            }
+            // 4. 离线期间收到的私聊作为一批发给这个会话，等待客户端确认
+            offlineMailbox.deliver(username, sessionId);
+        }
 
         return new Message(username, null, "", false, "JOIN"); // command为JOIN，内容为空，表示用户加入
     }
@@ -87,13 +132,19 @@ public class ChatController {
      * 处理客户端发送的私聊消息。
      * 消息映射到 "/app/chat.sendPrivateMessage"。
      * @param privateMessage 客户端发送的私聊消息对象
+     * @param principal 发送消息的用户
      */
     @MessageMapping("/chat.sendPrivateMessage")
-    public void sendPrivateMessage(@Payload Message privateMessage) {
+    public void sendPrivateMessage(@Payload Message privateMessage, Principal principal) {
         String toUser = privateMessage.getTo();
-        String fromUser = privateMessage.getFrom();
-
-        System.out.println("sendPrivateMessage: Attempting to send from " + fromUser + " to " + toUser);
+        if (principal == null || toUser == null || toUser.isBlank()) {
+            return;
+        }
+        // 发送者以Principal为准：私聊写入双方的持久化历史和离线信箱，不能冒用他人用户名
+        String fromUser = principal.getName();
+        if (!messageFilters.admit(fromUser, privateMessage)) {
+            return;
+        }
 
         // 构建要发送的私聊消息
         Message messageToSend = new Message(
@@ -103,53 +154,77 @@ public class ChatController {
                 true,
                 "PRIVATE_CHAT"
         );
-
-        // 使用messagingTemplate发送私聊消息给特定用户（使用用户名作为Principal名称）
-        // 发送到 /user/{username}/queue/messages 目的地
-        messagingTemplate.convertAndSendToUser(toUser, "/queue/messages", messageToSend);
-        System.out.println("私聊消息从 " + fromUser + " 发送给 " + toUser + ": " + privateMessage.getContent());
-
-        // 同时，将私聊消息回显给发送者，让发送者也能在自己的界面上看到已发送的私聊
-        messagingTemplate.convertAndSendToUser(fromUser, "/queue/messages", messageToSend);
-
-        // 移除手动判断用户是否在线的逻辑，让convertAndSendToUser自行处理（不在线会静默失败）
-        // 客户端可以通过SERVER_INFO消息提示用户不在线，但现在由客户端自己判断或我们后续再添加此功能
+        messageToSend.setAttachment(privateMessage.getAttachment());
+        // 只序列化一次，历史、接收者和发送者共享同一个JSON数组
+        byte[] json = messageFanout.encode(messageToSend);
+        messageStore.append(Conversation.privatePair(fromUser, toUser), json);
+
+        // 接收者在线（集群模式下包括其他节点）时发送到接收者的 /user/{username}/queue/messages 目的地
+        // （使用用户名作为Principal名称），同时回显给发送者，让发送者也能在自己的界面上看到已发送的私聊；
+        // 发给自己时只发送一次。接收者不在线时存入离线信箱，并告诉发送者消息的状态
+        OfflineMailbox.Status status = offlineMailbox.offer(toUser, json,
+                () -> presenceService.directory().contains(toUser));
+        if (status == OfflineMailbox.Status.ONLINE) {
+            messageFanout.sendToUsers("/queue/messages", json, toUser, fromUser);
+        } else {
+            messageFanout.sendToUsers("/queue/messages", json, fromUser);
+            String info = status == OfflineMailbox.Status.QUEUED
+                    ? toUser + " 当前不在线，消息已存入离线信箱，将在其下次上线时送达。"
+                    : toUser + " 的离线信箱已满，消息未能送达。";
+            messagingTemplate.convertAndSendToUser(fromUser, "/queue/messages",
+                    new Message("Server", fromUser, info, false, "SERVER_INFO"));
+        }
+        // 抽样日志以INFO级别写出，不记录私聊的内容
+        logSampler.log(log, "私聊消息从 {} 发送给 {} ({})", fromUser, toUser, status);
     }
 
     /**
-     * 发送当前在线用户列表给指定用户作为私聊消息。
-     * 这用于当新用户连接时，向其显示当前在线的用户列表。
-     * @param targetUsername 接收在线用户列表的目标用户名。
+     * 处理客户端对离线消息批次的确认。
+     * 消息映射到 "/app/mailbox.ack"，content为OFFLINE_MESSAGES帧中的batchId。
+     * 确认前断开连接的会话，这一批消息会在下次加入时重新投递。
+     * @param ack 确认消息
+     * @param principal 发起确认的用户
      */
-    private void sendOnlineUsersToUser(String targetUsername) {
-        Set<String> distinctUsernames = simpUserRegistry.getUsers().stream()
-                .map(user -> user.getName())
-                .collect(Collectors.toSet());
-        String userListContent = String.join(",", distinctUsernames);
-        Message userListMessage = new Message("Server", null, userListContent, false, "USER_LIST_UPDATE");
-
-        // 通过私聊队列发送给目标用户
-        messagingTemplate.convertAndSendToUser(targetUsername, "/queue/messages", userListMessage);
-        System.out.println("ChatController: Sent user list update to " + targetUsername + ": " + userListContent);
+    @MessageMapping("/mailbox.ack")
+    public void acknowledgeMailbox(@Payload Message ack, Principal principal) {
+        if (principal == null || ack.getContent() == null) {
+            return;
+        }
+        try {
+            offlineMailbox.acknowledge(principal.getName(), Long.parseLong(ack.getContent().trim()));
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring mailbox ack with invalid batch id {}", ack.getContent());
+        }
     }
 
     /**
-     * 从SimpUserRegistry获取在线用户列表并广播。
+     * 处理客户端对公共聊天室或房间消息的确认，服务器据此裁剪断线续传的重放窗口。
+     * 消息映射到 "/app/chat.ack"，room为房间ID（为空表示公共聊天室），content为已收到的最大序号。
+     * @param ack 确认消息
+     * @param headerAccessor 用于获取sessionId
      */
-    private void broadcastUserListFromRegistry() {
-        Set<String> distinctUsernames = simpUserRegistry.getUsers().stream()
-                .map(user -> user.getName())
-                .collect(Collectors.toSet());
-        String userListContent = String.join(",", distinctUsernames);
-        Message userListMessage = new Message("Server", null, userListContent, false, "USER_LIST_UPDATE");
-        messagingTemplate.convertAndSend("/topic/public", userListMessage);
-        System.out.println("ChatController: Broadcast user list update to public: " + userListContent);
+    @MessageMapping("/chat.ack")
+    public void acknowledgeMessages(@Payload Message ack, SimpMessageHeaderAccessor headerAccessor) {
+        if (headerAccessor.getSessionId() == null || ack.getContent() == null) {
+            return;
+        }
+        try {
+            resumeService.acknowledge(headerAccessor.getSessionId(), Conversation.of(ack), Long.parseLong(ack.getContent().trim()));
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring message ack with invalid seq {}", ack.getContent());
+        }
     }
 
-    // 移除broadcastUserList方法，因为它现在由WebSocketEventListener处理
-    // private void broadcastUserList() { ... }
-
-    // 移除handleWebSocketDisconnectListener方法，因为它现在由WebSocketEventListener处理
-    // @EventListener
-    // public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) { ... }
+    /**
+     * 处理客户端的在线状态重新同步请求。
+     * 当客户端发现收到的增量与本地版本号之间存在缺口时，向 "/app/presence.sync" 发送请求，
+     * 服务器将最新快照私发给该用户。
+     * @param principal 发起请求的用户
+     */
+    @MessageMapping("/presence.sync")
+    public void syncPresence(Principal principal) {
+        if (principal != null) {
+            messagingTemplate.convertAndSendToUser(principal.getName(), "/queue/messages", presenceService.snapshot());
+        }
+    }
 }
@@ -0,0 +1,117 @@
+package com.example.groupchatdemo.controller;
+
+import com.example.groupchatdemo.model.Conversation;
+import com.example.groupchatdemo.service.MessageFanout;
+import com.example.groupchatdemo.service.RoomService;
+import com.example.groupchatdemo.store.LogRecord;
+import com.example.groupchatdemo.store.MessageStore;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 消息历史的HTTP接口，按会话分页读取持久化的消息。
+ * 每页按序号从新到旧返回，响应中的nextBefore可作为下一页的before参数（为0表示没有更早的消息）。
+ * 应用没有HTTP认证，用户名只存在于STOMP会话上，因此HTTP接口只提供公共聊天室和房间的历史；
+ * 私聊历史通过STOMP请求 "/app/history.private"，查询者是会话的Principal，结果只发回这个会话的 "/user/queue/history"。
+ */
+@RestController
+public class HistoryController {
+
+    // 私聊历史发往的用户目的地
+    public static final String HISTORY_QUEUE = "/queue/history";
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+
+    /**
+     * 通过STOMP发送的私聊历史请求。
+     * @param peer 私聊对象
+     * @param before 只返回序号小于它的消息，为0时从最新一条开始
+     * @param limit 每页条数，不大于0时使用默认值
+     */
+    public record PrivateHistoryRequest(String peer, long before, int limit) {
+    }
+
+    private final MessageStore messageStore;
+    private final MessageFanout messageFanout;
+
+    public HistoryController(MessageStore messageStore, MessageFanout messageFanout) {
+        this.messageStore = messageStore;
+        this.messageFanout = messageFanout;
+    }
+
+    /**
+     * 读取公共聊天室的历史。
+     * @param before 只返回序号小于它的消息，默认从最新一条开始
+     * @param limit 每页条数
+     */
+    @GetMapping("/api/history/public")
+    public ResponseEntity<byte[]> publicHistory(@RequestParam(defaultValue = "0") long before,
+                                                @RequestParam(defaultValue = "50") int limit) {
+        return page(Conversation.PUBLIC, before, limit);
+    }
+
+    /**
+     * 读取房间的历史。
+     * @param roomId 房间ID
+     * @param before 只返回序号小于它的消息，默认从最新一条开始
+     * @param limit 每页条数
+     */
+    @GetMapping("/api/history/room/{roomId}")
+    public ResponseEntity<byte[]> roomHistory(@PathVariable String roomId,
+                                              @RequestParam(defaultValue = "0") long before,
+                                              @RequestParam(defaultValue = "50") int limit) {
+        if (!RoomService.isValidRoomId(roomId)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return page(Conversation.room(roomId), before, limit);
+    }
+
+    /**
+     * 读取查询者与另一个用户之间的私聊历史，结果只发给发起请求的会话。
+     * 消息映射到 "/app/history.private"；没有私聊对象时不回复。
+     * @param request 私聊对象和分页参数
+     * @param principal 发起请求的用户
+     * @param headerAccessor 用于获取sessionId
+     */
+    @MessageMapping("/history.private")
+    public void privateHistory(@Payload PrivateHistoryRequest request, Principal principal,
+                               SimpMessageHeaderAccessor headerAccessor) {
+        String sessionId = headerAccessor.getSessionId();
+        if (principal == null || sessionId == null || request.peer() == null || request.peer().isBlank()) {
+            return;
+        }
+        String conversation = Conversation.privatePair(principal.getName(), request.peer());
+        List<LogRecord> records = messageStore.history(conversation, request.before(),
+                request.limit() <= 0 ? DEFAULT_PAGE_SIZE : Math.min(request.limit(), MAX_PAGE_SIZE));
+        messageFanout.sendToSession(principal.getName(), sessionId, HISTORY_QUEUE,
+                messageStore.toJson(conversation, records));
+    }
+
+    /**
+     * 最近消息缓存的统计信息，包括命中、未命中和淘汰次数。
+     */
+    @GetMapping("/api/history/cache")
+    public Map<String, Long> cacheStats() {
+        return messageStore.cacheStats();
+    }
+
+    private ResponseEntity<byte[]> page(String conversation, long before, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<LogRecord> records = messageStore.history(conversation, before, pageSize);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(messageStore.toJson(conversation, records));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.groupchatdemo.controller;
+
+import com.example.groupchatdemo.filter.MessageFilterChain;
+import com.example.groupchatdemo.model.Conversation;
+import com.example.groupchatdemo.model.Message;
+import com.example.groupchatdemo.service.MessageFanout;
+import com.example.groupchatdemo.service.RoomDispatcher;
+import com.example.groupchatdemo.service.RoomService;
+import com.example.groupchatdemo.store.MessageStore;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 房间消息控制器。
+ * 客户端订阅 "/topic/room/{id}" 即加入房间，向 "/app/room/{id}/send" 发送的消息只广播给该房间的成员。
+ * 广播在房间所属的分片线程上执行，不占用入站通道的线程。
+ */
+@Controller
+public class RoomController {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final RoomService roomService;
+    private final RoomDispatcher roomDispatcher;
+    private final MessageStore messageStore;
+    private final MessageFanout messageFanout;
+    private final MessageFilterChain messageFilters;
+
+    public RoomController(SimpMessagingTemplate messagingTemplate, RoomService roomService,
+                          RoomDispatcher roomDispatcher, MessageStore messageStore, MessageFanout messageFanout,
+                          MessageFilterChain messageFilters) {
+        this.messagingTemplate = messagingTemplate;
+        this.roomService = roomService;
+        this.roomDispatcher = roomDispatcher;
+        this.messageStore = messageStore;
+        this.messageFanout = messageFanout;
+        this.messageFilters = messageFilters;
+    }
+
+    /**
+     * 处理客户端发送到房间的消息。
+     * 消息映射到 "/app/room/{roomId}/send"，只有房间成员可以发送，消息广播到 "/topic/room/{roomId}"。
+     * @param roomId 房间ID
+     * @param roomMessage 客户端发送的消息对象
+     * @param principal 发送消息的用户
+     */
+    @MessageMapping("/room/{roomId}/send")
+    public void sendRoomMessage(@DestinationVariable String roomId, @Payload Message roomMessage, Principal principal) {
+        if (principal == null) {
+            return;
+        }
+        String fromUser = principal.getName();
+        if (!RoomService.isValidRoomId(roomId) || !roomService.isMember(roomId, fromUser)) {
+            sendServerInfo(fromUser, "你不是房间 " + roomId + " 的成员，请先加入房间。");
+            return;
+        }
+        if (!messageFilters.admit(fromUser, roomMessage)) {
+            return;
+        }
+
+        // 发送者以Principal为准，避免冒用他人用户名
+        Message messageToSend = new Message(fromUser, null, roomMessage.getContent(), false, "ROOM_CHAT");
+        messageToSend.setRoom(roomId);
+        messageToSend.setAttachment(roomMessage.getAttachment());
+        try {
+            // 分配序号、持久化和广播都在房间的分片线程上执行，历史中的顺序与投递顺序一致；
+            // 只序列化一次，历史、重放窗口和广播共享同一个JSON数组
+            roomDispatcher.dispatch(roomId, () -> messageStore.publish(Conversation.room(roomId), messageToSend,
+                    json -> messageFanout.sendToDestination(RoomService.ROOM_TOPIC_PREFIX + roomId, json)));
+        } catch (RejectedExecutionException e) {
+            sendServerInfo(fromUser, "房间 " + roomId + " 当前过于繁忙，消息未发送，请稍后重试。");
+        }
+    }
+
+    /**
+     * 列出当前有成员的房间及其人数。
+     * @return 房间ID -> 成员数
+     */
+    @GetMapping("/api/rooms")
+    @ResponseBody
+    public Map<String, Integer> listRooms() {
+        return roomService.roomSizes();
+    }
+
+    /**
+     * 列出房间的成员。
+     * @param roomId 房间ID
+     * @return 成员用户名集合
+     */
+    @GetMapping("/api/rooms/{roomId}/members")
+    @ResponseBody
+    public Set<String> listMembers(@PathVariable String roomId) {
+        return roomService.members(roomId);
+    }
+
+    private void sendServerInfo(String username, String content) {
+        messagingTemplate.convertAndSendToUser(username, "/queue/messages",
+                new Message("Server", username, content, false, "SERVER_INFO"));
+    }
+}
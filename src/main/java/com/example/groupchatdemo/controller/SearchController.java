@@ -0,0 +1,115 @@
+package com.example.groupchatdemo.controller;
+
+import com.example.groupchatdemo.model.Conversation;
+import com.example.groupchatdemo.service.MessageFanout;
+import com.example.groupchatdemo.service.RoomService;
+import com.example.groupchatdemo.service.SearchService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+
+/**
+ * 聊天历史的全文检索。结果按相关度从高到低分页，响应中的nextOffset可作为下一页的offset参数（为0表示没有更多结果）。
+ * 应用没有HTTP认证，用户名只存在于STOMP会话上，因此：
+ * HTTP接口是匿名的，只能搜到公共聊天室和房间；
+ * 包含自己参与的私聊的检索通过STOMP发送到 "/app/search"，查询者是会话的Principal，结果只发回这个会话的 "/user/queue/search"。
+ */
+@RestController
+public class SearchController {
+
+    // 检索结果发往的用户目的地
+    public static final String SEARCH_QUEUE = "/queue/search";
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    // 排名需要保留offset+limit条候选，限制翻页的深度
+    private static final int MAX_OFFSET = 1000;
+
+    /**
+     * 通过STOMP发送的检索请求。
+     * @param q 查询字符串，所有词都出现的消息才算命中
+     * @param room 只检索这个房间
+     * @param peer 只检索与这个用户的私聊
+     * @param offset 跳过的命中数
+     * @param limit 每页条数，不大于0时使用默认值
+     */
+    public record SearchRequest(String q, String room, String peer, int offset, int limit) {
+    }
+
+    private final SearchService searchService;
+    private final MessageFanout messageFanout;
+
+    public SearchController(SearchService searchService, MessageFanout messageFanout) {
+        this.searchService = searchService;
+        this.messageFanout = messageFanout;
+    }
+
+    /**
+     * 匿名检索公共聊天室和房间的消息。
+     * @param q 查询字符串，所有词都出现的消息才算命中
+     * @param room 只检索这个房间
+     * @param offset 跳过的命中数
+     * @param limit 每页条数
+     */
+    @GetMapping("/api/search")
+    public ResponseEntity<byte[]> search(@RequestParam String q,
+                                         @RequestParam(required = false) String room,
+                                         @RequestParam(defaultValue = "0") int offset,
+                                         @RequestParam(defaultValue = "20") int limit) {
+        if (!searchService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        byte[] result = search(null, new SearchRequest(q, room, null, offset, limit));
+        if (result == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(result);
+    }
+
+    /**
+     * 在公共聊天室、房间和查询者自己参与的私聊中检索，结果只发给发起请求的会话。
+     * 消息映射到 "/app/search"；检索关闭或请求不合法时不回复。
+     * @param request 检索请求
+     * @param principal 发起检索的用户
+     * @param headerAccessor 用于获取sessionId
+     */
+    @MessageMapping("/search")
+    public void searchForUser(@Payload SearchRequest request, Principal principal,
+                              SimpMessageHeaderAccessor headerAccessor) {
+        String sessionId = headerAccessor.getSessionId();
+        if (principal == null || sessionId == null || !searchService.isEnabled()) {
+            return;
+        }
+        byte[] result = search(principal.getName(), request);
+        if (result != null) {
+            messageFanout.sendToSession(principal.getName(), sessionId, SEARCH_QUEUE, result);
+        }
+    }
+
+    /**
+     * @param user 查询者，为null时只检索公共聊天室和房间
+     * @return 检索结果的JSON；请求不合法时返回null
+     */
+    private byte[] search(String user, SearchRequest request) {
+        String room = request.room();
+        String peer = request.peer();
+        if (request.q() == null || request.q().isBlank() || request.offset() < 0 || request.offset() > MAX_OFFSET
+                || (room != null && !RoomService.isValidRoomId(room)) || (peer != null && user == null)) {
+            return null;
+        }
+        String conversation = room != null ? Conversation.room(room)
+                : peer != null ? Conversation.privatePair(user, peer)
+                : null;
+        int pageSize = request.limit() <= 0 ? DEFAULT_PAGE_SIZE : Math.min(request.limit(), MAX_PAGE_SIZE);
+        return searchService.search(user, request.q(), conversation, request.offset(), pageSize);
+    }
+}
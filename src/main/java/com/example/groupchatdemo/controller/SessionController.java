@@ -0,0 +1,66 @@
+package com.example.groupchatdemo.controller;
+
+import com.example.groupchatdemo.service.SessionInspector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WebSocket会话的查看接口：按会话ID分页列出本节点的会话，每个会话包括收发的帧数和字节数、
+ * 出站队列的深度、最后一次收发的时间和订阅的目的地。数据只在请求时读取（见SessionInspector）。
+ * 响应中有用户名和订阅，而应用没有管理员认证，所以默认关闭（chat.session.inspector.enabled），关闭时返回404。
+ */
+@RestController
+public class SessionController {
+
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private final boolean enabled;
+    private final SessionInspector sessionInspector;
+
+    public SessionController(@Value("${chat.session.inspector.enabled:false}") boolean enabled,
+                             SessionInspector sessionInspector) {
+        this.enabled = enabled;
+        this.sessionInspector = sessionInspector;
+    }
+
+    /**
+     * 分页列出会话，按会话ID排序。
+     * 响应中的next可作为下一页的after参数（为null表示没有更多会话），total是当前打开的会话数。
+     * @param after 只返回ID在它之后的会话，默认从头开始
+     * @param user 只列出这个用户的会话
+     * @param limit 每页的会话数
+     */
+    @GetMapping("/api/sessions")
+    public ResponseEntity<Map<String, Object>> listSessions(@RequestParam(required = false) String after,
+                                                            @RequestParam(required = false) String user,
+                                                            @RequestParam(defaultValue = "50") int limit) {
+        if (!enabled) {
+            return ResponseEntity.notFound().build();
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<SessionInspector.SessionInfo> sessions = sessionInspector.page(after, user, pageSize);
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("sessions", sessions);
+        page.put("next", sessions.size() == pageSize ? sessions.get(sessions.size() - 1).sessionId() : null);
+        page.put("total", sessionInspector.sessionCount());
+        return ResponseEntity.ok(page);
+    }
+
+    /**
+     * 查看单个会话。
+     * @param sessionId 会话ID
+     */
+    @GetMapping("/api/sessions/{sessionId}")
+    public ResponseEntity<SessionInspector.SessionInfo> session(@PathVariable String sessionId) {
+        SessionInspector.SessionInfo session = enabled ? sessionInspector.session(sessionId) : null;
+        return session == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(session);
+    }
+}
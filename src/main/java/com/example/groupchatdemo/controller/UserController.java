@@ -0,0 +1,60 @@
+package com.example.groupchatdemo.controller;
+
+import com.example.groupchatdemo.service.PresenceService;
+import com.example.groupchatdemo.service.UserDirectory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在线用户目录的HTTP接口：按用户名分页列出在线用户，以及用于@提及自动补全的前缀搜索。
+ * 两者都直接读取PresenceService的排序索引，耗时与在线人数基本无关；集群模式下包含其他节点的用户。
+ */
+@RestController
+public class UserController {
+
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private final UserDirectory directory;
+
+    public UserController(PresenceService presenceService) {
+        this.directory = presenceService.directory();
+    }
+
+    /**
+     * 分页列出在线用户，按用户名排序。
+     * 响应中的next可作为下一页的after参数（为null表示没有更多用户），total是当前的在线用户数。
+     * @param after 只返回用户名在它之后的用户，默认从头开始
+     * @param limit 每页人数
+     */
+    @GetMapping("/api/users")
+    public Map<String, Object> listUsers(@RequestParam(required = false) String after,
+                                         @RequestParam(defaultValue = "50") int limit) {
+        int pageSize = clamp(limit);
+        List<String> users = directory.page(after, pageSize);
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("users", users);
+        page.put("next", users.size() == pageSize ? users.get(users.size() - 1) : null);
+        page.put("total", directory.size());
+        return page;
+    }
+
+    /**
+     * 按前缀搜索在线用户，不区分大小写。
+     * @param prefix 用户名前缀
+     * @param limit 最多返回的人数
+     */
+    @GetMapping("/api/users/search")
+    public List<String> searchUsers(@RequestParam String prefix,
+                                    @RequestParam(defaultValue = "10") int limit) {
+        return directory.search(prefix, clamp(limit));
+    }
+
+    private static int clamp(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+}
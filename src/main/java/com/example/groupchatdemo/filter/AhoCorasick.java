@@ -0,0 +1,237 @@
+package com.example.groupchatdemo.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 编译好的Aho-Corasick自动机，在一遍扫描中找出文本里出现的全部词条，耗时与文本长度成正比，与词条数无关。
+ * 状态和转移都存放在基本类型数组中：根状态的转移是按字符下标的稠密数组（大部分字符都从根状态出发），
+ * 其他状态的转移按字符排序后连续存放，用二分查找。状态按广度优先编号，扫描时最常访问的浅层状态集中在数组的开头；
+ * 每个状态的转移范围、失败链和标志放在一起，一次转移只访问很少的缓存行。
+ * 每个词条带一个整数标志，每个状态预先合并了以它结尾的全部词条（包括沿失败链可达的）的标志，
+ * 扫描时每个字符只是一次转移和一次按位或，不分配对象。
+ * 匹配不区分大小写，全角字母和数字按半角处理（见fold）。编译后不可修改，可以被任意多个线程同时使用。
+ */
+public final class AhoCorasick {
+
+    private static final int ROOT = 0;
+    // nodes中每个状态占的int数和各字段的偏移
+    private static final int NODE = 4;
+    private static final int EDGE_START = 0;
+    private static final int EDGE_END = 1;
+    private static final int FAIL = 2;
+    private static final int FLAGS = 3;
+
+    // 根状态的转移：字符 -> 状态，0表示停在根状态
+    private final int[] rootNext = new int[Character.MAX_VALUE + 1];
+    // 状态s的转移是edges中[EDGE_START, EDGE_END)的部分，FAIL是失败链，FLAGS是以该状态结尾的全部词条的标志
+    private final int[] nodes;
+    // 转移：高32位是字符，低32位是目标状态，同一状态的转移按字符排序
+    private final long[] edges;
+    // 从根到该状态的字符数，也就是在该状态结束的词条的长度
+    private final int[] depth;
+    // 恰好在该状态结束的词条的标志，0表示没有词条在这里结束
+    private final int[] ownFlags;
+    // 沿失败链最近的、有词条结束的状态，-1表示没有
+    private final int[] outputLink;
+    private final int terms;
+
+    private AhoCorasick(int states, int terms) {
+        this.nodes = new int[states * NODE];
+        this.edges = new long[states - 1];
+        this.depth = new int[states];
+        this.ownFlags = new int[states];
+        this.outputLink = new int[states];
+        this.terms = terms;
+    }
+
+    /**
+     * 编译自动机。空的词条被忽略，重复的词条合并它们的标志。
+     * @param terms 词条
+     * @param flags 与terms一一对应的标志，不能为0
+     * @return 自动机
+     */
+    public static AhoCorasick compile(List<String> terms, int[] flags) {
+        if (terms.size() != flags.length) {
+            throw new IllegalArgumentException(terms.size() + " terms but " + flags.length + " flags");
+        }
+        // 先用可变的字典树建立全部状态，再按广度优先的顺序压缩到数组中
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<Integer> trieFlags = new ArrayList<>();
+        children.add(new TreeMap<>());
+        trieFlags.add(0);
+        int compiled = 0;
+        for (int i = 0; i < terms.size(); i++) {
+            String term = terms.get(i);
+            if (term == null || term.isEmpty()) {
+                continue;
+            }
+            if (flags[i] == 0) {
+                throw new IllegalArgumentException("Term " + term + " has no flags");
+            }
+            int state = ROOT;
+            for (int j = 0; j < term.length(); j++) {
+                char c = fold(term.charAt(j));
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.get(state).put(c, next);
+                    children.add(new TreeMap<>());
+                    trieFlags.add(0);
+                }
+                state = next;
+            }
+            trieFlags.set(state, trieFlags.get(state) | flags[i]);
+            compiled++;
+        }
+
+        int states = children.size();
+        AhoCorasick automaton = new AhoCorasick(states, compiled);
+        // 字典树中的状态按广度优先的顺序编号：order[新编号] = 字典树中的编号，子状态的新编号依次递增
+        int[] order = new int[states];
+        int assigned = 1;
+        int edge = 0;
+        for (int s = 0; s < states; s++) {
+            int base = s * NODE;
+            automaton.nodes[base + EDGE_START] = edge;
+            automaton.ownFlags[s] = trieFlags.get(order[s]);
+            for (Map.Entry<Character, Integer> child : children.get(order[s]).entrySet()) {
+                int target = assigned++;
+                order[target] = child.getValue();
+                automaton.edges[edge++] = (long) child.getKey() << 32 | target;
+                automaton.depth[target] = automaton.depth[s] + 1;
+                if (s == ROOT) {
+                    automaton.rootNext[child.getKey()] = target;
+                }
+            }
+            automaton.nodes[base + EDGE_END] = edge;
+        }
+        automaton.linkFailures();
+        return automaton;
+    }
+
+    /**
+     * 按广度优先的顺序（也就是编号顺序）计算失败链，并沿失败链合并标志。
+     */
+    private void linkFailures() {
+        outputLink[ROOT] = -1;
+        nodes[ROOT * NODE + FLAGS] = ownFlags[ROOT];
+        for (int s = 0; s < depth.length; s++) {
+            int base = s * NODE;
+            for (int e = nodes[base + EDGE_START]; e < nodes[base + EDGE_END]; e++) {
+                int child = (int) edges[e];
+                int target = s == ROOT ? ROOT : next(nodes[base + FAIL], (char) (edges[e] >>> 32));
+                nodes[child * NODE + FAIL] = target;
+                outputLink[child] = ownFlags[target] != 0 ? target : outputLink[target];
+                nodes[child * NODE + FLAGS] = ownFlags[child] | nodes[target * NODE + FLAGS];
+            }
+        }
+    }
+
+    /**
+     * @return 词条数（不含空的词条，重复的词条分别计数）
+     */
+    public int termCount() {
+        return terms;
+    }
+
+    /**
+     * @return 状态数
+     */
+    public int stateCount() {
+        return depth.length;
+    }
+
+    /**
+     * 扫描文本，返回出现的全部词条的标志的按位或。
+     * @param text 文本
+     * @param stopFlags 已经出现其中任一标志时立即返回，0表示扫描完整个文本
+     * @return 标志；没有词条出现时为0
+     */
+    public int scan(CharSequence text, int stopFlags) {
+        int state = ROOT;
+        int found = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            state = next(state, fold(text.charAt(i)));
+            found |= nodes[state * NODE + FLAGS];
+            if ((found & stopFlags) != 0) {
+                break;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 把带有maskFlags中任一标志的词条出现的位置替换为replacement，重叠的出现都会被替换。
+     * @param text 文本
+     * @param maskFlags 需要替换的词条的标志
+     * @param replacement 替换字符
+     * @return 替换后的文本；没有需要替换的词条时返回原文本
+     */
+    public String mask(String text, int maskFlags, char replacement) {
+        char[] masked = null;
+        int state = ROOT;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            state = next(state, fold(text.charAt(i)));
+            if ((nodes[state * NODE + FLAGS] & maskFlags) == 0) {
+                continue;
+            }
+            // 沿输出链找出在这里结束、需要替换的最长词条，更短的词条被它覆盖
+            for (int s = ownFlags[state] != 0 ? state : outputLink[state]; s > ROOT; s = outputLink[s]) {
+                if ((ownFlags[s] & maskFlags) != 0) {
+                    if (masked == null) {
+                        masked = text.toCharArray();
+                    }
+                    Arrays.fill(masked, i - depth[s] + 1, i + 1, replacement);
+                    break;
+                }
+            }
+        }
+        return masked == null ? text : new String(masked);
+    }
+
+    private int next(int state, char c) {
+        long key = (long) c << 32;
+        while (state != ROOT) {
+            int base = state * NODE;
+            int low = nodes[base + EDGE_START];
+            int high = nodes[base + EDGE_END] - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long edge = edges[mid];
+                long edgeKey = edge & 0xFFFF_FFFF_0000_0000L;
+                if (edgeKey < key) {
+                    low = mid + 1;
+                } else if (edgeKey > key) {
+                    high = mid - 1;
+                } else {
+                    return (int) edge;
+                }
+            }
+            state = nodes[base + FAIL];
+        }
+        return rootNext[c];
+    }
+
+    /**
+     * 匹配前对字符的归一化：ASCII字母转为小写，全角的ASCII字符（U+FF01到U+FF5E）转为半角后再转小写，
+     * 其他字母按Character.toLowerCase转换。U+2E80到U+A63F（中日韩文字、假名、谚文等）没有大小写，直接返回。
+     * @param c 字符
+     * @return 归一化后的字符
+     */
+    static char fold(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+        }
+        if (c >= 0x2E80 && c < 0xA640) {
+            return c;
+        }
+        if (c >= 0xFF01 && c <= 0xFF5E) {
+            return fold((char) (c - 0xFEE0));
+        }
+        return Character.toLowerCase(c);
+    }
+}
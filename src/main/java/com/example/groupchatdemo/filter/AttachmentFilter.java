@@ -0,0 +1,40 @@
+package com.example.groupchatdemo.filter;
+
+import com.example.groupchatdemo.model.Attachment;
+import com.example.groupchatdemo.model.Message;
+import com.example.groupchatdemo.service.AttachmentService;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * 检查消息中的附件引用：引用的文件必须已经上传完成，大小和类型按服务器保存的文件校正，
+ * 客户端不能声明不存在的附件或伪造它的大小。没有附件的消息直接通过。
+ */
+@Component
+@Order(50)
+public class AttachmentFilter implements MessageFilter {
+
+    private final AttachmentService attachmentService;
+
+    public AttachmentFilter(AttachmentService attachmentService) {
+        this.attachmentService = attachmentService;
+    }
+
+    @Override
+    public Decision filter(String sender, Message message) {
+        if (message.getAttachment() == null) {
+            return Decision.ACCEPT;
+        }
+        Attachment resolved = attachmentService.resolve(message.getAttachment());
+        if (resolved == null) {
+            return Decision.REJECT;
+        }
+        message.setAttachment(resolved);
+        return Decision.ACCEPT;
+    }
+
+    @Override
+    public String rejectionNotice() {
+        return "附件不存在或还没有上传完成，消息未发送。";
+    }
+}
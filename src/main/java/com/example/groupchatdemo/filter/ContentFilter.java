@@ -0,0 +1,190 @@
+package com.example.groupchatdemo.filter;
+
+import com.example.groupchatdemo.model.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 违禁词过滤：按chat.filter.terms-file中的词条检查每条消息的内容，不区分大小写和全角半角。
+ * 文件每行一个词条，可以带前缀指定动作："block:" 拒绝整条消息，"mask:" 把词条替换为chat.filter.mask-char，
+ * "flag:" 照常发送但记录一条警告；没有前缀时使用chat.filter.default-action，以 # 开头的行是注释。
+ * 词条编译为一个AhoCorasick自动机，每条消息只扫描一遍，没有命中时不分配对象。
+ * 定时任务（chat.filter.reload-interval-ms）检查文件的修改时间和大小，变化后在后台重新编译，
+ * 完成后替换volatile引用，正在扫描的消息继续使用旧的自动机，不暂停消息；文件读不出来时保留旧的词条。
+ */
+@Component
+@Order(100)
+public class ContentFilter implements MessageFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentFilter.class);
+
+    static final int BLOCK = 1;
+    static final int MASK = 1 << 1;
+    static final int FLAG = 1 << 2;
+
+    private final boolean enabled;
+    private final Path termsFile;
+    private final int defaultAction;
+    private final char maskChar;
+    private final Counter blocked;
+    private final Counter masked;
+    private final Counter flagged;
+    // 当前的词条，null表示没有配置词条文件
+    private volatile Terms terms;
+
+    /**
+     * 编译好的词条和它们来源的文件状态。
+     */
+    private record Terms(AhoCorasick automaton, FileTime modified, long size) {
+    }
+
+    public ContentFilter(@Value("${chat.filter.enabled:true}") boolean enabled,
+                         @Value("${chat.filter.terms-file:}") String termsFile,
+                         @Value("${chat.filter.default-action:mask}") String defaultAction,
+                         @Value("${chat.filter.mask-char:*}") char maskChar,
+                         MeterRegistry registry) {
+        this.enabled = enabled;
+        this.termsFile = termsFile.isBlank() ? null : Path.of(termsFile);
+        this.defaultAction = parseAction(defaultAction);
+        if (this.defaultAction == 0) {
+            throw new IllegalArgumentException("Unknown filter action: " + defaultAction + ", expected block, mask or flag");
+        }
+        this.maskChar = maskChar;
+        this.blocked = matches(registry, "block");
+        this.masked = matches(registry, "mask");
+        this.flagged = matches(registry, "flag");
+        if (enabled) {
+            reload();
+        }
+    }
+
+    @Override
+    public Decision filter(String sender, Message message) {
+        Terms current = terms;
+        String content = message.getContent();
+        if (current == null || content == null || content.isEmpty()) {
+            return Decision.ACCEPT;
+        }
+        int found = current.automaton().scan(content, BLOCK);
+        if (found == 0) {
+            return Decision.ACCEPT;
+        }
+        if ((found & BLOCK) != 0) {
+            blocked.increment();
+            log.debug("Blocked message from {}", sender);
+            return Decision.REJECT;
+        }
+        if ((found & FLAG) != 0) {
+            flagged.increment();
+            log.warn("Flagged message from {}: {}", sender, content);
+        }
+        if ((found & MASK) != 0) {
+            masked.increment();
+            message.setContent(current.automaton().mask(content, MASK, maskChar));
+        }
+        return Decision.ACCEPT;
+    }
+
+    /**
+     * 词条文件变化后重新编译。
+     */
+    @Scheduled(fixedDelayString = "${chat.filter.reload-interval-ms:5000}")
+    public void reloadIfChanged() {
+        if (enabled) {
+            reload();
+        }
+    }
+
+    /**
+     * 文件的修改时间或大小与当前的词条不同时重新读取并编译。
+     * @return 是否替换了词条
+     */
+    boolean reload() {
+        if (termsFile == null) {
+            return false;
+        }
+        Terms current = terms;
+        try {
+            FileTime modified = Files.getLastModifiedTime(termsFile);
+            long size = Files.size(termsFile);
+            if (current != null && current.modified().equals(modified) && current.size() == size) {
+                return false;
+            }
+            long start = System.nanoTime();
+            List<String> words = new ArrayList<>();
+            List<Integer> actions = new ArrayList<>();
+            for (String line : Files.readAllLines(termsFile, StandardCharsets.UTF_8)) {
+                parseLine(line, words, actions);
+            }
+            int[] flags = actions.stream().mapToInt(Integer::intValue).toArray();
+            AhoCorasick automaton = AhoCorasick.compile(words, flags);
+            terms = new Terms(automaton, modified, size);
+            log.info("Loaded {} filter terms ({} states) from {} in {} ms", automaton.termCount(),
+                    automaton.stateCount(), termsFile, (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to load filter terms from {}, keeping {} terms: {}", termsFile,
+                    current == null ? 0 : current.automaton().termCount(), e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * @return 当前的词条数
+     */
+    public int termCount() {
+        Terms current = terms;
+        return current == null ? 0 : current.automaton().termCount();
+    }
+
+    private void parseLine(String line, List<String> words, List<Integer> actions) {
+        String term = line.strip();
+        if (term.isEmpty() || term.startsWith("#")) {
+            return;
+        }
+        int action = defaultAction;
+        int colon = term.indexOf(':');
+        if (colon > 0) {
+            int prefixed = parseAction(term.substring(0, colon));
+            if (prefixed != 0) {
+                action = prefixed;
+                term = term.substring(colon + 1).strip();
+            }
+        }
+        if (!term.isEmpty()) {
+            words.add(term);
+            actions.add(action);
+        }
+    }
+
+    private static int parseAction(String action) {
+        return switch (action.strip().toLowerCase(Locale.ROOT)) {
+            case "block" -> BLOCK;
+            case "mask" -> MASK;
+            case "flag" -> FLAG;
+            default -> 0;
+        };
+    }
+
+    private static Counter matches(MeterRegistry registry, String action) {
+        return Counter.builder("chat.filter.matches")
+                .description("Messages that matched a filter term")
+                .tag("action", action)
+                .register(registry);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.groupchatdemo.filter;
+
+import com.example.groupchatdemo.model.Message;
+
+/**
+ * 聊天消息在分配序号、持久化和广播之前经过的过滤阶段。
+ * 实现类注册为bean即加入MessageFilterChain，按@Order的顺序执行；可以就地修改消息（例如替换内容），
+ * 返回REJECT时消息不会发送，后面的过滤器也不再执行。过滤器在入站通道的线程上执行，不应阻塞。
+ */
+public interface MessageFilter {
+
+    enum Decision {
+        ACCEPT,
+        REJECT
+    }
+
+    /**
+     * @param sender 发送者
+     * @param message 待发送的消息
+     * @return 是否继续发送
+     */
+    Decision filter(String sender, Message message);
+
+    /**
+     * @return 消息被拒绝时发给发送者的提示
+     */
+    default String rejectionNotice() {
+        return "消息包含不允许发送的内容，未发送。";
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.groupchatdemo.filter;
+
+import com.example.groupchatdemo.model.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * 依次执行全部MessageFilter。公共消息、私聊和房间消息在控制器中发送之前都要经过这里，
+ * 被拒绝的消息不发送，只告诉发送者一次。
+ */
+@Service
+public class MessageFilterChain {
+
+    private final List<MessageFilter> filters;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    public MessageFilterChain(List<MessageFilter> filters, SimpMessagingTemplate messagingTemplate) {
+        this.filters = List.copyOf(filters);
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * @param sender 发送者
+     * @param message 待发送的消息，过滤器可能修改它的内容
+     * @return 是否可以发送
+     */
+    public boolean admit(String sender, Message message) {
+        for (MessageFilter filter : filters) {
+            if (filter.filter(sender, message) == MessageFilter.Decision.REJECT) {
+                if (sender != null) {
+                    messagingTemplate.convertAndSendToUser(sender, "/queue/messages",
+                            new Message("Server", sender, filter.rejectionNotice(), false, "SERVER_INFO"));
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.groupchatdemo.gateway;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * 固定大小的直接缓冲区池。直接缓冲区的分配和回收都很昂贵（回收依赖GC），
+ * 连接关闭时归还的缓冲区留给之后的连接复用，最多保留maxPooled个。
+ * 只在网关的选择器线程上使用，不需要同步。
+ */
+final class DirectBufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+    DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    void release(ByteBuffer buffer) {
+        if (free.size() < maxPooled) {
+            buffer.clear();
+            free.push(buffer);
+        }
+    }
+
+    int bufferSize() {
+        return bufferSize;
+    }
+}
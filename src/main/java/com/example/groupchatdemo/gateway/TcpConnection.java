@@ -0,0 +1,108 @@
+package com.example.groupchatdemo.gateway;
+
+import org.springframework.messaging.MessageChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.security.Principal;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 网关的一个TCP连接，对代理来说是一个普通的会话（会话ID以 "tcp-" 开头）。
+ * 读写缓冲区是从池中借来的直接缓冲区，只在选择器线程上使用；
+ * 出站帧由出站通道的线程放进队列，选择器线程把它们拷进写缓冲区再写出。
+ */
+final class TcpConnection {
+
+    /**
+     * 等待写出的帧。同一条广播的帧体在所有连接之间共享。
+     */
+    record Frame(byte type, byte[] body) {
+        int length() {
+            return TcpFrames.HEADER_LENGTH + body.length;
+        }
+    }
+
+    final String sessionId;
+    final SocketChannel channel;
+    final SelectionKey key;
+    final ByteBuffer readBuffer;  // 读模式以外总是处于写入状态
+    final ByteBuffer writeBuffer; // 同上，保存尚未写出的字节
+    // 会话属性，与WebSocket会话的属性一样在每条入站消息中传递
+    final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    final AtomicBoolean writeScheduled = new AtomicBoolean();
+    final AtomicLong pendingBytes = new AtomicLong();
+
+    private final Queue<Frame> outbound = new ConcurrentLinkedQueue<>();
+    private Frame current; // 正在拷入写缓冲区的帧
+    private int offset;    // current中已拷入的字节数
+
+    volatile String username;
+    volatile Principal principal;
+    // 发往入站通道的入口；按会话保持顺序时是这个连接专用的有序装饰器
+    volatile MessageChannel inbound;
+    volatile boolean closing;
+
+    TcpConnection(String sessionId, SocketChannel channel, SelectionKey key, ByteBuffer readBuffer, ByteBuffer writeBuffer) {
+        this.sessionId = sessionId;
+        this.channel = channel;
+        this.key = key;
+        this.readBuffer = readBuffer;
+        this.writeBuffer = writeBuffer;
+    }
+
+    /**
+     * 放入一个出站帧，可以在任意线程调用。
+     * @return 放入后等待写出的字节数
+     */
+    long enqueue(Frame frame) {
+        outbound.offer(frame);
+        return pendingBytes.addAndGet(frame.length());
+    }
+
+    /**
+     * 把排队的帧尽量写到套接字，只在选择器线程调用。
+     * @return true表示全部写完；false表示套接字的发送缓冲区已满，需要等待OP_WRITE
+     */
+    boolean flush() throws IOException {
+        while (true) {
+            fill();
+            writeBuffer.flip();
+            channel.write(writeBuffer);
+            boolean drained = !writeBuffer.hasRemaining();
+            writeBuffer.compact();
+            if (!drained) {
+                return false;
+            }
+            if (current == null && outbound.isEmpty()) {
+                return true;
+            }
+        }
+    }
+
+    private void fill() {
+        while (writeBuffer.hasRemaining()) {
+            if (current == null) {
+                if (writeBuffer.remaining() < TcpFrames.HEADER_LENGTH || (current = outbound.poll()) == null) {
+                    return;
+                }
+                writeBuffer.putInt(current.body().length + 1).put(current.type());
+                offset = 0;
+            }
+            int length = Math.min(writeBuffer.remaining(), current.body().length - offset);
+            writeBuffer.put(current.body(), offset, length);
+            offset += length;
+            if (offset == current.body().length) {
+                pendingBytes.addAndGet(-current.length());
+                current = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.groupchatdemo.gateway;
+
+/**
+ * TCP网关的帧格式，服务器和客户端共用：
+ * <pre>
+ * int32   长度（大端），即后面类型字节和帧体的总字节数
+ * byte    类型：1 聊天消息，帧体是BinaryMessageCodec编码（不使用字典）的Message；
+ *               2 JSON，帧体是UTF-8 JSON（在线状态、历史补发等不是Message的帧，只由服务器发送）
+ * byte[]  帧体
+ * </pre>
+ * 客户端连接后先发送一个LOGIN消息（from为用户名），之后可以发送CHAT、PRIVATE_CHAT、
+ * ROOM_JOIN / ROOM_LEAVE / ROOM_CHAT（room为房间ID）消息；收到OFFLINE_MESSAGES帧后发送
+ * MAILBOX_ACK（content为帧中的batchId）确认离线消息。
+ * 只依赖JDK，命令行客户端也使用这里的常量。
+ */
+public final class TcpFrames {
+
+    public static final int HEADER_LENGTH = 5;
+    public static final byte MESSAGE = 1;
+    public static final byte JSON = 2;
+
+    private TcpFrames() {
+    }
+}
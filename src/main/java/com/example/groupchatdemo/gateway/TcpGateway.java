@@ -0,0 +1,483 @@
+package com.example.groupchatdemo.gateway;
+
+import com.example.groupchatdemo.codec.BinaryMessageCodec;
+import com.example.groupchatdemo.codec.BinaryMessageConverter;
+import com.example.groupchatdemo.interceptor.WireCodecInterceptor;
+import com.example.groupchatdemo.model.Message;
+import com.example.groupchatdemo.service.RoomService;
+import org.apache.commons.logging.LogFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.OrderedMessageChannelDecorator;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 原生TCP网关：供命令行客户端和后端服务使用，不经过SockJS和STOMP文本帧。
+ * 一个选择器线程处理全部连接的接入、读和写；帧格式见TcpFrames，聊天消息使用BinaryMessageCodec编码。
+ * 每个TCP连接在代理中是一个普通的会话：网关把登录、订阅和发送转换成STOMP的CONNECT、SUBSCRIBE、SEND消息
+ * 送入客户端入站通道，并像STOMP处理器一样发布会话事件（用户注册表、在线状态和房间成员都依赖这些事件），
+ * 同时订阅客户端出站通道，把发给这些会话的消息写回TCP连接。因此TCP客户端和 "/ws" 的浏览器客户端在同一个聊天室里。
+ * 登录后连接自动订阅公共聊天室、在线状态增量和自己的私聊队列，并加入聊天室（与网页客户端的chat.addUser相同）。
+ * 一条广播的二进制编码由WireCodecInterceptor缓存，所有TCP连接和二进制WebSocket会话共享。
+ * 等待写出的字节超过预算（chat.gateway.max-pending-kb）的连接被断开，不会拖慢出站通道。
+ */
+@Component
+public class TcpGateway implements SmartLifecycle, MessageHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpGateway.class);
+
+    // TCP连接的会话ID前缀，WebSocket会话的ID不会以它开头
+    public static final String SESSION_PREFIX = "tcp-";
+    private static final int MAX_POOLED_BUFFERS = 1024;
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+    private final boolean enabled;
+    private final int port;
+    private final int maxFrameLength;
+    private final long maxPendingBytes;
+    private final boolean preserveOrder;
+    private final MessageChannel clientInboundChannel;
+    private final SubscribableChannel clientOutboundChannel;
+    private final ApplicationEventPublisher eventPublisher;
+    private final WireCodecInterceptor wireCodecInterceptor;
+    private final DirectBufferPool bufferPool;
+
+    private final Map<String, TcpConnection> connections = new ConcurrentHashMap<>();
+    // 有新的出站帧、等待选择器线程写出的连接
+    private final Queue<TcpConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sessionIds = new AtomicLong();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    public TcpGateway(@Value("${chat.gateway.enabled:true}") boolean enabled,
+                      @Value("${chat.gateway.port:12345}") int port,
+                      @Value("${chat.gateway.buffer-kb:16}") int bufferKb,
+                      @Value("${chat.gateway.max-pending-kb:512}") int maxPendingKb,
+                      @Value("${chat.channel.preserve-order:true}") boolean preserveOrder,
+                      @Qualifier("clientInboundChannel") MessageChannel clientInboundChannel,
+                      @Qualifier("clientOutboundChannel") SubscribableChannel clientOutboundChannel,
+                      ApplicationEventPublisher eventPublisher, WireCodecInterceptor wireCodecInterceptor) {
+        this.enabled = enabled;
+        this.port = port;
+        this.bufferPool = new DirectBufferPool(bufferKb * 1024, MAX_POOLED_BUFFERS);
+        this.maxFrameLength = bufferPool.bufferSize() - 4; // 完整的帧必须能放进读缓冲区
+        this.maxPendingBytes = maxPendingKb * 1024L;
+        this.preserveOrder = preserveOrder;
+        this.clientInboundChannel = clientInboundChannel;
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.eventPublisher = eventPublisher;
+        this.wireCodecInterceptor = wireCodecInterceptor;
+    }
+
+    /**
+     * @param sessionId 会话ID
+     * @return 会话是否是TCP网关的连接
+     */
+    public static boolean isGatewaySession(String sessionId) {
+        return sessionId != null && sessionId.startsWith(SESSION_PREFIX);
+    }
+
+    /**
+     * @return 当前的TCP连接数
+     */
+    public int connectionCount() {
+        return connections.size();
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start the TCP gateway on port " + port, e);
+        }
+        if (preserveOrder) {
+            // 与WebSocket会话一样按会话保持入站顺序；拦截器已存在时不会重复添加
+            OrderedMessageChannelDecorator.configureInterceptor(clientInboundChannel, true);
+        }
+        clientOutboundChannel.subscribe(this);
+        running = true;
+        selectorThread = new Thread(this::run, "tcp-gateway");
+        selectorThread.start();
+        log.info("TCP gateway listening on port {}", port);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        clientOutboundChannel.unsubscribe(this);
+        selector.wakeup();
+        try {
+            selectorThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+                processPendingWrites();
+                for (Iterator<SelectionKey> keys = selector.selectedKeys().iterator(); keys.hasNext(); ) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    TcpConnection connection = (TcpConnection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable() && connection.flush()) {
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                    } catch (IOException e) {
+                        log.debug("TCP connection {} failed: {}", connection.sessionId, e.getMessage());
+                        close(connection, CloseStatus.SESSION_NOT_RELIABLE);
+                    }
+                }
+            } catch (IOException e) {
+                log.error("TCP gateway selector failed", e);
+            }
+        }
+        for (TcpConnection connection : connections.values()) {
+            close(connection, CloseStatus.GOING_AWAY);
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            log.warn("Failed to close the TCP gateway: {}", e.getMessage());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            TcpConnection connection = new TcpConnection(SESSION_PREFIX + sessionIds.incrementAndGet(), channel, key,
+                    bufferPool.acquire(), bufferPool.acquire());
+            key.attach(connection);
+            connections.put(connection.sessionId, connection);
+            log.debug("TCP connection {} accepted from {}", connection.sessionId, channel.getRemoteAddress());
+        }
+    }
+
+    /**
+     * 读取并处理连接上所有完整的帧，不完整的部分留在读缓冲区等下一次读。
+     */
+    private void read(TcpConnection connection) throws IOException {
+        ByteBuffer buffer = connection.readBuffer;
+        if (connection.channel.read(buffer) < 0) {
+            close(connection, CloseStatus.NORMAL);
+            return;
+        }
+        buffer.flip();
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 1 || length > maxFrameLength) {
+                log.warn("TCP connection {} sent a frame of {} bytes (limit {}), closing", connection.sessionId,
+                        length, maxFrameLength);
+                close(connection, CloseStatus.TOO_BIG_TO_PROCESS);
+                return;
+            }
+            if (buffer.remaining() < 4 + length) {
+                break;
+            }
+            buffer.position(buffer.position() + 4);
+            byte type = buffer.get();
+            byte[] body = new byte[length - 1];
+            buffer.get(body);
+            if (!handleFrame(connection, type, body)) {
+                close(connection, CloseStatus.BAD_DATA);
+                return;
+            }
+        }
+        buffer.compact();
+    }
+
+    /**
+     * @return false表示帧不合法，应断开连接
+     */
+    private boolean handleFrame(TcpConnection connection, byte type, byte[] body) {
+        if (type != TcpFrames.MESSAGE) {
+            log.warn("TCP connection {} sent an unknown frame type {}", connection.sessionId, type);
+            return false;
+        }
+        Message message;
+        try {
+            message = BinaryMessageCodec.decode(body, null);
+        } catch (IllegalArgumentException e) {
+            log.warn("TCP connection {} sent a malformed message: {}", connection.sessionId, e.getMessage());
+            return false;
+        }
+        if (connection.username == null) {
+            if (!"LOGIN".equals(message.getCommand()) || message.getFrom() == null || message.getFrom().isBlank()) {
+                log.warn("TCP connection {} must log in first, got {}", connection.sessionId, message.getCommand());
+                return false;
+            }
+            login(connection, message.getFrom());
+            return true;
+        }
+        message.setFrom(connection.username); // 发送者总是登录时的用户名
+        String room = message.getRoom();
+        switch (message.getCommand()) {
+            case "CHAT" -> send(connection, "/app/chat.sendMessage", message);
+            case "PRIVATE_CHAT" -> send(connection, "/app/chat.sendPrivateMessage", message);
+            case "MAILBOX_ACK" -> send(connection, "/app/mailbox.ack", message);
+            case "ROOM_CHAT" -> {
+                if (RoomService.isValidRoomId(room)) {
+                    send(connection, "/app/room/" + room + "/send", message);
+                }
+            }
+            case "ROOM_JOIN" -> {
+                if (RoomService.isValidRoomId(room)) {
+                    subscribe(connection, "room:" + room, RoomService.ROOM_TOPIC_PREFIX + room);
+                }
+            }
+            case "ROOM_LEAVE" -> {
+                if (RoomService.isValidRoomId(room)) {
+                    unsubscribe(connection, "room:" + room);
+                }
+            }
+            default -> log.debug("TCP connection {} sent unsupported command {}", connection.sessionId,
+                    message.getCommand());
+        }
+        return true;
+    }
+
+    private void login(TcpConnection connection, String username) {
+        connection.username = username;
+        connection.principal = () -> username;
+        connection.inbound = preserveOrder
+                ? new OrderedMessageChannelDecorator(clientInboundChannel, LogFactory.getLog(TcpGateway.class))
+                : clientInboundChannel;
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setAcceptVersion("1.2");
+        accessor.setHeartbeat(0, 0);
+        accessor.setNativeHeader("username", username); // 与网页客户端相同，由UserInterceptor读取
+        org.springframework.messaging.Message<byte[]> connect = toMessage(connection, accessor, EMPTY_PAYLOAD);
+        if (connection.inbound.send(connect)) {
+            eventPublisher.publishEvent(new SessionConnectEvent(this, connect, connection.principal));
+        }
+    }
+
+    /**
+     * 代理确认连接后登记会话，订阅公共聊天室、在线状态和私聊队列，再加入聊天室。
+     */
+    @SuppressWarnings("unchecked")
+    private void connected(TcpConnection connection, org.springframework.messaging.Message<?> connectAck) {
+        eventPublisher.publishEvent(new SessionConnectedEvent(this,
+                (org.springframework.messaging.Message<byte[]>) connectAck, connection.principal));
+        subscribe(connection, "public", "/topic/public");
+        subscribe(connection, "presence", "/topic/presence");
+        subscribe(connection, "private", "/user/queue/messages");
+        send(connection, "/app/chat.addUser", new Message(connection.username, null, "", false, "JOIN"));
+    }
+
+    private void subscribe(TcpConnection connection, String subscriptionId, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        org.springframework.messaging.Message<byte[]> subscribe = toMessage(connection, accessor, EMPTY_PAYLOAD);
+        if (connection.inbound.send(subscribe)) {
+            eventPublisher.publishEvent(new SessionSubscribeEvent(this, subscribe, connection.principal));
+        }
+    }
+
+    private void unsubscribe(TcpConnection connection, String subscriptionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.UNSUBSCRIBE);
+        accessor.setSubscriptionId(subscriptionId);
+        org.springframework.messaging.Message<byte[]> unsubscribe = toMessage(connection, accessor, EMPTY_PAYLOAD);
+        if (connection.inbound.send(unsubscribe)) {
+            eventPublisher.publishEvent(new SessionUnsubscribeEvent(this, unsubscribe, connection.principal));
+        }
+    }
+
+    /**
+     * 以二进制编码发送到应用目的地，由BinaryMessageConverter解码，不经过JSON。
+     */
+    private void send(TcpConnection connection, String destination, Message message) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination(destination);
+        accessor.setContentType(BinaryMessageConverter.MIME_TYPE);
+        connection.inbound.send(toMessage(connection, accessor, BinaryMessageCodec.encode(message, null)));
+    }
+
+    private static org.springframework.messaging.Message<byte[]> toMessage(TcpConnection connection,
+                                                                          StompHeaderAccessor accessor, byte[] payload) {
+        accessor.setSessionId(connection.sessionId);
+        accessor.setSessionAttributes(connection.attributes);
+        accessor.setUser(connection.principal);
+        accessor.setLeaveMutable(true); // 有序装饰器要在消息头中记下后续任务
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    /**
+     * 客户端出站通道上发给TCP连接的消息，在出站通道的线程上调用。
+     * @param message 代理或应用发给会话的消息
+     */
+    @Override
+    public void handleMessage(org.springframework.messaging.Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (!isGatewaySession(sessionId)) {
+            return;
+        }
+        TcpConnection connection = connections.get(sessionId);
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (connection == null || type == null) {
+            return;
+        }
+        switch (type) {
+            case CONNECT_ACK -> connected(connection, message);
+            case MESSAGE -> deliver(connection, message);
+            case DISCONNECT_ACK -> {
+                connection.closing = true;
+                scheduleWrite(connection);
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void deliver(TcpConnection connection, org.springframework.messaging.Message<?> message) {
+        if (!(message.getPayload() instanceof byte[] payload) || !isJson(message.getHeaders())) {
+            return;
+        }
+        byte[] binary = wireCodecInterceptor.encodeChatMessage(payload);
+        TcpConnection.Frame frame = binary != null
+                ? new TcpConnection.Frame(TcpFrames.MESSAGE, binary)
+                : new TcpConnection.Frame(TcpFrames.JSON, payload); // 在线状态、历史补发等保持JSON
+        if (connection.enqueue(frame) > maxPendingBytes && !connection.closing) {
+            log.warn("TCP connection {} ({}) has more than {} bytes waiting, disconnecting the slow consumer",
+                    connection.sessionId, connection.username, maxPendingBytes);
+            connection.closing = true;
+        }
+        scheduleWrite(connection);
+    }
+
+    private static boolean isJson(MessageHeaders headers) {
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        MimeType mimeType = contentType instanceof String value ? MimeTypeUtils.parseMimeType(value) : (MimeType) contentType;
+        return mimeType != null && MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(mimeType);
+    }
+
+    /**
+     * 让选择器线程写出连接的出站帧；同一个连接在被处理之前只排队一次。
+     */
+    private void scheduleWrite(TcpConnection connection) {
+        if (connection.writeScheduled.compareAndSet(false, true)) {
+            pendingWrites.offer(connection);
+            selector.wakeup();
+        }
+    }
+
+    private void processPendingWrites() {
+        TcpConnection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+            connection.writeScheduled.set(false);
+            if (!connection.key.isValid()) {
+                continue;
+            }
+            if (connection.closing) {
+                close(connection, CloseStatus.SESSION_NOT_RELIABLE);
+                continue;
+            }
+            try {
+                if (!connection.flush()) {
+                    connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            } catch (IOException e) {
+                log.debug("TCP connection {} failed: {}", connection.sessionId, e.getMessage());
+                close(connection, CloseStatus.SESSION_NOT_RELIABLE);
+            }
+        }
+    }
+
+    /**
+     * 关闭连接，归还缓冲区，并像WebSocket会话结束时一样通知代理和事件监听器。只在选择器线程调用。
+     */
+    private void close(TcpConnection connection, CloseStatus status) {
+        if (connections.remove(connection.sessionId) == null) {
+            return;
+        }
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close TCP connection {}: {}", connection.sessionId, e.getMessage());
+        }
+        bufferPool.release(connection.readBuffer);
+        bufferPool.release(connection.writeBuffer);
+        if (connection.username != null) {
+            org.springframework.messaging.Message<byte[]> disconnect =
+                    toMessage(connection, StompHeaderAccessor.create(StompCommand.DISCONNECT), EMPTY_PAYLOAD);
+            connection.inbound.send(disconnect);
+            eventPublisher.publishEvent(new SessionDisconnectEvent(this, disconnect, connection.sessionId, status,
+                    connection.principal));
+        }
+        log.debug("TCP connection {} ({}) closed: {}", connection.sessionId, connection.username, status);
+    }
+}
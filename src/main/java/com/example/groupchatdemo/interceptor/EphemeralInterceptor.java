@@ -0,0 +1,45 @@
+package com.example.groupchatdemo.interceptor;
+
+import com.example.groupchatdemo.service.EphemeralService;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+
+/**
+ * 入站通道上的瞬时信号通道，注册在UserInterceptor之后、RateLimitInterceptor之前。
+ * 发往 "/app/ephemeral/..." 的SEND帧在这里交给EphemeralService后丢弃，不会到达控制器，也不消耗聊天消息的令牌：
+ * 信号按用户合并，同一用户发得再快也只占一个条目，汇总帧的速率由定时任务决定。
+ */
+@Component
+public class EphemeralInterceptor implements ChannelInterceptor {
+
+    private final EphemeralService ephemeralService;
+
+    public EphemeralInterceptor(EphemeralService ephemeralService) {
+        this.ephemeralService = ephemeralService;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (destination == null || !destination.startsWith(EphemeralService.APP_PREFIX)) {
+            return message;
+        }
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        if (user != null && message.getPayload() instanceof byte[] payload) {
+            ephemeralService.record(destination, user.getName(), new String(payload, StandardCharsets.UTF_8).trim());
+        }
+        return null;
+    }
+}
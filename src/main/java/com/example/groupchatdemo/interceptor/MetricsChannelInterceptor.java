@@ -0,0 +1,181 @@
+package com.example.groupchatdemo.interceptor;
+
+import com.example.groupchatdemo.gateway.TcpGateway;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息热路径的指标，注册在代理通道和客户端出站通道上。
+ * 代理通道：按目的地类别统计发布的消息数（chat.messages），记录每次发布的扇出（chat.broker.fanout，
+ * 即收到该消息的会话数），并在消息头中记下发布时刻。代理为每个订阅者复制消息头，这个时刻随之传到出站消息上。
+ * 扇出不再查询订阅表，而是从发送一侧数出来：简单代理在处理一次发布的线程上逐个把副本发到出站通道，
+ * 出站通道的preSend也在这个线程上执行，因此处理前后用一个线程局部的计数器就能数出这次发布的副本数。
+ * 出站通道：STOMP处理器把帧交给会话的出站队列（或TCP网关把帧放入连接的写队列）后，记录从发布到此刻的延迟（chat.broker.latency），
+ * 包括代理扇出、出站执行器的排队和STOMP编码。
+ * 每条消息只有几次前缀比较、计数器累加和一次直方图记录，计量器对象都在启动时创建好。
+ */
+@Component
+public class MetricsChannelInterceptor implements ExecutorChannelInterceptor {
+
+    // 非原生头，不会写到STOMP帧里
+    static final String PUBLISHED_AT_HEADER = "chat.publishedNanos";
+
+    /**
+     * 目的地类别。按房间或用户打标签会让时间序列的数量随房间数和用户数增长，因此只分到类别。
+     */
+    enum Destination {
+        PUBLIC, ROOM, PRESENCE, EPHEMERAL, USER, OTHER;
+
+        static Destination of(String destination) {
+            if (destination == null) {
+                return OTHER;
+            }
+            if (destination.startsWith("/topic/room/")) {
+                return ROOM;
+            }
+            if (destination.startsWith("/topic/public")) {
+                return PUBLIC;
+            }
+            if (destination.startsWith("/topic/presence")) {
+                return PRESENCE;
+            }
+            if (destination.startsWith("/topic/ephemeral/")) {
+                return EPHEMERAL;
+            }
+            if (destination.startsWith("/user/") || destination.startsWith("/queue/")) {
+                return USER;
+            }
+            return OTHER;
+        }
+    }
+
+    /**
+     * 简单代理正在处理的一次发布：目的地类别和已经发到出站通道的副本数。只由处理它的线程访问。
+     */
+    private static final class Delivery {
+        final Destination category;
+        int copies;
+
+        Delivery(Destination category) {
+            this.category = category;
+        }
+    }
+
+    private final Counter[] published;
+    private final DistributionSummary[] fanout;
+    private final Timer[] latency;
+    private final ThreadLocal<Delivery> delivery = new ThreadLocal<>();
+
+    public MetricsChannelInterceptor(MeterRegistry registry) {
+        Destination[] destinations = Destination.values();
+        this.published = new Counter[destinations.length];
+        this.fanout = new DistributionSummary[destinations.length];
+        this.latency = new Timer[destinations.length];
+        for (Destination destination : destinations) {
+            String tag = destination.name().toLowerCase();
+            published[destination.ordinal()] = Counter.builder("chat.messages")
+                    .description("Messages published to the broker")
+                    .tag("destination", tag)
+                    .register(registry);
+            fanout[destination.ordinal()] = DistributionSummary.builder("chat.broker.fanout")
+                    .description("Sessions a published message was delivered to")
+                    .tag("destination", tag)
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(100_000.0)
+                    .register(registry);
+            latency[destination.ordinal()] = Timer.builder("chat.broker.latency")
+                    .description("Time from broker publish until the frame is handed to the session")
+                    .tag("destination", tag)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(10_000))
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        if (isOutbound(message)) {
+            Delivery current = delivery.get();
+            if (current != null) {
+                current.copies++;
+            }
+            return message;
+        }
+        // 以下是代理通道上的发布
+        Destination category = Destination.of(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+        // 用户目的地解析后会再次经过代理通道，这时已经带有发布时刻，不重复计数
+        if (message.getHeaders().containsKey(PUBLISHED_AT_HEADER)) {
+            return message;
+        }
+        published[category.ordinal()].increment();
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+        accessor.setHeader(PUBLISHED_AT_HEADER, System.nanoTime());
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    /**
+     * 简单代理开始处理一次发布到/topic/或/queue/的消息时开始计数。用户目的地（/user/...）解析后以/queue/...再次发布，在那时计数。
+     */
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        if (handler instanceof SimpleBrokerMessageHandler && !isOutbound(message)
+                && SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+            String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+            if (destination != null && (destination.startsWith("/topic/") || destination.startsWith("/queue/"))) {
+                delivery.set(new Delivery(Destination.of(destination)));
+            }
+        }
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        if (handler instanceof SimpleBrokerMessageHandler) {
+            Delivery finished = delivery.get();
+            if (finished != null) {
+                delivery.remove();
+                fanout[finished.category.ordinal()].record(finished.copies);
+            }
+            return;
+        }
+        if (!isOutbound(message)) {
+            return;
+        }
+        // 出站通道有两个处理器（WebSocket和TCP网关），每个处理器之后都会回调，只在负责该会话的处理器之后记录
+        boolean gatewaySession = TcpGateway.isGatewaySession(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        if (gatewaySession != handler instanceof TcpGateway) {
+            return;
+        }
+        Object publishedAt = message.getHeaders().get(PUBLISHED_AT_HEADER);
+        if (publishedAt instanceof Long start) {
+            Destination category = Destination.of(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+            latency[category.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 代理发给订阅者的消息带有订阅ID，发布到代理的消息没有。
+     */
+    private static boolean isOutbound(Message<?> message) {
+        return SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()) != null;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.groupchatdemo.interceptor;
+
+import com.example.groupchatdemo.model.Message;
+import com.example.groupchatdemo.service.MessageFanout;
+import com.example.groupchatdemo.service.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+
+/**
+ * 入站通道上的限流，注册在UserInterceptor之后、WireCodecInterceptor之前，超限的帧不再解码也不会到达控制器。
+ * 只检查SEND帧，按目的地前缀匹配规则（chat.ratelimit.session-rules、chat.ratelimit.user-rules），
+ * 每个会话和每个用户各有令牌桶（见RateLimiter）；网页客户端和TCP网关的会话都经过这里。
+ * 超限的帧被丢弃，并按chat.ratelimit.action处理：
+ * notice 给该会话发一条SERVER_INFO提示（每个会话每秒最多一次）；
+ * disconnect 发送STOMP ERROR帧并断开会话（TCP网关直接断开连接）。
+ * 会话断开时删除它的桶，补满的用户桶由定时任务回收。
+ * SUBSCRIBE帧不限流：有序通道上send总是返回true，被丢弃的订阅仍会发布SessionSubscribeEvent，房间成员关系会与代理不一致。
+ */
+@Component
+public class RateLimitInterceptor implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitInterceptor.class);
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+    private final boolean enabled;
+    private final boolean disconnect;
+    private final RateLimiter limiter;
+    // 两者都依赖WebSocket配置创建的通道，而本拦截器被注入WebSocketConfig，所以在第一次被拒绝时才取得
+    private final ObjectProvider<MessageFanout> messageFanout;
+    private final ObjectProvider<MessageChannel> clientOutboundChannel;
+    private final Counter sessionRejected;
+    private final Counter userRejected;
+
+    public RateLimitInterceptor(@Value("${chat.ratelimit.enabled:true}") boolean enabled,
+                                @Value("${chat.ratelimit.session-rules:}") String sessionRules,
+                                @Value("${chat.ratelimit.user-rules:}") String userRules,
+                                @Value("${chat.ratelimit.action:notice}") String action,
+                                ObjectProvider<MessageFanout> messageFanout,
+                                @Qualifier("clientOutboundChannel") ObjectProvider<MessageChannel> clientOutboundChannel,
+                                MeterRegistry registry) {
+        if (!action.equalsIgnoreCase("notice") && !action.equalsIgnoreCase("disconnect")) {
+            throw new IllegalArgumentException("Unknown rate limit action: " + action + ", expected notice or disconnect");
+        }
+        this.enabled = enabled;
+        this.disconnect = action.equalsIgnoreCase("disconnect");
+        this.limiter = new RateLimiter(RateLimiter.Rule.parse(sessionRules), RateLimiter.Rule.parse(userRules));
+        this.messageFanout = messageFanout;
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.sessionRejected = Counter.builder("chat.ratelimit.rejected")
+                .description("Inbound frames rejected by the rate limiter")
+                .tag("scope", "session")
+                .register(registry);
+        this.userRejected = Counter.builder("chat.ratelimit.rejected")
+                .description("Inbound frames rejected by the rate limiter")
+                .tag("scope", "user")
+                .register(registry);
+    }
+
+    /**
+     * 为SEND帧取令牌，超限时返回null丢弃该帧。
+     * @param message 入站消息
+     * @param channel 入站通道
+     * @return 原消息，或null表示丢弃
+     */
+    @Override
+    public org.springframework.messaging.Message<?> preSend(org.springframework.messaging.Message<?> message,
+                                                            MessageChannel channel) {
+        if (!enabled) {
+            return message;
+        }
+        MessageHeaders headers = message.getHeaders();
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        String username = user != null ? user.getName() : null;
+        RateLimiter.Verdict verdict = limiter.tryAcquire(sessionId, username,
+                SimpMessageHeaderAccessor.getDestination(headers));
+        if (verdict == RateLimiter.Verdict.ALLOWED) {
+            return message;
+        }
+        (verdict == RateLimiter.Verdict.SESSION_LIMITED ? sessionRejected : userRejected).increment();
+        if (sessionId != null && limiter.claimNotice(sessionId)) {
+            reject(sessionId, username, verdict);
+        }
+        return null;
+    }
+
+    /**
+     * 会话断开时删除它的桶。
+     * @param event 断开事件（WebSocket会话和TCP网关的连接都会发布）
+     */
+    @EventListener
+    public void handleSessionDisconnect(SessionDisconnectEvent event) {
+        limiter.sessionClosed(event.getSessionId());
+    }
+
+    /**
+     * 定期回收已经补满的桶，主要是已经离线的用户。
+     */
+    @Scheduled(fixedDelayString = "${chat.ratelimit.sweep-interval-ms:60000}")
+    public void evictIdle() {
+        int evicted = limiter.evictIdle();
+        if (evicted > 0) {
+            log.debug("Evicted {} idle rate limit buckets, {} remain", evicted, limiter.trackedCount());
+        }
+    }
+
+    private void reject(String sessionId, String username, RateLimiter.Verdict verdict) {
+        log.debug("Rate limit exceeded ({}) for session {} ({})", verdict, sessionId, username);
+        if (disconnect) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.ERROR);
+            accessor.setMessage("Rate limit exceeded");
+            accessor.setSessionId(sessionId);
+            // WebSocket会话：STOMP处理器发送这个ERROR帧后关闭会话；TCP网关：按DISCONNECT_ACK关闭连接
+            accessor.setHeader(SimpMessageHeaderAccessor.MESSAGE_TYPE_HEADER, SimpMessageType.DISCONNECT_ACK);
+            clientOutboundChannel.getObject().send(MessageBuilder.createMessage(EMPTY_PAYLOAD, accessor.getMessageHeaders()));
+        } else if (username != null) {
+            MessageFanout fanout = messageFanout.getObject();
+            Message notice = new Message("Server", username, "发送太频繁，部分消息未被处理，请稍后再试。", false, "SERVER_INFO");
+            fanout.sendToSession(username, sessionId, "/queue/messages", fanout.encode(notice));
+        }
+    }
+}
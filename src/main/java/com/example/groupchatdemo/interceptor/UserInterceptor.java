@@ -1,5 +1,7 @@
 package com.example.groupchatdemo.interceptor;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.simp.stomp.StompCommand;
@@ -15,6 +17,8 @@ import org.springframework.stereotype.Component;
 @Component
 public class UserInterceptor implements ChannelInterceptor {
 
+    private static final Logger log = LoggerFactory.getLogger(UserInterceptor.class);
+
     /**
      * 在消息发送到通道之前调用此方法。
      * 我们在这里拦截STOMP CONNECT消息，并从会话属性中设置用户的Principal。
@@ -36,10 +40,10 @@ public class UserInterceptor implements ChannelInterceptor {
             if (username != null) {
                 // 使用lambda表达式创建Principal，Spring将使用此名称来识别用户
                 accessor.setUser(() -> username);
-                System.out.println("UserInterceptor: Principal set for user: " + username + " from native headers.");
+                log.debug("Principal set for user: {} from native headers.", username);
             } else {
                 // 如果用户名不存在，可能是因为查询参数未提供
-                System.out.println("UserInterceptor: Warning: Username not found in native headers for CONNECT command.");
+                log.warn("Username not found in native headers for CONNECT command, session {}.", accessor.getSessionId());
             }
         }
         return message;
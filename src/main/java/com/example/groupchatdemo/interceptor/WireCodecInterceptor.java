@@ -0,0 +1,231 @@
+package com.example.groupchatdemo.interceptor;
+
+import com.example.groupchatdemo.codec.BinaryMessageCodec;
+import com.example.groupchatdemo.codec.BinaryMessageConverter;
+import com.example.groupchatdemo.codec.UsernameDictionary;
+import com.example.groupchatdemo.model.Attachment;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 二进制编码的协商与转码，同时注册在入站和出站通道上。
+ * 入站：通过 "/ws-native" 端点连接的客户端在CONNECT帧中带上 chat-codec:binary（或 binary-dict，同时启用用户名字典），
+ * 该会话即选择了二进制编码；SockJS会话只能发送文本帧，忽略这个头。
+ * 出站：发给这些会话的聊天消息（JSON编码的Message）被转码为BinaryMessageCodec格式，
+ * 内容类型为 application/octet-stream;codec=chat1，以WebSocket二进制帧发送；其他帧（在线状态、历史等）保持JSON。
+ * 同一条广播的所有订阅者共享同一个负载数组，因此JSON只解析一次，不使用字典时二进制也只编码一次。
+ */
+@Component
+public class WireCodecInterceptor implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(WireCodecInterceptor.class);
+
+    public static final String CODEC_HEADER = "chat-codec";
+    // 出站帧定义了新的字典条目时带上这个头，出站队列不会丢弃这样的帧
+    public static final String DICTIONARY_DEFINITION_HEADER = "chat-dict-def";
+    // 握手时由NativeTransportHandshakeInterceptor写入会话属性，表示连接不是SockJS
+    public static final String NATIVE_TRANSPORT_ATTRIBUTE = "chat.nativeTransport";
+
+    // seq用于网页客户端断线后补齐消息，二进制编码不携带它（二进制会话和TCP网关不支持续传）
+    private static final Set<String> MESSAGE_FIELDS = Set.of("from", "to", "content", "isPrivate", "command", "room", "seq",
+            "attachment");
+    private static final int CACHE_SIZE = 256;
+
+    private final ObjectMapper objectMapper;
+    // 字典要求编码顺序与写出顺序一致，只有按会话保持出站顺序时才能启用
+    private final boolean dictionaryAllowed;
+    private final Map<String, SessionCodec> sessions = new ConcurrentHashMap<>();
+    // 按负载数组的identity缓存最近的解析结果，同一条广播的其他订阅者直接复用
+    private final AtomicReferenceArray<Transcoded> recent = new AtomicReferenceArray<>(CACHE_SIZE);
+
+    public WireCodecInterceptor(ObjectMapper objectMapper,
+                                @Value("${chat.channel.preserve-order:true}") boolean preserveOrder) {
+        this.objectMapper = objectMapper;
+        this.dictionaryAllowed = preserveOrder;
+    }
+
+    /**
+     * 选择了二进制编码的会话；dictionary为null表示不使用字典。
+     */
+    private record SessionCodec(UsernameDictionary dictionary) {
+    }
+
+    /**
+     * 一条JSON负载的解析结果。message为null表示它不是聊天消息，保持JSON。
+     */
+    private static final class Transcoded {
+        final byte[] json;
+        final com.example.groupchatdemo.model.Message message;
+        volatile byte[] binary; // 不使用字典的编码结果，第一次需要时生成
+
+        Transcoded(byte[] json, com.example.groupchatdemo.model.Message message) {
+            this.json = json;
+            this.message = message;
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (type == null || sessionId == null) {
+            return message;
+        }
+        switch (type) {
+            case CONNECT -> negotiate(message, sessionId);
+            case DISCONNECT -> sessions.remove(sessionId);
+            case MESSAGE -> {
+                SessionCodec codec = sessions.get(sessionId);
+                if (codec != null) {
+                    return transcode(message, codec);
+                }
+            }
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    private void negotiate(Message<?> message, String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        String requested = accessor.getFirstNativeHeader(CODEC_HEADER);
+        if (requested == null) {
+            return;
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes == null || !Boolean.TRUE.equals(attributes.get(NATIVE_TRANSPORT_ATTRIBUTE))) {
+            log.debug("Session {} requested {} but is not connected through /ws-native, staying on JSON",
+                    sessionId, requested);
+            return;
+        }
+        switch (requested) {
+            case "binary" -> sessions.put(sessionId, new SessionCodec(null));
+            case "binary-dict" -> sessions.put(sessionId,
+                    new SessionCodec(dictionaryAllowed ? new UsernameDictionary() : null));
+            default -> log.warn("Session {} requested unknown codec {}, staying on JSON", sessionId, requested);
+        }
+    }
+
+    private Message<?> transcode(Message<?> message, SessionCodec codec) {
+        if (!(message.getPayload() instanceof byte[] json)) {
+            return message;
+        }
+        Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        MimeType mimeType = contentType instanceof String value ? MimeTypeUtils.parseMimeType(value) : (MimeType) contentType;
+        if (mimeType == null || !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(mimeType)) {
+            return message;
+        }
+        Transcoded transcoded = parse(json);
+        if (transcoded.message == null) {
+            return message;
+        }
+
+        byte[] binary;
+        boolean defined = false;
+        if (codec.dictionary() == null) {
+            binary = encodeChatMessage(json);
+        } else {
+            synchronized (codec) {
+                int before = codec.dictionary().size();
+                binary = BinaryMessageCodec.encode(transcoded.message, codec.dictionary());
+                defined = codec.dictionary().size() > before;
+            }
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(BinaryMessageConverter.MIME_TYPE);
+        if (defined) {
+            accessor.setNativeHeader(DICTIONARY_DEFINITION_HEADER, "1");
+        }
+        return MessageBuilder.createMessage(binary, accessor.getMessageHeaders());
+    }
+
+    /**
+     * 把JSON编码的聊天消息转为不使用字典的二进制编码，结果与二进制WebSocket会话共享同一个缓存，
+     * 同一条广播只解析和编码一次。TCP网关用它生成发给TCP连接的帧。
+     * @param json 出站消息的JSON负载
+     * @return 二进制编码；负载不是聊天消息时返回null
+     */
+    public byte[] encodeChatMessage(byte[] json) {
+        Transcoded transcoded = parse(json);
+        if (transcoded.message == null) {
+            return null;
+        }
+        byte[] binary = transcoded.binary;
+        if (binary == null) {
+            binary = BinaryMessageCodec.encode(transcoded.message, null);
+            transcoded.binary = binary;
+        }
+        return binary;
+    }
+
+    /**
+     * 解析JSON负载，判断它是不是一条聊天消息（只包含Message的字段且有command）。
+     */
+    private Transcoded parse(byte[] json) {
+        int slot = System.identityHashCode(json) & (CACHE_SIZE - 1);
+        Transcoded cached = recent.get(slot);
+        if (cached != null && cached.json == json) {
+            return cached;
+        }
+        Transcoded parsed = new Transcoded(json, toChatMessage(json));
+        recent.set(slot, parsed);
+        return parsed;
+    }
+
+    private com.example.groupchatdemo.model.Message toChatMessage(byte[] json) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(json);
+        } catch (IOException e) {
+            return null;
+        }
+        if (node == null || !node.isObject() || !node.path("command").isTextual()) {
+            return null;
+        }
+        for (Iterator<String> names = node.fieldNames(); names.hasNext(); ) {
+            if (!MESSAGE_FIELDS.contains(names.next())) {
+                return null;
+            }
+        }
+        com.example.groupchatdemo.model.Message chatMessage = new com.example.groupchatdemo.model.Message(
+                textOrNull(node, "from"), textOrNull(node, "to"), textOrNull(node, "content"),
+                node.path("isPrivate").asBoolean(false), node.get("command").asText());
+        chatMessage.setRoom(textOrNull(node, "room"));
+        JsonNode attachment = node.get("attachment");
+        if (attachment != null && !attachment.isNull()) {
+            try {
+                chatMessage.setAttachment(objectMapper.treeToValue(attachment, Attachment.class));
+            } catch (IOException | IllegalArgumentException e) {
+                return null; // 不是能识别的附件引用，保持JSON
+            }
+        }
+        return chatMessage;
+    }
+
+    private static String textOrNull(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+}
@@ -1,30 +1,50 @@
 package com.example.groupchatdemo.listener;
 
+import com.example.groupchatdemo.model.Conversation;
 import com.example.groupchatdemo.model.Message;
+import com.example.groupchatdemo.service.BacklogService;
+import com.example.groupchatdemo.service.OfflineMailbox;
+import com.example.groupchatdemo.service.PresenceService;
+import com.example.groupchatdemo.service.ResumeService;
+import com.example.groupchatdemo.service.RoomDispatcher;
+import com.example.groupchatdemo.service.RoomService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.messaging.simp.user.SimpUserRegistry;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionConnectedEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
 
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * WebSocket事件监听器，用于处理用户连接和断开事件，并管理在线用户状态。
- * 主要用于调试SimpUserRegistry的Linter报错，因为在ChatController注入SimpUserRegistry会导致Linter报错。
+ * 每个事件只处理该会话自己的状态，不遍历全部在线用户；需要查看会话时使用 /api/sessions（见SessionInspector）。
  */
 @Component
 public class WebSocketEventListener {
 
-    private final SimpMessagingTemplate messagingTemplate;
-    private final SimpUserRegistry simpUserRegistry;
-
-    public WebSocketEventListener(SimpMessagingTemplate messagingTemplate, SimpUserRegistry simpUserRegistry) {
-        this.messagingTemplate = messagingTemplate;
-        this.simpUserRegistry = simpUserRegistry;
+    private static final Logger log = LoggerFactory.getLogger(WebSocketEventListener.class);
+
+    private final PresenceService presenceService;
+    private final RoomService roomService;
+    private final RoomDispatcher roomDispatcher;
+    private final BacklogService backlogService;
+    private final OfflineMailbox offlineMailbox;
+    private final ResumeService resumeService;
+
+    public WebSocketEventListener(PresenceService presenceService, RoomService roomService, RoomDispatcher roomDispatcher,
+                                  BacklogService backlogService, OfflineMailbox offlineMailbox,
+                                  ResumeService resumeService) {
+        this.presenceService = presenceService;
+        this.roomService = roomService;
+        this.roomDispatcher = roomDispatcher;
+        this.backlogService = backlogService;
+        this.offlineMailbox = offlineMailbox;
+        this.resumeService = resumeService;
     }
 
     /**
@@ -47,16 +67,14 @@ public class WebSocketEventListener {
 
         String sessionId = headerAccessor.getSessionId();
 
-        System.out.println("WebSocketEventListener: User connected: " + (username != null ? username : "UNKNOWN") + ", SessionId: " + sessionId);
-        // 调试：打印SimpUserRegistry中的用户信息
-        printSimpUserRegistryContent("after connect");
+        log.debug("User connected: {}, SessionId: {}", username != null ? username : "UNKNOWN", sessionId);
 
         // 广播用户列表更新现在由ChatController.addUser通过私聊发送给新用户，并广播给所有用户
         // broadcastUserListFromRegistry(); // 移除此行
     }
 
     /**
-     * 监听WebSocket会话断开连接事件，移除离线用户并广播更新的用户列表。
+     * 监听WebSocket会话断开连接事件，移除离线用户并产生LEAVE增量。
      * 当客户端断开连接时，Spring会自动触发此事件。
      * @param event SessionDisconnectEvent事件对象，包含断开连接的会话信息
      */
@@ -75,49 +93,92 @@ public class WebSocketEventListener {
 
         String sessionId = headerAccessor.getSessionId();
 
-        System.out.println("WebSocketEventListener: User disconnected: " + (username != null ? username : "UNKNOWN") + ", SessionId: " + sessionId);
+        log.debug("User disconnected: {}, SessionId: {}", username != null ? username : "UNKNOWN", sessionId);
+
+        // 释放该会话的全部房间订阅，并通知仍在房间里的成员；未确认的离线消息放回信箱
+        if (sessionId != null) {
+            for (String roomId : roomService.sessionClosed(sessionId)) {
+                announceRoomChange(roomId, username, "ROOM_LEAVE");
+            }
+            offlineMailbox.sessionClosed(sessionId);
+        }
 
         if (username != null && sessionId != null) {
             // 从SimpUserRegistry中移除用户是Spring自动处理的
-            // 我们只需要广播更新的用户列表
-            // 调试：打印SimpUserRegistry中的用户信息
-            printSimpUserRegistryContent("after disconnect (before broadcast)");
-
-            // 广播用户列表更新
-            // broadcastUserListFromRegistry(); // 移除此行，因为ChatController会处理用户列表的广播
-            // 替代：在ChatController.java中处理用户列表的广播，这里不再重复处理。
-            // 我们仍然可以触发一个公共消息，通知用户离开了，但这与用户列表更新是两个不同的事情。
-            // 目前保持现状，依赖ChatController来处理所有用户列表的广播。
+            // 记录离线；用户的最后一个会话断开时，PresenceService会在合并窗口结束时广播LEAVE增量
+            presenceService.userLeft(username, sessionId);
         } else {
             if (username == null) {
-                System.out.println("WebSocketEventListener: Warning: Disconnect event for sessionId: " + sessionId + " but username or principal not found.");
+                log.warn("Disconnect event for sessionId: {} but username or principal not found.", sessionId);
             }
             if (sessionId == null) {
-                System.out.println("WebSocketEventListener: Error: Disconnect event occurred, but sessionId is null.");
+                log.error("Disconnect event occurred, but sessionId is null.");
             }
         }
-        printSimpUserRegistryContent("after disconnect (final)");
     }
 
     /**
-     * 从SimpUserRegistry获取在线用户列表并广播。
-     * **此方法已被移动到ChatController.java中，此处不再需要。**
+     * 监听订阅事件。订阅 "/topic/room/{id}" 即加入房间，用户第一次加入时通知房间成员。
+     * 每个订阅房间的会话都会收到房间最近的历史，带resume-from头的续传订阅除外。
+     * @param event SessionSubscribeEvent事件对象
      */
-    // private void broadcastUserListFromRegistry() { ... }
+    @EventListener
+    public void handleSubscribeListener(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String roomId = RoomService.roomIdOf(headerAccessor.getDestination());
+        if (roomId == null || event.getUser() == null
+                || headerAccessor.getSessionId() == null || headerAccessor.getSubscriptionId() == null) {
+            return;
+        }
+        String username = event.getUser().getName();
+        if (roomService.subscribe(headerAccessor.getSessionId(), headerAccessor.getSubscriptionId(), roomId, username)) {
+            announceRoomChange(roomId, username, "ROOM_JOIN");
+        }
+        // 重连续传的订阅由ResumeService补发缺少的消息，不再补发最近的历史
+        if (!resumeService.isResuming(event.getMessage())) {
+            backlogService.sendBacklog(username, headerAccessor.getSessionId(), Conversation.room(roomId));
+        }
+    }
 
     /**
-     * 调试方法：打印SimpUserRegistry中的用户及其会话ID。
-     * @param stage 当前调试阶段描述
+     * 监听取消订阅事件。用户对房间的最后一个订阅取消时视为离开房间。
+     * @param event SessionUnsubscribeEvent事件对象
      */
-    private void printSimpUserRegistryContent(String stage) {
-        System.out.println("Debug: SimpUserRegistry content " + stage + ":");
-        if (simpUserRegistry.getUsers().isEmpty()) {
-            System.out.println("  (No users registered in SimpUserRegistry)");
-        } else {
-            simpUserRegistry.getUsers().forEach(user -> {
-                System.out.println("  User: " + user.getName() + " (Session IDs: " +
-                        user.getSessions().stream().map(session -> session.getId()).collect(Collectors.joining(",")) + ")");
-            });
+    @EventListener
+    public void handleUnsubscribeListener(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        if (headerAccessor.getSessionId() == null || headerAccessor.getSubscriptionId() == null) {
+            return;
+        }
+        String roomId = roomService.unsubscribe(headerAccessor.getSessionId(), headerAccessor.getSubscriptionId());
+        if (roomId != null && event.getUser() != null) {
+            announceRoomChange(roomId, event.getUser().getName(), "ROOM_LEAVE");
+        }
+    }
+
+    /**
+     * 在房间所属的分片上广播成员加入或离开的通知。
+     * @param roomId 房间ID
+     * @param username 加入或离开的用户
+     * @param command "ROOM_JOIN" 或 "ROOM_LEAVE"
+     */
+    private void announceRoomChange(String roomId, String username, String command) {
+        if (username == null) {
+            return;
+        }
+        Message notice = new Message(username, null, "", false, command);
+        notice.setRoom(roomId);
+        try {
+            roomDispatcher.broadcast(roomId, notice);
+        } catch (RejectedExecutionException e) {
+            // 房间分片繁忙时放弃成员变化通知，不影响成员关系本身
+            log.debug("Dropped {} of {} in room {}: shard queue is full", command, username, roomId);
         }
     }
+
+    /**
+     * 从SimpUserRegistry获取在线用户列表并广播。
+     * **此方法已被移动到ChatController.java中，此处不再需要。**
+     */
+    // private void broadcastUserListFromRegistry() { ... }
 }
@@ -0,0 +1,151 @@
+package com.example.groupchatdemo.metrics;
+
+import com.example.groupchatdemo.cluster.ClusterTransport;
+import com.example.groupchatdemo.filter.ContentFilter;
+import com.example.groupchatdemo.gateway.TcpGateway;
+import com.example.groupchatdemo.service.AttachmentService;
+import com.example.groupchatdemo.service.BackpressureService;
+import com.example.groupchatdemo.service.EphemeralService;
+import com.example.groupchatdemo.service.HeartbeatService;
+import com.example.groupchatdemo.service.OfflineMailbox;
+import com.example.groupchatdemo.service.RoomDispatcher;
+import com.example.groupchatdemo.service.SearchService;
+import com.example.groupchatdemo.store.MessageStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * 按需读取的聊天指标（Gauge），只在被抓取时计算，不占用消息热路径：
+ * 已连接的WebSocket会话数、TCP网关的连接数和用户数、每个房间分片的任务队列深度，
+ * 离线信箱中等待投递的消息数，断线续传重放窗口中保留的消息数，全文索引中的消息数和倒排表大小，瞬时信号的数量和合并前后的帧数，违禁词过滤的词条数，附件的文件数、总大小、进行中的上传数和去重的次数，使用心跳或空闲检查的会话数、发送的心跳数和按原因回收的会话数，以及集群模式下可达的节点数和发往其他节点的记录数、批次数（两者之比即平均批大小）。
+ * STOMP通道执行器（线程池模式）的队列深度和活跃线程数由Spring Boot自动暴露为 executor.*，
+ * 标签name为 clientInboundChannelExecutor、clientOutboundChannelExecutor、brokerChannelExecutor。
+ * 每条消息的指标（消息数、扇出、延迟）由MetricsChannelInterceptor记录。
+ * 所有指标通过 /actuator/metrics 和 /actuator/prometheus 暴露。
+ */
+@Component
+public class ChatMetrics implements MeterBinder {
+
+    private final SimpUserRegistry simpUserRegistry;
+    private final BackpressureService backpressureService;
+    private final RoomDispatcher roomDispatcher;
+    private final TcpGateway tcpGateway;
+    private final ClusterTransport clusterTransport;
+    private final OfflineMailbox offlineMailbox;
+    private final MessageStore messageStore;
+    private final SearchService searchService;
+    private final EphemeralService ephemeralService;
+    private final ContentFilter contentFilter;
+    private final AttachmentService attachmentService;
+    private final HeartbeatService heartbeatService;
+
+    public ChatMetrics(SimpUserRegistry simpUserRegistry, BackpressureService backpressureService,
+                       RoomDispatcher roomDispatcher, TcpGateway tcpGateway, ClusterTransport clusterTransport,
+                       OfflineMailbox offlineMailbox, MessageStore messageStore,
+                       SearchService searchService, EphemeralService ephemeralService, ContentFilter contentFilter,
+                       AttachmentService attachmentService, HeartbeatService heartbeatService) {
+        this.simpUserRegistry = simpUserRegistry;
+        this.backpressureService = backpressureService;
+        this.roomDispatcher = roomDispatcher;
+        this.tcpGateway = tcpGateway;
+        this.clusterTransport = clusterTransport;
+        this.offlineMailbox = offlineMailbox;
+        this.messageStore = messageStore;
+        this.searchService = searchService;
+        this.ephemeralService = ephemeralService;
+        this.contentFilter = contentFilter;
+        this.attachmentService = attachmentService;
+        this.heartbeatService = heartbeatService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.sessions", backpressureService, BackpressureService::sessionCount)
+                .description("Open WebSocket sessions")
+                .register(registry);
+        Gauge.builder("chat.gateway.connections", tcpGateway, TcpGateway::connectionCount)
+                .description("Open TCP gateway connections")
+                .register(registry);
+        Gauge.builder("chat.users", simpUserRegistry, SimpUserRegistry::getUserCount)
+                .description("Connected users")
+                .register(registry);
+        Gauge.builder("chat.mailbox.queued", offlineMailbox, OfflineMailbox::queuedCount)
+                .description("Private messages waiting in offline mailboxes")
+                .register(registry);
+        Gauge.builder("chat.mailbox.memory", offlineMailbox, OfflineMailbox::memoryBytes)
+                .description("Estimated heap used by offline mailboxes")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("chat.resume.window", messageStore, MessageStore::replayWindowSize)
+                .description("Messages retained in replay windows for reconnecting clients")
+                .register(registry);
+        Gauge.builder("chat.search.documents", searchService, SearchService::indexedDocuments)
+                .description("Messages in the full-text search index")
+                .register(registry);
+        Gauge.builder("chat.search.postings", searchService, SearchService::postingBytes)
+                .description("Compressed size of the search index postings")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("chat.search.dropped", searchService, SearchService::droppedCount)
+                .description("Messages not indexed because the indexing queue was full")
+                .register(registry);
+        Gauge.builder("chat.ephemeral.active", ephemeralService, EphemeralService::activeSignals)
+                .description("Typing and activity signals that have not expired")
+                .register(registry);
+        FunctionCounter.builder("chat.ephemeral.received", ephemeralService, EphemeralService::receivedCount)
+                .description("Ephemeral signals accepted from clients")
+                .register(registry);
+        FunctionCounter.builder("chat.ephemeral.frames", ephemeralService, EphemeralService::framesSent)
+                .description("Aggregated ephemeral frames published")
+                .register(registry);
+        Gauge.builder("chat.filter.terms", contentFilter, ContentFilter::termCount)
+                .description("Banned terms compiled into the content filter")
+                .register(registry);
+        Gauge.builder("chat.attachment.files", attachmentService, AttachmentService::fileCount)
+                .description("Distinct attachment files stored")
+                .register(registry);
+        Gauge.builder("chat.attachment.stored", attachmentService, AttachmentService::storedBytes)
+                .description("Total size of stored attachment files")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("chat.attachment.uploads", attachmentService, AttachmentService::pendingUploads)
+                .description("Attachment uploads in progress")
+                .register(registry);
+        FunctionCounter.builder("chat.attachment.deduplicated", attachmentService, AttachmentService::deduplicatedCount)
+                .description("Completed uploads whose content was already stored")
+                .register(registry);
+        Gauge.builder("chat.heartbeat.watched", heartbeatService, HeartbeatService::watchedSessions)
+                .description("Sessions with heartbeat or idle checks scheduled in the timer wheel")
+                .register(registry);
+        FunctionCounter.builder("chat.heartbeat.sent", heartbeatService, HeartbeatService::heartbeatsSent)
+                .description("STOMP heartbeats sent to clients")
+                .register(registry);
+        for (HeartbeatService.Reason reason : HeartbeatService.Reason.values()) {
+            FunctionCounter.builder("chat.sessions.reaped", heartbeatService, service -> service.reapedCount(reason))
+                    .description("Sessions closed by the heartbeat service")
+                    .tag("reason", reason.name().toLowerCase())
+                    .register(registry);
+        }
+        Gauge.builder("chat.cluster.peers", clusterTransport, ClusterTransport::reachablePeerCount)
+                .description("Cluster nodes with an established send link")
+                .register(registry);
+        FunctionCounter.builder("chat.cluster.records", clusterTransport, ClusterTransport::recordsSent)
+                .description("Records sent to other cluster nodes")
+                .register(registry);
+        FunctionCounter.builder("chat.cluster.batches", clusterTransport, ClusterTransport::batchesSent)
+                .description("Batches written to other cluster nodes")
+                .register(registry);
+
+        for (int shard = 0; shard < roomDispatcher.getShardCount(); shard++) {
+            int index = shard;
+            Gauge.builder("chat.room.shard.queued", roomDispatcher, dispatcher -> dispatcher.getQueueSize(index))
+                    .description("Tasks waiting in a room broadcast shard")
+                    .tag("shard", String.valueOf(shard))
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.groupchatdemo.metrics;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 热路径（每条消息）上的采样日志。
+ * DEBUG级别打开时每条都记录；否则按 chat.log.sample-rate 随机抽取约1/N的消息以INFO级别记录，
+ * 设为0时只在DEBUG级别记录。未被抽中时只有一次随机数判断，不拼接字符串，也不做控制台I/O。
+ */
+@Component
+public class LogSampler {
+
+    private final int rate;
+
+    public LogSampler(@Value("${chat.log.sample-rate:1000}") int rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * 记录一条每条消息都会经过的日志。
+     * @param log 调用方的Logger
+     * @param format SLF4J格式字符串
+     * @param args 参数
+     */
+    public void log(Logger log, String format, Object... args) {
+        if (log.isDebugEnabled()) {
+            log.debug(format, args);
+        } else if (rate > 0 && ThreadLocalRandom.current().nextInt(rate) == 0 && log.isInfoEnabled()) {
+            log.info("[1/" + rate + "] " + format, args);
+        }
+    }
+}
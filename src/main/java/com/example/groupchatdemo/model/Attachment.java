@@ -0,0 +1,14 @@
+package com.example.groupchatdemo.model;
+
+import java.io.Serializable;
+
+/**
+ * 聊天消息中的附件引用。文件内容不进入消息，客户端从 "/api/attachments/{id}/{name}" 下载。
+ * 服务器在发送前按已保存的文件校正size和type（见AttachmentService.resolve）。
+ * @param id 文件内容的SHA-256（64个小写十六进制字符），相同内容的文件只保存一份
+ * @param name 文件名
+ * @param size 字节数
+ * @param type 按文件名推断的MIME类型
+ */
+public record Attachment(String id, String name, long size, String type) implements Serializable {
+}
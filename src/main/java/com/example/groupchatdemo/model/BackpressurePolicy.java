@@ -0,0 +1,33 @@
+package com.example.groupchatdemo.model;
+
+import java.util.Locale;
+
+/**
+ * 会话的出站队列超出预算（慢消费者）时采取的策略，可以按房间选择。
+ */
+public enum BackpressurePolicy {
+
+    // 丢弃队列中最旧的帧，直到回到预算以内
+    DROP_OLDEST,
+    // 丢弃队列中的非必要帧（在线状态、心跳等），聊天消息保留
+    DROP_NON_ESSENTIAL,
+    // 直接断开这个会话，客户端重连后从历史补发中恢复
+    DISCONNECT;
+
+    /**
+     * 解析配置中的策略名，例如 "drop-oldest"、"DROP_OLDEST"。
+     * @param value 策略名
+     * @return 对应的策略
+     * @throws IllegalArgumentException 未知的策略名
+     */
+    public static BackpressurePolicy parse(String value) {
+        return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @return 配置中使用的小写形式，例如 "drop-oldest"
+     */
+    public String propertyValue() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
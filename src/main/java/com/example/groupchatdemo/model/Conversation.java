@@ -0,0 +1,82 @@
+package com.example.groupchatdemo.model;
+
+/**
+ * 会话键工具类。公共聊天室、每个房间以及每一对私聊用户各自构成一个会话，
+ * 消息历史、缓存等按会话键分别组织。
+ */
+public final class Conversation {
+
+    // 公共聊天室的会话键
+    public static final String PUBLIC = "public";
+
+    private static final String ROOM_PREFIX = "room:";
+    private static final String PRIVATE_PREFIX = "private:";
+
+    private Conversation() {
+    }
+
+    /**
+     * @param roomId 房间ID
+     * @return 房间的会话键
+     */
+    public static String room(String roomId) {
+        return ROOM_PREFIX + roomId;
+    }
+
+    /**
+     * 生成两个用户之间私聊的会话键，与参数顺序无关。
+     * 第一个用户名带有长度前缀，因此包含分隔符的用户名也不会产生冲突。
+     * @param userA 用户A
+     * @param userB 用户B
+     * @return 私聊会话键
+     */
+    public static String privatePair(String userA, String userB) {
+        String first = userA.compareTo(userB) <= 0 ? userA : userB;
+        String second = first == userA ? userB : userA;
+        return PRIVATE_PREFIX + first.length() + ":" + first + "|" + second;
+    }
+
+    /**
+     * 根据消息本身推断它所属的会话。
+     * @param message 消息
+     * @return 会话键
+     */
+    public static String of(Message message) {
+        if (message.getRoom() != null) {
+            return room(message.getRoom());
+        }
+        if (message.isPrivate() && message.getFrom() != null && message.getTo() != null) {
+            return privatePair(message.getFrom(), message.getTo());
+        }
+        return PUBLIC;
+    }
+
+    /**
+     * @param conversation 会话键
+     * @return 是否是私聊会话
+     */
+    public static boolean isPrivate(String conversation) {
+        return conversation.startsWith(PRIVATE_PREFIX);
+    }
+
+    /**
+     * 判断用户能否看到一个会话：公共聊天室和房间所有人可见，私聊只有两个参与者可见。
+     * @param conversation 会话键
+     * @param user 用户名
+     * @return 是否可见
+     */
+    public static boolean isVisibleTo(String conversation, String user) {
+        if (!isPrivate(conversation)) {
+            return true;
+        }
+        // private:{第一个用户名的长度}:{第一个用户名}|{第二个用户名}
+        int colon = conversation.indexOf(':', PRIVATE_PREFIX.length());
+        if (colon < 0 || user == null) {
+            return false;
+        }
+        int firstLength = Integer.parseInt(conversation, PRIVATE_PREFIX.length(), colon, 10);
+        String first = conversation.substring(colon + 1, colon + 1 + firstLength);
+        String second = conversation.substring(colon + 2 + firstLength);
+        return user.equals(first) || user.equals(second);
+    }
+}
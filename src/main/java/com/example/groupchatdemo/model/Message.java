@@ -1,5 +1,6 @@
 package com.example.groupchatdemo.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.io.Serializable;
@@ -17,6 +18,9 @@ public class Message implements Serializable {
     private String content; // 消息的具体内容
     private boolean isPrivate; // 标记是否为私聊消息
     private String command; // 新增：消息的命令类型，例如 "CHAT", "LOGIN", "USER_LIST_UPDATE", "PRIVATE_CHAT"
+    private String room; // 房间消息所属的房间ID，公共和私聊消息为null
+    private Long seq; // 消息在所属会话内的序号，由服务器在发布时分配；未分配时为null
+    private Attachment attachment; // 附件引用，没有附件时为null
 
     /**
      * 构造函数，用于创建不同类型的消息对象。
@@ -42,6 +46,12 @@ public class Message implements Serializable {
     @JsonProperty("isPrivate") // 确保JSON中字段名为isPrivate
     public boolean isPrivate() { return isPrivate; }
     public String getCommand() { return command; }
+    @JsonInclude(JsonInclude.Include.NON_NULL) // 非房间消息不输出room字段
+    public String getRoom() { return room; }
+    @JsonInclude(JsonInclude.Include.NON_NULL) // 没有序号的消息（系统通知等）不输出seq字段
+    public Long getSeq() { return seq; }
+    @JsonInclude(JsonInclude.Include.NON_NULL) // 没有附件的消息不输出attachment字段
+    public Attachment getAttachment() { return attachment; }
 
     // Setter方法（如果需要修改消息内容，虽然通常消息对象应该是不可变的）
     public void setFrom(String from) { this.from = from; }
@@ -49,6 +59,9 @@ public class Message implements Serializable {
     public void setContent(String content) { this.content = content; }
     public void setPrivate(boolean aPrivate) { isPrivate = aPrivate; }
     public void setCommand(String command) { this.command = command; }
+    public void setRoom(String room) { this.room = room; }
+    public void setSeq(Long seq) { this.seq = seq; }
+    public void setAttachment(Attachment attachment) { this.attachment = attachment; }
 
     @Override
     public String toString() {
@@ -58,6 +71,8 @@ public class Message implements Serializable {
                ", content='" + content + '\'' +
                ", isPrivate=" + isPrivate +
                ", command='" + command + '\'' +
+               ", room='" + (room != null ? room : "null") + '\'' +
+               (attachment != null ? ", attachment=" + attachment : "") +
                '}';
     }
 } 
\ No newline at end of file
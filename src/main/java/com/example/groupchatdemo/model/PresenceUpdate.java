@@ -0,0 +1,74 @@
+package com.example.groupchatdemo.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * 在线状态帧，用于带版本号的在线用户协议。
+ * PRESENCE_SNAPSHOT：新用户加入时私发一次的完整在线列表；
+ * PRESENCE_DELTA：之后广播到 "/topic/presence" 的增量，只包含窗口内发生变化的用户。
+ * 增量中的joined/left表示版本号为version时用户的最终状态，因此重复应用是幂等的。
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PresenceUpdate {
+
+    public static final String SNAPSHOT = "PRESENCE_SNAPSHOT";
+    public static final String DELTA = "PRESENCE_DELTA";
+
+    private final String command;
+    private final long fromVersion; // 增量覆盖的第一个版本号（快照时与version相同）
+    private final long version;     // 应用此帧后客户端所处的版本号
+    private final List<String> users;  // 快照：全部在线用户
+    private final List<String> joined; // 增量：上线的用户
+    private final List<String> left;   // 增量：离线的用户
+
+    private PresenceUpdate(String command, long fromVersion, long version,
+                           List<String> users, List<String> joined, List<String> left) {
+        this.command = command;
+        this.fromVersion = fromVersion;
+        this.version = version;
+        this.users = users;
+        this.joined = joined;
+        this.left = left;
+    }
+
+    /**
+     * 创建完整快照帧。
+     * @param version 快照对应的版本号
+     * @param users 当前全部在线用户
+     */
+    public static PresenceUpdate snapshot(long version, List<String> users) {
+        return new PresenceUpdate(SNAPSHOT, version, version, users, null, null);
+    }
+
+    /**
+     * 创建增量帧，覆盖 (fromVersion - 1, version] 之间的全部变化。
+     * @param fromVersion 窗口内第一次变化的版本号
+     * @param version 窗口内最后一次变化的版本号
+     * @param joined 窗口结束时在线、开始时不在线的用户
+     * @param left 窗口结束时离线、开始时在线的用户
+     */
+    public static PresenceUpdate delta(long fromVersion, long version, List<String> joined, List<String> left) {
+        return new PresenceUpdate(DELTA, fromVersion, version, null, joined, left);
+    }
+
+    public String getCommand() { return command; }
+    public long getFromVersion() { return fromVersion; }
+    public long getVersion() { return version; }
+    public List<String> getUsers() { return users; }
+    public List<String> getJoined() { return joined; }
+    public List<String> getLeft() { return left; }
+
+    @Override
+    public String toString() {
+        return "PresenceUpdate{" +
+               "command='" + command + '\'' +
+               ", fromVersion=" + fromVersion +
+               ", version=" + version +
+               ", users=" + users +
+               ", joined=" + joined +
+               ", left=" + left +
+               '}';
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.groupchatdemo.search;
+
+import java.util.Arrays;
+
+/**
+ * 一个词的倒排表：包含这个词的文档ID（递增）和词频，压缩存放在一个字节数组中。
+ * 每个文档写成两个变长整数（VByte）：与上一个文档ID的差值、词频。聊天消息的ID密集且词频多为1，
+ * 大部分文档只占2到3个字节。每BLOCK_SIZE个文档为一块，跳表记录每块的最后一个文档ID和起始偏移，
+ * 求交集时advance可以跳过整块而不必逐个解码。
+ * 只有一个写入者；读取者在SearchIndex的读锁下使用，与写入互斥。
+ */
+final class PostingList {
+
+    static final int BLOCK_SIZE = 128;
+
+    private byte[] bytes = new byte[8];
+    private int length;
+    private int size;
+    private int lastDoc = -1;
+    // 第b块的最后一个文档ID和第b块在bytes中的起始偏移
+    private int[] blockLastDoc = new int[1];
+    private int[] blockOffset = new int[1];
+    private int blocks;
+
+    /**
+     * 追加一个文档，ID必须大于之前所有的文档。
+     * @param doc 文档ID
+     * @param freq 词在文档中出现的次数
+     */
+    void add(int doc, int freq) {
+        if (doc <= lastDoc) {
+            throw new IllegalArgumentException("Document " + doc + " is not after " + lastDoc);
+        }
+        if (size % BLOCK_SIZE == 0) {
+            if (blocks == blockOffset.length) {
+                blockOffset = Arrays.copyOf(blockOffset, blocks * 2);
+                blockLastDoc = Arrays.copyOf(blockLastDoc, blocks * 2);
+            }
+            blockOffset[blocks++] = length;
+        }
+        if (length + 10 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 10));
+        }
+        writeVInt(doc - lastDoc);
+        writeVInt(freq);
+        lastDoc = doc;
+        blockLastDoc[blocks - 1] = doc;
+        size++;
+    }
+
+    /**
+     * @return 文档数（document frequency）
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return 压缩后占用的字节数（不含数组的空余部分）
+     */
+    int encodedBytes() {
+        return length + blocks * 8;
+    }
+
+    /**
+     * @return 从第一个文档开始的游标
+     */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    private void writeVInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+    }
+
+    /**
+     * 倒排表上的游标。初始时位于第一个文档之前，NO_MORE_DOCS表示已经结束。
+     */
+    final class Cursor {
+
+        static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+        private final int end = length;
+        private final int count = size;
+        private int offset;
+        private int read;
+        private int doc = -1;
+        private int freq;
+
+        /**
+         * @return 当前文档ID
+         */
+        int doc() {
+            return doc;
+        }
+
+        /**
+         * @return 当前文档的词频
+         */
+        int freq() {
+            return freq;
+        }
+
+        /**
+         * 移到下一个文档。
+         * @return 下一个文档ID，没有时为NO_MORE_DOCS
+         */
+        int next() {
+            if (read == count || offset >= end) {
+                return doc = NO_MORE_DOCS;
+            }
+            doc += readVInt();
+            freq = readVInt();
+            read++;
+            return doc;
+        }
+
+        /**
+         * 移到第一个ID不小于target的文档，先按跳表找到所在的块，再在块内逐个解码。
+         * @param target 目标文档ID
+         * @return 移到的文档ID，没有时为NO_MORE_DOCS
+         */
+        int advance(int target) {
+            if (doc >= target) {
+                return doc;
+            }
+            // 下一个要解码的文档所在的块；它的最后一个文档仍小于target时，整块跳过
+            int block = read / BLOCK_SIZE;
+            if (read < count && blockLastDoc[block] < target) {
+                int found = Arrays.binarySearch(blockLastDoc, block + 1, blocks, target);
+                int targetBlock = found >= 0 ? found : -found - 1;
+                if (targetBlock >= blocks) {
+                    return doc = NO_MORE_DOCS;
+                }
+                offset = blockOffset[targetBlock];
+                read = targetBlock * BLOCK_SIZE;
+                doc = blockLastDoc[targetBlock - 1];
+            }
+            while (next() < target) {
+                // 块内逐个解码
+            }
+            return doc;
+        }
+
+        private int readVInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.groupchatdemo.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * 聊天历史的内存倒排索引，随消息追加增量更新。
+ * 每条消息是一个文档，文档ID按加入顺序递增；文档表只保存所属会话、会话内序号和长度，消息内容仍在日志中。
+ * 查询的所有词都出现的文档才算命中（从文档数最少的词开始求交集，其他词用跳表前进），
+ * 按BM25打分，分数相同时新的消息在前。只有一个写入者，写入和查询用读写锁互斥。
+ */
+public final class SearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, PostingList> postings = new HashMap<>();
+    // 会话键 <-> 会话编号，以及每个会话已经索引到的最大序号
+    private final Map<String, Integer> conversationIds = new HashMap<>();
+    private final List<String> conversations = new ArrayList<>();
+    private long[] lastOrdinals = new long[16];
+    // 文档表：所属会话编号、会话内序号、长度（词数）
+    private int[] docConversation = new int[1024];
+    private long[] docOrdinal = new long[1024];
+    private int[] docLength = new int[1024];
+    private int documents;
+    private long totalLength;
+    private long postingBytes;
+
+    /**
+     * 一条命中的消息。
+     * @param conversation 会话键
+     * @param ordinal 会话内序号
+     * @param score BM25分数
+     */
+    public record Hit(String conversation, long ordinal, double score) {
+    }
+
+    /**
+     * 一页查询结果。
+     * @param total 全部命中数（已经按可见性过滤）
+     * @param hits 这一页的命中，按分数从高到低
+     */
+    public record Result(int total, List<Hit> hits) {
+    }
+
+    /**
+     * 索引一条消息。同一会话的消息必须按序号递增加入，不大于已索引序号的消息被忽略
+     * （重建索引与实时追加重叠的部分）。
+     * @param conversation 会话键
+     * @param ordinal 会话内序号
+     * @param text 消息内容
+     * @return 是否加入了索引
+     */
+    public boolean add(String conversation, long ordinal, String text) {
+        lock.writeLock().lock();
+        try {
+            return addLocked(conversation, ordinal, text);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 在一次写锁内索引一批消息，见add。
+     * @param batch 待索引的消息
+     * @return 加入索引的条数
+     */
+    public int addAll(List<Document> batch) {
+        int added = 0;
+        lock.writeLock().lock();
+        try {
+            for (Document document : batch) {
+                if (addLocked(document.conversation(), document.ordinal(), document.text())) {
+                    added++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return added;
+    }
+
+    /**
+     * 待索引的一条消息。
+     * @param conversation 会话键
+     * @param ordinal 会话内序号
+     * @param text 消息内容
+     */
+    public record Document(String conversation, long ordinal, String text) {
+    }
+
+    /**
+     * 查询一页结果。
+     * @param query 查询字符串
+     * @param visible 会话键是否对查询者可见，每个会话只判断一次
+     * @param offset 跳过的命中数
+     * @param limit 这一页的条数
+     * @return 命中总数和这一页的命中
+     */
+    public Result search(String query, Predicate<String> visible, int offset, int limit) {
+        List<String> terms = new ArrayList<>(counts(Tokenizer.query(query)).keySet());
+        if (terms.isEmpty() || limit <= 0) {
+            return new Result(0, List.of());
+        }
+        lock.readLock().lock();
+        try {
+            PostingList[] lists = new PostingList[terms.size()];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = postings.get(terms.get(i));
+                if (lists[i] == null) {
+                    return new Result(0, List.of());
+                }
+            }
+            Arrays.sort(lists, Comparator.comparingInt(PostingList::size));
+            double[] idf = new double[lists.length];
+            PostingList.Cursor[] cursors = new PostingList.Cursor[lists.length];
+            for (int i = 0; i < lists.length; i++) {
+                idf[i] = Math.log(1 + (documents - lists[i].size() + 0.5) / (lists[i].size() + 0.5));
+                cursors[i] = lists[i].cursor();
+            }
+            double averageLength = (double) totalLength / documents;
+            // 会话编号 -> 0未判断，1可见，2不可见
+            byte[] visibility = new byte[conversations.size()];
+            int keep = offset + limit;
+            // 最小堆：堆顶是当前保留的命中中排名最低的
+            PriorityQueue<long[]> top = new PriorityQueue<>(keep + 1, SearchIndex::compareRanked);
+            int total = 0;
+            PostingList.Cursor lead = cursors[0];
+            int doc = lead.next();
+            while (doc != PostingList.Cursor.NO_MORE_DOCS) {
+                int candidate = doc;
+                for (int i = 1; i < cursors.length; i++) {
+                    int advanced = cursors[i].advance(candidate);
+                    if (advanced != candidate) {
+                        candidate = advanced;
+                        break;
+                    }
+                }
+                if (candidate != doc) {
+                    doc = candidate == PostingList.Cursor.NO_MORE_DOCS ? candidate : lead.advance(candidate);
+                    continue;
+                }
+                if (isVisible(docConversation[doc], visibility, visible)) {
+                    total++;
+                    double score = 0;
+                    double norm = K1 * (1 - B + B * docLength[doc] / averageLength);
+                    for (int i = 0; i < cursors.length; i++) {
+                        int freq = cursors[i].freq();
+                        score += idf[i] * freq * (K1 + 1) / (freq + norm);
+                    }
+                    // 文档ID递增，分数不低于堆顶的新命中排名一定更高；低于堆顶的直接跳过，不分配对象
+                    if (top.size() < keep) {
+                        top.add(new long[]{Double.doubleToLongBits(score), doc});
+                    } else if (score >= Double.longBitsToDouble(top.peek()[0])) {
+                        top.poll();
+                        top.add(new long[]{Double.doubleToLongBits(score), doc});
+                    }
+                }
+                doc = lead.next();
+            }
+            List<Hit> hits = new ArrayList<>(top.size());
+            while (top.size() > offset) {
+                long[] entry = top.poll();
+                int hitDoc = (int) entry[1];
+                hits.add(new Hit(conversations.get(docConversation[hitDoc]), docOrdinal[hitDoc],
+                        Double.longBitsToDouble(entry[0])));
+            }
+            Collections.reverse(hits);
+            return new Result(total, hits);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return 已索引的消息数
+     */
+    public int documents() {
+        lock.readLock().lock();
+        try {
+            return documents;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return 不同的词数
+     */
+    public int terms() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return 全部倒排表压缩后占用的字节数
+     */
+    public long postingBytes() {
+        lock.readLock().lock();
+        try {
+            return postingBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean addLocked(String conversation, long ordinal, String text) {
+        Integer id = conversationIds.get(conversation);
+        if (id == null) {
+            id = conversations.size();
+            conversationIds.put(conversation, id);
+            conversations.add(conversation);
+            if (id == lastOrdinals.length) {
+                lastOrdinals = Arrays.copyOf(lastOrdinals, id * 2);
+            }
+        }
+        if (ordinal <= lastOrdinals[id]) {
+            return false;
+        }
+        lastOrdinals[id] = ordinal;
+        List<String> tokens = Tokenizer.index(text);
+        if (tokens.isEmpty()) {
+            return false;
+        }
+        if (documents == docOrdinal.length) {
+            int capacity = documents * 2;
+            docConversation = Arrays.copyOf(docConversation, capacity);
+            docOrdinal = Arrays.copyOf(docOrdinal, capacity);
+            docLength = Arrays.copyOf(docLength, capacity);
+        }
+        int doc = documents++;
+        docConversation[doc] = id;
+        docOrdinal[doc] = ordinal;
+        docLength[doc] = tokens.size();
+        totalLength += tokens.size();
+        for (Map.Entry<String, Integer> term : counts(tokens).entrySet()) {
+            PostingList list = postings.computeIfAbsent(term.getKey(), key -> new PostingList());
+            long before = list.encodedBytes();
+            list.add(doc, term.getValue());
+            postingBytes += list.encodedBytes() - before;
+        }
+        return true;
+    }
+
+    private boolean isVisible(int conversation, byte[] visibility, Predicate<String> visible) {
+        if (visibility[conversation] == 0) {
+            visibility[conversation] = visible.test(conversations.get(conversation)) ? (byte) 1 : (byte) 2;
+        }
+        return visibility[conversation] == 1;
+    }
+
+    // 分数高的排在前；分数相同时文档ID大（新）的排在前。堆按相反顺序比较，堆顶是排名最低的
+    private static int compareRanked(long[] a, long[] b) {
+        int byScore = Double.compare(Double.longBitsToDouble(a[0]), Double.longBitsToDouble(b[0]));
+        return byScore != 0 ? byScore : Long.compare(a[1], b[1]);
+    }
+
+    private static Map<String, Integer> counts(List<String> tokens) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String token : tokens) {
+            counts.merge(token, 1, Integer::sum);
+        }
+        return counts;
+    }
+}
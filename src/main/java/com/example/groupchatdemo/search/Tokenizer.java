@@ -0,0 +1,97 @@
+package com.example.groupchatdemo.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 全文检索的分词器。先做NFKC归一化（全角字母和数字变为半角）并转为小写，然后：
+ * 连续的字母或数字（非中日韩文字）作为一个词；中日韩文字没有空格分词，按连续的文字串切成重叠的二元组（bigram），
+ * 索引时每个字也单独作为一个词，这样单个字的查询也能命中。
+ * 查询时两个字以上的文字串只使用二元组（所有二元组都出现才算命中，近似于短语匹配），单个字使用这个字本身。
+ * 其他字符（空白、标点、表情等）都是分隔符。
+ */
+public final class Tokenizer {
+
+    // 过长的词（例如一长串字母）截断，避免一个词占用过多内存
+    static final int MAX_TERM_LENGTH = 32;
+
+    private Tokenizer() {
+    }
+
+    /**
+     * 索引时的分词。
+     * @param text 消息内容
+     * @return 词的序列（可能重复），长度即文档长度
+     */
+    public static List<String> index(String text) {
+        return tokenize(text, false);
+    }
+
+    /**
+     * 查询时的分词。
+     * @param text 查询字符串
+     * @return 词的序列（可能重复）
+     */
+    public static List<String> query(String text) {
+        return tokenize(text, true);
+    }
+
+    private static List<String> tokenize(String text, boolean query) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        StringBuilder word = new StringBuilder();
+        List<String> run = new ArrayList<>(); // 当前连续的中日韩文字，每个元素是一个字（可能是代理对）
+        int i = 0;
+        while (i < normalized.length()) {
+            int codePoint = normalized.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                flushWord(word, terms);
+                run.add(new String(Character.toChars(codePoint)));
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                flushRun(run, terms, query);
+                if (word.length() < MAX_TERM_LENGTH) {
+                    word.appendCodePoint(Character.toLowerCase(codePoint));
+                }
+            } else {
+                flushWord(word, terms);
+                flushRun(run, terms, query);
+            }
+        }
+        flushWord(word, terms);
+        flushRun(run, terms, query);
+        return terms;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> terms) {
+        if (word.length() > 0) {
+            terms.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static void flushRun(List<String> run, List<String> terms, boolean query) {
+        if (run.isEmpty()) {
+            return;
+        }
+        if (run.size() == 1 || !query) {
+            terms.addAll(run);
+        }
+        for (int i = 0; i + 1 < run.size(); i++) {
+            terms.add(run.get(i) + run.get(i + 1));
+        }
+        run.clear();
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,399 @@
+package com.example.groupchatdemo.service;
+
+import com.example.groupchatdemo.attachment.BlobStore;
+import com.example.groupchatdemo.model.Attachment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * 附件的分块上传和按内容去重的存储。文件内容不经过STOMP，聊天消息只带一个附件引用（Attachment）。
+ * 上传分三步：创建上传（声明文件名和大小），按顺序PUT各块（每块不超过chat.attachment.max-chunk-kb），
+ * 最后一块写完后按SHA-256加入BlobStore，相同内容的文件只保存一份。每块必须从服务器已收到的位置开始，
+ * 连接中断后客户端查询已收到的字节数，从那里继续上传。SHA-256随写入增量计算，完成时不需要重新读取文件。
+ * 上传状态只保存在内存中，超过chat.attachment.upload-ttl-minutes没有新的块时丢弃，服务器重启后需要重新上传。
+ */
+@Service
+public class AttachmentService {
+
+    private static final Logger log = LoggerFactory.getLogger(AttachmentService.class);
+
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_NAME_LENGTH = 200;
+    // 上传ID相当于写入这个上传的凭据，不能被猜到
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    public enum Status {
+        // 这一块已写入，还没有收完
+        ACCEPTED,
+        // 已收完并加入存储
+        COMPLETE,
+        // 块的起始位置不是已收到的字节数，客户端应从received继续
+        OFFSET_MISMATCH,
+        // 文件或块超过了上限
+        TOO_LARGE,
+        // 上传不存在或已过期
+        NOT_FOUND,
+        // 进行中的上传太多
+        BUSY
+    }
+
+    /**
+     * 一次上传的状态。
+     * @param status 结果
+     * @param uploadId 上传ID
+     * @param size 文件的字节数
+     * @param received 已收到的字节数
+     * @param attachment 完成后的附件引用，未完成时为null
+     */
+    public record UploadState(Status status, String uploadId, long size, long received, Attachment attachment) {
+    }
+
+    /**
+     * 进行中的上传。所有字段由this保护。
+     */
+    private static final class Upload {
+        final String id;
+        final String owner;
+        final String name;
+        final long size;
+        final Path file;
+        final MessageDigest digest;
+        long received;
+        long touchedNanos;
+        Attachment completed;
+
+        Upload(String id, String owner, String name, long size, Path file) {
+            this.id = id;
+            this.owner = owner;
+            this.name = name;
+            this.size = size;
+            this.file = file;
+            this.digest = sha256();
+            this.touchedNanos = System.nanoTime();
+        }
+
+        UploadState state(Status status) {
+            return new UploadState(status, id, size, received, completed);
+        }
+    }
+
+    private final boolean enabled;
+    private final BlobStore blobs;
+    private final Path uploadDir;
+    private final long maxFileBytes;
+    private final int maxChunkBytes;
+    private final int maxUploads;
+    private final long uploadTtlNanos;
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private final LongAdder deduplicated = new LongAdder();
+
+    public AttachmentService(@Value("${chat.attachment.enabled:true}") boolean enabled,
+                             @Value("${chat.attachment.dir:data/attachments}") String dir,
+                             @Value("${chat.attachment.max-file-mb:100}") long maxFileMb,
+                             @Value("${chat.attachment.max-chunk-kb:4096}") int maxChunkKb,
+                             @Value("${chat.attachment.max-uploads:256}") int maxUploads,
+                             @Value("${chat.attachment.upload-ttl-minutes:60}") long uploadTtlMinutes) {
+        this.enabled = enabled;
+        this.maxFileBytes = maxFileMb * 1024 * 1024;
+        this.maxChunkBytes = maxChunkKb * 1024;
+        this.maxUploads = maxUploads;
+        this.uploadTtlNanos = TimeUnit.MINUTES.toNanos(uploadTtlMinutes);
+        if (!enabled) {
+            this.blobs = null;
+            this.uploadDir = null;
+            return;
+        }
+        Path root = Path.of(dir);
+        this.blobs = new BlobStore(root.resolve("blobs"));
+        this.uploadDir = root.resolve("uploads");
+        try {
+            Files.createDirectories(uploadDir);
+            // 上传状态不持久化，上次运行留下的临时文件已经无法续传
+            try (Stream<Path> leftovers = Files.list(uploadDir)) {
+                for (Path leftover : (Iterable<Path>) leftovers::iterator) {
+                    Files.deleteIfExists(leftover);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open attachment upload directory " + uploadDir, e);
+        }
+        log.info("Attachment store {}: {} files, {} KB", root, blobs.count(), blobs.totalBytes() / 1024);
+    }
+
+    /**
+     * @return 是否启用了附件
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return 每块的最大字节数
+     */
+    public int maxChunkBytes() {
+        return maxChunkBytes;
+    }
+
+    /**
+     * 创建一次上传。
+     * @param user 上传者
+     * @param name 文件名
+     * @param size 文件的字节数
+     * @return 上传的状态；参数不合法时返回null
+     * @throws IOException 创建临时文件失败
+     */
+    public UploadState startUpload(String user, String name, long size) throws IOException {
+        if (!enabled || user == null || user.isBlank() || name == null || size < 0) {
+            return null;
+        }
+        if (size > maxFileBytes) {
+            return new UploadState(Status.TOO_LARGE, null, size, 0, null);
+        }
+        if (uploads.size() >= maxUploads) {
+            return new UploadState(Status.BUSY, null, size, 0, null);
+        }
+        String id = HexFormat.of().formatHex(randomBytes());
+        Upload upload = new Upload(id, user, sanitizeName(name), size, uploadDir.resolve(id + ".part"));
+        Files.createFile(upload.file);
+        uploads.put(id, upload);
+        synchronized (upload) {
+            if (size == 0) {
+                complete(upload);
+                return upload.state(Status.COMPLETE);
+            }
+            return upload.state(Status.ACCEPTED);
+        }
+    }
+
+    /**
+     * @param uploadId 上传ID
+     * @return 上传的状态，客户端据此从received继续上传
+     */
+    public UploadState status(String uploadId) {
+        Upload upload = uploadId != null ? uploads.get(uploadId) : null;
+        if (upload == null) {
+            return new UploadState(Status.NOT_FOUND, uploadId, 0, 0, null);
+        }
+        synchronized (upload) {
+            return upload.state(upload.completed != null ? Status.COMPLETE : Status.ACCEPTED);
+        }
+    }
+
+    /**
+     * 写入一块。读取body直到结束，最多写到文件的末尾并且不超过一块的上限；
+     * 读取中途失败时已经写入的部分仍然有效，客户端查询状态后从received继续。
+     * @param uploadId 上传ID
+     * @param offset 这一块在文件中的起始位置，必须等于已收到的字节数
+     * @param body 这一块的内容
+     * @return 写入后的状态
+     * @throws IOException 读取请求或写入文件失败
+     */
+    public UploadState append(String uploadId, long offset, InputStream body) throws IOException {
+        Upload upload = uploadId != null ? uploads.get(uploadId) : null;
+        if (upload == null) {
+            return new UploadState(Status.NOT_FOUND, uploadId, 0, 0, null);
+        }
+        synchronized (upload) {
+            if (upload.completed != null) {
+                return upload.state(Status.COMPLETE);
+            }
+            if (offset != upload.received) {
+                return upload.state(Status.OFFSET_MISMATCH);
+            }
+            upload.touchedNanos = System.nanoTime();
+            long limit = upload.received + Math.min(maxChunkBytes, upload.size - upload.received);
+            boolean overflow = false;
+            byte[] buffer = new byte[COPY_BUFFER_BYTES];
+            try (FileChannel channel = FileChannel.open(upload.file, StandardOpenOption.WRITE)) {
+                try {
+                    channel.position(upload.received);
+                    int n;
+                    while ((n = body.read(buffer)) >= 0) {
+                        if (upload.received + n > limit) {
+                            // 超出的部分不写入，前面的部分仍然有效
+                            overflow = true;
+                            n = (int) (limit - upload.received);
+                        }
+                        ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                        while (chunk.hasRemaining()) {
+                            channel.write(chunk);
+                        }
+                        upload.digest.update(buffer, 0, n);
+                        upload.received += n;
+                        if (overflow) {
+                            break;
+                        }
+                    }
+                } finally {
+                    // 写入失败时文件可能比已确认的部分长，截掉，下一块从received覆盖
+                    channel.truncate(upload.received);
+                }
+            }
+            if (overflow) {
+                return upload.state(Status.TOO_LARGE);
+            }
+            if (upload.received == upload.size) {
+                complete(upload);
+                return upload.state(Status.COMPLETE);
+            }
+            return upload.state(Status.ACCEPTED);
+        }
+    }
+
+    /**
+     * 检查消息中的附件引用，并按已保存的文件校正大小和类型。
+     * @param reference 客户端发送的引用
+     * @return 校正后的引用；文件不存在或附件未启用时返回null
+     */
+    public Attachment resolve(Attachment reference) {
+        if (!enabled || reference == null || !BlobStore.isValidId(reference.id())) {
+            return null;
+        }
+        long size = blobs.size(reference.id());
+        if (size < 0) {
+            return null;
+        }
+        String name = sanitizeName(reference.name());
+        return new Attachment(reference.id(), name, size, typeOf(name));
+    }
+
+    /**
+     * @param id 附件ID
+     * @return 附件文件的字节数；不存在或附件未启用时返回-1
+     */
+    public long size(String id) {
+        return enabled ? blobs.size(id) : -1;
+    }
+
+    /**
+     * @param id 已存在的附件ID（size不为-1）
+     * @return 附件文件的路径
+     */
+    public Path path(String id) {
+        return blobs.path(id);
+    }
+
+    /**
+     * 丢弃长时间没有新的块的上传和已完成的上传状态。
+     */
+    @Scheduled(fixedDelayString = "${chat.attachment.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        for (Iterator<Upload> it = uploads.values().iterator(); it.hasNext(); ) {
+            Upload upload = it.next();
+            synchronized (upload) {
+                if (now - upload.touchedNanos < uploadTtlNanos) {
+                    continue;
+                }
+                it.remove();
+                if (upload.completed == null) {
+                    log.debug("Discarding stale upload {} of {} from {} ({}/{} bytes)",
+                            upload.id, upload.name, upload.owner, upload.received, upload.size);
+                    try {
+                        Files.deleteIfExists(upload.file);
+                    } catch (IOException e) {
+                        log.warn("Failed to delete stale upload {}: {}", upload.file, e.toString());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 保存的附件文件数
+     */
+    public int fileCount() {
+        return enabled ? blobs.count() : 0;
+    }
+
+    /**
+     * @return 保存的附件文件的总字节数
+     */
+    public long storedBytes() {
+        return enabled ? blobs.totalBytes() : 0;
+    }
+
+    /**
+     * @return 进行中的上传数
+     */
+    public int pendingUploads() {
+        return uploads.size();
+    }
+
+    /**
+     * @return 与已有文件内容相同、没有另外保存的上传数
+     */
+    public long deduplicatedCount() {
+        return deduplicated.sum();
+    }
+
+    private void complete(Upload upload) throws IOException {
+        String id = HexFormat.of().formatHex(upload.digest.digest());
+        if (!blobs.add(upload.file, id)) {
+            deduplicated.increment();
+        }
+        upload.completed = new Attachment(id, upload.name, upload.size, typeOf(upload.name));
+        log.debug("Upload {} from {} complete: {}", upload.id, upload.owner, upload.completed);
+    }
+
+    /**
+     * 去掉路径和控制字符，限制长度；文件名只用于显示和推断类型，不用于磁盘上的路径。
+     */
+    static String sanitizeName(String name) {
+        if (name == null) {
+            return "file";
+        }
+        String base = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+        StringBuilder clean = new StringBuilder(Math.min(base.length(), MAX_NAME_LENGTH));
+        for (int i = 0; i < base.length() && clean.length() < MAX_NAME_LENGTH; i++) {
+            char c = base.charAt(i);
+            if (!Character.isISOControl(c)) {
+                clean.append(c);
+            }
+        }
+        String result = clean.toString().strip();
+        return result.isEmpty() || result.equals(".") || result.equals("..") ? "file" : result;
+    }
+
+    private static String typeOf(String name) {
+        return MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] randomBytes() {
+        byte[] bytes = new byte[16];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.groupchatdemo.service;
+
+import com.example.groupchatdemo.store.LogRecord;
+import com.example.groupchatdemo.store.MessageStore;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * 给新加入会话的客户端补发最近的历史消息。
+ * 历史来自MessageStore的内存缓存，帧内容直接由缓存中已序列化的消息字节拼接而成，
+ * 只发送给刚加入的那一个会话（同一用户的其他标签页不会重复收到）。
+ */
+@Service
+public class BacklogService {
+
+    private final MessageFanout messageFanout;
+    private final MessageStore messageStore;
+
+    public BacklogService(MessageFanout messageFanout, MessageStore messageStore) {
+        this.messageFanout = messageFanout;
+        this.messageStore = messageStore;
+    }
+
+    /**
+     * 把会话最近的消息作为一帧HISTORY_BACKLOG发送到用户的 "/user/queue/messages"。会话没有历史时不发送。
+     * @param username 用户名
+     * @param sessionId 接收历史的WebSocket会话ID
+     * @param conversation 会话键
+     */
+    public void sendBacklog(String username, String sessionId, String conversation) {
+        List<LogRecord> records = messageStore.recent(conversation);
+        if (records.isEmpty()) {
+            return;
+        }
+        // 用户目的地只解析到这一个会话
+        messageFanout.sendToSession(username, sessionId, "/queue/messages", messageStore.backlogJson(conversation, records));
+    }
+}
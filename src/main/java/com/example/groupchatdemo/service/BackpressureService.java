@@ -0,0 +1,255 @@
+package com.example.groupchatdemo.service;
+
+import com.example.groupchatdemo.model.BackpressurePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 慢消费者保护。每个WebSocket会话的出站帧先进入该会话自己的队列（OutboundSessionQueue），
+ * 由固定数量的写线程写出；队列的字节数（chat.backpressure.max-buffer-kb）或等待时间（chat.backpressure.send-time-limit-ms）
+ * 超出预算时，按帧所属房间的策略（BackpressurePolicy）丢弃帧或断开会话，并累计每种动作的次数。
+ * 房间的策略来自 chat.backpressure.room-policy.{roomId}，也可以在运行时修改；其余帧使用 chat.backpressure.policy。
+ */
+@Service
+public class BackpressureService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(BackpressureService.class);
+
+    /**
+     * 预算超出时实际执行的动作。DROP_EPHEMERAL表示只丢弃瞬时信号就回到了预算以内；
+     * HARD_LIMIT表示丢弃策略也无法让队列回到预算的若干倍以内，会话被断开。
+     */
+    public enum Action {
+        DROP_EPHEMERAL, DROP_OLDEST, DROP_NON_ESSENTIAL, DISCONNECT, HARD_LIMIT
+    }
+
+    private final Environment environment;
+    private final long maxBufferBytes;
+    private final long sendTimeLimitNanos;
+    private final BackpressurePolicy defaultPolicy;
+    private final List<String> nonEssentialDestinations;
+
+    // 运行时设置或从配置读取过的房间策略
+    private final Map<String, BackpressurePolicy> roomPolicies = new ConcurrentHashMap<>();
+    private final Map<String, OutboundSessionQueue> sessions = new ConcurrentHashMap<>();
+    private final Map<Action, LongAdder> actionCounts = new EnumMap<>(Action.class);
+    private final ThreadPoolExecutor writers;
+
+    public BackpressureService(Environment environment,
+                               @Value("${chat.backpressure.max-buffer-kb:512}") int maxBufferKb,
+                               @Value("${chat.backpressure.send-time-limit-ms:5000}") long sendTimeLimitMs,
+                               @Value("${chat.backpressure.policy:drop-non-essential}") String defaultPolicy,
+                               @Value("${chat.backpressure.non-essential-destinations:" + PresenceService.PRESENCE_TOPIC + "}")
+                               List<String> nonEssentialDestinations,
+                               @Value("${chat.backpressure.writer-threads:0}") int writerThreads,
+                               @Value("${chat.backpressure.writer-queue-capacity:10000}") int writerQueueCapacity) {
+        this.environment = environment;
+        this.maxBufferBytes = maxBufferKb * 1024L;
+        this.sendTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs);
+        this.defaultPolicy = BackpressurePolicy.parse(defaultPolicy);
+        this.nonEssentialDestinations = List.copyOf(nonEssentialDestinations);
+        for (Action action : Action.values()) {
+            actionCounts.put(action, new LongAdder());
+        }
+        // 固定数量的写线程，有待写帧的会话排队等待；每个会话同一时间最多有一个写入任务，
+        // 所以队列容量就是等待写线程的会话数上限。写线程阻塞在慢连接上时，该会话的等待时间超出预算后被断开，线程随之释放
+        int threads = writerThreads > 0 ? writerThreads : Runtime.getRuntime().availableProcessors() * 2;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.writers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(writerQueueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "session-writer-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 包装SubProtocolWebSocketHandler：新会话建立时先套上出站队列，再交给STOMP处理器；收到的帧先计入会话的统计。
+     * 在WebSocketConfig.configureWebSocketTransport中注册。
+     * @param handler 被包装的处理器
+     * @return 包装后的处理器
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                OutboundSessionQueue queue = new OutboundSessionQueue(session, BackpressureService.this, writers);
+                sessions.put(session.getId(), queue);
+                super.afterConnectionEstablished(queue);
+            }
+
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                OutboundSessionQueue queue = sessions.get(session.getId());
+                if (queue != null) {
+                    queue.recordInbound(message.getPayloadLength());
+                }
+                super.handleMessage(session, message);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * @return 当前打开的WebSocket会话数
+     */
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @param sessionId 会话ID
+     * @return 会话的出站队列；会话不存在或已关闭时返回null
+     */
+    OutboundSessionQueue session(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * @return 当前打开的全部会话的出站队列，弱一致的视图
+     */
+    Collection<OutboundSessionQueue> sessions() {
+        return sessions.values();
+    }
+
+    /**
+     * 获取房间的策略：运行时设置的优先，其次是 chat.backpressure.room-policy.{roomId}，最后是默认策略。
+     * @param roomId 房间ID，不是房间消息时为null
+     * @return 策略
+     */
+    public BackpressurePolicy policyFor(String roomId) {
+        if (roomId == null) {
+            return defaultPolicy;
+        }
+        return roomPolicies.computeIfAbsent(roomId, id -> Optional
+                .ofNullable(environment.getProperty("chat.backpressure.room-policy." + id))
+                .map(BackpressurePolicy::parse)
+                .orElse(defaultPolicy));
+    }
+
+    /**
+     * 在运行时修改房间的策略。
+     * @param roomId 房间ID
+     * @param policy 新的策略
+     */
+    public void setRoomPolicy(String roomId, BackpressurePolicy policy) {
+        roomPolicies.put(roomId, policy);
+    }
+
+    /**
+     * @param destination 帧的目的地
+     * @return 该目的地的帧在拥塞时是否可以丢弃
+     */
+    boolean isNonEssential(String destination) {
+        for (String prefix : nonEssentialDestinations) {
+            if (destination.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    long maxBufferBytes() {
+        return maxBufferBytes;
+    }
+
+    long sendTimeLimitNanos() {
+        return sendTimeLimitNanos;
+    }
+
+    /**
+     * @return 出站队列断开会话时的字节上限，也用作Spring会话装饰器的缓冲区限制
+     */
+    public int hardBufferLimitBytes() {
+        return (int) Math.min(Integer.MAX_VALUE, maxBufferBytes * OutboundSessionQueue.HARD_LIMIT_FACTOR);
+    }
+
+    /**
+     * @return 出站队列断开会话时的等待时间上限（毫秒），也用作Spring会话装饰器的发送时间限制
+     */
+    public int hardSendTimeLimitMillis() {
+        return (int) Math.min(Integer.MAX_VALUE,
+                TimeUnit.NANOSECONDS.toMillis(sendTimeLimitNanos) * OutboundSessionQueue.HARD_LIMIT_FACTOR);
+    }
+
+    void recordAction(OutboundSessionQueue queue, Action action) {
+        actionCounts.get(action).increment();
+        if (action == Action.DISCONNECT || action == Action.HARD_LIMIT) {
+            log.warn("Disconnecting slow session {} (user {}, {}, queued {} bytes)",
+                    queue.getId(), queue.username(), action, queue.queuedBytes());
+        }
+    }
+
+    void recordWriterRejected(OutboundSessionQueue queue) {
+        log.warn("Writer queue is full, disconnecting session {} (user {})", queue.getId(), queue.username());
+    }
+
+    /**
+     * @return 每种动作的累计次数，以及当前有积压或发生过丢弃的会话
+     */
+    public Map<String, Object> stats() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        actionCounts.forEach((action, count) -> counts.put(action.name(), count.sum()));
+        List<Map<String, Object>> slowSessions = new ArrayList<>();
+        for (OutboundSessionQueue queue : sessions.values()) {
+            long queuedBytes = queue.queuedBytes();
+            long dropped = queue.droppedFrames();
+            if (queuedBytes == 0 && dropped == 0 && queue.lastAction() == null) {
+                continue;
+            }
+            Map<String, Object> session = new LinkedHashMap<>();
+            session.put("sessionId", queue.getId());
+            session.put("user", queue.username());
+            session.put("queuedBytes", queuedBytes);
+            session.put("queuedFrames", queue.queuedFrames());
+            session.put("stalledMs", queue.stalledMillis());
+            session.put("droppedFrames", dropped);
+            session.put("lastAction", queue.lastAction());
+            slowSessions.add(session);
+        }
+        slowSessions.sort((a, b) -> Long.compare((Long) b.get("queuedBytes"), (Long) a.get("queuedBytes")));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxBufferBytes", maxBufferBytes);
+        stats.put("sendTimeLimitMs", TimeUnit.NANOSECONDS.toMillis(sendTimeLimitNanos));
+        stats.put("defaultPolicy", defaultPolicy.propertyValue());
+        stats.put("actions", counts);
+        stats.put("sessions", slowSessions);
+        return stats;
+    }
+
+    @Override
+    public void destroy() {
+        writers.shutdownNow();
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.groupchatdemo.service;
+
+import com.example.groupchatdemo.model.Conversation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * 瞬时信号通道：正在输入、活跃等高频但可以丢失的状态，与聊天消息分开处理。
+ * 客户端向 "/app/ephemeral/public" 或 "/app/ephemeral/room/{id}" 发送信号名（消息体，例如typing），
+ * 由EphemeralInterceptor在入站通道上直接交给这里，不经过@MessageMapping、限流和持久化。
+ * 每个会话中每个用户只保留最新的信号（后到的覆盖先到的），重复发送相同的信号只延长有效期，不产生新帧；
+ * 发送idle或超过chat.ephemeral.ttl-ms没有刷新时移除。定时任务（chat.ephemeral.flush-interval-ms）
+ * 把有变化的会话的全部信号作为一帧发到 "/topic/ephemeral/..."，没有变化但仍有信号的会话每半个有效期重发一次，
+ * 客户端据此丢弃过期的状态，丢失的帧也能在下一次重发时恢复。
+ * 帧只序列化一次，不写入日志、不进入重放窗口；出站队列拥塞时在任何策略下都最先丢弃（见OutboundSessionQueue）。
+ * 集群模式下各节点只汇总本节点会话的信号，帧带有本实例的origin，客户端按origin分别保存。
+ */
+@Service
+public class EphemeralService {
+
+    // 客户端发送信号的目的地前缀
+    public static final String APP_PREFIX = "/app/ephemeral/";
+    // 汇总帧的主题前缀，完整目的地为 "/topic/ephemeral/public" 或 "/topic/ephemeral/room/{id}"
+    public static final String TOPIC_PREFIX = "/topic/ephemeral/";
+    // 清除自己的信号
+    public static final String IDLE = "idle";
+
+    private static final String ROOM_SUFFIX = "room/";
+    private static final Pattern SIGNAL_PATTERN = Pattern.compile("[a-z]{1,16}");
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final RoomService roomService;
+    // MessageFanout依赖WebSocket配置创建的通道，而入站拦截器依赖本服务，所以在第一次发送时才取得
+    private final ObjectProvider<MessageFanout> messageFanout;
+    // 本实例的标识，集群中的客户端按它区分各节点的汇总帧
+    private final String origin = Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+    // 汇总帧的主题 -> 该会话的信号
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+
+    /**
+     * 一个会话的信号。所有字段由this保护。
+     */
+    private static final class Channel {
+        final String conversation;
+        // 用户名 -> 最新的信号
+        final Map<String, Signal> signals = new HashMap<>();
+        boolean changed;
+        long sentNanos;
+        // 已从channels中移除，之后的信号要放进新的实例
+        boolean retired;
+
+        Channel(String conversation) {
+            this.conversation = conversation;
+        }
+    }
+
+    private record Signal(String name, long expiresNanos) {
+    }
+
+    public EphemeralService(@Value("${chat.ephemeral.enabled:true}") boolean enabled,
+                            @Value("${chat.ephemeral.ttl-ms:6000}") long ttlMs,
+                            RoomService roomService, ObjectProvider<MessageFanout> messageFanout) {
+        this.enabled = enabled;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.roomService = roomService;
+        this.messageFanout = messageFanout;
+    }
+
+    /**
+     * 记录一个信号，覆盖该用户在这个会话中之前的信号。
+     * 公共聊天室的信号所有用户都可以发送，房间的信号只接受房间成员的。
+     * @param destination 客户端发送的目的地，"/app/ephemeral/public" 或 "/app/ephemeral/room/{id}"
+     * @param username 发送者
+     * @param signal 信号名（小写字母，最长16个字符），idle表示清除
+     * @return 是否接受了这个信号
+     */
+    public boolean record(String destination, String username, String signal) {
+        if (!enabled || username == null || signal == null || !SIGNAL_PATTERN.matcher(signal).matches()) {
+            return false;
+        }
+        String topic = topicOf(destination, username);
+        if (topic == null) {
+            return false;
+        }
+        received.increment();
+        boolean idle = IDLE.equals(signal);
+        long expires = System.nanoTime() + ttlNanos;
+        while (true) {
+            Channel channel = idle ? channels.get(topic) : channels.computeIfAbsent(topic, this::newChannel);
+            if (channel == null) {
+                return true;
+            }
+            synchronized (channel) {
+                if (channel.retired) {
+                    continue;
+                }
+                if (idle) {
+                    channel.changed |= channel.signals.remove(username) != null;
+                } else {
+                    Signal previous = channel.signals.put(username, new Signal(signal, expires));
+                    channel.changed |= previous == null || !previous.name().equals(signal);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 定时发送有变化的会话的汇总帧，移除过期的信号和空闲的会话。
+     */
+    @Scheduled(fixedDelayString = "${chat.ephemeral.flush-interval-ms:200}")
+    public void flush() {
+        flush(System.nanoTime());
+    }
+
+    void flush(long now) {
+        for (Map.Entry<String, Channel> entry : channels.entrySet()) {
+            Channel channel = entry.getValue();
+            Map<String, Object> frame;
+            synchronized (channel) {
+                for (Iterator<Signal> it = channel.signals.values().iterator(); it.hasNext(); ) {
+                    if (now - it.next().expiresNanos() > 0) {
+                        it.remove();
+                        channel.changed = true;
+                    }
+                }
+                if (!channel.changed && (channel.signals.isEmpty() || now - channel.sentNanos < ttlNanos / 2)) {
+                    if (channel.signals.isEmpty()) {
+                        channel.retired = true;
+                        channels.remove(entry.getKey(), channel);
+                    }
+                    continue;
+                }
+                Map<String, String> signals = new TreeMap<>();
+                channel.signals.forEach((username, signal) -> signals.put(username, signal.name()));
+                frame = new LinkedHashMap<>();
+                frame.put("command", "EPHEMERAL");
+                frame.put("conversation", channel.conversation);
+                frame.put("origin", origin);
+                frame.put("ttlMs", TimeUnit.NANOSECONDS.toMillis(ttlNanos));
+                frame.put("signals", signals);
+                channel.changed = false;
+                channel.sentNanos = now;
+            }
+            MessageFanout fanout = messageFanout.getObject();
+            fanout.sendToDestination(entry.getKey(), fanout.encode(frame));
+            frames.increment();
+        }
+    }
+
+    /**
+     * @return 当前有效的信号数
+     */
+    public int activeSignals() {
+        int count = 0;
+        for (Channel channel : channels.values()) {
+            synchronized (channel) {
+                count += channel.signals.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return 接受的信号数
+     */
+    public long receivedCount() {
+        return received.sum();
+    }
+
+    /**
+     * @return 发送的汇总帧数，与receivedCount之比即合并的效果
+     */
+    public long framesSent() {
+        return frames.sum();
+    }
+
+    /**
+     * @return 汇总帧的主题；目的地不合法或发送者不是房间成员时返回null
+     */
+    private String topicOf(String destination, String username) {
+        if (destination == null || !destination.startsWith(APP_PREFIX)) {
+            return null;
+        }
+        String rest = destination.substring(APP_PREFIX.length());
+        if (rest.equals(Conversation.PUBLIC)) {
+            return TOPIC_PREFIX + rest;
+        }
+        if (rest.startsWith(ROOM_SUFFIX)) {
+            String roomId = rest.substring(ROOM_SUFFIX.length());
+            if (RoomService.isValidRoomId(roomId) && roomService.isMember(roomId, username)) {
+                return TOPIC_PREFIX + rest;
+            }
+        }
+        return null;
+    }
+
+    private Channel newChannel(String topic) {
+        String rest = topic.substring(TOPIC_PREFIX.length());
+        return new Channel(rest.startsWith(ROOM_SUFFIX)
+                ? Conversation.room(rest.substring(ROOM_SUFFIX.length()))
+                : Conversation.PUBLIC);
+    }
+}
@@ -0,0 +1,339 @@
+package com.example.groupchatdemo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.InterceptableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * STOMP心跳和会话回收。
+ * 简单代理自带的心跳需要一个TaskScheduler，每个周期遍历全部会话；这里改由一个哈希时间轮（TimerWheel）驱动，
+ * 每个会话在轮中只有一个检查任务，到期时读取出站队列记录的最后收发时间（OutboundSessionQueue，收发帧时只写一个时间戳，
+ * 不触碰时间轮），决定发送心跳、回收会话，或者按最后活动的时间重新放回轮中。每一格的开销只与这一格到期的会话数有关，
+ * 与连接总数无关，全部会话的检查均匀地分散在各格中，不会每个周期集中遍历一次。
+ * 心跳按STOMP协议协商：服务器提供chat.heartbeat.outgoing-ms和incoming-ms，与客户端CONNECT帧的heart-beat头
+ * 各取较大值，写到代理的CONNECT_ACK上，由STOMP处理器放进CONNECTED帧。客户端不使用心跳（heart-beat:0,0）时两个方向都不检查。
+ * 回收策略（chat.session.reap-policy）：none不回收；dead回收超过missed-limit个心跳间隔没有收到任何帧的会话；
+ * idle还回收超过chat.session.idle-timeout-ms没有收到心跳之外的帧的会话。回收即关闭会话：每个刻度回收的会话合成一批，
+ * 交给固定的少量回收线程依次关闭，回收线程都忙、队列已满时这一批留到下一个刻度再提交，大量会话同时超时也不会创建大量线程。
+ * 在线状态、房间成员和离线信箱由正常的断开流程（WebSocketEventListener）清理。
+ * 只管理本节点的WebSocket和SockJS会话，TCP网关的连接不使用心跳。
+ */
+@Service
+public class HeartbeatService implements SmartLifecycle, ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(HeartbeatService.class);
+
+    // 心跳帧：一个换行
+    private static final TextMessage HEARTBEAT = new TextMessage("\n");
+    private static final CloseStatus IDLE_TIMEOUT = CloseStatus.GOING_AWAY.withReason("Idle timeout");
+    private static final int REAPER_THREADS = 2;
+    private static final int REAPER_QUEUE_CAPACITY = 16;
+
+    /**
+     * 回收会话的策略。
+     */
+    public enum ReapPolicy {
+        NONE, DEAD, IDLE;
+
+        static ReapPolicy parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * 回收会话的原因。
+     */
+    public enum Reason {
+        DEAD, IDLE
+    }
+
+    private final long outgoingMs;
+    private final long incomingMs;
+    private final int missedLimit;
+    private final ReapPolicy policy;
+    private final long idleTimeoutMs;
+    private final long tickMs;
+    private final BackpressureService backpressureService;
+    private final SubscribableChannel clientOutboundChannel;
+    private final TimerWheel<Watch> wheel;
+    private final LongAdder heartbeats = new LongAdder();
+    private final LongAdder reapedDead = new LongAdder();
+    private final LongAdder reapedIdle = new LongAdder();
+    private ScheduledExecutorService ticker;
+    // 等待关闭的会话，由推进时间轮的线程每个刻度合成一批提交给closer
+    private final Queue<Reaped> pendingCloses = new ConcurrentLinkedQueue<>();
+    // 关闭会话可能要等待写出关闭帧，不在推进时间轮的线程上执行
+    private ThreadPoolExecutor closer;
+    private volatile boolean running;
+
+    /**
+     * 一个会话的检查任务。字段在创建后不变，只由推进时间轮的线程读取。
+     * @param sendIntervalMs 协商后服务器发送心跳的间隔，0表示不发送
+     * @param deadTimeoutMs 超过这么久没有收到任何帧就认为会话已断开，0表示不检查
+     */
+    record Watch(OutboundSessionQueue session, long sendIntervalMs, long deadTimeoutMs) {
+    }
+
+    private record Reaped(OutboundSessionQueue session, CloseStatus status) {
+    }
+
+    public HeartbeatService(@Value("${chat.heartbeat.outgoing-ms:10000}") long outgoingMs,
+                            @Value("${chat.heartbeat.incoming-ms:10000}") long incomingMs,
+                            @Value("${chat.heartbeat.missed-limit:3}") int missedLimit,
+                            @Value("${chat.heartbeat.tick-ms:100}") long tickMs,
+                            @Value("${chat.heartbeat.wheel-slots:1024}") int wheelSlots,
+                            @Value("${chat.session.reap-policy:dead}") String policy,
+                            @Value("${chat.session.idle-timeout-ms:1800000}") long idleTimeoutMs,
+                            BackpressureService backpressureService,
+                            @Qualifier("clientOutboundChannel") SubscribableChannel clientOutboundChannel) {
+        this.outgoingMs = Math.max(0, outgoingMs);
+        this.incomingMs = Math.max(0, incomingMs);
+        this.missedLimit = Math.max(1, missedLimit);
+        this.policy = ReapPolicy.parse(policy);
+        this.idleTimeoutMs = Math.max(0, idleTimeoutMs);
+        this.tickMs = tickMs;
+        this.backpressureService = backpressureService;
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.wheel = new TimerWheel<>(tickMs, wheelSlots, System.nanoTime());
+    }
+
+    @Override
+    public void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        closer = new ThreadPoolExecutor(REAPER_THREADS, REAPER_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(REAPER_QUEUE_CAPACITY),
+                task -> {
+                    Thread thread = new Thread(task, "session-reaper-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "heartbeat-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        // 与ResumeService相同，拦截器只登记一次，停止后不再修改通道的拦截器列表
+        InterceptableChannel channel = (InterceptableChannel) clientOutboundChannel;
+        if (!channel.getInterceptors().contains(this)) {
+            channel.addInterceptor(this);
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        ticker.shutdownNow();
+        closer.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 代理确认连接时协商心跳，登记会话的检查任务，并把服务器的心跳设置写到CONNECT_ACK上。
+     */
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        if (!running || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.CONNECT_ACK) {
+            return message;
+        }
+        Message<?> connect = (Message<?>) headers.get(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER);
+        long[] clientHeartbeat = connect == null ? new long[]{0, 0} : StompHeaderAccessor.wrap(connect).getHeartbeat();
+        long[] serverHeartbeat = connected(SimpMessageHeaderAccessor.getSessionId(headers), clientHeartbeat,
+                System.nanoTime());
+        if (serverHeartbeat == null) {
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setHeader(SimpMessageHeaderAccessor.HEART_BEAT_HEADER, serverHeartbeat);
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    /**
+     * 按STOMP协议协商心跳并登记会话的检查任务。
+     * @param sessionId 会话ID
+     * @param clientHeartbeat 客户端CONNECT帧的heart-beat头：客户端能发送的间隔和希望收到的间隔
+     * @param now 当前时间（System.nanoTime()）
+     * @return 写到CONNECTED帧的服务器心跳设置；不是本节点的WebSocket会话时返回null
+     */
+    long[] connected(String sessionId, long[] clientHeartbeat, long now) {
+        OutboundSessionQueue session = sessionId == null ? null : backpressureService.session(sessionId);
+        if (session == null) {
+            return null;
+        }
+        long sendInterval = outgoingMs > 0 && clientHeartbeat[1] > 0 ? Math.max(outgoingMs, clientHeartbeat[1]) : 0;
+        long receiveInterval = incomingMs > 0 && clientHeartbeat[0] > 0 ? Math.max(incomingMs, clientHeartbeat[0]) : 0;
+        long deadTimeout = policy == ReapPolicy.NONE ? 0 : receiveInterval * missedLimit;
+        Watch watch = new Watch(session, sendInterval, deadTimeout);
+        long firstCheck = nextCheck(watch, 0, 0, 0);
+        if (firstCheck > 0) {
+            wheel.schedule(watch, now + TimeUnit.MILLISECONDS.toNanos(firstCheck));
+        }
+        return new long[]{outgoingMs, incomingMs};
+    }
+
+    /**
+     * 推进时间轮，检查到期的会话。由ticker每个刻度调用一次。
+     */
+    void tick() {
+        try {
+            long now = System.nanoTime();
+            long nowMillis = System.currentTimeMillis();
+            wheel.advance(now, watch -> {
+                long delay = check(watch, nowMillis);
+                if (delay >= 0) {
+                    wheel.schedule(watch, now + TimeUnit.MILLISECONDS.toNanos(delay));
+                }
+            });
+            closePending();
+        } catch (RuntimeException e) {
+            // 不能让异常终止定时任务，否则之后的心跳和回收都会停止
+            log.warn("Heartbeat tick failed", e);
+        }
+    }
+
+    /**
+     * 检查一个会话：回收已断开或空闲的会话，需要时发送心跳。
+     * @param now 当前时间（System.currentTimeMillis()）
+     * @return 距离下一次检查的毫秒数；会话已关闭或被回收时为-1
+     */
+    long check(Watch watch, long now) {
+        OutboundSessionQueue session = watch.session();
+        if (backpressureService.session(session.getId()) != session) {
+            return -1; // 已经关闭
+        }
+        long connectedAt = session.connectedAtMillis();
+        long sinceReceived = now - Math.max(connectedAt, session.lastReceivedMillis());
+        if (watch.deadTimeoutMs() > 0 && sinceReceived >= watch.deadTimeoutMs()) {
+            reap(session, Reason.DEAD);
+            return -1;
+        }
+        long sinceApplication = now - Math.max(connectedAt, session.lastApplicationMillis());
+        if (policy == ReapPolicy.IDLE && idleTimeoutMs > 0 && sinceApplication >= idleTimeoutMs) {
+            reap(session, Reason.IDLE);
+            return -1;
+        }
+        long sinceSent = now - Math.max(connectedAt, session.lastSentMillis());
+        if (watch.sendIntervalMs() > 0 && sinceSent >= watch.sendIntervalMs()) {
+            try {
+                session.sendMessage(HEARTBEAT);
+                heartbeats.increment();
+            } catch (IOException e) {
+                // 出站队列只入队，不会在这里写网络
+            }
+            sinceSent = 0;
+        }
+        return nextCheck(watch, sinceReceived, sinceApplication, sinceSent);
+    }
+
+    /**
+     * @return 按各项检查中最早的一项计算的下一次检查的毫秒数；没有任何需要检查的项目时为-1
+     */
+    private long nextCheck(Watch watch, long sinceReceived, long sinceApplication, long sinceSent) {
+        long next = Long.MAX_VALUE;
+        if (watch.sendIntervalMs() > 0) {
+            next = Math.min(next, watch.sendIntervalMs() - sinceSent);
+        }
+        if (watch.deadTimeoutMs() > 0) {
+            next = Math.min(next, watch.deadTimeoutMs() - sinceReceived);
+        }
+        if (policy == ReapPolicy.IDLE && idleTimeoutMs > 0) {
+            next = Math.min(next, idleTimeoutMs - sinceApplication);
+        }
+        return next == Long.MAX_VALUE ? -1 : Math.max(0, next);
+    }
+
+    private void reap(OutboundSessionQueue session, Reason reason) {
+        (reason == Reason.DEAD ? reapedDead : reapedIdle).increment();
+        log.debug("Reaping {} session {} of user {}", reason, session.getId(), session.username());
+        CloseStatus status = reason == Reason.DEAD ? CloseStatus.SESSION_NOT_RELIABLE : IDLE_TIMEOUT;
+        pendingCloses.add(new Reaped(session, status));
+    }
+
+    /**
+     * 把等待关闭的会话合成一批交给回收线程。回收线程都忙时留到下一个刻度。
+     */
+    private void closePending() {
+        if (pendingCloses.isEmpty()) {
+            return;
+        }
+        List<Reaped> batch = new ArrayList<>();
+        for (Reaped reaped; (reaped = pendingCloses.poll()) != null; ) {
+            batch.add(reaped);
+        }
+        try {
+            closer.execute(() -> {
+                for (Reaped reaped : batch) {
+                    try {
+                        reaped.session().close(reaped.status());
+                    } catch (IOException | RuntimeException e) {
+                        // 连接已不可用，容器会结束会话
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingCloses.addAll(batch);
+        }
+    }
+
+    /**
+     * @return 时间轮中的检查任务数，即使用心跳或空闲检查的会话数
+     */
+    public int watchedSessions() {
+        return wheel.pending();
+    }
+
+    /**
+     * @return 发送的心跳数
+     */
+    public long heartbeatsSent() {
+        return heartbeats.sum();
+    }
+
+    /**
+     * @param reason 原因
+     * @return 因这个原因回收的会话数
+     */
+    public long reapedCount(Reason reason) {
+        return (reason == Reason.DEAD ? reapedDead : reapedIdle).sum();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.groupchatdemo.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * 只序列化一次的多目标发送。
+ * SimpMessagingTemplate.convertAndSend每次调用都会用Jackson重新序列化负载；同一条消息发给多个目的地
+ * （私聊的接收方和发送方回显）或者同时写入历史时，改为先用encode得到一个JSON字节数组，
+ * 再把同一个数组发给所有目的地。数组发送后被代理、出站队列、二进制转码缓存和集群转发共享，调用者不能再修改它。
+ * 每个目的地只新建一份消息头，不复制负载。
+ */
+@Service
+public class MessageFanout {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+
+    public MessageFanout(SimpMessagingTemplate messagingTemplate, ObjectMapper objectMapper) {
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 把负载序列化为JSON。
+     * @param payload 消息对象
+     * @return JSON字节数组
+     * @throws IllegalArgumentException 负载无法序列化
+     */
+    public byte[] encode(Object payload) {
+        try {
+            return objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize " + payload.getClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * 发布到代理目的地（例如 /topic/public 或房间主题），代理把同一个数组扇出给所有订阅者。
+     * @param destination 目的地
+     * @param json encode得到的JSON
+     */
+    public void sendToDestination(String destination, byte[] json) {
+        messagingTemplate.send(destination, MessageBuilder.createMessage(json, headers(null)));
+    }
+
+    /**
+     * 把同一个数组发给多个用户的用户目的地，与convertAndSendToUser的解析方式相同；重复的用户名只发送一次。
+     * @param destination 用户目的地，例如 /queue/messages
+     * @param json encode得到的JSON
+     * @param usernames 接收的用户
+     */
+    public void sendToUsers(String destination, byte[] json, String... usernames) {
+        for (int i = 0; i < usernames.length; i++) {
+            String username = usernames[i];
+            if (username == null || isRepeated(usernames, i)) {
+                continue;
+            }
+            messagingTemplate.send(userDestination(username, destination),
+                    MessageBuilder.createMessage(json, headers(null)));
+        }
+    }
+
+    /**
+     * 只发给用户的一个会话（同一用户的其他标签页不会收到）。
+     * @param username 用户名
+     * @param sessionId 会话ID
+     * @param destination 用户目的地，例如 /queue/messages
+     * @param json JSON负载
+     */
+    public void sendToSession(String username, String sessionId, String destination, byte[] json) {
+        messagingTemplate.send(userDestination(username, destination),
+                MessageBuilder.createMessage(json, headers(sessionId)));
+    }
+
+    private static boolean isRepeated(String[] usernames, int index) {
+        for (int i = 0; i < index; i++) {
+            if (usernames[index].equals(usernames[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 可修改的消息头，SimpMessagingTemplate直接在上面设置目的地，不再复制。
+     */
+    private static MessageHeaders headers(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        if (sessionId != null) {
+            accessor.setSessionId(sessionId);
+        }
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+
+    /**
+     * 与SimpMessagingTemplate.convertAndSendToUser一样对用户名中的'/'编码。
+     */
+    private static String userDestination(String username, String destination) {
+        return "/user/" + StringUtils.replace(username, "/", "%2F") + destination;
+    }
+}
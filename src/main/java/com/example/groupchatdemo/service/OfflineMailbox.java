@@ -0,0 +1,379 @@
+package com.example.groupchatdemo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 离线信箱：私聊的接收者不在线时，消息（已序列化的JSON）存入接收者的信箱，而不是静默丢失。
+ * 每个用户的信箱最多保存chat.mailbox.max-per-user条，超过chat.mailbox.ttl-hours的消息过期丢弃；
+ * 所有信箱在内存中的总字节数受chat.mailbox.max-mb限制。超出预算时，配置了chat.mailbox.spill-dir则把消息追加到
+ * 该用户在磁盘上的信箱文件（之后这个用户的新消息都写到文件里，保证顺序），否则拒收，发送者会被告知。
+ * 所有信箱文件的总字节数受chat.mailbox.spill-max-mb限制，磁盘也用完预算后同样拒收。
+ * 用户下次通过 /app/chat.addUser 加入时，所有待收消息作为一帧OFFLINE_MESSAGES发给该会话，
+ * 客户端处理后向 /app/mailbox.ack 确认批次号；会话在确认前断开时，这一批放回信箱，下次加入时重新投递。
+ * 信箱只在本节点上；磁盘上的信箱文件在重启后仍然有效。
+ */
+@Service
+public class OfflineMailbox {
+
+    private static final Logger log = LoggerFactory.getLogger(OfflineMailbox.class);
+
+    // 每条消息在内存中的大致额外开销（对象头、数组头、队列槽位）
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final String SPILL_SUFFIX = ".mbox";
+    // 信箱文件中每条记录在JSON之前的时间戳和长度
+    private static final int SPILL_RECORD_HEADER = Long.BYTES + Integer.BYTES;
+
+    /**
+     * 存入信箱的结果。
+     */
+    public enum Status {
+        ONLINE,   // 接收者在线，应直接投递
+        QUEUED,   // 已存入信箱
+        REJECTED  // 信箱已满或超出内存预算，消息未存入
+    }
+
+    private record Entry(long enqueuedAt, byte[] json) {
+    }
+
+    /**
+     * 一个用户的信箱。内存中的消息总是比磁盘上的旧。
+     */
+    private static final class Mailbox {
+        final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        int spilled; // 磁盘上的消息数
+        long spilledBytes; // 信箱文件的字节数
+
+        int size() {
+            return entries.size() + spilled;
+        }
+    }
+
+    /**
+     * 已发给会话、等待确认的一批消息。
+     */
+    private record Batch(String username, String sessionId, List<Entry> entries) {
+    }
+
+    private final boolean enabled;
+    private final int maxPerUser;
+    private final long ttlMillis;
+    private final long maxBytes;
+    private final Path spillDir; // 为null表示不写磁盘
+    private final long maxSpillBytes;
+    private final MessageFanout messageFanout;
+
+    // 以下状态都由this锁保护
+    private final Map<String, Mailbox> mailboxes = new HashMap<>();
+    private final Map<Long, Batch> inFlight = new HashMap<>();
+    private long bytes;
+    private long spillBytes;
+    private long queued;
+    private long nextBatchId = 1;
+
+    public OfflineMailbox(@Value("${chat.mailbox.enabled:true}") boolean enabled,
+                          @Value("${chat.mailbox.max-per-user:100}") int maxPerUser,
+                          @Value("${chat.mailbox.ttl-hours:72}") long ttlHours,
+                          @Value("${chat.mailbox.max-mb:16}") int maxMb,
+                          @Value("${chat.mailbox.spill-dir:}") String spillDir,
+                          @Value("${chat.mailbox.spill-max-mb:256}") int spillMaxMb,
+                          MessageFanout messageFanout) throws IOException {
+        this.enabled = enabled;
+        this.maxPerUser = maxPerUser;
+        this.ttlMillis = ttlHours * 3600_000L;
+        this.maxBytes = maxMb * 1024L * 1024L;
+        this.spillDir = spillDir == null || spillDir.isBlank() ? null : Path.of(spillDir);
+        this.maxSpillBytes = spillMaxMb * 1024L * 1024L;
+        this.messageFanout = messageFanout;
+        if (enabled && this.spillDir != null) {
+            Files.createDirectories(this.spillDir);
+            loadSpilled();
+        }
+    }
+
+    /**
+     * 接收者不在线时把私聊消息存入信箱。在线检查和存入在同一个锁内完成，
+     * 与deliver互斥，因此消息不会在接收者加入的瞬间被漏掉。
+     * @param username 接收者
+     * @param json 消息的JSON，调用后不能再修改
+     * @param online 接收者当前是否在线
+     * @return 存入结果；信箱关闭时总是返回ONLINE（直接投递，与原来的行为相同）
+     */
+    public synchronized Status offer(String username, byte[] json, BooleanSupplier online) {
+        if (!enabled || online.getAsBoolean()) {
+            return Status.ONLINE;
+        }
+        Mailbox mailbox = mailboxes.computeIfAbsent(username, key -> new Mailbox());
+        if (mailbox.size() >= maxPerUser) {
+            return Status.REJECTED;
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), json);
+        long size = (long) json.length + ENTRY_OVERHEAD;
+        if (mailbox.spilled == 0 && bytes + size <= maxBytes) {
+            mailbox.entries.addLast(entry);
+            bytes += size;
+        } else if (spillDir == null || spillBytes + SPILL_RECORD_HEADER + json.length > maxSpillBytes
+                || !spill(username, entry)) {
+            if (mailbox.size() == 0) {
+                mailboxes.remove(username);
+            }
+            return Status.REJECTED;
+        } else {
+            mailbox.spilled++;
+            mailbox.spilledBytes += SPILL_RECORD_HEADER + json.length;
+            spillBytes += SPILL_RECORD_HEADER + json.length;
+        }
+        queued++;
+        return Status.QUEUED;
+    }
+
+    /**
+     * 把用户信箱中未过期的消息作为一帧OFFLINE_MESSAGES发给刚加入的会话。信箱为空时不发送。
+     * @param username 用户名
+     * @param sessionId 会话ID
+     */
+    public void deliver(String username, String sessionId) {
+        byte[] frame = take(username, sessionId);
+        if (frame != null) {
+            messageFanout.sendToSession(username, sessionId, "/queue/messages", frame);
+        }
+    }
+
+    /**
+     * 取出用户信箱中的全部消息，作为等待确认的一批。
+     * @return OFFLINE_MESSAGES帧；信箱为空时返回null
+     */
+    synchronized byte[] take(String username, String sessionId) {
+        Mailbox mailbox = enabled ? mailboxes.remove(username) : null;
+        if (mailbox == null) {
+            return null;
+        }
+        long expiredBefore = System.currentTimeMillis() - ttlMillis;
+        List<Entry> entries = new ArrayList<>(mailbox.size());
+        for (Entry entry : mailbox.entries) {
+            bytes -= (long) entry.json().length + ENTRY_OVERHEAD;
+            if (entry.enqueuedAt() >= expiredBefore) {
+                entries.add(entry);
+            }
+        }
+        if (mailbox.spilled > 0) {
+            spillBytes -= mailbox.spilledBytes;
+            for (Entry entry : readSpilled(username)) {
+                if (entry.enqueuedAt() >= expiredBefore) {
+                    entries.add(entry);
+                }
+            }
+        }
+        queued -= mailbox.size();
+        if (entries.isEmpty()) {
+            return null;
+        }
+        long batchId = nextBatchId++;
+        inFlight.put(batchId, new Batch(username, sessionId, entries));
+        return batchJson(batchId, entries);
+    }
+
+    /**
+     * 确认一批消息已被客户端处理。
+     * @param username 确认者，只能确认发给自己的批次
+     * @param batchId 批次号
+     * @return 是否确认了一批消息
+     */
+    public synchronized boolean acknowledge(String username, long batchId) {
+        Batch batch = inFlight.get(batchId);
+        if (batch == null || !batch.username().equals(username)) {
+            return false;
+        }
+        inFlight.remove(batchId);
+        return true;
+    }
+
+    /**
+     * 会话断开时，把发给它但还没有确认的批次放回信箱的最前面，下次加入时重新投递。
+     * @param sessionId 会话ID
+     */
+    public synchronized void sessionClosed(String sessionId) {
+        if (inFlight.isEmpty()) {
+            return;
+        }
+        for (Iterator<Batch> iterator = inFlight.values().iterator(); iterator.hasNext(); ) {
+            Batch batch = iterator.next();
+            if (!batch.sessionId().equals(sessionId)) {
+                continue;
+            }
+            iterator.remove();
+            Mailbox mailbox = mailboxes.computeIfAbsent(batch.username(), key -> new Mailbox());
+            // 放回内存，即使暂时超出预算；这批消息比信箱中已有的都旧
+            for (int i = batch.entries().size() - 1; i >= 0; i--) {
+                Entry entry = batch.entries().get(i);
+                mailbox.entries.addFirst(entry);
+                bytes += (long) entry.json().length + ENTRY_OVERHEAD;
+            }
+            queued += batch.entries().size();
+        }
+    }
+
+    /**
+     * 定时丢弃内存中过期的消息（磁盘上的过期消息在投递时丢弃）。
+     */
+    @Scheduled(fixedDelayString = "${chat.mailbox.sweep-interval-ms:60000}")
+    public synchronized void expire() {
+        long expiredBefore = System.currentTimeMillis() - ttlMillis;
+        for (Iterator<Mailbox> iterator = mailboxes.values().iterator(); iterator.hasNext(); ) {
+            Mailbox mailbox = iterator.next();
+            while (!mailbox.entries.isEmpty() && mailbox.entries.peekFirst().enqueuedAt() < expiredBefore) {
+                Entry entry = mailbox.entries.removeFirst();
+                bytes -= (long) entry.json().length + ENTRY_OVERHEAD;
+                queued--;
+            }
+            if (mailbox.size() == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return 所有信箱中等待投递的消息数（包括磁盘上的）
+     */
+    public synchronized long queuedCount() {
+        return queued;
+    }
+
+    /**
+     * @return 信箱占用的内存字节数（估计值）
+     */
+    public synchronized long memoryBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return 磁盘上的信箱文件的总字节数
+     */
+    public synchronized long spillBytes() {
+        return spillBytes;
+    }
+
+    /**
+     * 拼接OFFLINE_MESSAGES帧，消息的JSON原样嵌入，不再序列化。
+     */
+    private static byte[] batchJson(long batchId, List<Entry> entries) {
+        int size = 64;
+        for (Entry entry : entries) {
+            size += entry.json().length + 1;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        out.writeBytes(("{\"command\":\"OFFLINE_MESSAGES\",\"batchId\":" + batchId + ",\"messages\":[")
+                .getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes(entries.get(i).json());
+        }
+        out.writeBytes("]}".getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    private Path spillFile(String username) {
+        return spillDir.resolve(HexFormat.of().formatHex(username.getBytes(StandardCharsets.UTF_8)) + SPILL_SUFFIX);
+    }
+
+    private boolean spill(String username, Entry entry) {
+        try (OutputStream file = Files.newOutputStream(spillFile(username),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeLong(entry.enqueuedAt());
+            out.writeInt(entry.json().length);
+            out.write(entry.json());
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not spill an offline message for {}: {}", username, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 读出并删除用户在磁盘上的信箱文件。文件末尾不完整的记录（例如写入时宕机）被忽略。
+     */
+    private List<Entry> readSpilled(String username) {
+        Path file = spillFile(username);
+        List<Entry> entries = readEntries(file);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete {}, its messages may be delivered again: {}", file, e.getMessage());
+        }
+        return entries;
+    }
+
+    private static List<Entry> readEntries(Path file) {
+        List<Entry> entries = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+            while (true) {
+                long enqueuedAt = data.readLong();
+                byte[] json = new byte[data.readInt()];
+                data.readFully(json);
+                entries.add(new Entry(enqueuedAt, json));
+            }
+        } catch (EOFException e) {
+            return entries;
+        } catch (IOException e) {
+            log.warn("Could not read offline messages from {}: {}", file, e.getMessage());
+            return entries;
+        }
+    }
+
+    /**
+     * 启动时登记磁盘上已有的信箱文件。
+     */
+    private void loadSpilled() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spillDir, "*" + SPILL_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String username = new String(HexFormat.of().parseHex(name.substring(0, name.length() - SPILL_SUFFIX.length())),
+                        StandardCharsets.UTF_8);
+                List<Entry> entries = readEntries(file);
+                if (!entries.isEmpty()) {
+                    Mailbox mailbox = mailboxes.computeIfAbsent(username, key -> new Mailbox());
+                    mailbox.spilled = entries.size();
+                    // 按完整的记录计算，文件末尾不完整的记录在下次读出时一起删除
+                    for (Entry entry : entries) {
+                        mailbox.spilledBytes += SPILL_RECORD_HEADER + entry.json().length;
+                    }
+                    spillBytes += mailbox.spilledBytes;
+                    queued += entries.size();
+                }
+            }
+        }
+        if (queued > 0) {
+            log.info("Loaded {} offline messages from {}", queued, spillDir);
+        }
+    }
+}
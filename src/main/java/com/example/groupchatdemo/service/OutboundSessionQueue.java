@@ -0,0 +1,473 @@
+package com.example.groupchatdemo.service;
+
+import com.example.groupchatdemo.interceptor.WireCodecInterceptor;
+import com.example.groupchatdemo.model.BackpressurePolicy;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
+
+/**
+ * 单个WebSocket会话的出站队列。
+ * sendMessage只把帧放入队列并立即返回，真正的写入由写线程逐帧完成，
+ * 因此一个网络很差的客户端最多占用一个写线程，不会阻塞出站通道的线程。写线程是共享的固定线程池，
+ * 每次最多连续写出DRAIN_BATCH个帧就把写入任务重新排到队尾，一个消息很多的会话不会长期占住线程。
+ * 每次入队时检查队列的字节数和等待时间，超出预算时按帧所属房间的策略丢弃或断开；
+ * 即使执行了丢弃策略，队列仍超出预算的HARD_LIMIT_FACTOR倍时直接断开。
+ * 瞬时信号的汇总帧（/topic/ephemeral/...）在任何策略之前最先丢弃，丢弃后回到预算以内时不再执行房间的策略。
+ * 定义了二进制编码字典条目的帧（chat-dict-def头）不会被丢弃，否则客户端的字典会与服务器不一致。
+ * 同时记录会话收发的帧数、字节数和最后一次收发的时间，供SessionInspector按需查看。
+ */
+final class OutboundSessionQueue extends WebSocketSessionDecorator {
+
+    static final int HARD_LIMIT_FACTOR = 4;
+    static final int DRAIN_BATCH = 64;
+
+    // 每个会话的每个出站帧都要查找这些头，文本帧直接在String上扫描，二进制帧在缓冲区上扫描，都不复制帧
+    private static final String MESSAGE_COMMAND = "MESSAGE";
+    private static final String CONNECTED_COMMAND = "CONNECTED";
+    private static final String DESTINATION_KEY = "destination:";
+    private static final String USER_NAME_KEY = "user-name:";
+    private static final byte[] MESSAGE_COMMAND_BYTES = MESSAGE_COMMAND.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONNECTED_COMMAND_BYTES = CONNECTED_COMMAND.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DESTINATION_KEY_BYTES = DESTINATION_KEY.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] USER_NAME_KEY_BYTES = USER_NAME_KEY.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DICTIONARY_DEFINITION_KEY_BYTES =
+            (WireCodecInterceptor.DICTIONARY_DEFINITION_HEADER + ":").getBytes(StandardCharsets.US_ASCII);
+
+    private final BackpressureService service;
+    private final Executor writer;
+
+    // 以下字段由this保护
+    private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+    private long queuedBytes;
+    private boolean draining;
+    private boolean closing;
+    private CloseStatus closeAfterDrain;
+    private long droppedFrames;
+    private BackpressureService.Action lastAction;
+
+    private volatile long writeStartedNanos; // 0表示当前没有正在进行的写入
+    private volatile String username;
+
+    // 流量统计。入站的由容器按顺序投递消息的线程更新，出站的由当前的写线程更新，
+    // 每组字段同一时间只有一个线程写入，所以只用volatile，不需要原子操作
+    private final long connectedAtMillis = System.currentTimeMillis();
+    private volatile long framesIn;
+    private volatile long bytesIn;
+    private volatile long lastReceivedMillis;
+    // 最后一次收到心跳之外的帧的时间，用于回收空闲的会话（见HeartbeatService）
+    private volatile long lastApplicationMillis;
+    private volatile long framesOut;
+    private volatile long bytesOut;
+    private volatile long lastSentMillis;
+
+    OutboundSessionQueue(WebSocketSession delegate, BackpressureService service, Executor writer) {
+        super(delegate);
+        this.service = service;
+        this.writer = writer;
+    }
+
+    /**
+     * 一个待发送的帧。
+     * @param room 帧所属的房间，不是房间消息时为null
+     * @param nonEssential 是否可以在拥塞时丢弃
+     * @param pinned 是否定义了字典条目，任何丢弃策略都不能丢弃
+     * @param ephemeral 是否是瞬时信号，超出预算时最先丢弃
+     */
+    private record Frame(WebSocketMessage<?> message, int size, long enqueuedNanos, String room, boolean nonEssential,
+                         boolean pinned, boolean ephemeral) {
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        String destination = null;
+        boolean pinned = false;
+        if (message instanceof TextMessage textMessage) {
+            String payload = textMessage.getPayload();
+            if (payload.startsWith(MESSAGE_COMMAND)) {
+                destination = headerValue(payload, DESTINATION_KEY);
+            } else if (username == null && payload.startsWith(CONNECTED_COMMAND)) {
+                username = headerValue(payload, USER_NAME_KEY);
+            }
+        } else if (message instanceof BinaryMessage binaryMessage) {
+            ByteBuffer payload = binaryMessage.getPayload();
+            if (startsWith(payload, MESSAGE_COMMAND_BYTES)) {
+                destination = headerValue(payload, DESTINATION_KEY_BYTES);
+                pinned = destination != null && headerValue(payload, DICTIONARY_DEFINITION_KEY_BYTES) != null;
+            } else if (username == null && startsWith(payload, CONNECTED_COMMAND_BYTES)) {
+                username = headerValue(payload, USER_NAME_KEY_BYTES);
+            }
+        }
+        boolean heartbeat = message.getPayloadLength() <= 2;
+        boolean ephemeral = destination != null && destination.startsWith(EphemeralService.TOPIC_PREFIX);
+        Frame frame = new Frame(message, message.getPayloadLength(), System.nanoTime(),
+                destination != null ? RoomService.roomIdOf(destination) : null,
+                !pinned && (heartbeat || ephemeral || (destination != null && service.isNonEssential(destination))),
+                pinned, ephemeral);
+
+        BackpressureService.Action action;
+        boolean startDrain = false;
+        synchronized (this) {
+            if (closing) {
+                return;
+            }
+            queue.addLast(frame);
+            queuedBytes += frame.size();
+            action = enforceBudget(frame);
+            if (action != BackpressureService.Action.DISCONNECT && !draining) {
+                draining = true;
+                startDrain = true;
+            }
+        }
+        if (action == BackpressureService.Action.DISCONNECT) {
+            close(CloseStatus.SESSION_NOT_RELIABLE);
+        } else if (startDrain) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * 把写入任务交给写线程池。线程池的队列已满时这个会话的帧无法写出，直接断开，客户端重连后通过历史补发恢复。
+     */
+    private void scheduleDrain() {
+        try {
+            writer.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                draining = false;
+            }
+            service.recordWriterRejected(this);
+            try {
+                close(CloseStatus.SERVICE_OVERLOAD);
+            } catch (IOException closeFailure) {
+                // 连接已不可用
+            }
+        }
+    }
+
+    /**
+     * 超出预算时先丢弃瞬时信号，仍超出时再执行帧所属房间的策略。在锁内调用。
+     * @return 执行的动作；没有超出预算时返回null
+     */
+    private BackpressureService.Action enforceBudget(Frame frame) {
+        long now = System.nanoTime();
+        if (!overBudget(now, 1)) {
+            return null;
+        }
+        BackpressureService.Action action = null;
+        if (dropQueued(Frame::ephemeral) > 0) {
+            action = BackpressureService.Action.DROP_EPHEMERAL;
+        }
+        BackpressureService.Action policyAction = overBudget(now, 1) ? applyPolicy(frame, now) : null;
+        if (policyAction != null) {
+            action = policyAction;
+        }
+        if (action != BackpressureService.Action.DISCONNECT && overBudget(now, HARD_LIMIT_FACTOR)) {
+            action = BackpressureService.Action.HARD_LIMIT;
+        }
+        if (action != null) {
+            lastAction = action;
+            service.recordAction(this, action);
+            if (action == BackpressureService.Action.HARD_LIMIT) {
+                action = BackpressureService.Action.DISCONNECT;
+            }
+        }
+        return action;
+    }
+
+    /**
+     * 执行帧所属房间的策略。在锁内调用。
+     * @return 执行的动作；没有丢弃任何帧时返回null
+     */
+    private BackpressureService.Action applyPolicy(Frame frame, long now) {
+        BackpressurePolicy policy = service.policyFor(frame.room());
+        return switch (policy) {
+            case DROP_OLDEST -> {
+                int dropped = 0;
+                // 从最早的帧开始丢弃，跳过定义了字典条目的帧；刚入队的帧保留
+                for (Iterator<Frame> it = queue.iterator(); it.hasNext() && queue.size() > 1; ) {
+                    Frame queued = it.next();
+                    if (queued == frame || (queuedBytes <= service.maxBufferBytes()
+                            && now - queued.enqueuedNanos() <= service.sendTimeLimitNanos())) {
+                        break;
+                    }
+                    if (!queued.pinned()) {
+                        queuedBytes -= queued.size();
+                        it.remove();
+                        dropped++;
+                    }
+                }
+                droppedFrames += dropped;
+                yield dropped > 0 ? BackpressureService.Action.DROP_OLDEST : null;
+            }
+            case DROP_NON_ESSENTIAL -> dropQueued(Frame::nonEssential) > 0
+                    ? BackpressureService.Action.DROP_NON_ESSENTIAL : null;
+            case DISCONNECT -> BackpressureService.Action.DISCONNECT;
+        };
+    }
+
+    /**
+     * 丢弃队列中所有满足条件的帧。在锁内调用。
+     * @return 丢弃的帧数
+     */
+    private int dropQueued(Predicate<Frame> droppable) {
+        int dropped = 0;
+        for (Iterator<Frame> it = queue.iterator(); it.hasNext(); ) {
+            Frame queued = it.next();
+            if (droppable.test(queued)) {
+                queuedBytes -= queued.size();
+                it.remove();
+                dropped++;
+            }
+        }
+        droppedFrames += dropped;
+        return dropped;
+    }
+
+    private boolean overBudget(long now, int factor) {
+        long timeLimit = service.sendTimeLimitNanos() * factor;
+        long writeStarted = writeStartedNanos;
+        return queuedBytes > service.maxBufferBytes() * factor
+                || (writeStarted != 0 && now - writeStarted > timeLimit)
+                || (!queue.isEmpty() && now - queue.peekFirst().enqueuedNanos() > timeLimit);
+    }
+
+    /**
+     * 写线程：按顺序写出队列中的帧，直到队列为空，或者写满一批后让出线程。
+     */
+    private void drain() {
+        for (int written = 0; ; written++) {
+            Frame frame = null;
+            boolean yield = false;
+            CloseStatus deferredClose = null;
+            synchronized (this) {
+                if (!closing && written >= DRAIN_BATCH && !queue.isEmpty()) {
+                    yield = true; // draining保持为true，其他线程入队时不会再提交写入任务
+                } else {
+                    frame = closing ? null : queue.pollFirst();
+                    if (frame == null) {
+                        draining = false;
+                        deferredClose = closing ? null : closeAfterDrain;
+                    } else {
+                        queuedBytes -= frame.size();
+                        writeStartedNanos = System.nanoTime();
+                    }
+                }
+            }
+            if (yield) {
+                scheduleDrain();
+                return;
+            }
+            if (frame == null) {
+                if (deferredClose != null) {
+                    // 队列中的帧（包括最后的ERROR帧）都已写出，执行推迟的关闭
+                    try {
+                        close(deferredClose);
+                    } catch (IOException e) {
+                        // 连接已不可用
+                    }
+                }
+                return;
+            }
+            try {
+                getDelegate().sendMessage(frame.message());
+                framesOut++;
+                bytesOut += frame.size();
+                lastSentMillis = System.currentTimeMillis();
+            } catch (IOException | RuntimeException e) {
+                // 写入失败说明连接已不可用，放弃剩余的帧，由容器关闭会话
+                synchronized (this) {
+                    closing = true;
+                    queue.clear();
+                    queuedBytes = 0;
+                    draining = false;
+                }
+                return;
+            } finally {
+                writeStartedNanos = 0;
+            }
+        }
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        synchronized (this) {
+            // STOMP处理器发送ERROR帧后立即关闭会话，此时ERROR帧可能还在队列里；等写线程写完队列再关闭，
+            // 客户端才能看到错误原因。其他原因的关闭（包括慢消费者）立即执行并丢弃队列
+            if (CloseStatus.PROTOCOL_ERROR.equals(status) && draining && !closing) {
+                closeAfterDrain = status;
+                return;
+            }
+            closing = true;
+            queue.clear();
+            queuedBytes = 0;
+        }
+        super.close(status);
+    }
+
+    /**
+     * 记录一个收到的帧（包括心跳）。由BackpressureService的处理器装饰器在交给STOMP处理器之前调用。
+     * @param size 帧的字节数（文本帧按字符计），不超过2的是心跳（换行或回车换行）
+     */
+    void recordInbound(int size) {
+        long now = System.currentTimeMillis();
+        framesIn++;
+        bytesIn += size;
+        lastReceivedMillis = now;
+        if (size > 2) {
+            lastApplicationMillis = now;
+        }
+    }
+
+    String username() {
+        return username;
+    }
+
+    long connectedAtMillis() {
+        return connectedAtMillis;
+    }
+
+    long framesIn() {
+        return framesIn;
+    }
+
+    long bytesIn() {
+        return bytesIn;
+    }
+
+    long lastReceivedMillis() {
+        return lastReceivedMillis;
+    }
+
+    long lastApplicationMillis() {
+        return lastApplicationMillis;
+    }
+
+    long framesOut() {
+        return framesOut;
+    }
+
+    long bytesOut() {
+        return bytesOut;
+    }
+
+    long lastSentMillis() {
+        return lastSentMillis;
+    }
+
+    synchronized long queuedBytes() {
+        return queuedBytes;
+    }
+
+    synchronized int queuedFrames() {
+        return queue.size();
+    }
+
+    synchronized long droppedFrames() {
+        return droppedFrames;
+    }
+
+    synchronized BackpressureService.Action lastAction() {
+        return lastAction;
+    }
+
+    /**
+     * @return 当前写入已经持续的毫秒数，没有正在进行的写入时为0
+     */
+    long stalledMillis() {
+        long writeStarted = writeStartedNanos;
+        return writeStarted == 0 ? 0 : (System.nanoTime() - writeStarted) / 1_000_000;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] prefix) {
+        if (buffer.remaining() < prefix.length) {
+            return false;
+        }
+        int start = buffer.position();
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在文本STOMP帧的头部中查找一个头的值，只扫描到头部结束的空行为止。
+     * @param key 头的名称加冒号
+     * @return 头的值；不存在时返回null
+     */
+    static String headerValue(String frame, String key) {
+        int length = frame.length();
+        // 跳过命令行
+        int lineStart = frame.indexOf('\n') + 1;
+        while (lineStart > 0 && lineStart < length) {
+            int lineEnd = frame.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = length;
+            }
+            int contentEnd = lineEnd > lineStart && frame.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            if (contentEnd == lineStart) {
+                return null; // 空行，头部结束
+            }
+            if (contentEnd - lineStart >= key.length() && frame.startsWith(key, lineStart)) {
+                return frame.substring(lineStart + key.length(), contentEnd);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return null;
+    }
+
+    /**
+     * 在二进制STOMP帧的头部中查找一个头的值，只扫描到头部结束的空行为止，不改变缓冲区的位置。
+     * @param key 头的名称加冒号（ASCII）
+     * @return 头的值；不存在时返回null
+     */
+    static String headerValue(ByteBuffer frame, byte[] key) {
+        int limit = frame.limit();
+        int lineStart = frame.position();
+        // 跳过命令行
+        while (lineStart < limit && frame.get(lineStart) != '\n') {
+            lineStart++;
+        }
+        lineStart++;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && frame.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd > lineStart && frame.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            if (contentEnd == lineStart) {
+                return null; // 空行，头部结束
+            }
+            if (contentEnd - lineStart >= key.length && matches(frame, lineStart, key)) {
+                byte[] value = new byte[contentEnd - lineStart - key.length];
+                frame.get(lineStart + key.length, value);
+                return new String(value, StandardCharsets.UTF_8);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return null;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int offset, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
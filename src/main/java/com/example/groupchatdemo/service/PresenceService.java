@@ -0,0 +1,177 @@
+package com.example.groupchatdemo.service;
+
+import com.example.groupchatdemo.model.PresenceUpdate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在线状态服务，维护带版本号的在线用户集合。
+ * 每次用户上线或离线都会使版本号加一；新加入的用户只收到一次完整快照，
+ * 之后所有客户端只接收JOIN/LEAVE增量。同一合并窗口内的变化会被合并成一帧发送，
+ * 这样加入风暴时每个事件的开销是O(1)，而不是每次都向所有人广播完整的用户列表。
+ * 集群模式下，其他节点的会话也记录在这里（会话ID带节点前缀），因此快照和增量覆盖整个集群；
+ * 本节点会话的变化通过LocalListener通知集群层，远程会话的变化不会再通知出去。
+ * 在线用户保存在按用户名排序的UserDirectory中，分页列表和前缀搜索直接读取它，不需要这个锁。
+ */
+@Service
+public class PresenceService {
+
+    // 在线状态增量广播的主题
+    public static final String PRESENCE_TOPIC = "/topic/presence";
+
+    /**
+     * 本节点会话加入或离开时的回调，在this锁内调用，不能阻塞。
+     */
+    public interface LocalListener {
+        void sessionJoined(String username, String sessionId);
+
+        void sessionLeft(String username, String sessionId);
+    }
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private volatile LocalListener localListener;
+
+    // 以下状态的修改都由this锁保护，每个操作只做O(log N)的工作（快照除外）
+    // 用户名 -> 已加入聊天室的会话ID集合（同一用户可能同时打开多个标签页），读取不需要锁
+    private final UserDirectory directory = new UserDirectory();
+    // 当前窗口内状态发生变化的用户 -> 窗口开始时该用户是否在线
+    private final Map<String, Boolean> pendingChanges = new LinkedHashMap<>();
+    private long version;
+    private long pendingFromVersion;
+
+    public PresenceService(SimpMessagingTemplate messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * 记录一个会话加入聊天室。用户的第一个会话会产生一次JOIN变化。
+     * @param username 用户名
+     * @param sessionId 会话ID
+     * @return 包含该用户自身在内的完整快照，用于私发给新加入的用户
+     */
+    public synchronized PresenceUpdate userJoined(String username, String sessionId) {
+        if (addSession(username, sessionId) && localListener != null) {
+            localListener.sessionJoined(username, sessionId);
+        }
+        return snapshot();
+    }
+
+    /**
+     * 记录一个会话离开。只有用户的最后一个会话断开时才会产生LEAVE变化；
+     * 从未加入过聊天室的会话会被忽略。
+     * @param username 用户名
+     * @param sessionId 会话ID
+     */
+    public synchronized void userLeft(String username, String sessionId) {
+        if (removeSession(username, sessionId) && localListener != null) {
+            localListener.sessionLeft(username, sessionId);
+        }
+    }
+
+    /**
+     * 记录集群中其他节点上的一个会话加入，不通知LocalListener。
+     * @param username 用户名
+     * @param sessionKey 带节点前缀的会话ID，与本节点的会话ID不会冲突
+     */
+    public synchronized void remoteJoined(String username, String sessionKey) {
+        addSession(username, sessionKey);
+    }
+
+    /**
+     * 记录集群中其他节点上的一个会话离开，不通知LocalListener。
+     * @param username 用户名
+     * @param sessionKey 带节点前缀的会话ID
+     */
+    public synchronized void remoteLeft(String username, String sessionKey) {
+        removeSession(username, sessionKey);
+    }
+
+    /**
+     * @param listener 本节点会话变化的回调，集群层在启动时设置
+     */
+    public void setLocalListener(LocalListener listener) {
+        this.localListener = listener;
+    }
+
+    /**
+     * @return 在线用户索引，用于分页列表和前缀搜索（只读）
+     */
+    public UserDirectory directory() {
+        return directory;
+    }
+
+    /**
+     * 生成当前在线用户的完整快照，供新加入的用户或检测到版本缺口的客户端使用。
+     * @return 快照帧
+     */
+    public synchronized PresenceUpdate snapshot() {
+        return PresenceUpdate.snapshot(version, directory.usernames());
+    }
+
+    /**
+     * 定时把合并窗口内积累的变化作为一帧增量广播出去。
+     * 窗口内先上线又离线（或相反）的用户不会出现在增量里。
+     */
+    @Scheduled(fixedDelayString = "${chat.presence.coalesce-window-ms:50}")
+    public void flush() {
+        PresenceUpdate delta;
+        synchronized (this) {
+            if (pendingChanges.isEmpty()) {
+                return;
+            }
+            List<String> joined = new ArrayList<>();
+            List<String> left = new ArrayList<>();
+            pendingChanges.forEach((username, wasOnline) -> {
+                boolean online = directory.contains(username);
+                if (online && !wasOnline) {
+                    joined.add(username);
+                } else if (!online && wasOnline) {
+                    left.add(username);
+                }
+            });
+            pendingChanges.clear();
+            delta = PresenceUpdate.delta(pendingFromVersion, version, joined, left);
+        }
+        // 即使变化全部相互抵消也要发送，保证客户端的版本号连续
+        messagingTemplate.convertAndSend(PRESENCE_TOPIC, delta);
+    }
+
+    /**
+     * @return 会话是否是新加入的
+     */
+    private boolean addSession(String username, String sessionId) {
+        boolean wasOnline = directory.contains(username);
+        boolean added = directory.add(username, sessionId);
+        if (!wasOnline) {
+            recordChange(username, false);
+        }
+        return added;
+    }
+
+    /**
+     * @return 会话之前是否存在
+     */
+    private boolean removeSession(String username, String sessionId) {
+        if (!directory.remove(username, sessionId)) {
+            return false;
+        }
+        if (!directory.contains(username)) {
+            recordChange(username, true);
+        }
+        return true;
+    }
+
+    private void recordChange(String username, boolean wasOnline) {
+        version++;
+        if (pendingChanges.isEmpty()) {
+            pendingFromVersion = version;
+        }
+        pendingChanges.putIfAbsent(username, wasOnline);
+    }
+}
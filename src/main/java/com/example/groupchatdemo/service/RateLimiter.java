@@ -0,0 +1,240 @@
+package com.example.groupchatdemo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * 按会话和按用户的令牌桶限流，规则按目的地前缀匹配。
+ * 每个令牌桶只有一个long：下一个令牌的“理论到达时间”（GCRA算法，与令牌桶等价）。
+ * 取令牌是一次读和一次CAS，不加锁；同一会话（或用户）的全部规则放在一个AtomicLongArray里。
+ * 已存在的会话取令牌时不分配对象，只有会话的第一帧创建它的数组。
+ * 桶满（理论到达时间不晚于当前时刻）时删除它与新建一个没有区别，因此空闲的桶可以随时回收。
+ */
+public final class RateLimiter {
+
+    /**
+     * 限流结果。被拒绝时区分是会话的桶还是用户的桶。
+     */
+    public enum Verdict { ALLOWED, SESSION_LIMITED, USER_LIMITED }
+
+    /**
+     * 一条规则：目的地以prefix开头的帧，每秒补充perSecond个令牌，桶中最多burst个。
+     * @param prefix 目的地前缀
+     * @param perSecond 每秒补充的令牌数
+     * @param burst 桶容量，即允许的突发帧数
+     */
+    public record Rule(String prefix, double perSecond, int burst) {
+
+        public Rule {
+            if (perSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("Invalid rate limit rule for " + prefix + ": " + perSecond + "/" + burst);
+            }
+        }
+
+        /**
+         * 解析逗号分隔的规则，每条的格式为 前缀=每秒令牌数/桶容量，例如 /app/chat.sendMessage=5/20。
+         * @param spec 规则文本，为空时返回空列表
+         * @return 规则列表，顺序与文本相同
+         * @throws IllegalArgumentException 格式错误
+         */
+        public static List<Rule> parse(String spec) {
+            List<Rule> rules = new ArrayList<>();
+            if (spec == null || spec.isBlank()) {
+                return rules;
+            }
+            for (String item : spec.split(",")) {
+                String text = item.trim();
+                int eq = text.lastIndexOf('=');
+                int slash = text.lastIndexOf('/');
+                if (eq <= 0 || slash < eq) {
+                    throw new IllegalArgumentException("Invalid rate limit rule: " + text + ", expected prefix=rate/burst");
+                }
+                try {
+                    rules.add(new Rule(text.substring(0, eq), Double.parseDouble(text.substring(eq + 1, slash)),
+                            Integer.parseInt(text.substring(slash + 1))));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid rate limit rule: " + text, e);
+                }
+            }
+            return rules;
+        }
+    }
+
+    // 两次提示之间的最短间隔
+    private static final long NOTICE_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final String[] sessionPrefixes;
+    private final long[] sessionIntervals;
+    private final long[] sessionTolerances;
+    private final String[] userPrefixes;
+    private final long[] userIntervals;
+    private final long[] userTolerances;
+    private final LongSupplier clock;
+    // 会话的数组在规则之后多一个槽，记录上一次提示的时刻
+    private final Map<String, AtomicLongArray> sessions = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLongArray> users = new ConcurrentHashMap<>();
+
+    public RateLimiter(List<Rule> sessionRules, List<Rule> userRules) {
+        this(sessionRules, userRules, System::nanoTime);
+    }
+
+    /**
+     * @param sessionRules 每个会话的规则，按顺序取第一条匹配的
+     * @param userRules 每个用户（全部会话合计）的规则，按顺序取第一条匹配的
+     * @param clock 纳秒时钟
+     */
+    public RateLimiter(List<Rule> sessionRules, List<Rule> userRules, LongSupplier clock) {
+        this.sessionPrefixes = prefixes(sessionRules);
+        this.sessionIntervals = intervals(sessionRules);
+        this.sessionTolerances = tolerances(sessionRules);
+        this.userPrefixes = prefixes(userRules);
+        this.userIntervals = intervals(userRules);
+        this.userTolerances = tolerances(userRules);
+        this.clock = clock;
+    }
+
+    /**
+     * 为一帧取令牌：先取会话的桶，再取用户的桶；用户的桶拒绝时退还会话的令牌。
+     * 没有匹配规则的目的地不限流。
+     * @param sessionId 会话ID
+     * @param username 用户名，可以为null（只按会话限流）
+     * @param destination 帧的目的地
+     * @return 限流结果
+     */
+    public Verdict tryAcquire(String sessionId, String username, String destination) {
+        if (destination == null) {
+            return Verdict.ALLOWED;
+        }
+        long now = clock.getAsLong();
+        int sessionRule = match(sessionPrefixes, destination);
+        AtomicLongArray sessionState = null;
+        if (sessionRule >= 0 && sessionId != null) {
+            sessionState = state(sessions, sessionId, sessionPrefixes.length + 1, now);
+            if (!acquire(sessionState, sessionRule, sessionIntervals[sessionRule], sessionTolerances[sessionRule], now)) {
+                return Verdict.SESSION_LIMITED;
+            }
+        }
+        int userRule = match(userPrefixes, destination);
+        if (userRule >= 0 && username != null) {
+            AtomicLongArray userState = state(users, username, userPrefixes.length, now);
+            if (!acquire(userState, userRule, userIntervals[userRule], userTolerances[userRule], now)) {
+                if (sessionState != null) {
+                    sessionState.addAndGet(sessionRule, -sessionIntervals[sessionRule]);
+                }
+                return Verdict.USER_LIMITED;
+            }
+        }
+        return Verdict.ALLOWED;
+    }
+
+    /**
+     * 被拒绝的帧是否需要提示客户端：每个会话每秒最多一次，避免限流提示本身被放大。
+     * @param sessionId 会话ID
+     * @return true表示调用者应当发送这次提示
+     */
+    public boolean claimNotice(String sessionId) {
+        long now = clock.getAsLong();
+        AtomicLongArray state = state(sessions, sessionId, sessionPrefixes.length + 1, now);
+        int slot = sessionPrefixes.length;
+        long last = state.get(slot);
+        return now - last >= NOTICE_INTERVAL_NANOS && state.compareAndSet(slot, last, now);
+    }
+
+    /**
+     * 会话断开时删除它的桶。用户的桶在空闲后由evictIdle回收，因为用户可能还有其他会话。
+     * @param sessionId 会话ID
+     */
+    public void sessionClosed(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    /**
+     * 删除已经补满的桶（删除后再新建一个满桶，结果相同），回收断开后又收到迟到帧的会话和已离线用户的状态。
+     * @return 删除的桶数
+     */
+    public int evictIdle() {
+        long now = clock.getAsLong();
+        int evicted = 0;
+        for (Map.Entry<String, AtomicLongArray> entry : sessions.entrySet()) {
+            if (isFull(entry.getValue(), sessionPrefixes.length, now) && sessions.remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        for (Map.Entry<String, AtomicLongArray> entry : users.entrySet()) {
+            if (isFull(entry.getValue(), userPrefixes.length, now) && users.remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return 当前保存的会话桶和用户桶的数量
+     */
+    public int trackedCount() {
+        return sessions.size() + users.size();
+    }
+
+    private static boolean acquire(AtomicLongArray state, int slot, long interval, long tolerance, long now) {
+        while (true) {
+            long tat = state.get(slot);
+            long start = tat - now < 0 ? now : tat;
+            long next = start + interval;
+            if (next - now > tolerance) {
+                return false;
+            }
+            if (state.compareAndSet(slot, tat, next)) {
+                return true;
+            }
+        }
+    }
+
+    private static boolean isFull(AtomicLongArray state, int rules, long now) {
+        for (int i = 0; i < rules; i++) {
+            if (state.get(i) - now > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static AtomicLongArray state(Map<String, AtomicLongArray> states, String key, int slots, long now) {
+        AtomicLongArray state = states.get(key);
+        if (state != null) {
+            return state;
+        }
+        return states.computeIfAbsent(key, k -> {
+            // 早于当前时刻的理论到达时间都表示满桶；提示的槽同样早一个间隔，第一次被拒绝时就可以提示
+            AtomicLongArray created = new AtomicLongArray(slots);
+            for (int i = 0; i < slots; i++) {
+                created.set(i, now - NOTICE_INTERVAL_NANOS);
+            }
+            return created;
+        });
+    }
+
+    private static int match(String[] prefixes, String destination) {
+        for (int i = 0; i < prefixes.length; i++) {
+            if (destination.startsWith(prefixes[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String[] prefixes(List<Rule> rules) {
+        return rules.stream().map(Rule::prefix).toArray(String[]::new);
+    }
+
+    private static long[] intervals(List<Rule> rules) {
+        return rules.stream().mapToLong(rule -> (long) (1_000_000_000L / rule.perSecond())).toArray();
+    }
+
+    private static long[] tolerances(List<Rule> rules) {
+        return rules.stream().mapToLong(rule -> (long) (1_000_000_000L / rule.perSecond()) * rule.burst()).toArray();
+    }
+}
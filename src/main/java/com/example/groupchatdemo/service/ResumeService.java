@@ -0,0 +1,275 @@
+package com.example.groupchatdemo.service;
+
+import com.example.groupchatdemo.model.Conversation;
+import com.example.groupchatdemo.store.MessageStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.InterceptableChannel;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 公共聊天室和房间的断线续传。
+ * 客户端重连后订阅 /topic/public 或房间主题时带上原生头 resume-from（已经收到的最大序号），
+ * 代理登记订阅之后，本服务把该序号之后的消息作为一个RESUME帧私发给这个会话（见MessageStore.replay），
+ * 之后的实时消息由代理照常投递，客户端按序号去重。带resume-from的订阅不再补发最近历史。
+ * 每个订阅有一个确认游标：客户端定期发送 /app/chat.ack 报告收到的最大序号，
+ * 定时任务把每个会话的重放窗口裁剪到所有游标的最小值，超过保留时间的消息也被丢弃。
+ * 断开的会话的游标再保留一个保留时间，让它有机会重连续传。
+ * 私聊的断线期间由离线信箱负责；集群模式下不分配序号，本服务不生效。
+ */
+@Service
+public class ResumeService implements SmartLifecycle, ExecutorChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumeService.class);
+
+    /**
+     * 订阅帧上的原生头，值为客户端已经收到的最大序号。
+     */
+    public static final String RESUME_HEADER = "resume-from";
+    /**
+     * 会话属性：这个会话续传了公共聊天室，加入时不再补发公共聊天室最近的历史。
+     */
+    public static final String PUBLIC_RESUMED_ATTRIBUTE = "resumedPublic";
+
+    private static final String PUBLIC_TOPIC = "/topic/public";
+
+    // 一个订阅的确认游标。断开后expiresAt为游标失效的时刻，连接期间为0
+    private static final class Cursor {
+        volatile long acknowledged;
+        volatile long expiresAt;
+
+        Cursor(long acknowledged) {
+            this.acknowledged = acknowledged;
+        }
+    }
+
+    private final boolean enabled;
+    private final long retentionMillis;
+    private final MessageStore messageStore;
+    private final MessageFanout messageFanout;
+    private final SubscribableChannel clientInboundChannel;
+    // 会话键 -> (会话ID -> 游标)
+    private final Map<String, Map<String, Cursor>> cursors = new ConcurrentHashMap<>();
+    // 会话ID -> (订阅ID -> 会话键)
+    private final Map<String, Map<String, String>> subscriptions = new ConcurrentHashMap<>();
+    private final Counter completeReplays;
+    private final Counter partialReplays;
+    private volatile boolean running;
+
+    public ResumeService(@Value("${chat.resume.retention-seconds:120}") long retentionSeconds,
+                         MessageStore messageStore, MessageFanout messageFanout,
+                         @Qualifier("clientInboundChannel") SubscribableChannel clientInboundChannel,
+                         MeterRegistry registry) {
+        this.enabled = messageStore.isSequenced();
+        this.retentionMillis = retentionSeconds * 1000;
+        this.messageStore = messageStore;
+        this.messageFanout = messageFanout;
+        this.clientInboundChannel = clientInboundChannel;
+        this.completeReplays = Counter.builder("chat.resume.replays")
+                .description("Resume requests answered from the replay window or the log")
+                .tag("complete", "true")
+                .register(registry);
+        this.partialReplays = Counter.builder("chat.resume.replays")
+                .description("Resume requests whose gap could no longer be filled")
+                .tag("complete", "false")
+                .register(registry);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        // 拦截器列表不是线程安全的，停止时会话还在关闭、仍有消息经过通道，所以只登记一次，停止时不移除
+        InterceptableChannel channel = (InterceptableChannel) clientInboundChannel;
+        if (!channel.getInterceptors().contains(this)) {
+            channel.addInterceptor(this);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @param subscribe SUBSCRIBE消息
+     * @return 这个订阅是否请求续传（续传时不需要补发最近的历史）
+     */
+    public boolean isResuming(Message<?> subscribe) {
+        return enabled && NativeMessageHeaderAccessor.getFirstNativeHeader(RESUME_HEADER, subscribe.getHeaders()) != null;
+    }
+
+    /**
+     * 简单代理登记订阅之后登记游标并补发缺少的消息。此时订阅已经生效，之后发布的消息由代理投递，
+     * 与补发的消息可能重叠，但不会遗漏。取消订阅时删除游标。
+     */
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        if (ex != null || !(handler instanceof SimpleBrokerMessageHandler)) {
+            return;
+        }
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        if (sessionId == null || subscriptionId == null) {
+            return;
+        }
+        if (type == SimpMessageType.SUBSCRIBE) {
+            String conversation = conversationOf(SimpMessageHeaderAccessor.getDestination(headers));
+            if (conversation != null) {
+                subscribed(message, sessionId, subscriptionId, conversation);
+            }
+        } else if (type == SimpMessageType.UNSUBSCRIBE) {
+            Map<String, String> bySubscription = subscriptions.get(sessionId);
+            String conversation = bySubscription == null ? null : bySubscription.remove(subscriptionId);
+            if (conversation != null) {
+                Map<String, Cursor> bySession = cursors.get(conversation);
+                if (bySession != null) {
+                    bySession.remove(sessionId);
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录客户端已经收到的最大序号，游标只前进不后退。
+     * @param sessionId 会话ID
+     * @param conversation 会话键
+     * @param seq 已收到的最大序号
+     */
+    public void acknowledge(String sessionId, String conversation, long seq) {
+        Map<String, Cursor> bySession = cursors.get(conversation);
+        Cursor cursor = bySession == null ? null : bySession.get(sessionId);
+        if (cursor != null && seq > cursor.acknowledged) {
+            cursor.acknowledged = seq;
+        }
+    }
+
+    /**
+     * 会话断开时保留它的游标一个保留时间，客户端在此期间重连可以续传。
+     * @param event 断开事件
+     */
+    @EventListener
+    public void handleSessionDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> bySubscription = subscriptions.remove(event.getSessionId());
+        if (bySubscription == null) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + retentionMillis;
+        for (String conversation : bySubscription.values()) {
+            Map<String, Cursor> bySession = cursors.get(conversation);
+            Cursor cursor = bySession == null ? null : bySession.get(event.getSessionId());
+            if (cursor != null) {
+                cursor.expiresAt = expiresAt;
+            }
+        }
+    }
+
+    /**
+     * 定期删除过期的游标，并把每个会话的重放窗口裁剪到所有游标确认过的位置和保留时间。
+     * 没有任何游标的会话整个窗口都可以丢弃，之后的续传请求从日志补齐。
+     */
+    @Scheduled(fixedDelayString = "${chat.resume.sweep-interval-ms:5000}")
+    public void trim() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int trimmed = 0;
+        for (String conversation : messageStore.replayConversations()) {
+            long through = Long.MAX_VALUE;
+            Map<String, Cursor> bySession = cursors.get(conversation);
+            if (bySession != null) {
+                for (Map.Entry<String, Cursor> entry : bySession.entrySet()) {
+                    Cursor cursor = entry.getValue();
+                    if (cursor.expiresAt != 0 && cursor.expiresAt - now < 0) {
+                        bySession.remove(entry.getKey(), cursor);
+                    } else {
+                        through = Math.min(through, cursor.acknowledged);
+                    }
+                }
+                if (bySession.isEmpty()) {
+                    cursors.remove(conversation, bySession);
+                }
+            }
+            trimmed += messageStore.trimReplayWindow(conversation, through, now - retentionMillis);
+        }
+        if (trimmed > 0) {
+            log.debug("Trimmed {} messages from replay windows, {} remain", trimmed, messageStore.replayWindowSize());
+        }
+    }
+
+    private void subscribed(Message<?> message, String sessionId, String subscriptionId, String conversation) {
+        MessageHeaders headers = message.getHeaders();
+        String resumeFrom = NativeMessageHeaderAccessor.getFirstNativeHeader(RESUME_HEADER, headers);
+        long afterSeq = -1;
+        if (resumeFrom != null) {
+            try {
+                afterSeq = Long.parseLong(resumeFrom.trim());
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring invalid {} header {} from session {}", RESUME_HEADER, resumeFrom, sessionId);
+            }
+        }
+        subscriptions.computeIfAbsent(sessionId, key -> new ConcurrentHashMap<>()).put(subscriptionId, conversation);
+        Cursor cursor = new Cursor(afterSeq >= 0 ? afterSeq : messageStore.latestSeq(conversation));
+        cursors.computeIfAbsent(conversation, key -> new ConcurrentHashMap<>()).put(sessionId, cursor);
+        if (resumeFrom == null) {
+            return;
+        }
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+        if (attributes != null && conversation.equals(Conversation.PUBLIC)) {
+            attributes.put(PUBLIC_RESUMED_ATTRIBUTE, Boolean.TRUE);
+        }
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        if (user == null) {
+            return;
+        }
+        MessageStore.Replay replay = messageStore.replay(conversation, afterSeq);
+        (replay.complete() ? completeReplays : partialReplays).increment();
+        log.debug("Resuming {} for session {} after {}: {} messages, complete={}",
+                conversation, sessionId, afterSeq, replay.records().size(), replay.complete());
+        messageFanout.sendToSession(user.getName(), sessionId, "/queue/messages",
+                messageStore.resumeJson(conversation, afterSeq, replay));
+    }
+
+    private static String conversationOf(String destination) {
+        if (PUBLIC_TOPIC.equals(destination)) {
+            return Conversation.PUBLIC;
+        }
+        String roomId = RoomService.roomIdOf(destination);
+        return roomId == null ? null : Conversation.room(roomId);
+    }
+}
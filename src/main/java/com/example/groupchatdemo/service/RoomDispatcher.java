@@ -0,0 +1,103 @@
+package com.example.groupchatdemo.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按房间分片的广播调度器。
+ * 每个分片是一个单线程执行器，房间ID经哈希后固定落在某个分片上，
+ * 因此同一房间内的消息保持顺序，而不同房间的扇出工作并行分布在多个CPU核心上，
+ * 一个繁忙的房间不会拖慢其他分片上的房间。
+ */
+@Component
+public class RoomDispatcher implements DisposableBean {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ThreadPoolExecutor[] shards;
+
+    /**
+     * @param messagingTemplate 用于向房间主题发送消息
+     * @param shardCount 分片数，小于等于0时使用CPU核心数
+     * @param queueCapacity 每个分片的任务队列容量，队列满时拒绝新的广播
+     */
+    public RoomDispatcher(SimpMessagingTemplate messagingTemplate,
+                          @Value("${chat.room.shards:0}") int shardCount,
+                          @Value("${chat.room.shard-queue-capacity:10000}") int queueCapacity) {
+        this.messagingTemplate = messagingTemplate;
+        int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        this.shards = new ThreadPoolExecutor[count];
+        for (int i = 0; i < count; i++) {
+            String threadName = "room-shard-" + i;
+            shards[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    task -> {
+                        Thread thread = new Thread(task, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    /**
+     * 在房间所属的分片上把消息广播到 "/topic/room/{id}"。
+     * 消息代理通道是同步的，订阅匹配和逐个订阅者的扇出都在分片线程上完成。
+     * @param roomId 房间ID
+     * @param payload 要广播的消息
+     * @throws RejectedExecutionException 分片队列已满
+     */
+    public void broadcast(String roomId, Object payload) {
+        dispatch(roomId, () -> messagingTemplate.convertAndSend(RoomService.ROOM_TOPIC_PREFIX + roomId, payload));
+    }
+
+    /**
+     * 在房间所属的分片上执行广播任务。
+     * @param roomId 房间ID
+     * @param task 广播任务
+     * @throws RejectedExecutionException 分片队列已满
+     */
+    public void dispatch(String roomId, Runnable task) {
+        shards[shardOf(roomId)].execute(task);
+    }
+
+    /**
+     * 计算房间所属的分片。
+     * @param roomId 房间ID
+     * @return 分片下标
+     */
+    public int shardOf(String roomId) {
+        return (roomId.hashCode() & Integer.MAX_VALUE) % shards.length;
+    }
+
+    /**
+     * @return 分片数
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @param shard 分片下标
+     * @return 该分片当前排队的任务数
+     */
+    public int getQueueSize(int shard) {
+        return shards[shard].getQueue().size();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        for (ThreadPoolExecutor shard : shards) {
+            shard.shutdown();
+        }
+        for (ThreadPoolExecutor shard : shards) {
+            shard.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
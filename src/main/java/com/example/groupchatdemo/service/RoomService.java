@@ -0,0 +1,160 @@
+package com.example.groupchatdemo.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 房间服务，在服务器端维护房间成员关系。
+ * 成员关系由客户端对 "/topic/room/{id}" 的订阅驱动：订阅即加入，取消订阅或断开连接即离开。
+ * 这样服务器记录的成员与消息代理实际扇出的订阅者始终一致，扇出成本只与房间人数有关。
+ */
+@Service
+public class RoomService {
+
+    // 房间广播主题的前缀，完整目的地为 "/topic/room/{id}"
+    public static final String ROOM_TOPIC_PREFIX = "/topic/room/";
+
+    // 房间ID只允许字母、数字、下划线和短横线，避免拼接目的地时出现通配符或路径分隔符
+    private static final Pattern ROOM_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    // 房间ID -> (用户名 -> 该用户对此房间的订阅数)
+    private final Map<String, Map<String, Integer>> membersByRoom = new ConcurrentHashMap<>();
+    // 会话ID -> (订阅ID -> 房间订阅)，用于取消订阅和断开连接时找到对应的房间
+    private final Map<String, Map<String, RoomSubscription>> subscriptionsBySession = new ConcurrentHashMap<>();
+
+    /**
+     * 校验房间ID是否合法。
+     * @param roomId 房间ID
+     * @return 合法返回true
+     */
+    public static boolean isValidRoomId(String roomId) {
+        return roomId != null && ROOM_ID_PATTERN.matcher(roomId).matches();
+    }
+
+    /**
+     * 从订阅目的地中解析房间ID。
+     * @param destination 订阅目的地
+     * @return 房间ID；不是合法的房间主题时返回null
+     */
+    public static String roomIdOf(String destination) {
+        if (destination == null || !destination.startsWith(ROOM_TOPIC_PREFIX)) {
+            return null;
+        }
+        String roomId = destination.substring(ROOM_TOPIC_PREFIX.length());
+        return isValidRoomId(roomId) ? roomId : null;
+    }
+
+    /**
+     * 记录一次房间订阅。
+     * @param sessionId 会话ID
+     * @param subscriptionId 订阅ID
+     * @param roomId 房间ID
+     * @param username 订阅的用户
+     * @return 如果该用户因此第一次成为房间成员则返回true
+     */
+    public boolean subscribe(String sessionId, String subscriptionId, String roomId, String username) {
+        subscriptionsBySession.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                .put(subscriptionId, new RoomSubscription(roomId, username));
+        // 房间内成员表只在外层compute中修改，保证与房间的创建和移除是原子的
+        boolean[] joined = new boolean[1];
+        membersByRoom.compute(roomId, (id, members) -> {
+            Map<String, Integer> roomMembers = members != null ? members : new ConcurrentHashMap<>();
+            joined[0] = roomMembers.merge(username, 1, Integer::sum) == 1;
+            return roomMembers;
+        });
+        return joined[0];
+    }
+
+    /**
+     * 记录一次取消订阅。
+     * @param sessionId 会话ID
+     * @param subscriptionId 订阅ID
+     * @return 如果该用户因此离开了房间，返回房间ID，否则返回null
+     */
+    public String unsubscribe(String sessionId, String subscriptionId) {
+        Map<String, RoomSubscription> subscriptions = subscriptionsBySession.get(sessionId);
+        if (subscriptions == null) {
+            return null;
+        }
+        RoomSubscription subscription = subscriptions.remove(subscriptionId);
+        if (subscription == null) {
+            return null;
+        }
+        return release(subscription) ? subscription.roomId() : null;
+    }
+
+    /**
+     * 会话断开时释放它的全部房间订阅。
+     * @param sessionId 会话ID
+     * @return 用户因此离开的房间ID列表
+     */
+    public List<String> sessionClosed(String sessionId) {
+        Map<String, RoomSubscription> subscriptions = subscriptionsBySession.remove(sessionId);
+        if (subscriptions == null) {
+            return Collections.emptyList();
+        }
+        List<String> leftRooms = new ArrayList<>();
+        for (RoomSubscription subscription : subscriptions.values()) {
+            if (release(subscription)) {
+                leftRooms.add(subscription.roomId());
+            }
+        }
+        return leftRooms;
+    }
+
+    /**
+     * 判断用户是否是房间成员。
+     * @param roomId 房间ID
+     * @param username 用户名
+     * @return 是成员返回true
+     */
+    public boolean isMember(String roomId, String username) {
+        Map<String, Integer> members = membersByRoom.get(roomId);
+        return members != null && username != null && members.containsKey(username);
+    }
+
+    /**
+     * 获取房间的成员列表。
+     * @param roomId 房间ID
+     * @return 成员用户名集合，房间不存在时为空集合
+     */
+    public Set<String> members(String roomId) {
+        Map<String, Integer> members = membersByRoom.get(roomId);
+        return members == null ? Collections.emptySet() : Collections.unmodifiableSet(members.keySet());
+    }
+
+    /**
+     * 获取当前有成员的房间及其人数。
+     * @return 房间ID -> 成员数
+     */
+    public Map<String, Integer> roomSizes() {
+        Map<String, Integer> sizes = new TreeMap<>();
+        membersByRoom.forEach((roomId, members) -> sizes.put(roomId, members.size()));
+        return sizes;
+    }
+
+    /**
+     * 释放一次订阅，房间变空时将其移除。
+     * @return 用户是否因此离开了房间
+     */
+    private boolean release(RoomSubscription subscription) {
+        boolean[] left = new boolean[1];
+        membersByRoom.computeIfPresent(subscription.roomId(), (id, members) -> {
+            Integer remaining = members.computeIfPresent(subscription.username(), (user, count) -> count > 1 ? count - 1 : null);
+            left[0] = remaining == null;
+            return members.isEmpty() ? null : members;
+        });
+        return left[0];
+    }
+
+    private record RoomSubscription(String roomId, String username) {
+    }
+}
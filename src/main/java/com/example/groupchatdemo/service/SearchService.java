@@ -0,0 +1,224 @@
+package com.example.groupchatdemo.service;
+
+import com.example.groupchatdemo.model.Conversation;
+import com.example.groupchatdemo.search.SearchIndex;
+import com.example.groupchatdemo.store.LogRecord;
+import com.example.groupchatdemo.store.MessageStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 聊天历史的全文检索，覆盖公共聊天室、房间和查询者自己的私聊。
+ * 消息写入日志时（MessageStore的AppendListener）只把记录放进有界队列，由单独的索引线程解析JSON、分词并加入SearchIndex，
+ * 聊天的热路径上没有分词和索引的开销。启动时索引线程先按写入顺序扫描已有的日志重建索引，再处理队列，
+ * 两者重叠的消息按会话内序号去重。队列满时（例如重建期间消息很多）丢弃的消息不会被索引，计入chat.search.dropped。
+ * 索引依赖持久化：命中只保存会话和序号，内容从日志读取，关闭持久化时检索不可用。
+ */
+@Service
+public class SearchService implements SmartLifecycle, MessageStore.AppendListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchService.class);
+
+    private static final int BATCH_SIZE = 1024;
+
+    private final boolean enabled;
+    private final MessageStore messageStore;
+    private final ObjectMapper objectMapper;
+    private final SearchIndex index = new SearchIndex();
+    private final BlockingQueue<Pending> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private Thread indexer;
+    private volatile boolean rebuilding;
+    private volatile boolean running;
+
+    // 等待索引的一条记录
+    private record Pending(String conversation, LogRecord record) {
+    }
+
+    public SearchService(@Value("${chat.search.enabled:true}") boolean enabled,
+                         @Value("${chat.search.queue-capacity:65536}") int queueCapacity,
+                         MessageStore messageStore, ObjectMapper objectMapper) {
+        this.enabled = enabled && messageStore.isPersistent();
+        this.messageStore = messageStore;
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    }
+
+    /**
+     * @return 检索是否可用（开启了检索和持久化）
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        rebuilding = true;
+        // 先登记监听器再扫描日志，扫描期间追加的消息在队列中等待，重叠的部分按序号去重
+        messageStore.addAppendListener(this);
+        indexer = new Thread(this::run, "search-indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        messageStore.removeAppendListener(this);
+        indexer.interrupt();
+        try {
+            indexer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void appended(String conversation, LogRecord record) {
+        if (!queue.offer(new Pending(conversation, record))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * 检索一页结果并编码为JSON，命中的消息内容直接使用日志中的字节：
+     * {"query":..,"total":..,"rebuilding":..,"hits":[{"conversation":..,"seq":..,"timestamp":..,"score":..,"message":{...}}],"nextOffset":..}
+     * nextOffset为0表示没有下一页；rebuilding为true表示启动时的重建还没有完成，结果可能不全。
+     * @param user 查询者，只能看到自己参与的私聊
+     * @param query 查询字符串
+     * @param conversation 只检索这个会话，为null时检索全部可见的会话
+     * @param offset 跳过的命中数
+     * @param limit 这一页的条数
+     * @return UTF-8编码的JSON
+     */
+    public byte[] search(String user, String query, String conversation, int offset, int limit) {
+        SearchIndex.Result result = index.search(query,
+                key -> Conversation.isVisibleTo(key, user) && (conversation == null || conversation.equals(key)),
+                offset, limit);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256 + result.hits().size() * 256);
+            out.write("{\"query\":".getBytes(StandardCharsets.UTF_8));
+            out.write(objectMapper.writeValueAsBytes(query));
+            out.write((",\"total\":" + result.total() + ",\"rebuilding\":" + rebuilding + ",\"hits\":[")
+                    .getBytes(StandardCharsets.UTF_8));
+            boolean first = true;
+            for (SearchIndex.Hit hit : result.hits()) {
+                List<LogRecord> records = messageStore.history(hit.conversation(), hit.ordinal() + 1, 1);
+                if (records.isEmpty() || records.get(0).ordinal() != hit.ordinal()) {
+                    continue;
+                }
+                LogRecord record = records.get(0);
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.write("{\"conversation\":".getBytes(StandardCharsets.UTF_8));
+                out.write(objectMapper.writeValueAsBytes(hit.conversation()));
+                out.write((",\"seq\":" + record.ordinal() + ",\"timestamp\":" + record.timestamp()
+                        + ",\"score\":" + (float) hit.score() + ",\"message\":").getBytes(StandardCharsets.UTF_8));
+                out.write(record.payload());
+                out.write('}');
+            }
+            int nextOffset = offset + result.hits().size() < result.total() ? offset + result.hits().size() : 0;
+            out.write(("],\"nextOffset\":" + nextOffset + "}").getBytes(StandardCharsets.UTF_8));
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return 已索引的消息数
+     */
+    public int indexedDocuments() {
+        return index.documents();
+    }
+
+    /**
+     * @return 倒排表压缩后占用的字节数
+     */
+    public long postingBytes() {
+        return index.postingBytes();
+    }
+
+    /**
+     * @return 因队列已满没有被索引的消息数
+     */
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    private void run() {
+        long started = System.nanoTime();
+        List<SearchIndex.Document> batch = new ArrayList<>(BATCH_SIZE);
+        messageStore.forEachPersisted((conversation, record) -> {
+            if (running) {
+                addDocument(batch, conversation, record);
+                if (batch.size() == BATCH_SIZE) {
+                    index.addAll(batch);
+                    batch.clear();
+                }
+            }
+        });
+        index.addAll(batch);
+        batch.clear();
+        rebuilding = false;
+        log.info("Search index rebuilt from the message log: {} messages, {} terms, {} KB of postings in {} ms",
+                index.documents(), index.terms(), index.postingBytes() / 1024,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+        List<Pending> pending = new ArrayList<>(BATCH_SIZE);
+        while (running) {
+            try {
+                pending.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(pending, BATCH_SIZE - 1);
+            for (Pending entry : pending) {
+                addDocument(batch, entry.conversation(), entry.record());
+            }
+            index.addAll(batch);
+            batch.clear();
+            pending.clear();
+        }
+    }
+
+    private void addDocument(List<SearchIndex.Document> batch, String conversation, LogRecord record) {
+        try {
+            JsonNode content = objectMapper.readTree(record.payload()).get("content");
+            if (content != null && content.isTextual() && !content.asText().isEmpty()) {
+                batch.add(new SearchIndex.Document(conversation, record.ordinal(), content.asText()));
+            }
+        } catch (IOException e) {
+            log.debug("Not indexing an unreadable message {} in {}: {}", record.ordinal(), conversation, e.getMessage());
+        }
+    }
+}
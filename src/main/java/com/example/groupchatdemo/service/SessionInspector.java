@@ -0,0 +1,132 @@
+package com.example.groupchatdemo.service;
+
+import org.springframework.messaging.simp.user.SimpSession;
+import org.springframework.messaging.simp.user.SimpSubscription;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 按需查看WebSocket会话的状态，代替原来每次连接和断开时遍历打印整个SimpUserRegistry。
+ * 收发的帧数和字节数、最后一次收发的时间由OutboundSessionQueue在收发时顺带累加（几次volatile写），
+ * 出站队列的深度本来就有；只有在查询时才遍历会话、到SimpUserRegistry中读取订阅，连接和断开的路径上没有额外的开销。
+ * 只包含本节点的WebSocket和SockJS会话，TCP网关的连接不在其中。
+ */
+@Service
+public class SessionInspector {
+
+    private final BackpressureService backpressureService;
+    private final SimpUserRegistry simpUserRegistry;
+
+    /**
+     * 一个会话的快照。
+     * @param sessionId 会话ID
+     * @param user 用户名，还没有收到CONNECTED帧时为null
+     * @param connectedAt 会话建立的时间
+     * @param lastReceivedAt 最后一次收到帧（包括心跳）的时间，没有收到过时为null
+     * @param lastSentAt 最后一次写出帧的时间，没有写出过时为null
+     * @param idleMs 距离最后一次收发（或建立会话）的毫秒数
+     * @param framesIn 收到的帧数
+     * @param bytesIn 收到的字节数（文本帧按字符计）
+     * @param framesOut 写出的帧数
+     * @param bytesOut 写出的字节数
+     * @param queuedFrames 出站队列中等待写出的帧数
+     * @param queuedBytes 出站队列中等待写出的字节数
+     * @param droppedFrames 慢消费者保护丢弃的帧数
+     * @param subscriptions 订阅的目的地
+     */
+    public record SessionInfo(String sessionId, String user, Instant connectedAt, Instant lastReceivedAt,
+                              Instant lastSentAt, long idleMs, long framesIn, long bytesIn, long framesOut,
+                              long bytesOut, int queuedFrames, long queuedBytes, long droppedFrames,
+                              List<String> subscriptions) {
+    }
+
+    public SessionInspector(BackpressureService backpressureService, SimpUserRegistry simpUserRegistry) {
+        this.backpressureService = backpressureService;
+        this.simpUserRegistry = simpUserRegistry;
+    }
+
+    /**
+     * 按会话ID的顺序分页列出会话。只保留当前页的limit个候选，不对全部会话排序。
+     * @param after 只返回ID在它之后的会话，null表示从头开始
+     * @param user 只返回这个用户的会话，null表示全部
+     * @param limit 每页的会话数
+     * @return 这一页的会话
+     */
+    public List<SessionInfo> page(String after, String user, int limit) {
+        // 大顶堆，堆顶是候选中ID最大的会话，新的会话比它小时替换它
+        PriorityQueue<OutboundSessionQueue> candidates =
+                new PriorityQueue<>(Comparator.comparing(OutboundSessionQueue::getId).reversed());
+        for (OutboundSessionQueue queue : backpressureService.sessions()) {
+            if ((after != null && queue.getId().compareTo(after) <= 0)
+                    || (user != null && !user.equals(queue.username()))) {
+                continue;
+            }
+            if (candidates.size() < limit) {
+                candidates.add(queue);
+            } else if (queue.getId().compareTo(candidates.peek().getId()) < 0) {
+                candidates.poll();
+                candidates.add(queue);
+            }
+        }
+        List<OutboundSessionQueue> selected = new ArrayList<>(candidates);
+        selected.sort(Comparator.comparing(OutboundSessionQueue::getId));
+        long now = System.currentTimeMillis();
+        List<SessionInfo> page = new ArrayList<>(selected.size());
+        for (OutboundSessionQueue queue : selected) {
+            page.add(inspect(queue, now));
+        }
+        return page;
+    }
+
+    /**
+     * @param sessionId 会话ID
+     * @return 会话的快照；会话不存在或已关闭时返回null
+     */
+    public SessionInfo session(String sessionId) {
+        OutboundSessionQueue queue = backpressureService.session(sessionId);
+        return queue == null ? null : inspect(queue, System.currentTimeMillis());
+    }
+
+    /**
+     * @return 当前打开的会话数
+     */
+    public int sessionCount() {
+        return backpressureService.sessionCount();
+    }
+
+    private SessionInfo inspect(OutboundSessionQueue queue, long now) {
+        long lastReceived = queue.lastReceivedMillis();
+        long lastSent = queue.lastSentMillis();
+        long lastActivity = Math.max(queue.connectedAtMillis(), Math.max(lastReceived, lastSent));
+        return new SessionInfo(queue.getId(), queue.username(),
+                Instant.ofEpochMilli(queue.connectedAtMillis()),
+                lastReceived == 0 ? null : Instant.ofEpochMilli(lastReceived),
+                lastSent == 0 ? null : Instant.ofEpochMilli(lastSent),
+                Math.max(0, now - lastActivity),
+                queue.framesIn(), queue.bytesIn(), queue.framesOut(), queue.bytesOut(),
+                queue.queuedFrames(), queue.queuedBytes(), queue.droppedFrames(),
+                subscriptions(queue.username(), queue.getId()));
+    }
+
+    private List<String> subscriptions(String username, String sessionId) {
+        SimpUser user = username == null ? null : simpUserRegistry.getUser(username);
+        SimpSession session = user == null ? null : user.getSession(sessionId);
+        if (session == null) {
+            return Collections.emptyList();
+        }
+        List<String> destinations = new ArrayList<>();
+        for (SimpSubscription subscription : session.getSubscriptions()) {
+            destinations.add(subscription.getDestination());
+        }
+        Collections.sort(destinations);
+        return destinations;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.groupchatdemo.service;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮：把到期时间按刻度（tickMillis）散列到固定数量的槽中，每推进一格只处理当前槽里的任务，
+ * 耗时与这一格到期的任务数成正比，与轮中的任务总数无关；没有任务到期的一格只是一次数组访问。
+ * 超过一圈（tickMillis * 槽数）的延迟记录剩余圈数，每经过一次所在的槽减一。
+ * 精度是一个刻度：任务在到期后的下一次推进时执行，不会提前执行。
+ * schedule可以被任意线程调用，新任务先放进无锁队列，推进时才移到槽中；advance只能由一个线程调用，
+ * 槽中的链表只由这个线程访问，不需要加锁。不支持取消：调用者在任务到期时自己检查是否还需要执行。
+ * @param <T> 任务的类型
+ */
+public final class TimerWheel<T> {
+
+    private final long tickNanos;
+    private final int mask;
+    private final Entry<T>[] slots;
+    private final long startNanos;
+    private final ConcurrentLinkedQueue<Entry<T>> added = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    // 下一次推进要处理的刻度，只由推进的线程访问
+    private long tick;
+
+    /**
+     * 槽中的一个任务，槽内按单向链表串起来。
+     */
+    private static final class Entry<T> {
+        final T task;
+        final long deadlineNanos;
+        long remainingRounds;
+        Entry<T> next;
+
+        Entry(T task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    /**
+     * @param tickMillis 刻度的毫秒数
+     * @param slotCount 槽数，向上取整为2的幂
+     * @param startNanos 第0个刻度开始的时间（System.nanoTime()）
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMillis, int slotCount, long startNanos) {
+        if (tickMillis <= 0 || slotCount <= 0 || slotCount > 1 << 24) {
+            throw new IllegalArgumentException("Invalid wheel: " + tickMillis + "ms x " + slotCount);
+        }
+        int size = Integer.highestOneBit(slotCount - 1) << 1;
+        this.slots = (Entry<T>[]) new Entry[Math.max(1, size)];
+        this.mask = slots.length - 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * 添加一个任务。
+     * @param task 任务
+     * @param deadlineNanos 到期时间（System.nanoTime()），已经过去的时间在下一次推进时到期
+     */
+    public void schedule(T task, long deadlineNanos) {
+        added.add(new Entry<>(task, deadlineNanos));
+        pending.incrementAndGet();
+    }
+
+    /**
+     * 推进到now所在的刻度，依次处理经过的每一格中到期的任务。推进落后（例如线程被暂停）时一次补上全部经过的格。
+     * 回调中可以再调用schedule，新任务最早在下一格处理。
+     * @param now 当前时间（System.nanoTime()）
+     * @param expired 到期任务的回调
+     * @return 到期的任务数
+     */
+    public int advance(long now, Consumer<? super T> expired) {
+        long target = (now - startNanos) / tickNanos;
+        int fired = 0;
+        while (tick <= target) {
+            transferAdded();
+            int index = (int) (tick & mask);
+            Entry<T> kept = null;
+            Entry<T> entry = slots[index];
+            slots[index] = null;
+            while (entry != null) {
+                Entry<T> next = entry.next;
+                if (entry.remainingRounds > 0) {
+                    entry.remainingRounds--;
+                    entry.next = kept;
+                    kept = entry;
+                } else {
+                    pending.decrementAndGet();
+                    fired++;
+                    expired.accept(entry.task);
+                }
+                entry = next;
+            }
+            slots[index] = kept;
+            tick++;
+        }
+        return fired;
+    }
+
+    /**
+     * 把新添加的任务放进它到期的刻度所在的槽。到期的刻度已经过去时放进当前这一格。
+     */
+    private void transferAdded() {
+        for (Entry<T> entry; (entry = added.poll()) != null; ) {
+            long deadlineTick = Math.max(tick, Math.floorDiv(entry.deadlineNanos - startNanos + tickNanos - 1, tickNanos));
+            entry.remainingRounds = (deadlineTick - tick) / slots.length;
+            int index = (int) (deadlineTick & mask);
+            entry.next = slots[index];
+            slots[index] = entry;
+        }
+    }
+
+    /**
+     * @return 尚未到期的任务数（包括还没有移到槽中的）
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    /**
+     * @return 刻度的纳秒数
+     */
+    public long tickNanos() {
+        return tickNanos;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.groupchatdemo.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 按用户名排序的在线用户索引：用户名 -> 会话ID集合，随加入和离开增量维护。
+ * 分页列表和前缀搜索只在跳表上定位一次再顺序读取，耗时是O(log N + 页大小)，与在线人数基本无关，
+ * 不需要复制或遍历整个用户集合。
+ * 写操作（add、remove）必须由调用者串行化（PresenceService在自己的锁内调用）；
+ * 读操作（page、search、contains、size）不加锁，可以与写操作并发，看到的是弱一致的视图。
+ */
+public class UserDirectory {
+
+    // 用户名 -> 会话ID集合；集合只在写操作中访问
+    private final ConcurrentSkipListMap<String, Set<String>> sessionsByUser = new ConcurrentSkipListMap<>();
+    // 小写用户名 + '\0' + 用户名 -> 用户名，按小写排序，用于不区分大小写的前缀搜索
+    private final ConcurrentSkipListMap<String, String> searchIndex = new ConcurrentSkipListMap<>();
+    // 跳表的size()需要遍历，单独计数
+    private volatile int userCount;
+
+    /**
+     * 记录用户的一个会话。
+     * @param username 用户名
+     * @param sessionId 会话ID
+     * @return 会话是否是新加入的
+     */
+    public boolean add(String username, String sessionId) {
+        Set<String> sessions = sessionsByUser.get(username);
+        if (sessions == null) {
+            sessions = new HashSet<>();
+            sessionsByUser.put(username, sessions);
+            searchIndex.put(searchKey(username), username);
+            userCount++;
+        }
+        return sessions.add(sessionId);
+    }
+
+    /**
+     * 移除用户的一个会话，最后一个会话移除后用户离线。
+     * @param username 用户名
+     * @param sessionId 会话ID
+     * @return 会话之前是否存在
+     */
+    public boolean remove(String username, String sessionId) {
+        Set<String> sessions = sessionsByUser.get(username);
+        if (sessions == null || !sessions.remove(sessionId)) {
+            return false;
+        }
+        if (sessions.isEmpty()) {
+            sessionsByUser.remove(username);
+            searchIndex.remove(searchKey(username));
+            userCount--;
+        }
+        return true;
+    }
+
+    /**
+     * @param username 用户名
+     * @return 用户是否至少有一个会话
+     */
+    public boolean contains(String username) {
+        return sessionsByUser.containsKey(username);
+    }
+
+    /**
+     * @return 在线用户数
+     */
+    public int size() {
+        return userCount;
+    }
+
+    /**
+     * @return 按用户名排序的全部在线用户，用于生成完整快照
+     */
+    public List<String> usernames() {
+        return new ArrayList<>(sessionsByUser.keySet());
+    }
+
+    /**
+     * 按用户名顺序分页列出在线用户。
+     * @param after 上一页的最后一个用户名，null表示从头开始
+     * @param limit 最多返回的用户数
+     * @return 用户名在after之后的最多limit个用户
+     */
+    public List<String> page(String after, int limit) {
+        NavigableSet<String> names = after == null
+                ? sessionsByUser.keySet()
+                : sessionsByUser.keySet().tailSet(after, false);
+        List<String> page = new ArrayList<>(Math.min(limit, 256));
+        for (String name : names) {
+            if (page.size() >= limit) {
+                break;
+            }
+            page.add(name);
+        }
+        return page;
+    }
+
+    /**
+     * 不区分大小写的前缀搜索，例如@提及的自动补全。
+     * @param prefix 用户名前缀
+     * @param limit 最多返回的用户数
+     * @return 按小写用户名排序的匹配用户
+     */
+    public List<String> search(String prefix, int limit) {
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        List<String> matches = new ArrayList<>(Math.min(limit, 256));
+        for (Map.Entry<String, String> entry : searchIndex.tailMap(lowerPrefix).entrySet()) {
+            if (matches.size() >= limit || !entry.getKey().startsWith(lowerPrefix)) {
+                break;
+            }
+            matches.add(entry.getValue());
+        }
+        return matches;
+    }
+
+    private static String searchKey(String username) {
+        return username.toLowerCase(Locale.ROOT) + '\0' + username;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.groupchatdemo.store;
+
+import java.util.Arrays;
+
+/**
+ * 单个会话的稀疏偏移索引。
+ * 每interval条消息记录一次全局位置，其余记录通过日志中的"上一条同会话记录位置"指针回溯，
+ * 因此定位任意序号最多只需回溯interval-1条记录，而索引内存只有消息数的1/interval。
+ * 所有方法都在MessageLog的锁内调用。
+ */
+final class ConversationIndex {
+
+    private final int interval;
+    private long count;
+    private long lastPosition = -1;
+    private long[] sparse = new long[4];
+    private int sparseSize;
+
+    ConversationIndex(int interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * 记录一条新消息。
+     * @param ordinal 消息在会话内的序号，必须等于count+1
+     * @param position 消息在日志中的全局位置
+     */
+    void add(long ordinal, long position) {
+        if ((ordinal - 1) % interval == 0) {
+            if (sparseSize == sparse.length) {
+                sparse = Arrays.copyOf(sparse, sparseSize * 2);
+            }
+            sparse[sparseSize++] = position;
+        }
+        count = ordinal;
+        lastPosition = position;
+    }
+
+    long count() {
+        return count;
+    }
+
+    long lastPosition() {
+        return lastPosition;
+    }
+
+    /**
+     * 找到位置已知、序号不小于target且最接近target的记录，从它开始回溯即可到达target。
+     * @param target 目标序号，1 <= target <= count
+     * @return 锚点记录的序号
+     */
+    long anchorOrdinal(long target) {
+        long slot = (target - 1 + interval - 1) / interval;
+        long ordinal = slot * interval + 1;
+        return Math.min(ordinal, count);
+    }
+
+    /**
+     * @param anchorOrdinal anchorOrdinal()返回的序号
+     * @return 锚点记录的全局位置
+     */
+    long positionOf(long anchorOrdinal) {
+        if (anchorOrdinal == count) {
+            return lastPosition;
+        }
+        return sparse[(int) ((anchorOrdinal - 1) / interval)];
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.groupchatdemo.store;
+
+/**
+ * 从日志中读出的一条消息记录。
+ * @param ordinal 消息在会话内的序号（从1开始连续递增）
+ * @param timestamp 追加时的时间戳（毫秒）
+ * @param payload 消息的序列化内容（JSON）
+ */
+public record LogRecord(long ordinal, long timestamp, byte[] payload) {
+}
@@ -0,0 +1,119 @@
+package com.example.groupchatdemo.store;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 日志段：一个预分配大小的文件，整体映射为MappedByteBuffer后只追加写入。
+ * 文件名是该段第一个字节的全局位置，新段的内容全部为0，长度字段为0即表示段内数据结束。
+ * 写入由MessageLog的锁串行化；已发布位置之前的数据不再改变，读取不需要加锁。
+ */
+final class LogSegment {
+
+    static final String SUFFIX = ".log";
+
+    private final long baseOffset;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int writePosition;
+    private int flushedPosition;
+
+    private LogSegment(long baseOffset, Path path, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.baseOffset = baseOffset;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * 打开或创建一个日志段。已存在的文件按其实际大小映射，新文件按给定大小预分配。
+     * @param dir 日志目录
+     * @param baseOffset 段的起始全局位置
+     * @param size 新建段的大小（字节）
+     */
+    static LogSegment open(Path dir, long baseOffset, int size) throws IOException {
+        Path path = dir.resolve(fileName(baseOffset));
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long existing = channel.size();
+        int capacity = existing > 0 ? (int) Math.min(existing, Integer.MAX_VALUE) : size;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        return new LogSegment(baseOffset, path, channel, buffer, capacity);
+    }
+
+    static String fileName(long baseOffset) {
+        return String.format("%020d%s", baseOffset, SUFFIX);
+    }
+
+    static long parseBaseOffset(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    long baseOffset() { return baseOffset; }
+    int capacity() { return capacity; }
+    int writePosition() { return writePosition; }
+    MappedByteBuffer buffer() { return buffer; }
+
+    boolean hasRoom(int bytes) {
+        return writePosition + bytes <= capacity;
+    }
+
+    /**
+     * 在段尾追加一条已编码的记录。
+     * @return 记录在段内的偏移
+     */
+    int append(byte[] record, int length) {
+        int offset = writePosition;
+        buffer.put(offset, record, 0, length);
+        writePosition += length;
+        return offset;
+    }
+
+    /**
+     * 恢复时设置写入位置，并清除该位置之后可能残留的半条记录。
+     */
+    void recoverTo(int position, boolean clearTail) {
+        this.writePosition = position;
+        this.flushedPosition = position;
+        if (clearTail) {
+            byte[] zeros = new byte[8192];
+            for (int p = position; p < capacity; p += zeros.length) {
+                buffer.put(p, zeros, 0, Math.min(zeros.length, capacity - p));
+            }
+            buffer.force();
+        }
+    }
+
+    /**
+     * 把尚未落盘的区间刷到磁盘。只由刷盘线程调用。
+     * @param upTo 刷盘的截止位置（调用方在锁内读取的写入位置）
+     */
+    void force(int upTo) {
+        int from = flushedPosition;
+        if (from < upTo) {
+            buffer.force(from, upTo - from);
+            flushedPosition = upTo;
+        }
+    }
+
+    void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * 恢复时丢弃无法建立索引的段。
+     */
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+}
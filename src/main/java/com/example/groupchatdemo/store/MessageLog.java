@@ -0,0 +1,391 @@
+package com.example.groupchatdemo.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 分段、只追加的消息日志，所有会话的消息交错写入同一组内存映射文件。
+ *
+ * 记录格式（大端序）：
+ * <pre>
+ * int   记录总长度（0表示段内数据结束）
+ * int   CRC32（覆盖序号到记录末尾）
+ * long  会话内序号
+ * long  同会话上一条记录的全局位置（-1表示没有）
+ * long  时间戳
+ * short 会话键长度，随后是UTF-8会话键
+ * int   消息长度，随后是消息内容
+ * </pre>
+ * 每个会话在内存中维护一个稀疏索引（见ConversationIndex），结合记录中的回溯指针，
+ * 分页读取只访问目标记录所在的映射区域，不会把整个文件读到堆上。
+ *
+ * 持久化采用组提交：追加只写入映射内存，后台刷盘线程每隔flushInterval把所有脏区间一次性force到磁盘，
+ * 多次追加共享一次磁盘同步；进程崩溃时最多丢失最近一个刷盘间隔内的消息。
+ */
+public class MessageLog implements Closeable {
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 2;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final int indexInterval;
+    private final long flushIntervalNanos;
+
+    // 以下状态由lock保护
+    private final Object lock = new Object();
+    private final Map<String, ConversationIndex> indexes = new HashMap<>();
+    private final Set<LogSegment> dirtySegments = new LinkedHashSet<>();
+    private final CRC32 crc = new CRC32();
+    private byte[] scratch = new byte[4096];
+    private LogSegment active;
+    private boolean closed;
+
+    // 按起始位置排序的全部段，读取时无锁查找
+    private volatile LogSegment[] segments;
+
+    private final Thread flusher;
+
+    /**
+     * 打开日志目录，扫描已有的段重建索引，并启动刷盘线程。
+     * @param dir 日志目录
+     * @param segmentSize 每个段的大小（字节）
+     * @param indexInterval 稀疏索引的间隔（条）
+     * @param flushIntervalMillis 组提交的刷盘间隔（毫秒）
+     */
+    public MessageLog(Path dir, int segmentSize, int indexInterval, long flushIntervalMillis) throws IOException {
+        if (indexInterval < 1) {
+            throw new IllegalArgumentException("indexInterval must be positive: " + indexInterval);
+        }
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.indexInterval = indexInterval;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMillis));
+        Files.createDirectories(dir);
+        recover();
+        this.flusher = new Thread(this::runFlusher, "message-log-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 追加一条消息。
+     * @param conversation 会话键
+     * @param timestamp 时间戳（毫秒）
+     * @param payload 序列化后的消息内容
+     * @return 消息在会话内的序号
+     */
+    public long append(String conversation, long timestamp, byte[] payload) throws IOException {
+        byte[] key = conversation.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_SIZE + key.length + 4 + payload.length;
+        if (key.length > Short.MAX_VALUE || length > segmentSize) {
+            throw new IllegalArgumentException("Record of " + length + " bytes does not fit in a segment");
+        }
+        synchronized (lock) {
+            if (closed) {
+                throw new IOException("Message log is closed");
+            }
+            if (!active.hasRoom(length)) {
+                roll();
+            }
+            ConversationIndex index = indexes.computeIfAbsent(conversation, k -> new ConversationIndex(indexInterval));
+            long ordinal = index.count() + 1;
+
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            ByteBuffer record = ByteBuffer.wrap(scratch, 0, length);
+            record.putInt(length)
+                    .putInt(0)
+                    .putLong(ordinal)
+                    .putLong(index.lastPosition())
+                    .putLong(timestamp)
+                    .putShort((short) key.length)
+                    .put(key)
+                    .putInt(payload.length)
+                    .put(payload);
+            crc.reset();
+            crc.update(scratch, 8, length - 8);
+            record.putInt(4, (int) crc.getValue());
+
+            long position = active.baseOffset() + active.append(scratch, length);
+            index.add(ordinal, position);
+            dirtySegments.add(active);
+            return ordinal;
+        }
+    }
+
+    /**
+     * 按序号从新到旧读取一页消息。
+     * @param conversation 会话键
+     * @param beforeOrdinal 只返回序号小于它的消息；小于等于0表示从最新一条开始
+     * @param limit 最多返回的条数
+     * @return 从新到旧排列的消息
+     */
+    public List<LogRecord> readBefore(String conversation, long beforeOrdinal, int limit) {
+        long start;
+        long anchorOrdinal;
+        long position;
+        synchronized (lock) {
+            ConversationIndex index = indexes.get(conversation);
+            if (index == null || index.count() == 0 || limit <= 0) {
+                return Collections.emptyList();
+            }
+            start = beforeOrdinal <= 0 || beforeOrdinal > index.count() ? index.count() : beforeOrdinal - 1;
+            if (start < 1) {
+                return Collections.emptyList();
+            }
+            anchorOrdinal = index.anchorOrdinal(start);
+            position = index.positionOf(anchorOrdinal);
+        }
+        // 锚点之前的记录已经发布且不再改变，以下读取不需要加锁
+        for (long ordinal = anchorOrdinal; ordinal > start; ordinal--) {
+            position = previousPosition(position);
+        }
+        List<LogRecord> records = new ArrayList<>((int) Math.min(limit, start));
+        while (records.size() < limit && position >= 0) {
+            records.add(readAt(position));
+            position = previousPosition(position);
+        }
+        return records;
+    }
+
+    /**
+     * 按写入顺序遍历调用时已经写入的全部记录，同一会话的记录按序号递增。
+     * 这些记录已经发布且不再改变，遍历不持有锁，不阻塞并发的追加。
+     * @param visitor 接收会话键和记录
+     */
+    public void forEach(BiConsumer<String, LogRecord> visitor) {
+        LogSegment[] current;
+        long end;
+        synchronized (lock) {
+            current = segments;
+            end = endPosition();
+        }
+        for (LogSegment segment : current) {
+            MappedByteBuffer buffer = segment.buffer();
+            int offset = 0;
+            while (segment.baseOffset() + offset < end && offset + 4 <= segment.capacity()) {
+                int length = buffer.getInt(offset);
+                if (length == 0) {
+                    break;
+                }
+                byte[] key = new byte[buffer.getShort(offset + 32)];
+                buffer.get(offset + HEADER_SIZE, key);
+                visitor.accept(new String(key, StandardCharsets.UTF_8), readAt(segment.baseOffset() + offset));
+                offset += length;
+            }
+        }
+    }
+
+    /**
+     * @param conversation 会话键
+     * @return 会话中的消息总数
+     */
+    public long count(String conversation) {
+        synchronized (lock) {
+            ConversationIndex index = indexes.get(conversation);
+            return index == null ? 0 : index.count();
+        }
+    }
+
+    /**
+     * 立即刷盘，然后停止刷盘线程并关闭全部段。
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        for (LogSegment segment : segments) {
+            segment.close();
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+            }
+            flush();
+        }
+    }
+
+    /**
+     * 一次组提交：在锁内记下每个脏段的写入位置，锁外执行force。
+     */
+    private void flush() {
+        List<LogSegment> toFlush;
+        int[] upTo;
+        synchronized (lock) {
+            if (dirtySegments.isEmpty()) {
+                return;
+            }
+            toFlush = new ArrayList<>(dirtySegments);
+            upTo = new int[toFlush.size()];
+            for (int i = 0; i < upTo.length; i++) {
+                upTo[i] = toFlush.get(i).writePosition();
+            }
+            dirtySegments.clear();
+        }
+        for (int i = 0; i < upTo.length; i++) {
+            toFlush.get(i).force(upTo[i]);
+        }
+    }
+
+    private void roll() throws IOException {
+        long baseOffset = active.baseOffset() + active.capacity();
+        LogSegment next = LogSegment.open(dir, baseOffset, segmentSize);
+        LogSegment[] current = segments;
+        LogSegment[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = next;
+        segments = grown;
+        active = next;
+    }
+
+    private long endPosition() {
+        return active.baseOffset() + active.writePosition();
+    }
+
+    private LogRecord readAt(long position) {
+        LogSegment segment = segmentFor(position);
+        MappedByteBuffer buffer = segment.buffer();
+        int offset = (int) (position - segment.baseOffset());
+        long ordinal = buffer.getLong(offset + 8);
+        long timestamp = buffer.getLong(offset + 24);
+        int keyLength = buffer.getShort(offset + 32);
+        int payloadOffset = offset + HEADER_SIZE + keyLength;
+        byte[] payload = new byte[buffer.getInt(payloadOffset)];
+        buffer.get(payloadOffset + 4, payload);
+        return new LogRecord(ordinal, timestamp, payload);
+    }
+
+    private long previousPosition(long position) {
+        LogSegment segment = segmentFor(position);
+        return segment.buffer().getLong((int) (position - segment.baseOffset()) + 16);
+    }
+
+    private LogSegment segmentFor(long position) {
+        LogSegment[] current = segments;
+        int low = 0;
+        int high = current.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (current[mid].baseOffset() <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return current[low];
+    }
+
+    /**
+     * 启动时按顺序扫描全部段，校验每条记录并重建稀疏索引。
+     * 遇到损坏的记录（通常是崩溃时写了一半的最后一条）时，从该处截断：
+     * 清除所在段的剩余部分，并删除之后的段。
+     */
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(LogSegment.SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        List<LogSegment> opened = new ArrayList<>();
+        boolean truncated = false;
+        for (Path file : files) {
+            LogSegment segment = LogSegment.open(dir, LogSegment.parseBaseOffset(file), segmentSize);
+            if (truncated) {
+                segment.delete();
+                continue;
+            }
+            truncated = !scan(segment);
+            opened.add(segment);
+        }
+        if (opened.isEmpty()) {
+            opened.add(LogSegment.open(dir, 0, segmentSize));
+        }
+        segments = opened.toArray(new LogSegment[0]);
+        active = segments[segments.length - 1];
+    }
+
+    /**
+     * 扫描一个段并把其中的记录加入索引。
+     * @return 段内数据完好返回true，发现损坏并截断返回false
+     */
+    private boolean scan(LogSegment segment) {
+        MappedByteBuffer buffer = segment.buffer();
+        int capacity = segment.capacity();
+        int offset = 0;
+        boolean intact = true;
+        while (offset + 4 <= capacity) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (!isValidRecord(buffer, offset, length, capacity)) {
+                intact = false;
+                break;
+            }
+            int keyLength = buffer.getShort(offset + 32);
+            byte[] key = new byte[keyLength];
+            buffer.get(offset + HEADER_SIZE, key);
+            String conversation = new String(key, StandardCharsets.UTF_8);
+            ConversationIndex index = indexes.computeIfAbsent(conversation, k -> new ConversationIndex(indexInterval));
+            long ordinal = buffer.getLong(offset + 8);
+            if (ordinal != index.count() + 1) {
+                intact = false;
+                break;
+            }
+            index.add(ordinal, segment.baseOffset() + offset);
+            offset += length;
+        }
+        segment.recoverTo(offset, !intact);
+        return intact;
+    }
+
+    private boolean isValidRecord(MappedByteBuffer buffer, int offset, int length, int capacity) {
+        if (length < HEADER_SIZE + 4 || length > capacity - offset) {
+            return false;
+        }
+        int keyLength = buffer.getShort(offset + 32);
+        if (keyLength < 0 || HEADER_SIZE + keyLength + 4 > length
+                || HEADER_SIZE + keyLength + 4 + buffer.getInt(offset + HEADER_SIZE + keyLength) != length) {
+            return false;
+        }
+        crc.reset();
+        crc.update(buffer.duplicate().position(offset + 8).limit(offset + length));
+        return (int) crc.getValue() == buffer.getInt(offset + 4);
+    }
+}
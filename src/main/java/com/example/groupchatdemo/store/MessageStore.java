@@ -0,0 +1,458 @@
+package com.example.groupchatdemo.store;
+
+import com.example.groupchatdemo.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 消息持久化服务，把经过服务器的公共、房间和私聊消息追加到本地内存映射日志中，
+ * 并提供按会话分页读取历史的能力。
+ * 每个会话最近的消息同时保存在内存缓存中，新加入的用户从缓存取得最近的历史。
+ * 通过 chat.store.enabled=false 可以关闭持久化，此时只有内存缓存，分页历史为空。
+ * 公共和房间消息通过publish发布，带有会话内单调递增的序号，最近的消息同时保存在重放窗口中，
+ * 客户端断线重连后用replay补齐缺少的区间（见ResumeService）。
+ * 写入日志的每条消息都会通知登记的AppendListener（例如全文检索的索引）。
+ */
+@Service
+public class MessageStore implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageStore.class);
+
+    private final ObjectMapper objectMapper;
+    private final MessageLog messageLog; // 关闭持久化时为null
+    private final RecentMessageCache recentCache;
+    // 保证日志追加和缓存更新的顺序一致，也保证缓存未命中时从日志加载的内容不会与并发的追加交错
+    private final Object appendLock = new Object();
+    // 发布锁按会话键的哈希分段：同一会话的序号分配、追加和投递在同一把锁内完成，投递的顺序与序号一致。先于appendLock获取。
+    // 房间ID和私聊对象由客户端决定，不能为每个会话保留一把锁（会无限增长），所以用固定数量的锁。
+    // 房间消息本来就在房间所属的分片线程上串行发布，只有哈希到同一段的会话在投递（代理的扇出）期间互相等待
+    private static final int PUBLISH_LOCK_STRIPES = 64;
+    private final Object[] publishLocks = new Object[PUBLISH_LOCK_STRIPES];
+    private final boolean sequenced;
+    private final ReplayWindow replayWindow; // 不分配序号时为null
+    private final int maxReplay;
+    // 关闭持久化时各会话的序号（持久化时序号就是日志中的序号）
+    private final Map<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+    private final List<AppendListener> listeners = new CopyOnWriteArrayList<>();
+
+    public MessageStore(ObjectMapper objectMapper,
+                        @Value("${chat.store.enabled:true}") boolean enabled,
+                        @Value("${chat.store.dir:data/messages}") String dir,
+                        @Value("${chat.store.segment-size-mb:64}") long segmentSizeMb,
+                        @Value("${chat.store.index-interval:64}") int indexInterval,
+                        @Value("${chat.store.flush-interval-ms:10}") long flushIntervalMs,
+                        @Value("${chat.cache.messages-per-conversation:50}") int cachedPerConversation,
+                        @Value("${chat.cache.max-mb:32}") int cacheMaxMb,
+                        @Value("${chat.resume.enabled:true}") boolean resumeEnabled,
+                        @Value("${chat.cluster.enabled:false}") boolean clusterEnabled,
+                        @Value("${chat.resume.window-messages:1000}") int windowMessages) throws IOException {
+        this.objectMapper = objectMapper;
+        for (int i = 0; i < PUBLISH_LOCK_STRIPES; i++) {
+            publishLocks[i] = new Object();
+        }
+        long segmentBytes = segmentSizeMb * 1024 * 1024;
+        // 每个段映射为一个MappedByteBuffer，不能超过2GB
+        if (enabled && (segmentBytes <= 0 || segmentBytes > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("chat.store.segment-size-mb must be between 1 and 2047: " + segmentSizeMb);
+        }
+        this.messageLog = enabled
+                ? new MessageLog(Path.of(dir), (int) segmentBytes, indexInterval, flushIntervalMs)
+                : null;
+        this.recentCache = new RecentMessageCache(cachedPerConversation, cacheMaxMb * 1024L * 1024L);
+        // 集群模式下其他节点转发来的消息带的是原节点的序号，各节点的序号不一致，因此不分配序号
+        this.sequenced = resumeEnabled && !clusterEnabled;
+        this.replayWindow = sequenced ? new ReplayWindow(windowMessages) : null;
+        this.maxReplay = windowMessages;
+    }
+
+    /**
+     * 消息写入日志后的通知。在追加锁内按写入顺序调用，同一会话的序号递增，实现必须很快且不能阻塞。
+     */
+    @FunctionalInterface
+    public interface AppendListener {
+        /**
+         * @param conversation 会话键
+         * @param record 刚写入的记录
+         */
+        void appended(String conversation, LogRecord record);
+    }
+
+    /**
+     * @param listener 之后写入日志的每条消息都通知它
+     */
+    public void addAppendListener(AppendListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener 之前登记的监听器
+     */
+    public void removeAppendListener(AppendListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return 是否开启了持久化
+     */
+    public boolean isPersistent() {
+        return messageLog != null;
+    }
+
+    /**
+     * 按写入顺序遍历日志中已有的全部消息，关闭持久化时什么也不做。
+     * @param visitor 接收会话键和记录
+     */
+    public void forEachPersisted(BiConsumer<String, LogRecord> visitor) {
+        if (messageLog != null) {
+            messageLog.forEach(visitor);
+        }
+    }
+
+    /**
+     * @return 公共和房间消息是否带有序号，即是否支持断线续传
+     */
+    public boolean isSequenced() {
+        return sequenced;
+    }
+
+    /**
+     * 发布一条公共或房间消息：分配会话内的下一个序号，序列化一次，追加到历史和重放窗口，
+     * 然后在同一把锁内调用deliver投递，因此同一会话的投递顺序与序号顺序一致，客户端可以按序号去重和检测空洞。
+     * 持久化失败不会影响投递，此时消息不带序号。不支持续传时等同于append之后投递。
+     * @param conversation 会话键（不用于私聊）
+     * @param message 消息，序号写入它的seq字段
+     * @param deliver 投递序列化好的JSON，例如广播到会话的主题
+     * @return 投递的JSON
+     */
+    public byte[] publish(String conversation, Message message, Consumer<byte[]> deliver) {
+        synchronized (publishLock(conversation)) {
+            byte[] json;
+            if (!sequenced) {
+                message.setSeq(null); // 不信任客户端带来的序号
+                json = encode(message);
+                append(conversation, json);
+            } else {
+                long seq = messageLog == null
+                        ? sequences.computeIfAbsent(conversation, key -> new AtomicLong()).get() + 1
+                        : messageLog.count(conversation) + 1;
+                message.setSeq(seq);
+                json = encode(message);
+                long timestamp = System.currentTimeMillis();
+                try {
+                    synchronized (appendLock) {
+                        if (messageLog != null) {
+                            messageLog.append(conversation, timestamp, json);
+                        } else {
+                            sequences.get(conversation).set(seq);
+                        }
+                        LogRecord record = new LogRecord(seq, timestamp, json);
+                        recentCache.record(conversation, record);
+                        replayWindow.record(conversation, record);
+                        if (messageLog != null) {
+                            notifyAppended(conversation, record);
+                        }
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    log.warn("Failed to append message to {}", conversation, e);
+                    // 序号没有写入日志，下一条消息会再次使用它，所以这条消息不带序号投递
+                    message.setSeq(null);
+                    json = encode(message);
+                }
+            }
+            deliver.accept(json);
+            return json;
+        }
+    }
+
+    /**
+     * 断线续传时补发的消息。
+     * @param records 从旧到新排列的记录
+     * @param complete true表示records正好是afterSeq之后的全部消息；false表示缺少的区间已经无法补齐，records是最近的消息
+     * @param latest 会话当前最新的序号
+     */
+    public record Replay(List<LogRecord> records, boolean complete, long latest) {
+    }
+
+    /**
+     * 读取序号大于afterSeq的消息：优先从重放窗口取，窗口已经裁剪时从日志读取，
+     * 缺少的消息超过重放上限、日志中也没有（例如关闭持久化后服务器重启）时返回最近的消息并标记为不完整。
+     * @param conversation 会话键
+     * @param afterSeq 客户端已经收到的最大序号
+     * @return 补发的消息
+     */
+    public Replay replay(String conversation, long afterSeq) {
+        synchronized (publishLock(conversation)) {
+            long latest = latestSeq(conversation);
+            if (afterSeq == latest) {
+                return new Replay(Collections.emptyList(), true, latest);
+            }
+            if (afterSeq >= 0 && afterSeq < latest) {
+                List<LogRecord> records = replayWindow == null ? null : replayWindow.after(conversation, afterSeq);
+                if (records != null) {
+                    return new Replay(records, true, latest);
+                }
+                if (messageLog != null && latest - afterSeq <= maxReplay) {
+                    List<LogRecord> loaded = new ArrayList<>(messageLog.readBefore(conversation, 0, (int) (latest - afterSeq)));
+                    Collections.reverse(loaded);
+                    return new Replay(loaded, true, latest);
+                }
+            }
+            return new Replay(recent(conversation), false, latest);
+        }
+    }
+
+    /**
+     * @param conversation 会话键
+     * @return 会话当前最新的序号，没有消息时为0
+     */
+    public long latestSeq(String conversation) {
+        if (messageLog != null) {
+            return messageLog.count(conversation);
+        }
+        AtomicLong sequence = sequences.get(conversation);
+        return sequence == null ? 0 : sequence.get();
+    }
+
+    /**
+     * 裁剪会话的重放窗口。
+     * @param conversation 会话键
+     * @param throughSeq 所有订阅者都已确认的序号
+     * @param olderThanMillis 早于这个时间戳的消息也丢弃
+     * @return 丢弃的条数
+     */
+    public int trimReplayWindow(String conversation, long throughSeq, long olderThanMillis) {
+        return replayWindow == null ? 0 : replayWindow.trim(conversation, throughSeq, olderThanMillis);
+    }
+
+    /**
+     * @return 有重放窗口的会话键
+     */
+    public Collection<String> replayConversations() {
+        return replayWindow == null ? Collections.emptySet() : replayWindow.conversations();
+    }
+
+    /**
+     * @return 重放窗口中的消息总数
+     */
+    public long replayWindowSize() {
+        return replayWindow == null ? 0 : replayWindow.size();
+    }
+
+    /**
+     * 把消息追加到所属会话的历史中。持久化失败不会影响消息的实时投递。
+     * @param conversation 会话键
+     * @param message 消息
+     * @return 消息在会话内的序号；关闭持久化或写入失败时返回-1
+     */
+    public long append(String conversation, Message message) {
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(message);
+        } catch (IOException e) {
+            log.warn("Failed to serialize message for {}", conversation, e);
+            return -1;
+        }
+        return append(conversation, payload);
+    }
+
+    /**
+     * 追加已经序列化好的消息，投递时使用的同一个数组直接作为日志记录和缓存内容，不再序列化一次。
+     * @param conversation 会话键
+     * @param json 消息的JSON，调用后不能再修改
+     * @return 消息在会话内的序号；关闭持久化或写入失败时返回-1
+     */
+    public long append(String conversation, byte[] json) {
+        try {
+            long timestamp = System.currentTimeMillis();
+            synchronized (appendLock) {
+                long ordinal = messageLog == null ? -1 : messageLog.append(conversation, timestamp, json);
+                LogRecord record = new LogRecord(ordinal, timestamp, json);
+                recentCache.record(conversation, record);
+                if (messageLog != null) {
+                    notifyAppended(conversation, record);
+                }
+                return ordinal;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Failed to append message to {}", conversation, e);
+            return -1;
+        }
+    }
+
+    /**
+     * 读取会话最近的消息，优先从内存缓存中取；未命中时从日志加载并放入缓存。
+     * @param conversation 会话键
+     * @return 从旧到新排列的记录
+     */
+    public List<LogRecord> recent(String conversation) {
+        List<LogRecord> cached = recentCache.get(conversation);
+        if (cached != null) {
+            return cached;
+        }
+        synchronized (appendLock) {
+            cached = recentCache.peek(conversation);
+            if (cached != null) {
+                return cached;
+            }
+            List<LogRecord> loaded = messageLog == null
+                    ? new ArrayList<>()
+                    : new ArrayList<>(messageLog.readBefore(conversation, 0, recentCache.capacity()));
+            Collections.reverse(loaded);
+            recentCache.install(conversation, loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * @return 最近消息缓存的统计信息
+     */
+    public Map<String, Long> cacheStats() {
+        return recentCache.stats();
+    }
+
+    /**
+     * 按序号从新到旧读取一页历史。
+     * @param conversation 会话键
+     * @param beforeSeq 只返回序号小于它的消息；小于等于0表示从最新一条开始
+     * @param limit 最多返回的条数
+     * @return 从新到旧排列的记录
+     */
+    public List<LogRecord> history(String conversation, long beforeSeq, int limit) {
+        return messageLog == null ? Collections.emptyList() : messageLog.readBefore(conversation, beforeSeq, limit);
+    }
+
+    /**
+     * 把一页历史编码为JSON。消息内容直接使用日志中保存的字节，不经过反序列化和再序列化：
+     * {"conversation":..., "messages":[{"seq":..,"timestamp":..,"message":{...}}, ...], "nextBefore":..}
+     * @param conversation 会话键
+     * @param records history()返回的记录
+     * @return UTF-8编码的JSON
+     */
+    public byte[] toJson(String conversation, List<LogRecord> records) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256 + records.size() * 256);
+            out.write("{\"conversation\":".getBytes(StandardCharsets.UTF_8));
+            out.write(objectMapper.writeValueAsBytes(conversation));
+            writeMessages(out, records);
+            long nextBefore = records.isEmpty() ? 0 : records.get(records.size() - 1).ordinal();
+            out.write(("],\"nextBefore\":" + (nextBefore > 1 ? nextBefore : 0) + "}").getBytes(StandardCharsets.UTF_8));
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // ByteArrayOutputStream不会抛出IOException，只可能是会话键序列化失败
+        }
+    }
+
+    /**
+     * 把会话最近的消息编码为发给新加入用户的HISTORY_BACKLOG帧：
+     * {"command":"HISTORY_BACKLOG","conversation":..., "messages":[...从旧到新...]}
+     * @param conversation 会话键
+     * @param records recent()返回的记录
+     * @return UTF-8编码的JSON
+     */
+    public byte[] backlogJson(String conversation, List<LogRecord> records) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256 + records.size() * 256);
+            out.write("{\"command\":\"HISTORY_BACKLOG\",\"conversation\":".getBytes(StandardCharsets.UTF_8));
+            out.write(objectMapper.writeValueAsBytes(conversation));
+            writeMessages(out, records);
+            out.write(']');
+            out.write('}');
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 把补发的消息编码为RESUME帧：
+     * {"command":"RESUME","conversation":..., "after":..., "latest":..., "complete":..., "messages":[...从旧到新...]}
+     * @param conversation 会话键
+     * @param afterSeq 客户端请求的起点
+     * @param replay replay()的结果
+     * @return UTF-8编码的JSON
+     */
+    public byte[] resumeJson(String conversation, long afterSeq, Replay replay) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256 + replay.records().size() * 256);
+            out.write("{\"command\":\"RESUME\",\"conversation\":".getBytes(StandardCharsets.UTF_8));
+            out.write(objectMapper.writeValueAsBytes(conversation));
+            out.write((",\"after\":" + afterSeq + ",\"latest\":" + replay.latest()
+                    + ",\"complete\":" + replay.complete()).getBytes(StandardCharsets.UTF_8));
+            writeMessages(out, replay.records());
+            out.write(']');
+            out.write('}');
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void notifyAppended(String conversation, LogRecord record) {
+        for (AppendListener listener : listeners) {
+            listener.appended(conversation, record);
+        }
+    }
+
+    private Object publishLock(String conversation) {
+        return publishLocks[publishStripe(conversation)];
+    }
+
+    /**
+     * @return 会话使用的发布锁的下标，哈希相同的会话使用同一把锁
+     */
+    static int publishStripe(String conversation) {
+        int hash = conversation.hashCode();
+        return (hash ^ (hash >>> 16)) & (PUBLISH_LOCK_STRIPES - 1);
+    }
+
+    private byte[] encode(Message message) {
+        try {
+            return objectMapper.writeValueAsBytes(message);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not serialize message", e);
+        }
+    }
+
+    // 写出 ,"messages":[...] 的内容（不含结尾的]），没有持久化序号的记录省略seq
+    private static void writeMessages(ByteArrayOutputStream out, List<LogRecord> records) throws IOException {
+        out.write(",\"messages\":[".getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < records.size(); i++) {
+            LogRecord record = records.get(i);
+            if (i > 0) {
+                out.write(',');
+            }
+            String head = record.ordinal() > 0
+                    ? "{\"seq\":" + record.ordinal() + ",\"timestamp\":" + record.timestamp() + ",\"message\":"
+                    : "{\"timestamp\":" + record.timestamp() + ",\"message\":";
+            out.write(head.getBytes(StandardCharsets.UTF_8));
+            out.write(record.payload());
+            out.write('}');
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (messageLog != null) {
+            messageLog.close();
+        }
+    }
+}
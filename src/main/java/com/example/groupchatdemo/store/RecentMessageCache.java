@@ -0,0 +1,201 @@
+package com.example.groupchatdemo.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按会话保存最近消息的内存缓存，新加入的用户直接从这里取得最近的历史，不需要读磁盘。
+ * 每个会话是一个固定容量的环形缓冲区，保存已经序列化好的消息字节；
+ * 所有会话的总字节数超过预算时，按最近最少使用的顺序淘汰空闲的会话。
+ * 所有方法都是同步的，每次操作只涉及一个环形缓冲区，持锁时间很短。
+ */
+public final class RecentMessageCache {
+
+    // 每个缓存的会话和每条记录的估算额外开销（对象头、数组、引用等）
+    private static final int RING_OVERHEAD = 128;
+    private static final int RECORD_OVERHEAD = 48;
+
+    private final int capacity;
+    private final long maxBytes;
+    // accessOrder=true：迭代顺序即最近最少使用的顺序
+    private final LinkedHashMap<String, Ring> rings = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param capacity 每个会话最多缓存的消息条数
+     * @param maxBytes 全部会话的字节预算
+     */
+    public RecentMessageCache(int capacity, long maxBytes) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 读取会话缓存的最近消息，并记录一次命中或未命中。
+     * @param conversation 会话键
+     * @return 从旧到新排列的记录；会话不在缓存中时返回null
+     */
+    public synchronized List<LogRecord> get(String conversation) {
+        Ring ring = rings.get(conversation);
+        if (ring == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return ring.toList();
+    }
+
+    /**
+     * 与get相同但不计入命中统计，用于未命中后加载前的再次检查。
+     */
+    synchronized List<LogRecord> peek(String conversation) {
+        Ring ring = rings.get(conversation);
+        return ring == null ? null : ring.toList();
+    }
+
+    /**
+     * 记录会话的一条新消息。
+     * 会话不在缓存中时，只有当它是该会话的第一条消息（或没有持久化序号）时才创建缓冲区，
+     * 否则缓存中会缺少更早的消息，应等到下一次未命中时从日志加载。
+     * @param conversation 会话键
+     * @param record 新消息
+     */
+    public synchronized void record(String conversation, LogRecord record) {
+        Ring ring = rings.get(conversation);
+        if (ring == null) {
+            if (record.ordinal() > 1) {
+                return;
+            }
+            ring = new Ring(capacity);
+            rings.put(conversation, ring);
+            totalBytes += RING_OVERHEAD;
+        }
+        totalBytes += ring.add(record);
+        enforceBudget(conversation);
+    }
+
+    /**
+     * 放入从日志加载的最近消息。会话已经在缓存中时不做任何事。
+     * @param conversation 会话键
+     * @param records 从旧到新排列的记录
+     */
+    public synchronized void install(String conversation, List<LogRecord> records) {
+        if (rings.containsKey(conversation)) {
+            return;
+        }
+        Ring ring = new Ring(capacity);
+        totalBytes += RING_OVERHEAD;
+        for (LogRecord record : records) {
+            totalBytes += ring.add(record);
+        }
+        rings.put(conversation, ring);
+        enforceBudget(conversation);
+    }
+
+    /**
+     * @return 缓存的统计信息：会话数、估算字节数、命中、未命中和淘汰次数
+     */
+    public synchronized Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("conversations", (long) rings.size());
+        stats.put("bytes", totalBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    /**
+     * 超出字节预算时先淘汰最久未使用的其他会话；只剩当前会话仍然超出时，丢弃它最旧的消息。
+     */
+    private void enforceBudget(String current) {
+        Iterator<Map.Entry<String, Ring>> eldest = rings.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Ring> entry = eldest.next();
+            if (entry.getKey().equals(current)) {
+                continue;
+            }
+            totalBytes -= entry.getValue().bytes + RING_OVERHEAD;
+            eldest.remove();
+            evictions++;
+        }
+        Ring ring = rings.get(current);
+        while (totalBytes > maxBytes && ring != null && ring.size > 1) {
+            totalBytes -= ring.removeOldest();
+        }
+    }
+
+    private static long sizeOf(LogRecord record) {
+        return record.payload().length + RECORD_OVERHEAD;
+    }
+
+    /**
+     * 固定容量的环形缓冲区，满了以后覆盖最旧的记录。
+     */
+    private static final class Ring {
+        private final LogRecord[] entries;
+        private int head; // 最旧记录的下标
+        private int size;
+        private long bytes;
+
+        Ring(int capacity) {
+            this.entries = new LogRecord[capacity];
+        }
+
+        /**
+         * @return 缓冲区字节数的变化量
+         */
+        long add(LogRecord record) {
+            long delta = sizeOf(record);
+            if (size == entries.length) {
+                delta -= sizeOf(entries[head]);
+                entries[head] = record;
+                head = (head + 1) % entries.length;
+            } else {
+                entries[(head + size) % entries.length] = record;
+                size++;
+            }
+            bytes += delta;
+            return delta;
+        }
+
+        /**
+         * @return 释放的字节数
+         */
+        long removeOldest() {
+            long freed = sizeOf(entries[head]);
+            entries[head] = null;
+            head = (head + 1) % entries.length;
+            size--;
+            bytes -= freed;
+            return freed;
+        }
+
+        List<LogRecord> toList() {
+            if (size == 0) {
+                return Collections.emptyList();
+            }
+            List<LogRecord> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(entries[(head + i) % entries.length]);
+            }
+            return list;
+        }
+    }
+}
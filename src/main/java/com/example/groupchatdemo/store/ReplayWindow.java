@@ -0,0 +1,118 @@
+package com.example.groupchatdemo.store;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 断线续传的重放窗口：按会话保留最近发布的消息，客户端重连时只补发它缺少的序号区间。
+ * 与RecentMessageCache不同，窗口不按最近最少使用淘汰，而是由ResumeService根据客户端的确认和保留时间裁剪：
+ * 所有订阅者都确认过的消息、超过保留时间的消息都可以丢弃。每个会话最多保留capacity条，超出时丢弃最早的。
+ * 记录与缓存、日志共享同一个序列化好的字节数组。读取在窗口上加锁，与写入和裁剪互斥。
+ */
+public final class ReplayWindow {
+
+    private final int capacity;
+    private final Map<String, ArrayDeque<LogRecord>> windows = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * @param capacity 每个会话最多保留的消息条数
+     */
+    public ReplayWindow(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * 记录一条刚发布的消息。同一会话的记录必须按序号顺序加入。
+     * @param conversation 会话键
+     * @param record 消息记录
+     */
+    public void record(String conversation, LogRecord record) {
+        windows.compute(conversation, (key, window) -> {
+            if (window == null) {
+                window = new ArrayDeque<>();
+            }
+            synchronized (window) {
+                window.addLast(record);
+                size.incrementAndGet();
+                if (window.size() > capacity) {
+                    window.pollFirst();
+                    size.decrementAndGet();
+                }
+            }
+            return window;
+        });
+    }
+
+    /**
+     * 读取序号大于afterSeq的全部消息。
+     * @param conversation 会话键
+     * @param afterSeq 客户端已经收到的最大序号
+     * @return 从旧到新排列的记录；窗口中已经没有afterSeq之后的第一条消息时返回null
+     */
+    public List<LogRecord> after(String conversation, long afterSeq) {
+        ArrayDeque<LogRecord> window = windows.get(conversation);
+        if (window == null) {
+            return null;
+        }
+        synchronized (window) {
+            LogRecord first = window.peekFirst();
+            if (first == null || first.ordinal() > afterSeq + 1) {
+                return null;
+            }
+            List<LogRecord> records = new ArrayList<>();
+            for (LogRecord record : window) {
+                if (record.ordinal() > afterSeq) {
+                    records.add(record);
+                }
+            }
+            return records;
+        }
+    }
+
+    /**
+     * 丢弃序号不大于throughSeq或早于olderThanMillis的消息，会话的窗口为空时删除它。
+     * @param conversation 会话键
+     * @param throughSeq 所有订阅者都已确认的序号
+     * @param olderThanMillis 保留时间的下限（毫秒时间戳）
+     * @return 丢弃的条数
+     */
+    public int trim(String conversation, long throughSeq, long olderThanMillis) {
+        int[] trimmed = new int[1];
+        windows.computeIfPresent(conversation, (key, window) -> {
+            synchronized (window) {
+                LogRecord first;
+                while ((first = window.peekFirst()) != null
+                        && (first.ordinal() <= throughSeq || first.timestamp() < olderThanMillis)) {
+                    window.pollFirst();
+                    trimmed[0]++;
+                }
+                size.addAndGet(-trimmed[0]);
+                return window.isEmpty() ? null : window;
+            }
+        });
+        return trimmed[0];
+    }
+
+    /**
+     * @return 当前有窗口的会话键
+     */
+    public Set<String> conversations() {
+        return windows.keySet();
+    }
+
+    /**
+     * @return 全部窗口中的消息条数
+     */
+    public long size() {
+        return size.get();
+    }
+}
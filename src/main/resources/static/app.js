@@ -2,6 +2,22 @@ let stompClient = null;
 let username = null;
 let activeChatTarget = 'public'; // 当前活跃的聊天对象：'public' 或某个私聊用户名
 const privateChatWindows = new Map(); // 存储私聊窗口的Map，键为用户名
+const roomChats = new Map(); // 已加入的房间，键为房间ID，值为 {window, subscription}
+const ROOM_TARGET_PREFIX = 'room:'; // activeChatTarget中房间目标的前缀
+const onlineUsers = new Set(); // 当前在线用户（不含自己），由在线状态快照和增量维护
+let presenceVersion = -1; // 本地在线状态的版本号，-1表示尚未收到快照
+let bufferedPresenceDeltas = []; // 收到快照前到达的增量，快照到达后再按版本号应用
+const lastSeqs = new Map(); // 公共聊天室（'public'）和每个房间（'room:{id}'）已收到的最大序号，断线重连时从这里续传
+const ackedSeqs = new Map(); // 已经确认给服务器的序号
+const resumingConversations = new Map(); // 正在续传的会话 -> 等待RESUME帧期间到达的实时消息
+const ACK_INTERVAL_MS = 2000; // 确认已收到序号的间隔
+const MAX_RECONNECT_DELAY_MS = 30000;
+const typingStates = new Map(); // 会话 -> (origin -> {signals, expiresAt})，每个服务器节点的汇总帧分别保存
+const typingSentAt = new Map(); // 会话 -> 上一次发送typing的时间
+const TYPING_REFRESH_MS = 2000; // 持续输入时重发typing的间隔，服务器只在状态变化时广播
+let reconnectDelay = 1000; // 下一次重连前的等待时间，每次失败加倍
+const MAX_UPLOAD_RETRIES = 5; // 上传一块连续失败的次数上限，超过后放弃这次上传
+const INLINE_IMAGE_TYPES = new Set(['image/png', 'image/jpeg', 'image/gif', 'image/webp']); // 直接显示为图片的附件类型
 
 // 获取DOM元素
 const usernamePage = document.querySelector('#usernamePage');
@@ -18,7 +34,10 @@ const publicChatWindow = document.querySelector('#publicChatWindow');
 const publicMessageArea = document.querySelector('#publicMessageArea');
 const publicMessageInput = document.querySelector('#publicMessageInput');
 const publicSendButton = document.querySelector('#publicSendButton');
+const publicAttachmentInput = document.querySelector('#publicAttachmentInput');
 const privateChatWindowTemplate = document.querySelector('#privateChatWindowTemplate');
+const roomInput = document.querySelector('#roomInput');
+const joinRoomButton = document.querySelector('#joinRoomButton');
 
 // 连接WebSocket
 function connect() {
@@ -27,29 +46,50 @@ function connect() {
     if (username) {
         usernamePage.classList.add('d-none');
         chatPage.classList.remove('d-none');
-
-        // 不再将用户名作为查询参数添加到WebSocket URL
-        const socket = new SockJS('/ws'); // 连接到WebSocketConfig中配置的端点
-        stompClient = Stomp.over(socket);
-
-        // 在连接时将用户名作为自定义STOMP头发送
-        const headers = {
-            'username': username
-        };
-        stompClient.connect(headers, onConnected, onError); // 连接成功或失败的回调
+        openConnection();
+        setInterval(acknowledgeSeqs, ACK_INTERVAL_MS);
+        setInterval(expireTypingStates, 1000);
     } else {
         alert('请输入用户名！');
     }
 }
 
+// 建立连接；断线后也用它重连
+function openConnection() {
+    // 不再将用户名作为查询参数添加到WebSocket URL
+    const socket = new SockJS('/ws'); // 连接到WebSocketConfig中配置的端点
+    stompClient = Stomp.over(socket);
+
+    // 在连接时将用户名作为自定义STOMP头发送
+    const headers = {
+        'username': username
+    };
+    stompClient.connect(headers, onConnected, onError); // 连接成功或失败的回调
+}
+
 // WebSocket连接成功回调
 function onConnected() {
     console.log("Client: onConnected triggered.");
-    // 订阅公共聊天主题
-    stompClient.subscribe('/topic/public', onMessageReceived);
-    // 订阅私聊消息队列（每个用户有独立的队列）
+    reconnectDelay = 1000;
+    // 重连后服务器会重新发送在线状态快照
+    presenceVersion = -1;
+    bufferedPresenceDeltas = [];
+    // 订阅私聊消息队列（每个用户有独立的队列）。续传补发的RESUME帧从这里收到，所以先于公共聊天室和房间订阅
     stompClient.subscribe('/user/queue/messages', onMessageReceived, {'id': 'private-messages-sub'});
     console.log("Client: Subscribed to /user/queue/messages");
+    // 订阅公共聊天主题；重连时从已收到的最大序号续传
+    stompClient.subscribe('/topic/public', conversationListener('public'), resumeHeaders('public'));
+    // 重连时重新订阅已加入的房间
+    roomChats.forEach((room, roomId) => {
+        const key = ROOM_TARGET_PREFIX + roomId;
+        room.subscription = stompClient.subscribe(`/topic/room/${roomId}`, conversationListener(key), resumeHeaders(key));
+        room.typingSubscription = stompClient.subscribe(`/topic/ephemeral/room/${roomId}`, onEphemeralReceived);
+    });
+    // 正在输入等瞬时信号，丢失或断线期间的状态不补发
+    stompClient.subscribe('/topic/ephemeral/public', onEphemeralReceived);
+    typingSentAt.clear();
+    // 订阅在线状态增量（必须在发送addUser之前订阅，才不会漏掉快照之后的变化）
+    stompClient.subscribe('/topic/presence', onPresenceReceived);
 
     // 发送用户加入消息给服务器
     stompClient.send("/app/chat.addUser",
@@ -62,11 +102,158 @@ function onConnected() {
     showChatWindow('public');
 }
 
-// WebSocket连接失败回调
+// WebSocket连接失败或断开的回调：等待一段时间后重连，重连后从已收到的序号续传
 function onError(error) {
-    // 使用公共消息区域显示错误信息
-    publicMessageArea.innerHTML = '<div class="system-message">无法连接到WebSocket服务器。请刷新页面重试。</div>';
     console.error('WebSocket connection error:', error);
+    showSystemNote(publicMessageArea, `连接已断开，${Math.round(reconnectDelay / 1000)} 秒后重新连接…`);
+    setTimeout(openConnection, reconnectDelay);
+    reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MS);
+}
+
+// 订阅头：已经收到过这个会话的消息时请求从该序号续传，续传完成前到达的实时消息先缓存
+function resumeHeaders(key) {
+    if (!lastSeqs.has(key)) {
+        return {};
+    }
+    resumingConversations.set(key, []);
+    return {'resume-from': String(lastSeqs.get(key))};
+}
+
+// 公共聊天室或房间的订阅回调
+function conversationListener(key) {
+    return payload => {
+        const buffered = resumingConversations.get(key);
+        if (buffered) {
+            buffered.push(payload);
+            return;
+        }
+        onMessageReceived(payload);
+    };
+}
+
+// 显示续传补发的消息，然后处理等待期间缓存的实时消息（与补发重叠的部分按序号丢弃）
+function showResume(resume) {
+    const key = resume.conversation;
+    if (!resume.complete) {
+        showSystemNote(messageAreaOf(key), '断线期间的部分消息已无法补齐，以下是最近的消息。');
+        if (resume.after > resume.latest) {
+            lastSeqs.set(key, 0); // 服务器的序号已经重新开始
+        }
+    }
+    resume.messages.forEach(entry => onMessageReceived({body: JSON.stringify(entry.message)}));
+    const buffered = resumingConversations.get(key) || [];
+    resumingConversations.delete(key);
+    buffered.forEach(payload => onMessageReceived(payload));
+}
+
+// 定期把已收到的最大序号告诉服务器，服务器据此裁剪为重连保留的消息
+function acknowledgeSeqs() {
+    if (!stompClient || !stompClient.connected) {
+        return;
+    }
+    lastSeqs.forEach((seq, key) => {
+        if (ackedSeqs.get(key) === seq) {
+            return;
+        }
+        const room = key.startsWith(ROOM_TARGET_PREFIX) ? key.substring(ROOM_TARGET_PREFIX.length) : null;
+        stompClient.send('/app/chat.ack', {}, JSON.stringify({command: 'ACK', room: room, content: String(seq)}));
+        ackedSeqs.set(key, seq);
+    });
+}
+
+// 会话对应的消息区域
+function messageAreaOf(key) {
+    if (key.startsWith(ROOM_TARGET_PREFIX)) {
+        const room = roomChats.get(key.substring(ROOM_TARGET_PREFIX.length));
+        return room ? room.window.querySelector('.private-message-area') : null;
+    }
+    return publicMessageArea;
+}
+
+function showSystemNote(area, text) {
+    if (!area) {
+        return;
+    }
+    const note = document.createElement('div');
+    note.classList.add('message-box', 'system-message');
+    note.innerHTML = `<strong>[系统消息]:</strong> ${text}`;
+    area.appendChild(note);
+    area.scrollTop = area.scrollHeight;
+}
+
+// 输入框内容变化时发送typing信号（持续输入时每TYPING_REFRESH_MS重发一次），清空时发送idle
+function notifyTyping(key, input) {
+    if (!stompClient || !stompClient.connected) {
+        return;
+    }
+    const typing = input.value.trim() !== '';
+    const sentAt = typingSentAt.get(key);
+    if (typing && sentAt !== undefined && Date.now() - sentAt < TYPING_REFRESH_MS) {
+        return;
+    }
+    if (!typing && sentAt === undefined) {
+        return;
+    }
+    const destination = key === 'public' ? '/app/ephemeral/public' : `/app/ephemeral/room/${key.substring(ROOM_TARGET_PREFIX.length)}`;
+    stompClient.send(destination, {}, typing ? 'typing' : 'idle');
+    if (typing) {
+        typingSentAt.set(key, Date.now());
+    } else {
+        typingSentAt.delete(key);
+    }
+}
+
+// 瞬时信号的汇总帧：替换该节点在这个会话中的全部信号
+function onEphemeralReceived(payload) {
+    const frame = JSON.parse(payload.body);
+    if (!typingStates.has(frame.conversation)) {
+        typingStates.set(frame.conversation, new Map());
+    }
+    typingStates.get(frame.conversation).set(frame.origin, {signals: frame.signals, expiresAt: Date.now() + frame.ttlMs});
+    renderTyping(frame.conversation);
+}
+
+// 丢弃已经过期的汇总帧（节点下线或重发的帧被丢弃时）
+function expireTypingStates() {
+    const now = Date.now();
+    typingStates.forEach((origins, key) => {
+        let expired = false;
+        origins.forEach((state, origin) => {
+            if (state.expiresAt <= now) {
+                origins.delete(origin);
+                expired = true;
+            }
+        });
+        if (expired) {
+            renderTyping(key);
+        }
+    });
+}
+
+// 在消息区域下方显示正在输入的用户
+function renderTyping(key) {
+    const area = messageAreaOf(key);
+    if (!area) {
+        return;
+    }
+    let indicator = area.parentElement.querySelector('.typing-indicator');
+    if (!indicator) {
+        indicator = document.createElement('div');
+        indicator.classList.add('typing-indicator', 'small', 'text-muted', 'px-3');
+        area.after(indicator);
+    }
+    const typers = new Set();
+    (typingStates.get(key) || new Map()).forEach(state => {
+        Object.entries(state.signals).forEach(([user, signal]) => {
+            if (signal === 'typing' && user !== username) {
+                typers.add(user);
+            }
+        });
+    });
+    const names = [...typers];
+    indicator.textContent = names.length === 0 ? ''
+        : names.length <= 3 ? `${names.join('、')} 正在输入…`
+        : `${names.length} 人正在输入…`;
 }
 
 // 发送消息 (公共或私聊)
@@ -78,6 +265,17 @@ function sendMessage() {
     if (activeChatTarget === 'public') {
         messageContent = publicMessageInput.value.trim();
         messageType = 'CHAT';
+    } else if (activeChatTarget.startsWith(ROOM_TARGET_PREFIX)) {
+        // 房间消息
+        const roomId = activeChatTarget.substring(ROOM_TARGET_PREFIX.length);
+        const roomMessageInput = roomChats.get(roomId).window.querySelector('.private-message-input');
+        messageContent = roomMessageInput.value.trim();
+        if (messageContent && stompClient) {
+            stompClient.send(`/app/room/${roomId}/send`, {}, JSON.stringify({from: username, content: messageContent, command: 'ROOM_CHAT'}));
+            roomMessageInput.value = '';
+            notifyTyping(activeChatTarget, roomMessageInput);
+        }
+        return;
     } else {
         // 私聊消息
         const privateMessageInput = privateChatWindows.get(activeChatTarget).querySelector('.private-message-input');
@@ -98,6 +296,7 @@ function sendMessage() {
         if (messageType === 'CHAT') {
             stompClient.send("/app/chat.sendMessage", {}, JSON.stringify(chatMessage));
             publicMessageInput.value = ''; // 清空公共输入框
+            notifyTyping('public', publicMessageInput);
         } else if (messageType === 'PRIVATE_CHAT') {
             stompClient.send("/app/chat.sendPrivateMessage", {}, JSON.stringify(chatMessage));
             privateChatWindows.get(activeChatTarget).querySelector('.private-message-input').value = ''; // 清空私聊输入框
@@ -105,6 +304,120 @@ function sendMessage() {
     }
 }
 
+// 分块上传文件：每一块带上起始位置，网络错误或位置不一致（409）时向服务器查询已收到的字节数，从那里继续。
+// 文件内容不经过WebSocket，上传完成后得到的附件引用随聊天消息发送
+async function uploadAttachment(file) {
+    const params = new URLSearchParams({user: username, name: file.name, size: file.size});
+    let response = await fetch(`/api/attachments/uploads?${params}`, {method: 'POST'});
+    if (!response.ok) {
+        throw new Error(`创建上传失败 (${response.status})`);
+    }
+    let state = await response.json();
+    let failures = 0;
+    while (state.status !== 'COMPLETE') {
+        const chunk = file.slice(state.received, Math.min(file.size, state.received + state.chunkSize));
+        try {
+            response = await fetch(`/api/attachments/uploads/${state.uploadId}?offset=${state.received}`,
+                {method: 'PUT', headers: {'Content-Type': 'application/octet-stream'}, body: chunk});
+            if (response.ok || response.status === 409) {
+                state = await response.json();
+                failures = 0;
+                continue;
+            }
+            if (response.status === 404 || response.status === 413) {
+                throw new Error(`上传失败 (${response.status})`);
+            }
+        } catch (error) {
+            if (!(error instanceof TypeError)) {
+                throw error; // 不是网络错误，重试也不会成功
+            }
+        }
+        if (++failures > MAX_UPLOAD_RETRIES) {
+            throw new Error('上传失败，请检查网络后重试');
+        }
+        await new Promise(resolve => setTimeout(resolve, 1000 * failures));
+        try {
+            response = await fetch(`/api/attachments/uploads/${state.uploadId}`);
+            if (response.ok) {
+                state = await response.json();
+            } else if (response.status === 404) {
+                throw new Error('上传已过期，请重新选择文件');
+            }
+        } catch (error) {
+            if (!(error instanceof TypeError)) {
+                throw error;
+            }
+        }
+    }
+    return state.attachment;
+}
+
+// 上传选中的文件，然后向发起上传时的会话发送只带附件引用的消息
+async function sendAttachment(target, fileInput) {
+    const file = fileInput.files[0];
+    fileInput.value = ''; // 允许再次选择同一个文件
+    if (!file || !stompClient) {
+        return;
+    }
+    let attachment;
+    try {
+        attachment = await uploadAttachment(file);
+    } catch (error) {
+        alert(`${file.name}: ${error.message}`);
+        return;
+    }
+    if (target === 'public') {
+        stompClient.send("/app/chat.sendMessage", {}, JSON.stringify(
+            {from: username, content: '', isPrivate: false, command: 'CHAT', attachment: attachment}));
+    } else if (target.startsWith(ROOM_TARGET_PREFIX)) {
+        const roomId = target.substring(ROOM_TARGET_PREFIX.length);
+        stompClient.send(`/app/room/${roomId}/send`, {}, JSON.stringify(
+            {from: username, content: '', command: 'ROOM_CHAT', attachment: attachment}));
+    } else {
+        stompClient.send("/app/chat.sendPrivateMessage", {}, JSON.stringify(
+            {from: username, to: target, content: '', isPrivate: true, command: 'PRIVATE_CHAT', attachment: attachment}));
+    }
+}
+
+// 在消息内容后面显示附件：常见图片类型直接显示，其他类型显示为带大小的下载链接
+function appendAttachment(contentDiv, attachment) {
+    if (!attachment) {
+        return;
+    }
+    const url = `/api/attachments/${attachment.id}/${encodeURIComponent(attachment.name)}`;
+    const link = document.createElement('a');
+    link.href = url;
+    link.target = '_blank';
+    link.rel = 'noopener';
+    if (INLINE_IMAGE_TYPES.has(attachment.type)) {
+        const image = document.createElement('img');
+        image.classList.add('attachment-image');
+        image.src = url;
+        image.alt = attachment.name;
+        image.loading = 'lazy';
+        link.appendChild(image);
+    } else {
+        link.textContent = `📄 ${attachment.name} (${formatSize(attachment.size)})`;
+        link.download = attachment.name;
+        const line = document.createElement('div');
+        line.appendChild(link);
+        contentDiv.appendChild(line);
+        return;
+    }
+    contentDiv.appendChild(link);
+}
+
+function formatSize(bytes) {
+    const units = ['B', 'KB', 'MB', 'GB'];
+    let value = bytes;
+    let unit = 0;
+    while (value >= 1024 && unit < units.length - 1) {
+        value /= 1024;
+        unit++;
+    }
+    return `${unit === 0 ? value : value.toFixed(1)} ${units[unit]}`;
+}
+
 // 接收到消息时的处理
 function onMessageReceived(payload) {
     console.log(`Client: activeChatTarget at message receipt: ${activeChatTarget}`);
@@ -114,6 +427,17 @@ function onMessageReceived(payload) {
     console.log('Client: Message command:', message.command);
     console.log('Client: Message isPrivate:', message.isPrivate);
 
+    // 公共和房间消息带有序号：丢弃已经显示过的（续传与实时消息的重叠部分），并记录收到的最大序号。
+    // 加入时补发的最近历史可能晚于实时消息到达，只更新序号，不丢弃
+    if (message.seq != null) {
+        const key = message.room ? ROOM_TARGET_PREFIX + message.room : 'public';
+        const lastSeq = lastSeqs.has(key) ? lastSeqs.get(key) : 0;
+        if (message.seq <= lastSeq && !payload.backlog) {
+            return;
+        }
+        lastSeqs.set(key, Math.max(lastSeq, message.seq));
+    }
+
     // Variables for message display, initialized only when needed
     let messageElement = null;
     let targetMessageArea = null;
@@ -148,6 +472,7 @@ function onMessageReceived(payload) {
                 publicAvatarImg.alt = message.from.charAt(0);
                 publicContentDiv.innerHTML = `<strong>${message.from}:</strong> ${message.content}`;
             }
+            appendAttachment(publicContentDiv, message.attachment);
             messageElement.appendChild(publicAvatarImg);
             messageElement.appendChild(publicContentDiv);
             break;
@@ -191,6 +516,7 @@ function onMessageReceived(payload) {
                     privateAvatarImg.alt = message.from.charAt(0);
                     privateContentDiv.innerHTML = `<strong>[私聊] ${message.from}:</strong> ${message.content}`;
                 }
+                appendAttachment(privateContentDiv, message.attachment);
                 messageElement.appendChild(privateAvatarImg);
                 messageElement.appendChild(privateContentDiv);
 
@@ -201,10 +527,27 @@ function onMessageReceived(payload) {
                 console.warn("PRIVATE_CHAT: Received message with command PRIVATE_CHAT but invalid structure:", message);
             }
             break;
+        case 'ROOM_CHAT':
+        case 'ROOM_JOIN':
+        case 'ROOM_LEAVE':
+            showRoomMessage(message);
+            return;
         case 'USER_LIST_UPDATE':
             console.log('Client: Processing USER_LIST_UPDATE. Content:', message.content);
             updateOnlineUsers(message.content);
             return; // 直接返回，不处理后续的消息显示和滚动逻辑
+        case 'PRESENCE_SNAPSHOT':
+            applyPresenceSnapshot(message);
+            return;
+        case 'HISTORY_BACKLOG':
+            showHistoryBacklog(message);
+            return;
+        case 'OFFLINE_MESSAGES':
+            showOfflineMessages(message);
+            return;
+        case 'RESUME':
+            showResume(message);
+            return;
         case 'SERVER_INFO':
             messageElement = document.createElement('div');
             messageElement.classList.add('message-box');
@@ -230,55 +573,122 @@ function onMessageReceived(payload) {
     }
 }
 
-// 更新在线用户列表，并添加点击事件和头像
+// 显示加入公共聊天室或房间时服务器补发的最近消息（从旧到新）
+function showHistoryBacklog(backlog) {
+    backlog.messages.forEach(entry => onMessageReceived({body: JSON.stringify(entry.message), backlog: true}));
+}
+
+// 显示离线期间收到的私聊，然后确认这一批，否则下次加入时会重新收到
+function showOfflineMessages(batch) {
+    batch.messages.forEach(message => onMessageReceived({body: JSON.stringify(message)}));
+    stompClient.send("/app/mailbox.ack", {}, JSON.stringify({command: 'MAILBOX_ACK', content: String(batch.batchId)}));
+}
+
+// 收到在线状态增量帧
+function onPresenceReceived(payload) {
+    const delta = JSON.parse(payload.body);
+    if (presenceVersion < 0) {
+        // 尚未收到快照，先缓存起来
+        bufferedPresenceDeltas.push(delta);
+        return;
+    }
+    applyPresenceDelta(delta);
+}
+
+// 应用完整快照，然后应用快照之前缓存的增量
+function applyPresenceSnapshot(snapshot) {
+    console.log('Client: Presence snapshot at version', snapshot.version, snapshot.users);
+    onlineUsers.forEach(user => removeOnlineUserItem(user));
+    onlineUsers.clear();
+    snapshot.users.forEach(user => addOnlineUser(user));
+    presenceVersion = snapshot.version;
+
+    const buffered = bufferedPresenceDeltas;
+    bufferedPresenceDeltas = [];
+    buffered.forEach(delta => applyPresenceDelta(delta));
+}
+
+// 应用一帧增量。增量携带的是用户在version时的最终状态，因此与快照部分重叠时重复应用也是安全的
+function applyPresenceDelta(delta) {
+    if (delta.version <= presenceVersion) {
+        return; // 快照已经包含了这些变化
+    }
+    if (delta.fromVersion > presenceVersion + 1) {
+        // 版本号出现缺口（例如丢帧），丢弃本地状态并请求新的快照
+        console.warn('Client: Presence gap detected, local', presenceVersion, 'delta from', delta.fromVersion);
+        presenceVersion = -1;
+        bufferedPresenceDeltas = [];
+        stompClient.send('/app/presence.sync', {}, '');
+        return;
+    }
+    delta.joined.forEach(user => addOnlineUser(user));
+    delta.left.forEach(user => removeOnlineUser(user));
+    presenceVersion = delta.version;
+}
+
+function addOnlineUser(user) {
+    if (user === username || onlineUsers.has(user)) {
+        return;
+    }
+    onlineUsers.add(user);
+    addOnlineUserItem(user);
+}
+
+function removeOnlineUser(user) {
+    if (onlineUsers.delete(user)) {
+        removeOnlineUserItem(user);
+    }
+}
+
+// 更新在线用户列表，并添加点击事件和头像（兼容旧的USER_LIST_UPDATE完整列表消息）
 function updateOnlineUsers(userListString) {
     console.log('Client: updateOnlineUsers called with string:', userListString);
     // 清空现有列表，保留公共聊天室条目
-    const existingUsers = onlineUsersList.querySelectorAll('li:not(#publicChatListItem)');
+    const existingUsers = onlineUsersList.querySelectorAll('li[data-username]');
     console.log('Client: updateOnlineUsers: Found existing users (excluding public):', existingUsers.length);
     existingUsers.forEach(li => li.remove());
+    onlineUsers.clear();
 
-    const users = userListString.split(',').filter(u => {
-        const trimmedUser = u.trim();
-        const shouldInclude = trimmedUser !== '' && trimmedUser !== username;
-        console.log(`Client: updateOnlineUsers: Filtering user: "${trimmedUser}" (current username: "${username}"), Include: ${shouldInclude}`);
-        return shouldInclude;
-    });
-
+    const users = userListString.split(',').map(u => u.trim()).filter(u => u !== '' && u !== username);
     console.log('Client: updateOnlineUsers: Filtered users to add:', users);
+    users.forEach(user => addOnlineUser(user));
+    console.log('Client: Online users updated (final check).');
+}
 
-    if (users.length === 0 && userListString.trim() !== '') {
-        console.warn('Client: updateOnlineUsers: No users were added to the list despite receiving content. Check filtering logic.');
-    }
+// 在用户列表中添加一个用户条目
+function addOnlineUserItem(user) {
+    const li = document.createElement('li');
+    li.classList.add('list-group-item');
+    li.setAttribute('data-username', user);
 
-    users.forEach(user => {
-        const li = document.createElement('li');
-        li.classList.add('list-group-item');
-        li.setAttribute('data-username', user.trim());
+    const avatarImg = document.createElement('img');
+    avatarImg.src = `https://ui-avatars.com/api/?name=${user}&background=random&color=fff&size=30`;
+    avatarImg.alt = user.charAt(0);
+    avatarImg.classList.add('rounded-circle');
 
-        const avatarImg = document.createElement('img');
-        avatarImg.src = `https://ui-avatars.com/api/?name=${user.trim()}&background=random&color=fff&size=30`;
-        avatarImg.alt = user.trim().charAt(0);
-        avatarImg.classList.add('rounded-circle');
+    const usernameSpan = document.createElement('span');
+    usernameSpan.textContent = user;
 
-        const usernameSpan = document.createElement('span');
-        usernameSpan.textContent = user.trim();
+    const notificationBadge = document.createElement('span');
+    notificationBadge.classList.add('notification-badge', 'd-none');
+    notificationBadge.textContent = '0';
 
-        const notificationBadge = document.createElement('span');
-        notificationBadge.classList.add('notification-badge', 'd-none');
-        notificationBadge.textContent = '0';
+    li.appendChild(avatarImg);
+    li.appendChild(usernameSpan);
+    li.appendChild(notificationBadge);
 
-        li.appendChild(avatarImg);
-        li.appendChild(usernameSpan);
-        li.appendChild(notificationBadge);
+    // 添加点击事件，切换到私聊窗口
+    li.addEventListener('click', () => showChatWindow(user));
 
-        // 添加点击事件，切换到私聊窗口
-        li.addEventListener('click', () => showChatWindow(user.trim()));
+    onlineUsersList.appendChild(li);
+}
 
-        onlineUsersList.appendChild(li);
-        console.log(`Client: updateOnlineUsers: Appended user "${user.trim()}" to list.`);
-    });
-    console.log('Client: Online users updated (final check).');
+// 从用户列表中移除一个用户条目
+function removeOnlineUserItem(user) {
+    const li = onlineUsersList.querySelector(`li[data-username="${user}"]`);
+    if (li) {
+        li.remove();
+    }
 }
 
 // 显示指定聊天窗口
@@ -304,6 +714,15 @@ function showChatWindow(target) {
         // 清除公共聊天室的通知
         publicChatNotification.classList.add('d-none');
         publicChatNotification.textContent = '0';
+    } else if (target.startsWith(ROOM_TARGET_PREFIX)) {
+        // 房间窗口
+        const roomId = target.substring(ROOM_TARGET_PREFIX.length);
+        targetWindow = roomChats.get(roomId).window;
+        targetListItem = onlineUsersList.querySelector(`[data-room="${roomId}"]`);
+        // 清除房间的通知
+        const roomBadge = targetListItem.querySelector('.notification-badge');
+        roomBadge.classList.add('d-none');
+        roomBadge.textContent = '0';
     } else {
         // 私聊窗口
         targetWindow = privateChatWindows.get(target);
@@ -384,6 +803,9 @@ function createPrivateChatWindow(chatPartner) {
         sendMessage();
     });
 
+    const privateAttachmentInput = privateChatWindow.querySelector('.private-attachment-input');
+    privateAttachmentInput.addEventListener('change', () => sendAttachment(chatPartner, privateAttachmentInput));
+
     // 添加私聊输入框的回车事件监听器
     privateMessageInput.addEventListener('keyup', (event) => {
         if (event.key === 'Enter') {
@@ -398,6 +820,145 @@ function createPrivateChatWindow(chatPartner) {
     return privateChatWindow;
 }
 
+// 加入房间：订阅 /topic/room/{id} 即成为房间成员
+function joinRoom() {
+    const roomId = roomInput.value.trim();
+    if (!/^[A-Za-z0-9_-]{1,64}$/.test(roomId)) {
+        alert('房间名只能包含字母、数字、下划线和短横线！');
+        return;
+    }
+    roomInput.value = '';
+    if (!roomChats.has(roomId) && stompClient) {
+        const roomWindow = createRoomChatWindow(roomId);
+        const subscription = stompClient.subscribe(`/topic/room/${roomId}`, conversationListener(ROOM_TARGET_PREFIX + roomId));
+        const typingSubscription = stompClient.subscribe(`/topic/ephemeral/room/${roomId}`, onEphemeralReceived);
+        roomChats.set(roomId, {window: roomWindow, subscription: subscription, typingSubscription: typingSubscription});
+    }
+    showChatWindow(ROOM_TARGET_PREFIX + roomId);
+}
+
+// 离开房间：取消订阅后服务器会把该用户从房间成员中移除
+function leaveRoom(roomId) {
+    const room = roomChats.get(roomId);
+    if (!room) {
+        return;
+    }
+    room.subscription.unsubscribe();
+    room.typingSubscription.unsubscribe();
+    room.window.remove();
+    const listItem = onlineUsersList.querySelector(`[data-room="${roomId}"]`);
+    if (listItem) {
+        listItem.remove();
+    }
+    roomChats.delete(roomId);
+    lastSeqs.delete(ROOM_TARGET_PREFIX + roomId);
+    ackedSeqs.delete(ROOM_TARGET_PREFIX + roomId);
+    resumingConversations.delete(ROOM_TARGET_PREFIX + roomId);
+    typingStates.delete(ROOM_TARGET_PREFIX + roomId);
+    typingSentAt.delete(ROOM_TARGET_PREFIX + roomId);
+    if (activeChatTarget === ROOM_TARGET_PREFIX + roomId) {
+        showChatWindow('public');
+    }
+}
+
+// 动态创建房间聊天窗口和侧边栏条目（复用私聊窗口模板）
+function createRoomChatWindow(roomId) {
+    const templateContent = privateChatWindowTemplate.content.cloneNode(true);
+    const roomWindow = templateContent.querySelector('.chat-window');
+    roomWindow.setAttribute('data-room', roomId);
+    roomWindow.id = `roomChatWindow-${roomId}`;
+    roomWindow.querySelector('.private-chat-username').textContent = `# ${roomId}`;
+
+    const roomAvatar = roomWindow.querySelector('.chat-window-header img');
+    roomAvatar.src = `https://ui-avatars.com/api/?name=${roomId}&background=random&color=fff&size=30`;
+    roomAvatar.alt = roomId.charAt(0);
+
+    const closeButton = document.createElement('button');
+    closeButton.classList.add('btn', 'btn-sm', 'btn-danger', 'close-private-chat');
+    closeButton.textContent = 'X';
+    closeButton.onclick = (event) => {
+        event.stopPropagation();
+        leaveRoom(roomId);
+    };
+    roomWindow.querySelector('.chat-window-header').appendChild(closeButton);
+
+    const roomMessageInput = roomWindow.querySelector('.private-message-input');
+    roomMessageInput.placeholder = '输入房间消息...';
+    roomWindow.querySelector('.private-send-button').addEventListener('click', () => {
+        activeChatTarget = ROOM_TARGET_PREFIX + roomId;
+        sendMessage();
+    });
+    roomMessageInput.addEventListener('keyup', (event) => {
+        if (event.key === 'Enter') {
+            activeChatTarget = ROOM_TARGET_PREFIX + roomId;
+            sendMessage();
+        }
+    });
+    roomMessageInput.addEventListener('input', () => notifyTyping(ROOM_TARGET_PREFIX + roomId, roomMessageInput));
+    const roomAttachmentInput = roomWindow.querySelector('.private-attachment-input');
+    roomAttachmentInput.addEventListener('change', () => sendAttachment(ROOM_TARGET_PREFIX + roomId, roomAttachmentInput));
+    chatWindowsContainer.appendChild(roomWindow);
+
+    const li = document.createElement('li');
+    li.classList.add('list-group-item');
+    li.setAttribute('data-room', roomId);
+    const avatarImg = document.createElement('img');
+    avatarImg.src = roomAvatar.src;
+    avatarImg.alt = roomAvatar.alt;
+    avatarImg.classList.add('rounded-circle');
+    const roomSpan = document.createElement('span');
+    roomSpan.textContent = `# ${roomId}`;
+    const notificationBadge = document.createElement('span');
+    notificationBadge.classList.add('notification-badge', 'd-none');
+    notificationBadge.textContent = '0';
+    li.appendChild(avatarImg);
+    li.appendChild(roomSpan);
+    li.appendChild(notificationBadge);
+    li.addEventListener('click', () => showChatWindow(ROOM_TARGET_PREFIX + roomId));
+    document.querySelector('#joinRoomItem').after(li);
+
+    return roomWindow;
+}
+
+// 在房间窗口中显示房间消息或成员变化通知
+function showRoomMessage(message) {
+    const room = roomChats.get(message.room);
+    if (!room) {
+        return; // 已离开的房间
+    }
+    const roomMessageArea = room.window.querySelector('.private-message-area');
+    const messageElement = document.createElement('div');
+    messageElement.classList.add('message-box');
+
+    if (message.command === 'ROOM_CHAT') {
+        const avatarImg = document.createElement('img');
+        avatarImg.classList.add('rounded-circle', 'chat-avatar');
+        avatarImg.src = `https://ui-avatars.com/api/?name=${message.from}&background=random&color=fff&size=30`;
+        avatarImg.alt = message.from.charAt(0);
+        const contentDiv = document.createElement('div');
+        contentDiv.classList.add('message-content');
+        if (message.from === username) {
+            messageElement.classList.add('my-message');
+            contentDiv.innerHTML = `<strong>你:</strong> ${message.content}`;
+        } else {
+            messageElement.classList.add('other-message');
+            contentDiv.innerHTML = `<strong>${message.from}:</strong> ${message.content}`;
+        }
+        appendAttachment(contentDiv, message.attachment);
+        messageElement.appendChild(avatarImg);
+        messageElement.appendChild(contentDiv);
+        if (activeChatTarget !== ROOM_TARGET_PREFIX + message.room) {
+            updateNotificationBadge(onlineUsersList.querySelector(`[data-room="${message.room}"] .notification-badge`), 1);
+        }
+    } else {
+        messageElement.classList.add('system-message');
+        const action = message.command === 'ROOM_JOIN' ? '加入了房间' : '离开了房间';
+        messageElement.innerHTML = `<strong>[系统消息]:</strong> ${message.from} ${action}`;
+    }
+    roomMessageArea.appendChild(messageElement);
+    roomMessageArea.scrollTop = roomMessageArea.scrollHeight;
+}
+
 // 更新通知徽章
 function updateNotificationBadge(badgeElement, countChange) {
     if (badgeElement) {
@@ -426,5 +987,13 @@ publicMessageInput.addEventListener('keyup', (event) => {
         sendMessage();
     }
 });
+publicMessageInput.addEventListener('input', () => notifyTyping('public', publicMessageInput));
+publicAttachmentInput.addEventListener('change', () => sendAttachment('public', publicAttachmentInput));
 
-publicChatListItem.addEventListener('click', () => showChatWindow('public'));
\ No newline at end of file
+publicChatListItem.addEventListener('click', () => showChatWindow('public'));
+joinRoomButton.addEventListener('click', joinRoom);
+roomInput.addEventListener('keyup', (event) => {
+    if (event.key === 'Enter') {
+        joinRoom();
+    }
+});
\ No newline at end of file
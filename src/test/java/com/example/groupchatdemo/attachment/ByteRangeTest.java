@@ -0,0 +1,32 @@
+package com.example.groupchatdemo.attachment;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ByteRangeTest {
+
+	@Test
+	void parsesSingleRanges() {
+		assertEquals(new ByteRange(0, 100), ByteRange.parse("bytes=0-99", 1000));
+		assertEquals(new ByteRange(500, 1000), ByteRange.parse("bytes=500-", 1000));
+		assertEquals(new ByteRange(900, 1000), ByteRange.parse("bytes=-100", 1000));
+		// 超出末尾的范围截到文件末尾
+		assertEquals(new ByteRange(990, 1000), ByteRange.parse("bytes=990-5000", 1000));
+		assertEquals(new ByteRange(0, 1000), ByteRange.parse("bytes=-5000", 1000));
+	}
+
+	@Test
+	void ignoresUnsupportedHeadersAndRejectsRangesPastTheEnd() {
+		assertNull(ByteRange.parse(null, 1000));
+		assertNull(ByteRange.parse("items=0-1", 1000));
+		assertNull(ByteRange.parse("bytes=0-1,5-6", 1000));
+		assertNull(ByteRange.parse("bytes=9-1", 1000));
+		assertNull(ByteRange.parse("bytes=a-b", 1000));
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=1000-", 1000));
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", 1000));
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=0-", 0));
+	}
+}
@@ -0,0 +1,84 @@
+package com.example.groupchatdemo.client;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+	@Test
+	void keepsSmallValuesExact() {
+		for (long value = 0; value < 64; value++) {
+			assertEquals(value, upperBoundOf(value));
+		}
+		// 负数（时钟回拨）计入0号桶
+		assertEquals(0, upperBoundOf(-5));
+	}
+
+	@Test
+	void boundsTheRelativeErrorOfLargeValues() {
+		assertEquals(65, upperBoundOf(64));
+		assertEquals(65, upperBoundOf(65));
+		assertEquals(67, upperBoundOf(66));
+		assertEquals(127, upperBoundOf(126));
+		assertEquals(131, upperBoundOf(128));
+		for (long value = 64; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 / 2 + 7) {
+			long upper = upperBoundOf(value);
+			// 桶的上界不小于值本身，且不超过它的1/32
+			assertTrue(upper >= value && upper - value <= value / 32, value + " -> " + upper);
+			assertEquals(upper, upperBoundOf(upper));
+			assertTrue(upperBoundOf(upper + 1) > upper);
+		}
+		assertEquals(Long.MAX_VALUE, upperBoundOf(Long.MAX_VALUE));
+	}
+
+	@Test
+	void computesQuantilesByRank() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, LatencyHistogram.quantile(histogram.snapshot(), 0.99));
+		for (long value = 1; value <= 50; value++) {
+			histogram.record(value);
+		}
+		long[] counts = histogram.snapshot();
+		// 第ceil(n*q)个样本；q为0时取最小值
+		assertEquals(1, LatencyHistogram.quantile(counts, 0));
+		assertEquals(25, LatencyHistogram.quantile(counts, 0.5));
+		assertEquals(45, LatencyHistogram.quantile(counts, 0.9));
+		assertEquals(50, LatencyHistogram.quantile(counts, 0.99));
+		assertEquals(50, LatencyHistogram.quantile(counts, 1));
+
+		// 一个慢样本只影响尾部分位数
+		histogram.record(1_000_000);
+		counts = histogram.snapshot();
+		assertEquals(26, LatencyHistogram.quantile(counts, 0.5));
+		assertEquals(50, LatencyHistogram.quantile(counts, 0.98));
+		long max = LatencyHistogram.quantile(counts, 1);
+		assertTrue(max >= 1_000_000 && max <= 1_000_000 + 1_000_000 / 32);
+	}
+
+	@Test
+	void computesQuantilesOfAnInterval() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 100; i++) {
+			histogram.record(10_000);
+		}
+		long[] earlier = histogram.snapshot();
+		for (int i = 0; i < 10; i++) {
+			histogram.record(5);
+		}
+		long[] interval = LatencyHistogram.difference(histogram.snapshot(), earlier);
+		// 区间内只有后记录的10个样本
+		assertEquals(5, LatencyHistogram.quantile(interval, 0.99));
+		assertEquals(0, LatencyHistogram.quantile(LatencyHistogram.difference(earlier, earlier), 0.5));
+	}
+
+	/**
+	 * 只记录一个值时，任何分位数都是它所在桶的上界。
+	 */
+	private static long upperBoundOf(long value) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(value);
+		return LatencyHistogram.quantile(histogram.snapshot(), 0.5);
+	}
+}
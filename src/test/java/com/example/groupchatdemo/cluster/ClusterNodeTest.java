@@ -0,0 +1,223 @@
+package com.example.groupchatdemo.cluster;
+
+import com.example.groupchatdemo.service.PresenceService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterNodeTest {
+
+	private final Node a = new Node("a", "b", "c");
+	private final Node b = new Node("b", "a");
+
+	@AfterEach
+	void tearDown() {
+		a.cluster.stop();
+		b.cluster.stop();
+	}
+
+	@Test
+	void routesUserDestinationsOnlyToNodesWhereTheUserHasSessions() {
+		b.cluster.sessionJoined("bob", "s1");
+		relay(b, a);
+
+		a.publish("/user/bob/queue/messages", null);
+		assertEquals(List.of("b"), a.transport.targets());
+		Record record = a.transport.sent.get(0);
+		assertEquals(ClusterNode.USER, record.bytes()[0]);
+
+		// 没有远程会话的用户、只发给本节点某个会话的消息都不转发
+		a.transport.sent.clear();
+		a.publish("/user/carol/queue/messages", null);
+		a.publish("/user/bob/queue/history", "local-session");
+		assertEquals(List.of(), a.transport.targets());
+
+		// 对方把收到的消息发布到自己的代理通道，带上来源头，不再转发
+		b.transport.sent.clear();
+		b.cluster.received("a", record.bytes());
+		Message<?> delivered = b.brokerMessages.get(0);
+		assertEquals("/user/bob/queue/messages", SimpMessageHeaderAccessor.getDestination(delivered.getHeaders()));
+		assertEquals("a", delivered.getHeaders().get(ClusterNode.ORIGIN_HEADER));
+		assertArrayEquals(payload(), (byte[]) delivered.getPayload());
+		assertEquals(List.of(), b.transport.targets());
+	}
+
+	@Test
+	void broadcastsTopicsExceptPresenceToAllNodes() {
+		a.publish("/topic/public", null);
+		assertEquals(List.of("b", "c"), a.transport.targets());
+		assertEquals(ClusterNode.PUBLISH, a.transport.sent.get(0).bytes()[0]);
+
+		a.transport.sent.clear();
+		a.publish(PresenceService.PRESENCE_TOPIC, null);
+		assertEquals(List.of(), a.transport.targets());
+	}
+
+	@Test
+	void syncReplacesThePresenceOfTheNode() {
+		b.cluster.sessionJoined("bob", "s1");
+		b.cluster.sessionJoined("carol", "s2");
+		relay(b, a);
+		assertTrue(a.presence.directory().contains("carol"));
+
+		// 链路断开期间的增量丢失了，重连后的SYNC替换a记录的b的全部会话
+		b.cluster.sessionLeft("carol", "s2");
+		b.cluster.sessionJoined("dave", "s3");
+		b.transport.sent.clear();
+		b.cluster.peerReachable("a");
+		assertEquals(List.of("a"), b.transport.targets());
+		assertEquals(ClusterNode.SYNC, b.transport.sent.get(0).bytes()[0]);
+		relay(b, a);
+
+		assertEquals(List.of("bob", "dave"), a.presence.directory().usernames());
+		a.publish("/user/carol/queue/messages", null);
+		assertEquals(List.of(), a.transport.targets());
+		a.publish("/user/dave/queue/messages", null);
+		assertEquals(List.of("b"), a.transport.targets());
+	}
+
+	@Test
+	void peerLostDropsAllSessionsOfTheNode() {
+		b.cluster.sessionJoined("bob", "s1");
+		b.cluster.sessionJoined("bob", "s2");
+		relay(b, a);
+		// c上也有bob的会话，另有erin
+		Node c = new Node("c", "a");
+		c.cluster.sessionJoined("bob", "s1");
+		c.cluster.sessionJoined("erin", "s2");
+		relay(c, a);
+
+		a.cluster.peerLost("b");
+		assertEquals(List.of("bob", "erin"), a.presence.directory().usernames());
+		a.publish("/user/bob/queue/messages", null);
+		assertEquals(List.of("c"), a.transport.targets());
+
+		a.transport.sent.clear();
+		a.cluster.peerLost("c");
+		assertFalse(a.presence.directory().contains("bob"));
+		assertEquals(0, a.presence.directory().size());
+		a.publish("/user/erin/queue/messages", null);
+		assertEquals(List.of(), a.transport.targets());
+		c.cluster.stop();
+	}
+
+	/**
+	 * 把from已经发出的记录交给to，清空from的发送记录。
+	 */
+	private static void relay(Node from, Node to) {
+		for (Record record : from.transport.sent) {
+			if (record.target().equals(to.transport.nodeId())) {
+				to.cluster.received(from.transport.nodeId(), record.bytes());
+			}
+		}
+		from.transport.sent.clear();
+	}
+
+	private static byte[] payload() {
+		return "{\"content\":\"hi\"}".getBytes(StandardCharsets.UTF_8);
+	}
+
+	private record Record(String target, byte[] bytes) {
+	}
+
+	/**
+	 * 一个节点：ClusterNode、记录发送的传输层、同步的代理通道和本节点的在线状态。
+	 */
+	private static final class Node {
+		final FakeTransport transport;
+		final ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+		final List<Message<?>> brokerMessages = new ArrayList<>();
+		final PresenceService presence = new PresenceService(new SimpMessagingTemplate(
+				(MessageChannel) (message, timeout) -> true));
+		final ClusterNode cluster;
+
+		Node(String nodeId, String... peers) {
+			transport = new FakeTransport(nodeId, List.of(peers));
+			brokerChannel.subscribe(brokerMessages::add);
+			cluster = new ClusterNode(true, transport, brokerChannel, presence);
+			cluster.start();
+		}
+
+		/**
+		 * 在本节点的代理通道上发布一条JSON消息。
+		 * @param sessionId 只发给这个会话时的会话ID，否则为null
+		 */
+		void publish(String destination, String sessionId) {
+			SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+			accessor.setDestination(destination);
+			accessor.setSessionId(sessionId);
+			brokerChannel.send(MessageBuilder.createMessage(payload(), accessor.getMessageHeaders()));
+		}
+	}
+
+	/**
+	 * 同步的传输层：记录发出的每条记录，由测试决定何时交给哪个节点。
+	 */
+	private static final class FakeTransport implements ClusterTransport {
+		private final String nodeId;
+		private final List<String> peers;
+		final List<Record> sent = new ArrayList<>();
+
+		FakeTransport(String nodeId, List<String> peers) {
+			this.nodeId = nodeId;
+			this.peers = peers;
+		}
+
+		List<String> targets() {
+			return sent.stream().map(Record::target).toList();
+		}
+
+		@Override
+		public void start(Listener listener) {
+		}
+
+		@Override
+		public void stop() {
+		}
+
+		@Override
+		public String nodeId() {
+			return nodeId;
+		}
+
+		@Override
+		public void send(String nodeId, byte[] record) {
+			sent.add(new Record(nodeId, record));
+		}
+
+		@Override
+		public void broadcast(byte[] record) {
+			peers.forEach(peer -> send(peer, record));
+		}
+
+		@Override
+		public int reachablePeerCount() {
+			return peers.size();
+		}
+
+		@Override
+		public long recordsSent() {
+			return sent.size();
+		}
+
+		@Override
+		public long batchesSent() {
+			return sent.size();
+		}
+	}
+}
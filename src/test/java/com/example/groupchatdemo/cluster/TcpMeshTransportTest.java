@@ -0,0 +1,73 @@
+package com.example.groupchatdemo.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class TcpMeshTransportTest {
+
+	@Test
+	void deliversRecordsInOrderOverLoopback() throws Exception {
+		int portA = freePort();
+		int portB = freePort();
+		TcpMeshTransport a = new TcpMeshTransport("a", portA, List.of("127.0.0.1:" + portB), 1024, 64, 0);
+		TcpMeshTransport b = new TcpMeshTransport("b", portB, List.of("127.0.0.1:" + portA), 1024, 64, 0);
+		RecordingListener listenerA = new RecordingListener();
+		RecordingListener listenerB = new RecordingListener();
+		a.start(listenerA);
+		b.start(listenerB);
+		try {
+			assertEquals("reachable b", listenerA.events.poll(10, TimeUnit.SECONDS));
+			assertEquals("reachable a", listenerB.events.poll(10, TimeUnit.SECONDS));
+
+			for (int i = 0; i < 500; i++) {
+				a.broadcast(new byte[]{(byte) i});
+			}
+			for (int i = 0; i < 500; i++) {
+				assertEquals("a:" + (byte) i, listenerB.events.poll(10, TimeUnit.SECONDS));
+			}
+			assertEquals(500, a.recordsSent());
+
+			b.send("a", new byte[]{42});
+			assertEquals("b:42", listenerA.events.poll(10, TimeUnit.SECONDS));
+		} finally {
+			b.stop();
+		}
+		assertEquals("lost b", listenerA.events.poll(10, TimeUnit.SECONDS));
+		a.stop();
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static final class RecordingListener implements ClusterTransport.Listener {
+		final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+		@Override
+		public void peerReachable(String nodeId) {
+			events.add("reachable " + nodeId);
+		}
+
+		@Override
+		public void peerLost(String nodeId) {
+			events.add("lost " + nodeId);
+		}
+
+		@Override
+		public void received(String nodeId, byte[] record) {
+			assertNotNull(record);
+			events.add(nodeId + ":" + record[0]);
+		}
+	}
+}
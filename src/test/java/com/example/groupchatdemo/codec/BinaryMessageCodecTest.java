@@ -0,0 +1,80 @@
+package com.example.groupchatdemo.codec;
+
+import com.example.groupchatdemo.model.Attachment;
+import com.example.groupchatdemo.model.Message;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryMessageCodecTest {
+
+	@Test
+	void roundTripsWithoutDictionary() {
+		Message message = new Message("alice", "bob", "你好, bob", true, "PRIVATE_CHAT");
+		Message decoded = BinaryMessageCodec.decode(BinaryMessageCodec.encode(message, null), null);
+		assertMessageEquals(message, decoded);
+	}
+
+	@Test
+	void keepsUnknownCommandsAsLiterals() {
+		Message message = new Message(null, null, null, false, "HISTORY_BACKLOG");
+		message.setRoom("dev");
+		Message decoded = BinaryMessageCodec.decode(BinaryMessageCodec.encode(message, null), null);
+		assertMessageEquals(message, decoded);
+	}
+
+	@Test
+	void roundTripsAttachmentReferences() {
+		Message message = new Message("alice", null, "", false, "CHAT");
+		message.setAttachment(new Attachment("ab".repeat(32), "截图.png", 3_000_000_000L, "image/png"));
+		Message decoded = BinaryMessageCodec.decode(BinaryMessageCodec.encode(message, null), null);
+		assertMessageEquals(message, decoded);
+	}
+
+	@Test
+	void replacesRepeatedNamesWithDictionaryReferences() {
+		UsernameDictionary encoder = new UsernameDictionary();
+		UsernameDictionary decoder = new UsernameDictionary();
+		Message first = new Message("alice", null, "hello", false, "ROOM_CHAT");
+		first.setRoom("dev");
+		Message second = new Message("alice", null, "hello", false, "ROOM_CHAT");
+		second.setRoom("dev");
+
+		byte[] firstBytes = BinaryMessageCodec.encode(first, encoder);
+		byte[] secondBytes = BinaryMessageCodec.encode(second, encoder);
+		assertEquals(2, encoder.size());
+		assertTrue(secondBytes.length < firstBytes.length);
+
+		assertMessageEquals(first, BinaryMessageCodec.decode(firstBytes, decoder));
+		assertMessageEquals(second, BinaryMessageCodec.decode(secondBytes, decoder));
+		// 漏掉定义条目的帧，引用就无法解析
+		assertThrows(IllegalArgumentException.class,
+				() -> BinaryMessageCodec.decode(secondBytes, new UsernameDictionary()));
+	}
+
+	@Test
+	void roundTripsARoomSessionThroughPairedDictionaries() {
+		// 与WireCodecBenchmark相同的形状：多个用户轮流发言，字典在会话中逐渐填满，字典满了以后退回字面量
+		UsernameDictionary encoder = new UsernameDictionary(8);
+		UsernameDictionary decoder = new UsernameDictionary(8);
+		for (int i = 0; i < 200; i++) {
+			Message message = new Message("user-" + (i * 7 % 20), null, "第" + i + "条", false, "ROOM_CHAT");
+			message.setRoom("general");
+			assertMessageEquals(message, BinaryMessageCodec.decode(BinaryMessageCodec.encode(message, encoder), decoder));
+		}
+		assertEquals(8, encoder.size());
+		assertEquals(encoder.size(), decoder.size());
+	}
+
+	private static void assertMessageEquals(Message expected, Message actual) {
+		assertEquals(expected.getFrom(), actual.getFrom());
+		assertEquals(expected.getTo(), actual.getTo());
+		assertEquals(expected.getContent(), actual.getContent());
+		assertEquals(expected.isPrivate(), actual.isPrivate());
+		assertEquals(expected.getCommand(), actual.getCommand());
+		assertEquals(expected.getRoom(), actual.getRoom());
+		assertEquals(expected.getAttachment(), actual.getAttachment());
+	}
+}
@@ -0,0 +1,99 @@
+package com.example.groupchatdemo.config;
+
+import com.example.groupchatdemo.GroupchatDemoApplication;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 扩展由Tomcat在握手时协商，所以用真实的握手验证：客户端总是请求permessage-deflate，
+ * 关闭的端点在101响应中不带 Sec-WebSocket-Extensions，另一个端点不受影响。
+ */
+class DeflateNegotiationHandshakeHandlerTest {
+
+	private static final String NATIVE_ENDPOINT = "/ws-native";
+	// SockJS的原始WebSocket传输
+	private static final String SOCKJS_ENDPOINT = "/ws/websocket";
+
+	@Test
+	void nativeFlagRemovesDeflateFromTheNativeEndpointOnly() throws Exception {
+		try (ConfigurableApplicationContext context = start(false, true)) {
+			int port = port(context);
+			assertEquals(List.of(), extensions(port, NATIVE_ENDPOINT));
+			assertDeflate(extensions(port, SOCKJS_ENDPOINT));
+		}
+	}
+
+	@Test
+	void sockJsFlagRemovesDeflateFromTheSockJsEndpointOnly() throws Exception {
+		try (ConfigurableApplicationContext context = start(true, false)) {
+			int port = port(context);
+			assertDeflate(extensions(port, NATIVE_ENDPOINT));
+			assertEquals(List.of(), extensions(port, SOCKJS_ENDPOINT));
+		}
+	}
+
+	private static ConfigurableApplicationContext start(boolean nativeDeflate, boolean sockJsDeflate) {
+		return new SpringApplicationBuilder(GroupchatDemoApplication.class)
+				.run("--server.port=0",
+						"--chat.websocket.deflate.native=" + nativeDeflate,
+						"--chat.websocket.deflate.sockjs=" + sockJsDeflate,
+						"--chat.store.enabled=false",
+						"--chat.gateway.enabled=false",
+						"--spring.main.banner-mode=off",
+						"--logging.level.root=WARN");
+	}
+
+	private static int port(ConfigurableApplicationContext context) {
+		return context.getEnvironment().getProperty("local.server.port", Integer.class);
+	}
+
+	private static void assertDeflate(List<String> extensions) {
+		assertEquals(1, extensions.size());
+		assertTrue(extensions.get(0).startsWith("permessage-deflate"), extensions.get(0));
+	}
+
+	/**
+	 * 发送请求permessage-deflate的握手。
+	 * @return 101响应中 Sec-WebSocket-Extensions 头的值
+	 */
+	private static List<String> extensions(int port, String path) throws IOException {
+		try (Socket socket = new Socket("127.0.0.1", port)) {
+			socket.setSoTimeout(5000);
+			OutputStream out = socket.getOutputStream();
+			out.write(("GET " + path + " HTTP/1.1\r\n"
+					+ "Host: 127.0.0.1:" + port + "\r\n"
+					+ "Upgrade: websocket\r\n"
+					+ "Connection: Upgrade\r\n"
+					+ "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+					+ "Sec-WebSocket-Version: 13\r\n"
+					+ "Sec-WebSocket-Protocol: v12.stomp\r\n"
+					+ "Sec-WebSocket-Extensions: permessage-deflate; client_max_window_bits\r\n"
+					+ "\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			String status = in.readLine();
+			assertTrue(status.startsWith("HTTP/1.1 101"), path + ": " + status);
+			List<String> extensions = new ArrayList<>();
+			for (String line; (line = in.readLine()) != null && !line.isEmpty(); ) {
+				int colon = line.indexOf(':');
+				if (line.substring(0, colon).equalsIgnoreCase("Sec-WebSocket-Extensions")) {
+					extensions.add(line.substring(colon + 1).trim());
+				}
+			}
+			return extensions;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.example.groupchatdemo.controller;
+
+import com.example.groupchatdemo.model.Conversation;
+import com.example.groupchatdemo.service.MessageFanout;
+import com.example.groupchatdemo.store.MessageStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistoryControllerTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final List<Message<?>> sent = new ArrayList<>();
+	private MessageStore messageStore;
+	private HistoryController controller;
+
+	@BeforeEach
+	void setUp(@TempDir Path dir) throws Exception {
+		messageStore = new MessageStore(objectMapper, true, dir.toString(), 1, 64, 10, 50, 32, true, false, 1000);
+		controller = new HistoryController(messageStore, new MessageFanout(new SimpMessagingTemplate(
+				(MessageChannel) (message, timeout) -> sent.add(message)), objectMapper));
+		for (int i = 1; i <= 3; i++) {
+			messageStore.append(Conversation.privatePair("alice", "bob"),
+					new com.example.groupchatdemo.model.Message("alice", "bob", "m" + i, true, "PRIVATE_CHAT"));
+		}
+		messageStore.append(Conversation.privatePair("carol", "dave"),
+				new com.example.groupchatdemo.model.Message("carol", "dave", "secret", true, "PRIVATE_CHAT"));
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		messageStore.destroy();
+	}
+
+	@Test
+	void sendsTheCallersOwnPrivateHistoryToTheRequestingSession() throws Exception {
+		controller.privateHistory(new HistoryController.PrivateHistoryRequest("bob", 0, 2), () -> "alice", session("s1"));
+		JsonNode page = reply("alice", "s1");
+		assertEquals(List.of("m3", "m2"), contents(page));
+		assertEquals(2, page.get("nextBefore").asLong());
+
+		controller.privateHistory(new HistoryController.PrivateHistoryRequest("bob", 2, 0), () -> "alice", session("s1"));
+		assertEquals(List.of("m1"), contents(reply("alice", "s1")));
+	}
+
+	@Test
+	void neverReadsAnotherPairsHistory() throws Exception {
+		// 查询者总是私聊的一方，声明别人的私聊对象只会读到自己与对象之间的私聊
+		controller.privateHistory(new HistoryController.PrivateHistoryRequest("dave", 0, 50), () -> "alice", session("s1"));
+		assertEquals(List.of(), contents(reply("alice", "s1")));
+
+		// 没有Principal或私聊对象时不回复
+		controller.privateHistory(new HistoryController.PrivateHistoryRequest("bob", 0, 50), null, session("s2"));
+		controller.privateHistory(new HistoryController.PrivateHistoryRequest(null, 0, 50), () -> "alice", session("s1"));
+		assertTrue(sent.isEmpty());
+	}
+
+	private JsonNode reply(String user, String sessionId) throws Exception {
+		assertEquals(1, sent.size());
+		Message<?> reply = sent.remove(0);
+		assertEquals("/user/" + user + HistoryController.HISTORY_QUEUE, SimpMessageHeaderAccessor.getDestination(reply.getHeaders()));
+		assertEquals(sessionId, SimpMessageHeaderAccessor.getSessionId(reply.getHeaders()));
+		return objectMapper.readTree((byte[]) reply.getPayload());
+	}
+
+	private static List<String> contents(JsonNode page) {
+		List<String> contents = new ArrayList<>();
+		page.get("messages").forEach(entry -> contents.add(entry.get("message").get("content").asText()));
+		return contents;
+	}
+
+	private static SimpMessageHeaderAccessor session(String sessionId) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setSessionId(sessionId);
+		return accessor;
+	}
+}
@@ -0,0 +1,106 @@
+package com.example.groupchatdemo.controller;
+
+import com.example.groupchatdemo.filter.MessageFilterChain;
+import com.example.groupchatdemo.model.Message;
+import com.example.groupchatdemo.service.MessageFanout;
+import com.example.groupchatdemo.service.RoomDispatcher;
+import com.example.groupchatdemo.service.RoomService;
+import com.example.groupchatdemo.store.MessageStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomControllerTest {
+
+	private static final Principal ALICE = () -> "alice";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	// 房间消息在分片线程上发送
+	private final List<org.springframework.messaging.Message<?>> sent = new CopyOnWriteArrayList<>();
+	private final SimpMessagingTemplate template = new SimpMessagingTemplate(
+			(MessageChannel) (message, timeout) -> sent.add(message));
+	private final RoomService roomService = new RoomService();
+	private final RoomDispatcher roomDispatcher = new RoomDispatcher(template, 2, 10000);
+	private final MessageStore messageStore;
+	private final RoomController controller;
+
+	RoomControllerTest() throws Exception {
+		messageStore = new MessageStore(objectMapper, false, null, 64, 64, 10, 50, 32, true, false, 1000);
+		controller = new RoomController(template, roomService, roomDispatcher, messageStore,
+				new MessageFanout(template, objectMapper), new MessageFilterChain(List.of(), template));
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		roomDispatcher.destroy();
+		messageStore.destroy();
+	}
+
+	@Test
+	void onlyMembersCanSendToARoom() throws Exception {
+		controller.sendRoomMessage("dev", chat("hi"), ALICE);
+		controller.sendRoomMessage("../public", chat("hi"), ALICE);
+		assertEquals(2, sent.size());
+		for (org.springframework.messaging.Message<?> message : sent) {
+			assertEquals("/user/alice/queue/messages", SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+			assertEquals("SERVER_INFO", ((Message) message.getPayload()).getCommand());
+		}
+
+		sent.clear();
+		controller.sendRoomMessage("dev", chat("hi"), null);
+		roomService.subscribe("s1", "sub-1", "dev", "alice");
+		roomService.sessionClosed("s1");
+		controller.sendRoomMessage("dev", chat("hi"), ALICE);
+		awaitShard("dev");
+		assertEquals(1, sent.size());
+		assertEquals("SERVER_INFO", ((Message) sent.get(0).getPayload()).getCommand());
+	}
+
+	@Test
+	void broadcastsInSequenceOrderWithTheSenderFromThePrincipal() throws Exception {
+		roomService.subscribe("s1", "sub-1", "dev", "alice");
+		for (int i = 1; i <= 100; i++) {
+			Message message = chat(Integer.toString(i));
+			message.setFrom("mallory"); // 客户端填写的发送者被忽略
+			controller.sendRoomMessage("dev", message, ALICE);
+		}
+		awaitShard("dev");
+
+		assertEquals(100, sent.size());
+		for (int i = 0; i < sent.size(); i++) {
+			org.springframework.messaging.Message<?> frame = sent.get(i);
+			assertEquals("/topic/room/dev", SimpMessageHeaderAccessor.getDestination(frame.getHeaders()));
+			Map<?, ?> json = objectMapper.readValue((byte[]) frame.getPayload(), Map.class);
+			// 广播顺序、序号和发送顺序一致
+			assertEquals(Integer.toString(i + 1), json.get("content"));
+			assertEquals(i + 1, ((Number) json.get("seq")).intValue());
+			assertEquals("alice", json.get("from"));
+			assertEquals("dev", json.get("room"));
+			assertEquals("ROOM_CHAT", json.get("command"));
+		}
+		assertEquals(Map.of("dev", 1), controller.listRooms());
+	}
+
+	private void awaitShard(String roomId) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		roomDispatcher.dispatch(roomId, done::countDown);
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+
+	private static Message chat(String content) {
+		return new Message(null, null, content, false, "ROOM_CHAT");
+	}
+}
@@ -0,0 +1,115 @@
+package com.example.groupchatdemo.controller;
+
+import com.example.groupchatdemo.model.Conversation;
+import com.example.groupchatdemo.service.MessageFanout;
+import com.example.groupchatdemo.service.SearchService;
+import com.example.groupchatdemo.store.MessageStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.nio.file.Path;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchControllerTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final List<Message<?>> sent = new ArrayList<>();
+	private MessageStore messageStore;
+	private SearchService searchService;
+	private SearchController controller;
+
+	@BeforeEach
+	void setUp(@TempDir Path dir) throws Exception {
+		messageStore = new MessageStore(objectMapper, true, dir.toString(), 1, 64, 10, 50, 32, true, false, 1000);
+		searchService = new SearchService(true, 1024, messageStore, objectMapper);
+		searchService.start();
+		controller = new SearchController(searchService, new MessageFanout(new SimpMessagingTemplate(
+				(MessageChannel) (message, timeout) -> sent.add(message)), objectMapper));
+
+		messageStore.append(Conversation.PUBLIC, new com.example.groupchatdemo.model.Message("bob", null, "周五发布", false, "CHAT"));
+		messageStore.append(Conversation.privatePair("alice", "bob"),
+				new com.example.groupchatdemo.model.Message("alice", "bob", "发布的时间定了吗", true, "PRIVATE_CHAT"));
+		messageStore.append(Conversation.privatePair("carol", "dave"),
+				new com.example.groupchatdemo.model.Message("carol", "dave", "发布之前别告诉alice", true, "PRIVATE_CHAT"));
+		for (int i = 0; i < 200 && searchService.indexedDocuments() < 3; i++) {
+			Thread.sleep(10); // 索引线程异步加入索引
+		}
+		assertEquals(3, searchService.indexedDocuments());
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		searchService.stop();
+		messageStore.destroy();
+	}
+
+	@Test
+	void searchesOnlyTheCallersOwnPrivateConversations() throws Exception {
+		assertEquals(List.of(Conversation.privatePair("alice", "bob"), Conversation.PUBLIC),
+				conversations(searchAs("alice", "s1", null)));
+		assertEquals(List.of(Conversation.privatePair("carol", "dave"), Conversation.PUBLIC),
+				conversations(searchAs("dave", "s2", null)));
+		// 限定私聊对象时，会话总是查询者自己与对象之间的私聊
+		assertEquals(List.of(), conversations(searchAs("alice", "s1", "carol")));
+		assertEquals(List.of(), conversations(searchAs("alice", "s1", "dave")));
+	}
+
+	@Test
+	void httpSearchIsAnonymousAndSeesNoPrivateConversations() throws Exception {
+		ResponseEntity<byte[]> response = controller.search("发布", null, 0, 20);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertEquals(List.of(Conversation.PUBLIC), conversations(response.getBody()));
+		assertEquals(HttpStatus.BAD_REQUEST, controller.search(" ", null, 0, 20).getStatusCode());
+
+		// 没有Principal的STOMP会话不回复
+		controller.searchForUser(new SearchController.SearchRequest("发布", null, "bob", 0, 20), null, session("s1"));
+		assertTrue(sent.isEmpty());
+	}
+
+	/**
+	 * 以user的身份在会话sessionId上检索，返回发回这个会话的结果。
+	 */
+	private byte[] searchAs(String user, String sessionId, String peer) {
+		controller.searchForUser(new SearchController.SearchRequest("发布", null, peer, 0, 0), user(user), session(sessionId));
+		assertEquals(1, sent.size());
+		Message<?> reply = sent.remove(0);
+		assertEquals("/user/" + user + SearchController.SEARCH_QUEUE, SimpMessageHeaderAccessor.getDestination(reply.getHeaders()));
+		assertEquals(sessionId, SimpMessageHeaderAccessor.getSessionId(reply.getHeaders()));
+		return (byte[]) reply.getPayload();
+	}
+
+	private static SimpMessageHeaderAccessor session(String sessionId) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setSessionId(sessionId);
+		return accessor;
+	}
+
+	private List<String> conversations(byte[] result) throws Exception {
+		List<String> conversations = new ArrayList<>();
+		for (JsonNode hit : objectMapper.readTree(result).get("hits")) {
+			conversations.add(hit.get("conversation").asText());
+		}
+		conversations.sort(null);
+		return conversations;
+	}
+
+	private static Principal user(String name) {
+		return () -> name;
+	}
+}
@@ -0,0 +1,37 @@
+package com.example.groupchatdemo.controller;
+
+import com.example.groupchatdemo.service.BackpressureService;
+import com.example.groupchatdemo.service.SessionInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SessionControllerTest {
+
+	private final BackpressureService backpressureService =
+			new BackpressureService(new StandardEnvironment(), 512, 5000, "drop-non-essential", List.of(), 1, 10);
+	private final SessionInspector inspector = new SessionInspector(backpressureService, new DefaultSimpUserRegistry());
+
+	@AfterEach
+	void shutdown() {
+		backpressureService.destroy();
+	}
+
+	@Test
+	void isHiddenUnlessEnabled() {
+		SessionController disabled = new SessionController(false, inspector);
+		assertEquals(HttpStatus.NOT_FOUND, disabled.listSessions(null, null, 50).getStatusCode());
+		assertEquals(HttpStatus.NOT_FOUND, disabled.session("s1").getStatusCode());
+
+		SessionController enabled = new SessionController(true, inspector);
+		assertEquals(HttpStatus.OK, enabled.listSessions(null, null, 50).getStatusCode());
+		assertEquals(0, enabled.listSessions(null, null, 50).getBody().get("total"));
+		assertEquals(HttpStatus.NOT_FOUND, enabled.session("s1").getStatusCode());
+	}
+}
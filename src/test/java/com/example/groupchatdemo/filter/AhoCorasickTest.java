@@ -0,0 +1,44 @@
+package com.example.groupchatdemo.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AhoCorasickTest {
+
+	private static final int A = 1;
+	private static final int B = 2;
+
+	@Test
+	void findsOverlappingTermsThroughFailureLinks() {
+		AhoCorasick automaton = AhoCorasick.compile(List.of("he", "she", "his", "hers"), new int[]{A, A, B, B});
+		assertEquals(4, automaton.termCount());
+		assertEquals(A, automaton.scan("ushe", 0));
+		assertEquals(A | B, automaton.scan("ushers", 0));
+		assertEquals(B, automaton.scan("this", 0));
+		assertEquals(0, automaton.scan("hhhxsx", 0));
+		// 找到停止标志后不再扫描后面的文本
+		assertEquals(A, automaton.scan("she hers", A));
+	}
+
+	@Test
+	void foldsCaseAndFullWidthCharacters() {
+		AhoCorasick automaton = AhoCorasick.compile(List.of("Spam", "违禁词"), new int[]{A, B});
+		assertEquals(A, automaton.scan("buy SPAM now", 0));
+		assertEquals(A, automaton.scan("ｓｐａｍ", 0));
+		assertEquals(B, automaton.scan("这是违禁词吗", 0));
+		assertEquals(0, automaton.scan("违禁", 0));
+	}
+
+	@Test
+	void masksOnlyTermsWithTheRequestedFlags() {
+		AhoCorasick automaton = AhoCorasick.compile(List.of("bad", "badword", "坏话", "ok"), new int[]{A, A, A, B});
+		assertEquals("a ******* and ** ok", automaton.mask("a badword and 坏话 ok", A, '*'));
+		assertEquals("BAD*** **", automaton.mask("BAD*** **", B, '*'));
+		String clean = "nothing here";
+		assertSame(clean, automaton.mask(clean, A, '*'));
+	}
+}
@@ -0,0 +1,48 @@
+package com.example.groupchatdemo.filter;
+
+import com.example.groupchatdemo.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentFilterTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void appliesTheActionOfEachTermAndReloadsWhenTheFileChanges() throws IOException {
+		Path terms = dir.resolve("terms.txt");
+		Files.write(terms, List.of("# 注释", "block:禁止", "flag:watch", "坏话"));
+		ContentFilter filter = new ContentFilter(true, terms.toString(), "mask", '*', new SimpleMeterRegistry());
+		assertEquals(3, filter.termCount());
+
+		assertEquals(MessageFilter.Decision.REJECT, filter.filter("alice", message("这里禁止发言")));
+		Message masked = message("说坏话 watch");
+		assertEquals(MessageFilter.Decision.ACCEPT, filter.filter("alice", masked));
+		assertEquals("说** watch", masked.getContent());
+
+		// 文件没有变化时不重新编译；变化后新的词条生效
+		assertFalse(filter.reload());
+		Files.write(terms, List.of("block:坏话"));
+		Files.setLastModifiedTime(terms, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+		assertTrue(filter.reload());
+		assertEquals(1, filter.termCount());
+		assertEquals(MessageFilter.Decision.REJECT, filter.filter("alice", message("说坏话")));
+		assertEquals(MessageFilter.Decision.ACCEPT, filter.filter("alice", message("这里禁止发言")));
+	}
+
+	private static Message message(String content) {
+		return new Message("alice", null, content, false, "CHAT");
+	}
+}
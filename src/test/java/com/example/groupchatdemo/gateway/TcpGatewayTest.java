@@ -0,0 +1,201 @@
+package com.example.groupchatdemo.gateway;
+
+import com.example.groupchatdemo.codec.BinaryMessageCodec;
+import com.example.groupchatdemo.interceptor.WireCodecInterceptor;
+import com.example.groupchatdemo.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TcpGatewayTest {
+
+	// 1KB的读缓冲区：帧最长1020字节（长度字段之后的字节数）
+	private static final int MAX_FRAME_LENGTH = 1020;
+
+	private final BlockingQueue<org.springframework.messaging.Message<?>> inbound = new LinkedBlockingQueue<>();
+	private final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+	private TcpGateway gateway;
+	private int port;
+
+	@BeforeEach
+	void start() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		// 入站通道不设执行器，消息在选择器线程上按读到的顺序记录下来
+		ExecutorSubscribableChannel inboundChannel = new ExecutorSubscribableChannel();
+		inboundChannel.subscribe(inbound::add);
+		gateway = new TcpGateway(true, port, 1, 512, false, inboundChannel, new ExecutorSubscribableChannel(),
+				events::add, new WireCodecInterceptor(new ObjectMapper(), true));
+		gateway.start();
+	}
+
+	@AfterEach
+	void stop() {
+		gateway.stop();
+	}
+
+	@Test
+	void reassemblesFramesSplitAcrossReads() throws Exception {
+		try (Socket socket = new Socket("127.0.0.1", port)) {
+			OutputStream out = socket.getOutputStream();
+			// 逐字节写出，每次读只拿到长度字段或帧体的一部分
+			for (byte b : frame(login("alice"))) {
+				out.write(b);
+				out.flush();
+				Thread.sleep(2);
+			}
+			assertEquals(SimpMessageType.CONNECT, nextType());
+
+			// 最长的帧正好填满读缓冲区，分两次写出，断点在帧体中间
+			byte[] largest = frame(chatOfLength(MAX_FRAME_LENGTH - 1));
+			assertEquals(4 + MAX_FRAME_LENGTH, largest.length);
+			out.write(largest, 0, 600);
+			out.flush();
+			Thread.sleep(50);
+			assertNull(inbound.poll());
+			out.write(largest, 600, largest.length - 600);
+			out.flush();
+			org.springframework.messaging.Message<?> send = inbound.poll(5, TimeUnit.SECONDS);
+			assertEquals("/app/chat.sendMessage", SimpMessageHeaderAccessor.getDestination(send.getHeaders()));
+			Message decoded = BinaryMessageCodec.decode((byte[]) send.getPayload(), null);
+			assertEquals("alice", decoded.getFrom());
+			assertEquals(MAX_FRAME_LENGTH - 1, BinaryMessageCodec.encode(decoded, null).length);
+		}
+	}
+
+	@Test
+	void handlesSeveralFramesFromOneRead() throws Exception {
+		Message join = new Message("alice", null, "", false, "ROOM_JOIN");
+		join.setRoom("dev");
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		frames.write(frame(login("alice")));
+		frames.write(frame(new Message("alice", null, "hi", false, "CHAT")));
+		frames.write(frame(join));
+		// 最后一帧只有一半，留在读缓冲区里等后面的字节
+		byte[] tail = frame(new Message("alice", "bob", "psst", true, "PRIVATE_CHAT"));
+		frames.write(tail, 0, 7);
+
+		try (Socket socket = new Socket("127.0.0.1", port)) {
+			OutputStream out = socket.getOutputStream();
+			out.write(frames.toByteArray());
+			out.flush();
+			assertEquals(SimpMessageType.CONNECT, nextType());
+			assertEquals("/app/chat.sendMessage", nextDestination());
+			assertEquals("/topic/room/dev", nextDestination());
+			Thread.sleep(50);
+			assertNull(inbound.poll());
+
+			out.write(tail, 7, tail.length - 7);
+			out.flush();
+			assertEquals("/app/chat.sendPrivateMessage", nextDestination());
+		}
+	}
+
+	@Test
+	void closesConnectionsThatSendOversizedFrames() throws Exception {
+		for (int length : List.of(MAX_FRAME_LENGTH + 1, 0)) {
+			try (Socket socket = new Socket("127.0.0.1", port)) {
+				socket.setSoTimeout(5000);
+				OutputStream out = socket.getOutputStream();
+				out.write(frame(login("alice")));
+				out.flush();
+				assertEquals(SimpMessageType.CONNECT, nextType());
+				events.clear();
+
+				// 只发送长度字段就足以判断，不等帧体
+				new DataOutputStream(out).writeInt(length);
+				out.flush();
+				assertEquals(-1, socket.getInputStream().read());
+				assertEquals(SimpMessageType.DISCONNECT, nextType());
+				SessionDisconnectEvent disconnect = nextEvent(SessionDisconnectEvent.class);
+				assertEquals(CloseStatus.TOO_BIG_TO_PROCESS, disconnect.getCloseStatus());
+			}
+		}
+		assertEquals(0, gateway.connectionCount());
+	}
+
+	@Test
+	void closesConnectionsWithUnknownFrameTypes() throws Exception {
+		try (Socket socket = new Socket("127.0.0.1", port)) {
+			socket.setSoTimeout(5000);
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			out.writeInt(2);
+			out.writeByte(TcpFrames.JSON); // 只有服务器发送JSON帧
+			out.writeByte('{');
+			out.flush();
+			assertEquals(-1, socket.getInputStream().read());
+			// 没有登录，代理不知道这个会话
+			assertNull(inbound.poll(50, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	private SimpMessageType nextType() throws InterruptedException {
+		org.springframework.messaging.Message<?> message = inbound.poll(5, TimeUnit.SECONDS);
+		assertNotNull(message, "no inbound message");
+		return SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+	}
+
+	private String nextDestination() throws InterruptedException {
+		org.springframework.messaging.Message<?> message = inbound.poll(5, TimeUnit.SECONDS);
+		assertNotNull(message, "no inbound message");
+		return SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+	}
+
+	private <T> T nextEvent(Class<T> type) throws InterruptedException {
+		for (Object event; (event = events.poll(5, TimeUnit.SECONDS)) != null; ) {
+			if (type.isInstance(event)) {
+				return type.cast(event);
+			}
+		}
+		throw new AssertionError("no " + type.getSimpleName());
+	}
+
+	private static Message login(String username) {
+		return new Message(username, null, "", false, "LOGIN");
+	}
+
+	/**
+	 * 编码后正好length字节的聊天消息。
+	 */
+	private static Message chatOfLength(int length) {
+		for (int content = length; content > 0; content--) {
+			Message message = new Message("alice", null, "x".repeat(content), false, "CHAT");
+			if (BinaryMessageCodec.encode(message, null).length == length) {
+				return message;
+			}
+		}
+		throw new AssertionError("no chat message encodes to " + length + " bytes");
+	}
+
+	private static byte[] frame(Message message) throws IOException {
+		byte[] body = BinaryMessageCodec.encode(message, null);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(body.length + 1);
+		out.writeByte(TcpFrames.MESSAGE);
+		out.write(body);
+		return bytes.toByteArray();
+	}
+}
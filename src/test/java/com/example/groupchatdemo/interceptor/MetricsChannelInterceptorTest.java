@@ -0,0 +1,93 @@
+package com.example.groupchatdemo.interceptor;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsChannelInterceptorTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final MetricsChannelInterceptor interceptor = new MetricsChannelInterceptor(registry);
+	// 与默认配置相同：代理通道同步执行；出站通道不设执行器，副本直接交给记录它们的处理器
+	private final ExecutorSubscribableChannel inbound = new ExecutorSubscribableChannel();
+	private final ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel();
+	private final ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+	private final SimpleBrokerMessageHandler broker =
+			new SimpleBrokerMessageHandler(inbound, outbound, brokerChannel, List.of("/topic", "/queue"));
+	private final List<Message<?>> delivered = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		brokerChannel.addInterceptor(interceptor);
+		outbound.addInterceptor(interceptor);
+		outbound.subscribe(delivered::add);
+		broker.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		broker.stop();
+	}
+
+	@Test
+	void countsFanoutFromTheCopiesTheBrokerSends() {
+		for (String session : List.of("s1", "s2", "s3")) {
+			subscribe(session, "/topic/room/dev");
+		}
+		subscribe("s4", "/topic/public");
+
+		brokerChannel.send(publish("/topic/room/dev"));
+		brokerChannel.send(publish("/topic/room/dev"));
+		brokerChannel.send(publish("/topic/public"));
+		brokerChannel.send(publish("/topic/room/empty"));
+
+		// 只看MESSAGE副本，CONNECT_ACK等也经过出站通道
+		delivered.removeIf(message ->
+				SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE);
+		assertEquals(7, delivered.size());
+		DistributionSummary room = fanout("room");
+		assertEquals(3, room.count());
+		assertEquals(6.0, room.totalAmount());
+		assertEquals(3.0, room.max());
+		assertEquals(1, fanout("public").count());
+		assertEquals(1.0, fanout("public").totalAmount());
+		assertEquals(3.0, registry.get("chat.messages").tag("destination", "room").counter().count());
+		// 副本带着发布时刻，出站处理后记录延迟
+		assertTrue(delivered.get(0).getHeaders().containsKey(MetricsChannelInterceptor.PUBLISHED_AT_HEADER));
+	}
+
+	private DistributionSummary fanout(String destination) {
+		return registry.get("chat.broker.fanout").tag("destination", destination).summary();
+	}
+
+	private void subscribe(String sessionId, String destination) {
+		SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+		connect.setSessionId(sessionId);
+		inbound.send(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId("sub-0");
+		accessor.setDestination(destination);
+		inbound.send(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+	}
+
+	private static Message<byte[]> publish(String destination) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setDestination(destination);
+		return MessageBuilder.createMessage("{}".getBytes(), accessor.getMessageHeaders());
+	}
+}
@@ -0,0 +1,81 @@
+package com.example.groupchatdemo.interceptor;
+
+import com.example.groupchatdemo.codec.BinaryMessageCodec;
+import com.example.groupchatdemo.codec.BinaryMessageConverter;
+import com.example.groupchatdemo.model.Attachment;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class WireCodecInterceptorTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final WireCodecInterceptor interceptor = new WireCodecInterceptor(objectMapper, true);
+
+	@Test
+	void transcodesAttachmentsForBinarySessions() throws Exception {
+		connect("s1", "binary");
+		com.example.groupchatdemo.model.Message chat = new com.example.groupchatdemo.model.Message(
+				"alice", null, "看这个", false, "CHAT");
+		Attachment attachment = new Attachment("ab".repeat(32), "截图.png", 123_456L, "image/png");
+		chat.setAttachment(attachment);
+		byte[] json = objectMapper.writeValueAsBytes(chat);
+
+		Message<?> sent = interceptor.preSend(message("s1", json), null);
+		assertEquals(BinaryMessageConverter.MIME_TYPE, sent.getHeaders().get(MessageHeaders.CONTENT_TYPE));
+		com.example.groupchatdemo.model.Message decoded = BinaryMessageCodec.decode((byte[]) sent.getPayload(), null);
+		assertEquals("alice", decoded.getFrom());
+		assertEquals("看这个", decoded.getContent());
+		assertEquals(attachment, decoded.getAttachment());
+
+		// 解码后再编码为JSON，与原来的JSON相同
+		assertArrayEquals(json, objectMapper.writeValueAsBytes(decoded));
+		// TCP网关使用的编码与二进制会话的相同
+		assertArrayEquals((byte[]) sent.getPayload(), interceptor.encodeChatMessage(json));
+	}
+
+	@Test
+	void keepsJsonForOtherFramesAndSessions() {
+		connect("s1", "binary");
+		byte[] presence = "{\"command\":\"JOIN\",\"users\":[\"alice\"]}".getBytes(StandardCharsets.UTF_8);
+		Message<?> message = message("s1", presence);
+		assertSame(message, interceptor.preSend(message, null));
+		assertNull(interceptor.encodeChatMessage(presence));
+
+		byte[] chat = "{\"command\":\"CHAT\",\"from\":\"alice\",\"content\":\"hi\"}".getBytes(StandardCharsets.UTF_8);
+		Message<?> json = message("s2", chat);
+		assertSame(json, interceptor.preSend(json, null));
+	}
+
+	private void connect(String sessionId, String codec) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+		accessor.setSessionId(sessionId);
+		accessor.setNativeHeader(WireCodecInterceptor.CODEC_HEADER, codec);
+		Map<String, Object> attributes = new HashMap<>();
+		attributes.put(WireCodecInterceptor.NATIVE_TRANSPORT_ATTRIBUTE, Boolean.TRUE);
+		accessor.setSessionAttributes(attributes);
+		interceptor.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+	}
+
+	private static Message<byte[]> message(String sessionId, byte[] json) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setSessionId(sessionId);
+		accessor.setDestination("/topic/public");
+		accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+		return MessageBuilder.createMessage(json, accessor.getMessageHeaders());
+	}
+}
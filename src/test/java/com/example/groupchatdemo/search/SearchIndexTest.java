@@ -0,0 +1,68 @@
+package com.example.groupchatdemo.search;
+
+import com.example.groupchatdemo.model.Conversation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchIndexTest {
+
+	@Test
+	void tokenizesChineseIntoBigramsAndWordsIntoTerms() {
+		assertEquals(List.of("周", "五", "发", "布", "周五", "五发", "发布", "v2", "release"),
+				Tokenizer.index("周五发布 V2 Release！"));
+		assertEquals(List.of("周五", "五发", "发布"), Tokenizer.query("周五发布"));
+		assertEquals(List.of("猫"), Tokenizer.query("猫"));
+		assertEquals(List.of("abc"), Tokenizer.query("ＡＢＣ"));
+	}
+
+	@Test
+	void requiresAllTermsAndRanksDenserMatchesFirst() {
+		SearchIndex index = new SearchIndex();
+		index.add(Conversation.PUBLIC, 1, "明天上线新版本");
+		index.add(Conversation.PUBLIC, 2, "新版本");
+		index.add(Conversation.room("dev"), 1, "上线之前先跑一遍测试");
+		index.add(Conversation.PUBLIC, 3, "今天天气不错");
+
+		SearchIndex.Result result = index.search("新版本", conversation -> true, 0, 10);
+		assertEquals(2, result.total());
+		assertEquals(List.of(2L, 1L), result.hits().stream().map(SearchIndex.Hit::ordinal).toList());
+
+		assertEquals(2, index.search("上线", conversation -> true, 0, 10).total());
+		assertEquals(1, index.search("上线 测试", conversation -> true, 0, 10).total());
+		assertEquals(0, index.search("发布", conversation -> true, 0, 10).total());
+		// 已经索引过的序号被忽略
+		assertFalse(index.add(Conversation.PUBLIC, 2, "新版本"));
+	}
+
+	@Test
+	void hidesOtherUsersPrivateConversations() {
+		SearchIndex index = new SearchIndex();
+		String aliceBob = Conversation.privatePair("alice", "bob");
+		index.add(aliceBob, 1, "secret plan");
+		index.add(Conversation.PUBLIC, 1, "the plan is public");
+
+		assertTrue(Conversation.isVisibleTo(aliceBob, "bob"));
+		assertFalse(Conversation.isVisibleTo(aliceBob, "carol"));
+		assertEquals(2, index.search("plan", key -> Conversation.isVisibleTo(key, "alice"), 0, 10).total());
+		assertEquals(1, index.search("plan", key -> Conversation.isVisibleTo(key, "carol"), 0, 10).total());
+	}
+
+	@Test
+	void skipsBlocksWhenIntersectingLongPostingLists() {
+		SearchIndex index = new SearchIndex();
+		for (int i = 1; i <= 10_000; i++) {
+			index.add(Conversation.PUBLIC, i, i % 1000 == 0 ? "hello rare" : "hello common");
+		}
+		SearchIndex.Result result = index.search("rare hello", conversation -> true, 3, 5);
+		assertEquals(10, result.total());
+		assertEquals(5, result.hits().size());
+		// 分数相同时新的消息在前
+		assertEquals(List.of(7000L, 6000L, 5000L, 4000L, 3000L),
+				result.hits().stream().map(SearchIndex.Hit::ordinal).toList());
+	}
+}
@@ -0,0 +1,104 @@
+package com.example.groupchatdemo.service;
+
+import com.example.groupchatdemo.model.Attachment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AttachmentServiceTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void resumesAfterAnInterruptedChunkAndStoresTheFileUnderItsHash() throws Exception {
+		AttachmentService service = new AttachmentService(true, dir.toString(), 1, 4, 16, 60);
+		byte[] content = new byte[10_000];
+		new Random(1).nextBytes(content);
+		AttachmentService.UploadState state = service.startUpload("alice", "图片/截图.png", content.length);
+		String uploadId = state.uploadId();
+
+		// 第一块在3000字节处断开，已写入的部分保留
+		assertThrows(IOException.class, () -> service.append(uploadId, 0, failingAfter(content, 3000)));
+		assertEquals(3000, service.status(uploadId).received());
+		assertEquals(AttachmentService.Status.OFFSET_MISMATCH,
+				service.append(uploadId, 0, new ByteArrayInputStream(content)).status());
+
+		// 每块最多4KB，超出的请求被拒绝，已写入的部分仍然有效
+		state = service.append(uploadId, 3000, new ByteArrayInputStream(content, 3000, 5000));
+		assertEquals(AttachmentService.Status.TOO_LARGE, state.status());
+		assertEquals(3000 + 4096, state.received());
+		state = service.append(uploadId, state.received(), slice(content, state.received(), content.length));
+		assertEquals(AttachmentService.Status.COMPLETE, state.status());
+
+		Attachment attachment = state.attachment();
+		assertEquals(sha256(content), attachment.id());
+		assertEquals(new Attachment(attachment.id(), "截图.png", 10_000, "image/png"), attachment);
+		assertArrayEquals(content, Files.readAllBytes(service.path(attachment.id())));
+	}
+
+	@Test
+	void storesIdenticalContentOnceAndValidatesReferences() throws Exception {
+		AttachmentService service = new AttachmentService(true, dir.toString(), 1, 64, 16, 60);
+		byte[] content = "hello attachments".getBytes();
+		Attachment first = upload(service, "a.txt", content);
+		Attachment second = upload(service, "b.txt", content);
+		assertEquals(first.id(), second.id());
+		assertEquals(1, service.fileCount());
+		assertEquals(1, service.deduplicatedCount());
+		try (var uploads = Files.list(dir.resolve("uploads"))) {
+			assertEquals(0, uploads.count());
+		}
+
+		// 客户端声明的大小和类型以服务器保存的文件为准
+		Attachment resolved = service.resolve(new Attachment(first.id(), "../../etc/notes.txt", 1, "text/html"));
+		assertEquals(new Attachment(first.id(), "notes.txt", content.length, "text/plain"), resolved);
+		assertNull(service.resolve(new Attachment("00".repeat(32), "x.txt", 1, null)));
+		assertNull(service.resolve(new Attachment("../secret", "x.txt", 1, null)));
+
+		// 重新打开目录后仍能找到已保存的文件
+		assertEquals(content.length, new AttachmentService(true, dir.toString(), 1, 64, 16, 60).size(first.id()));
+		assertEquals(AttachmentService.Status.TOO_LARGE, service.startUpload("alice", "big.bin", 2 * 1024 * 1024).status());
+	}
+
+	private static Attachment upload(AttachmentService service, String name, byte[] content) throws IOException {
+		String uploadId = service.startUpload("alice", name, content.length).uploadId();
+		return service.append(uploadId, 0, new ByteArrayInputStream(content)).attachment();
+	}
+
+	private static InputStream slice(byte[] content, long from, long to) {
+		return new ByteArrayInputStream(Arrays.copyOfRange(content, (int) from, (int) to));
+	}
+
+	private static InputStream failingAfter(byte[] content, int bytes) {
+		return new InputStream() {
+			private int position;
+
+			@Override
+			public int read() throws IOException {
+				if (position == bytes) {
+					throw new IOException("connection reset");
+				}
+				return content[position++] & 0xFF;
+			}
+		};
+	}
+
+	private static String sha256(byte[] content) throws Exception {
+		return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+	}
+}
@@ -0,0 +1,90 @@
+package com.example.groupchatdemo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EphemeralServiceTest {
+
+	private final List<Message<?>> sent = new ArrayList<>();
+	private final RoomService roomService = new RoomService();
+	private final EphemeralService service = new EphemeralService(true, 6000, roomService, fanout());
+
+	@Test
+	void coalescesSignalsIntoOneFrameWhereTheLastValueWins() {
+		for (int i = 0; i < 100; i++) {
+			service.record("/app/ephemeral/public", "alice", "typing");
+			service.record("/app/ephemeral/public", "bob", i % 2 == 0 ? "typing" : "active");
+		}
+		service.flush(System.nanoTime());
+		assertEquals(1, sent.size());
+		assertEquals("/topic/ephemeral/public", SimpMessageHeaderAccessor.getDestination(sent.get(0).getHeaders()));
+		String frame = body(0);
+		assertTrue(frame.contains("\"conversation\":\"public\""), frame);
+		assertTrue(frame.endsWith("\"signals\":{\"alice\":\"typing\",\"bob\":\"active\"}}"), frame);
+		assertEquals(200, service.receivedCount());
+
+		// 没有变化时不发送；清除信号后发送一次空的汇总
+		service.record("/app/ephemeral/public", "alice", "typing");
+		service.flush(System.nanoTime());
+		assertEquals(1, sent.size());
+		service.record("/app/ephemeral/public", "alice", EphemeralService.IDLE);
+		service.record("/app/ephemeral/public", "bob", EphemeralService.IDLE);
+		service.flush(System.nanoTime());
+		assertEquals(2, sent.size());
+		assertTrue(body(1).endsWith("\"signals\":{}}"), body(1));
+		assertEquals(0, service.activeSignals());
+	}
+
+	@Test
+	void expiresSignalsThatAreNotRefreshed() {
+		service.record("/app/ephemeral/public", "alice", "typing");
+		long now = System.nanoTime();
+		service.flush(now);
+		// 半个有效期后重发仍然有效的信号
+		service.flush(now + TimeUnit.SECONDS.toNanos(4));
+		assertEquals(2, sent.size());
+		service.flush(now + TimeUnit.SECONDS.toNanos(7));
+		assertEquals(3, sent.size());
+		assertTrue(body(2).endsWith("\"signals\":{}}"), body(2));
+		assertEquals(0, service.activeSignals());
+	}
+
+	@Test
+	void acceptsRoomSignalsOnlyFromMembers() {
+		assertFalse(service.record("/app/ephemeral/room/dev", "alice", "typing"));
+		roomService.subscribe("s1", "sub-1", "dev", "alice");
+		assertTrue(service.record("/app/ephemeral/room/dev", "alice", "typing"));
+		assertFalse(service.record("/app/ephemeral/room/dev", "alice", "Typing!"));
+		assertFalse(service.record("/app/ephemeral/other", "alice", "typing"));
+		service.flush(System.nanoTime());
+		assertEquals(1, sent.size());
+		assertEquals("/topic/ephemeral/room/dev", SimpMessageHeaderAccessor.getDestination(sent.get(0).getHeaders()));
+		assertTrue(body(0).contains("\"conversation\":\"room:dev\""), body(0));
+	}
+
+	private ObjectProvider<MessageFanout> fanout() {
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		beanFactory.registerSingleton("messageFanout", new MessageFanout(
+				new SimpMessagingTemplate((MessageChannel) (message, timeout) -> sent.add(message)), new ObjectMapper()));
+		return beanFactory.getBeanProvider(MessageFanout.class);
+	}
+
+	private String body(int index) {
+		return new String((byte[]) sent.get(index).getPayload(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,185 @@
+package com.example.groupchatdemo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class HeartbeatServiceTest {
+
+	private final BackpressureService backpressureService =
+			new BackpressureService(new StandardEnvironment(), 512, 5000, "drop-non-essential", List.of(), 2, 100);
+	private final List<HeartbeatService> services = new CopyOnWriteArrayList<>();
+	// 写到底层会话的帧和关闭的状态
+	private final List<String> written = new CopyOnWriteArrayList<>();
+	private final List<CloseStatus> closed = new CopyOnWriteArrayList<>();
+
+	@AfterEach
+	void shutdown() {
+		services.forEach(HeartbeatService::stop);
+		backpressureService.destroy();
+	}
+
+	@Test
+	void negotiatesHeartbeatsOnConnectAck() throws Exception {
+		HeartbeatService service = service("dead");
+		connect("s1");
+		connect("s2");
+
+		Message<?> ack = service.preSend(connectAck("s1", 5000, 20000), null);
+		assertArrayEquals(new long[]{10000, 10000},
+				(long[]) ack.getHeaders().get(SimpMessageHeaderAccessor.HEART_BEAT_HEADER));
+		assertEquals(1, service.watchedSessions());
+
+		// 客户端不使用心跳时不登记检查任务
+		service.preSend(connectAck("s2", 0, 0), null);
+		assertEquals(1, service.watchedSessions());
+		// TCP网关等不经过出站队列的会话保持原样
+		Message<?> gateway = connectAck("g1", 10000, 10000);
+		assertEquals(gateway, service.preSend(gateway, null));
+	}
+
+	@Test
+	void sendsHeartbeatsAndReapsDeadSessions() throws Exception {
+		HeartbeatService service = service("dead");
+		OutboundSessionQueue session = connect("s1");
+		long start = session.connectedAtMillis();
+		// 客户端每5秒发送一次心跳、希望每20秒收到一次：服务器每20秒发送，30秒（3个10秒的间隔）没有收到帧就回收
+		HeartbeatService.Watch watch = new HeartbeatService.Watch(session, 20000, 30000);
+
+		assertEquals(10000, service.check(watch, start + 10000));
+		assertEquals(0, service.heartbeatsSent());
+		assertEquals(10000, service.check(watch, start + 20000));
+		assertEquals(1, service.heartbeatsSent());
+		awaitWritten(1);
+		assertEquals("\n", written.get(0));
+
+		assertEquals(-1, service.check(watch, start + 30000));
+		assertEquals(1, service.reapedCount(HeartbeatService.Reason.DEAD));
+		awaitClosed();
+		assertEquals(CloseStatus.SESSION_NOT_RELIABLE, closed.get(0));
+	}
+
+	@Test
+	void reapsIdleSessionsOnlyUnderIdlePolicy() throws Exception {
+		HeartbeatService dead = service("dead");
+		HeartbeatService idle = service("idle");
+		OutboundSessionQueue session = connect("s1");
+		session.recordInbound(1); // 心跳不算活动
+		long now = System.currentTimeMillis() + 60000;
+
+		assertEquals(-1, dead.check(new HeartbeatService.Watch(session, 0, 0), now));
+		assertEquals(0, dead.reapedCount(HeartbeatService.Reason.IDLE));
+		assertEquals(-1, idle.check(new HeartbeatService.Watch(session, 0, 0), now));
+		assertEquals(1, idle.reapedCount(HeartbeatService.Reason.IDLE));
+		awaitClosed();
+		assertEquals("Idle timeout", closed.get(0).getReason());
+
+		OutboundSessionQueue active = connect("s2");
+		active.recordInbound(50);
+		long next = idle.check(new HeartbeatService.Watch(active, 0, 0), active.lastApplicationMillis() + 59000);
+		assertEquals(1000, next);
+	}
+
+	@Test
+	void closesSessionsReapedInTheSameTickAsOneBatch() throws Exception {
+		HeartbeatService service = service("dead");
+		for (int i = 0; i < 40; i++) {
+			OutboundSessionQueue session = connect("s" + i);
+			assertEquals(-1, service.check(new HeartbeatService.Watch(session, 0, 3000), session.connectedAtMillis() + 5000));
+		}
+		assertEquals(40, service.reapedCount(HeartbeatService.Reason.DEAD));
+		for (int i = 0; i < 100 && closed.size() < 40; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(40, closed.size());
+	}
+
+	@Test
+	void dropsWatchOfClosedSession() throws Exception {
+		HeartbeatService service = service("dead");
+		OutboundSessionQueue session = connect("s1");
+		backpressureService.decorate(new AbstractWebSocketHandler() {
+		}).afterConnectionClosed(session, CloseStatus.NORMAL);
+		assertNull(backpressureService.session("s1"));
+		assertEquals(-1, service.check(new HeartbeatService.Watch(session, 1000, 3000),
+				session.connectedAtMillis() + 5000));
+		assertEquals(0, service.reapedCount(HeartbeatService.Reason.DEAD));
+	}
+
+	private HeartbeatService service(String policy) {
+		HeartbeatService service = new HeartbeatService(10000, 10000, 3, 100, 64, policy, 60000,
+				backpressureService, new ExecutorSubscribableChannel());
+		service.start();
+		services.add(service);
+		return service;
+	}
+
+	private OutboundSessionQueue connect(String id) throws Exception {
+		backpressureService.decorate(new AbstractWebSocketHandler() {
+		}).afterConnectionEstablished(session(id));
+		return backpressureService.session(id);
+	}
+
+	private static Message<?> connectAck(String sessionId, long clientSend, long clientReceive) {
+		StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+		connect.setHeartbeat(clientSend, clientReceive);
+		SimpMessageHeaderAccessor ack = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+		ack.setSessionId(sessionId);
+		ack.setHeader(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER,
+				MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+		ack.setHeader(SimpMessageHeaderAccessor.HEART_BEAT_HEADER, new long[]{0, 0});
+		return MessageBuilder.createMessage(new byte[0], ack.getMessageHeaders());
+	}
+
+	private void awaitWritten(int count) throws InterruptedException {
+		for (int i = 0; i < 100 && written.size() < count; i++) {
+			Thread.sleep(10); // 出站帧由写线程异步写出
+		}
+	}
+
+	private void awaitClosed() throws InterruptedException {
+		for (int i = 0; i < 100 && closed.isEmpty(); i++) {
+			Thread.sleep(10); // 下一个刻度把关闭交给回收线程
+		}
+	}
+
+	/**
+	 * 只实现出站队列用到的方法的会话，记录写出的文本帧和关闭的状态。
+	 */
+	private WebSocketSession session(String id) {
+		Map<String, Object> attributes = new HashMap<>();
+		return (WebSocketSession) Proxy.newProxyInstance(HeartbeatServiceTest.class.getClassLoader(),
+				new Class<?>[]{WebSocketSession.class}, (proxy, method, args) -> switch (method.getName()) {
+					case "getId" -> id;
+					case "isOpen" -> closed.isEmpty();
+					case "getAttributes" -> attributes;
+					case "sendMessage" -> written.add(String.valueOf(((WebSocketMessage<?>) args[0]).getPayload()));
+					case "close" -> closed.add(args == null ? CloseStatus.NORMAL : (CloseStatus) args[0]);
+					case "hashCode" -> System.identityHashCode(proxy);
+					case "equals" -> proxy == args[0];
+					case "toString" -> "session " + id;
+					default -> null;
+				});
+	}
+}
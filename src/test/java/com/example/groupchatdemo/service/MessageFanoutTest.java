@@ -0,0 +1,67 @@
+package com.example.groupchatdemo.service;
+
+import com.example.groupchatdemo.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageFanoutTest {
+
+	private final List<org.springframework.messaging.Message<?>> sent = new ArrayList<>();
+	private final MessageFanout fanout = new MessageFanout(
+			new SimpMessagingTemplate((MessageChannel) (message, timeout) -> sent.add(message)), new ObjectMapper());
+
+	@Test
+	void sendsTheSameEncodedArrayToEveryDestination() {
+		byte[] json = fanout.encode(new Message("alice", "bob", "你好", true, "PRIVATE_CHAT"));
+		assertTrue(new String(json, StandardCharsets.UTF_8).contains("\"content\":\"你好\""));
+
+		fanout.sendToDestination("/topic/public", json);
+		fanout.sendToUsers("/queue/messages", json, "bob", "alice");
+		assertEquals(List.of("/topic/public", "/user/bob/queue/messages", "/user/alice/queue/messages"), destinations());
+		for (org.springframework.messaging.Message<?> message : sent) {
+			assertSame(json, message.getPayload()); // 不复制负载，也不再序列化
+			assertEquals(MimeTypeUtils.APPLICATION_JSON, message.getHeaders().get(MessageHeaders.CONTENT_TYPE));
+			assertNull(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+		}
+	}
+
+	@Test
+	void skipsRepeatedAndMissingUsers() {
+		byte[] json = fanout.encode(new Message("alice", "alice", "自己", true, "PRIVATE_CHAT"));
+		// 给自己发私聊时接收方和发送方回显是同一个用户，只发送一次
+		fanout.sendToUsers("/queue/messages", json, "alice", null, "alice");
+		assertEquals(List.of("/user/alice/queue/messages"), destinations());
+	}
+
+	@Test
+	void encodesSlashesInUserDestinationsAndTargetsOneSession() {
+		byte[] json = fanout.encode(new Message("a/b", null, "x", false, "CHAT"));
+		fanout.sendToSession("a/b", "s1", "/queue/messages", json);
+		assertEquals(List.of("/user/a%2Fb/queue/messages"), destinations());
+		assertEquals("s1", SimpMessageHeaderAccessor.getSessionId(sent.get(0).getHeaders()));
+	}
+
+	@Test
+	void rejectsPayloadsThatCannotBeSerialized() {
+		assertThrows(IllegalArgumentException.class, () -> fanout.encode(new Object()));
+	}
+
+	private List<String> destinations() {
+		return sent.stream().map(message -> SimpMessageHeaderAccessor.getDestination(message.getHeaders())).toList();
+	}
+}
@@ -0,0 +1,101 @@
+package com.example.groupchatdemo.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OfflineMailboxTest {
+
+	@Test
+	void deliversQueuedMessagesAsOneBatch() throws Exception {
+		OfflineMailbox mailbox = new OfflineMailbox(true, 10, 1, 1, "", 256, null);
+		assertEquals(OfflineMailbox.Status.ONLINE, mailbox.offer("bob", json("x"), () -> true));
+		assertEquals(OfflineMailbox.Status.QUEUED, mailbox.offer("bob", json("a"), () -> false));
+		assertEquals(OfflineMailbox.Status.QUEUED, mailbox.offer("bob", json("b"), () -> false));
+		assertEquals(2, mailbox.queuedCount());
+
+		assertEquals("{\"command\":\"OFFLINE_MESSAGES\",\"batchId\":1,\"messages\":[\"a\",\"b\"]}",
+				text(mailbox.take("bob", "s1")));
+		assertEquals(0, mailbox.queuedCount());
+		assertNull(mailbox.take("bob", "s1"));
+		assertFalse(mailbox.acknowledge("alice", 1));
+		assertTrue(mailbox.acknowledge("bob", 1));
+	}
+
+	@Test
+	void requeuesUnacknowledgedBatchWhenSessionCloses() throws Exception {
+		OfflineMailbox mailbox = new OfflineMailbox(true, 10, 1, 1, "", 256, null);
+		mailbox.offer("bob", json("a"), () -> false);
+		mailbox.take("bob", "s1");
+		mailbox.offer("bob", json("b"), () -> false);
+
+		mailbox.sessionClosed("s1");
+		assertEquals("{\"command\":\"OFFLINE_MESSAGES\",\"batchId\":2,\"messages\":[\"a\",\"b\"]}",
+				text(mailbox.take("bob", "s2")));
+		assertFalse(mailbox.acknowledge("bob", 1));
+	}
+
+	@Test
+	void rejectsWhenMailboxIsFull() throws Exception {
+		OfflineMailbox mailbox = new OfflineMailbox(true, 2, 1, 1, "", 256, null);
+		mailbox.offer("bob", json("a"), () -> false);
+		mailbox.offer("bob", json("b"), () -> false);
+		assertEquals(OfflineMailbox.Status.REJECTED, mailbox.offer("bob", json("c"), () -> false));
+		assertEquals(OfflineMailbox.Status.QUEUED, mailbox.offer("carol", json("c"), () -> false));
+	}
+
+	@Test
+	void spillsToDiskOverMemoryBudgetAndSurvivesRestart(@TempDir Path dir) throws Exception {
+		String big = "x".repeat(700 * 1024);
+		OfflineMailbox mailbox = new OfflineMailbox(true, 10, 1, 1, dir.toString(), 256, null);
+		assertEquals(OfflineMailbox.Status.QUEUED, mailbox.offer("bob", json(big), () -> false));
+		assertEquals(OfflineMailbox.Status.QUEUED, mailbox.offer("bob", json(big), () -> false));
+		assertEquals(OfflineMailbox.Status.QUEUED, mailbox.offer("bob", json("after"), () -> false));
+
+		OfflineMailbox restarted = new OfflineMailbox(true, 10, 1, 1, dir.toString(), 256, null);
+		assertEquals(2, restarted.queuedCount());
+		String batch = text(restarted.take("bob", "s1"));
+		assertTrue(batch.endsWith(",\"after\"]}"));
+		assertNull(new OfflineMailbox(true, 10, 1, 1, dir.toString(), 256, null).take("bob", "s1"));
+	}
+
+	@Test
+	void rejectsSpillsOverTheDiskBudget(@TempDir Path dir) throws Exception {
+		String big = "x".repeat(700 * 1024);
+		// 内存和磁盘的预算都是1MB
+		OfflineMailbox mailbox = new OfflineMailbox(true, 10, 1, 1, dir.toString(), 1, null);
+		assertEquals(OfflineMailbox.Status.QUEUED, mailbox.offer("bob", json(big), () -> false));
+		assertEquals(OfflineMailbox.Status.QUEUED, mailbox.offer("bob", json(big), () -> false));
+		long spilled = mailbox.spillBytes();
+		assertTrue(spilled > 700 * 1024);
+		assertEquals(OfflineMailbox.Status.REJECTED, mailbox.offer("carol", json(big), () -> false));
+		assertEquals(OfflineMailbox.Status.REJECTED, mailbox.offer("bob", json(big), () -> false));
+		assertEquals(spilled, Files.size(dir.resolve("626f62.mbox")));
+
+		// 重启后按磁盘上已有的文件计算，投递后释放预算
+		OfflineMailbox restarted = new OfflineMailbox(true, 10, 1, 1, dir.toString(), 1, null);
+		assertEquals(spilled, restarted.spillBytes());
+		assertEquals(OfflineMailbox.Status.REJECTED, restarted.offer("bob", json(big), () -> false));
+		restarted.take("bob", "s1");
+		assertEquals(0, restarted.spillBytes());
+		assertEquals(OfflineMailbox.Status.QUEUED, restarted.offer("carol", json(big), () -> false));
+		assertEquals(OfflineMailbox.Status.QUEUED, restarted.offer("carol", json(big), () -> false));
+		assertEquals(spilled, restarted.spillBytes());
+	}
+
+	private static byte[] json(String content) {
+		return ("\"" + content + "\"").getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String text(byte[] frame) {
+		return new String(frame, StandardCharsets.UTF_8);
+	}
+}
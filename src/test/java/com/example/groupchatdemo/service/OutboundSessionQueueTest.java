@@ -0,0 +1,221 @@
+package com.example.groupchatdemo.service;
+
+import com.example.groupchatdemo.model.BackpressurePolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboundSessionQueueTest {
+
+	private static final int FRAME_SIZE = 300;
+
+	// 所有会话的写入都阻塞在这里，模拟网络很差的客户端
+	private final CountDownLatch gate = new CountDownLatch(1);
+	private final CountDownLatch writing = new CountDownLatch(1);
+	private final List<String> written = new CopyOnWriteArrayList<>();
+	private final Map<String, CloseStatus> closed = new ConcurrentHashMap<>();
+	private final Map<String, WebSocketSession> decorated = new HashMap<>();
+	private BackpressureService service;
+
+	@AfterEach
+	void shutdown() {
+		gate.countDown();
+		if (service != null) {
+			service.destroy();
+		}
+	}
+
+	@Test
+	void dropOldestKeepsTheNewestFramesWithinBudget() throws Exception {
+		WebSocketSession session = connect("drop-non-essential", 1, 10, "s1");
+		service.setRoomPolicy("live", BackpressurePolicy.DROP_OLDEST);
+		blockWriter(session, "/topic/room/live");
+		for (int i = 1; i <= 5; i++) {
+			session.sendMessage(frame("/topic/room/live", "m" + i));
+		}
+		// 预算1KB，每帧300字节：第4帧和第5帧入队时各丢弃一个最旧的帧
+		OutboundSessionQueue queue = service.session("s1");
+		assertEquals(3, queue.queuedFrames());
+		assertEquals(2, queue.droppedFrames());
+		assertEquals(BackpressureService.Action.DROP_OLDEST, queue.lastAction());
+		assertEquals(2L, actions().get("DROP_OLDEST"));
+
+		gate.countDown();
+		awaitWritten(4);
+		assertEquals(List.of("first", "m3", "m4", "m5"), written);
+	}
+
+	@Test
+	void dropNonEssentialKeepsChatMessages() throws Exception {
+		WebSocketSession session = connect("drop-non-essential", 1, 10, "s1");
+		blockWriter(session, "/topic/public");
+		session.sendMessage(frame(PresenceService.PRESENCE_TOPIC, "p1"));
+		for (int i = 1; i <= 4; i++) {
+			session.sendMessage(frame("/topic/public", "m" + i));
+		}
+		// 第4帧超出预算时丢弃在线状态帧；之后只剩聊天消息，超出预算也不丢弃，直到硬上限
+		OutboundSessionQueue queue = service.session("s1");
+		assertEquals(4, queue.queuedFrames());
+		assertEquals(1, queue.droppedFrames());
+		assertEquals(1L, actions().get("DROP_NON_ESSENTIAL"));
+		assertNull(closed.get("s1"));
+
+		for (int i = 5; i <= 14; i++) {
+			session.sendMessage(frame("/topic/public", "m" + i));
+		}
+		assertEquals(1L, actions().get("HARD_LIMIT"));
+		assertEquals(CloseStatus.SESSION_NOT_RELIABLE, closed.get("s1"));
+		assertEquals(0, queue.queuedFrames());
+	}
+
+	@Test
+	void disconnectPolicyClosesTheSessionAndIgnoresLaterFrames() throws Exception {
+		WebSocketSession session = connect("disconnect", 1, 10, "s1");
+		blockWriter(session, "/topic/public");
+		for (int i = 1; i <= 4; i++) {
+			session.sendMessage(frame("/topic/public", "m" + i));
+		}
+		assertEquals(1L, actions().get("DISCONNECT"));
+		assertEquals(0L, actions().get("HARD_LIMIT"));
+		assertEquals(CloseStatus.SESSION_NOT_RELIABLE, closed.get("s1"));
+
+		session.sendMessage(frame("/topic/public", "late"));
+		OutboundSessionQueue queue = service.session("s1");
+		assertEquals(0, queue.queuedFrames());
+		gate.countDown();
+		awaitWritten(1);
+		Thread.sleep(50);
+		assertEquals(List.of("first"), written);
+	}
+
+	@Test
+	void disconnectsSessionsThatCannotQueueForAWriter() throws Exception {
+		// 一个写线程、一个排队位置：s1占住线程，s2排队，s3被拒绝
+		WebSocketSession first = connect("drop-non-essential", 1, 1, "s1");
+		WebSocketSession second = session("s2");
+		WebSocketSession third = session("s3");
+		blockWriter(first, "/topic/public");
+		second.sendMessage(frame("/topic/public", "queued"));
+		third.sendMessage(frame("/topic/public", "rejected"));
+		assertEquals(CloseStatus.SERVICE_OVERLOAD, closed.get("s3"));
+		assertNull(closed.get("s2"));
+
+		gate.countDown();
+		awaitWritten(2);
+		assertEquals(List.of("first", "queued"), written);
+	}
+
+	@Test
+	void findsHeadersWithoutCopyingTheFrame() {
+		String text = "MESSAGE\r\nsubscription:sub-0\r\ndestination:/topic/room/dev\r\n\r\ndestination:body\0";
+		assertEquals("/topic/room/dev", OutboundSessionQueue.headerValue(text, "destination:"));
+		assertNull(OutboundSessionQueue.headerValue(text, "user-name:"));
+		// 帧体中的同名内容不算头
+		assertNull(OutboundSessionQueue.headerValue("MESSAGE\n\ndestination:x\0", "destination:"));
+		assertNull(OutboundSessionQueue.headerValue("MESSAGE", "destination:"));
+
+		ByteBuffer binary = ByteBuffer.wrap(("MESSAGE\ndestination:/topic/聊天\nchat-dict-def:7=alice\n\n\0")
+				.getBytes(StandardCharsets.UTF_8));
+		assertEquals("/topic/聊天", OutboundSessionQueue.headerValue(binary, "destination:".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals("7=alice", OutboundSessionQueue.headerValue(binary, "chat-dict-def:".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals(0, binary.position());
+	}
+
+	private WebSocketSession connect(String policy, int writerThreads, int writerQueueCapacity, String id) throws Exception {
+		service = new BackpressureService(new StandardEnvironment(), 1, 5000, policy,
+				List.of(PresenceService.PRESENCE_TOPIC), writerThreads, writerQueueCapacity);
+		return session(id);
+	}
+
+	/**
+	 * 通过处理器装饰器建立会话，返回STOMP处理器看到的会话（即出站队列）。
+	 */
+	private WebSocketSession session(String id) throws Exception {
+		WebSocketHandler handler = service.decorate(new AbstractWebSocketHandler() {
+			@Override
+			public void afterConnectionEstablished(WebSocketSession session) {
+				decorated.put(session.getId(), session);
+			}
+		});
+		handler.afterConnectionEstablished(rawSession(id));
+		return decorated.get(id);
+	}
+
+	/**
+	 * 发送第一帧并等待写线程阻塞在它上面，之后的帧都留在队列里。
+	 */
+	private void blockWriter(WebSocketSession session, String destination) throws Exception {
+		session.sendMessage(frame(destination, "first"));
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+	}
+
+	private void awaitWritten(int count) throws InterruptedException {
+		for (int i = 0; i < 500 && written.size() < count; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, written.size());
+	}
+
+	private Map<String, Long> actions() {
+		@SuppressWarnings("unchecked")
+		Map<String, Long> actions = (Map<String, Long>) service.stats().get("actions");
+		return actions;
+	}
+
+	/**
+	 * 一个FRAME_SIZE字节的MESSAGE帧，消息ID就是id。
+	 */
+	private static TextMessage frame(String destination, String id) {
+		String head = "MESSAGE\ndestination:" + destination + "\nsubscription:sub-0\nmessage-id:" + id + "\n\n";
+		return new TextMessage(head + "x".repeat(FRAME_SIZE - head.length() - 1) + "\0");
+	}
+
+	/**
+	 * 写入时记录帧的消息ID并阻塞到gate打开，关闭时记录关闭状态。
+	 */
+	private WebSocketSession rawSession(String id) {
+		Map<String, Object> attributes = new HashMap<>();
+		return (WebSocketSession) Proxy.newProxyInstance(OutboundSessionQueueTest.class.getClassLoader(),
+				new Class<?>[]{WebSocketSession.class}, (proxy, method, args) -> switch (method.getName()) {
+					case "getId" -> id;
+					case "isOpen" -> !closed.containsKey(id);
+					case "getAttributes" -> attributes;
+					case "sendMessage" -> {
+						writing.countDown();
+						gate.await(5, TimeUnit.SECONDS);
+						String payload = ((TextMessage) args[0]).getPayload();
+						int start = payload.indexOf("message-id:") + "message-id:".length();
+						written.add(payload.substring(start, payload.indexOf('\n', start)));
+						yield null;
+					}
+					case "close" -> {
+						closed.put(id, args.length == 0 ? CloseStatus.NORMAL : (CloseStatus) args[0]);
+						yield null;
+					}
+					case "hashCode" -> System.identityHashCode(proxy);
+					case "equals" -> proxy == args[0];
+					case "toString" -> "session " + id;
+					default -> null;
+				});
+	}
+}
@@ -0,0 +1,148 @@
+package com.example.groupchatdemo.service;
+
+import com.example.groupchatdemo.model.PresenceUpdate;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PresenceServiceTest {
+
+	private final List<Message<?>> sent = new ArrayList<>();
+	private final PresenceService service = new PresenceService(new SimpMessagingTemplate(
+			(MessageChannel) (message, timeout) -> sent.add(message)));
+
+	@Test
+	void coalescesAWindowOfChangesIntoOneDelta() {
+		service.userJoined("alice", "s1");
+		service.userJoined("bob", "s2");
+		service.userJoined("alice", "s3"); // 第二个标签页不是新的变化
+		service.flush();
+
+		PresenceUpdate delta = onlyDelta();
+		assertEquals(1, delta.getFromVersion());
+		assertEquals(2, delta.getVersion());
+		assertEquals(List.of("alice", "bob"), delta.getJoined());
+		assertEquals(List.of(), delta.getLeft());
+
+		// 没有变化的窗口不发送
+		service.flush();
+		assertTrue(sent.isEmpty());
+	}
+
+	@Test
+	void joinThenLeaveInOneWindowCancelsOutButKeepsVersionsContiguous() {
+		service.userJoined("alice", "s1");
+		service.flush();
+		assertEquals(1, onlyDelta().getVersion());
+
+		service.userJoined("bob", "s2");
+		service.userLeft("bob", "s2");
+		service.userLeft("alice", "s1");
+		service.userJoined("alice", "s4");
+		service.flush();
+
+		// 四次变化都相互抵消，仍然发送空增量，客户端的版本号从1连续到5
+		PresenceUpdate delta = onlyDelta();
+		assertEquals(2, delta.getFromVersion());
+		assertEquals(5, delta.getVersion());
+		assertEquals(List.of(), delta.getJoined());
+		assertEquals(List.of(), delta.getLeft());
+		assertEquals(5, service.snapshot().getVersion());
+		assertEquals(List.of("alice"), service.snapshot().getUsers());
+	}
+
+	@Test
+	void leaveThenJoinOfAnOnlineUserIsNotReported() {
+		service.userJoined("alice", "s1");
+		service.userJoined("bob", "s2");
+		service.flush();
+		sent.clear();
+
+		service.userLeft("alice", "s1");
+		service.userJoined("alice", "s3");
+		service.userLeft("bob", "s2");
+		service.flush();
+		PresenceUpdate delta = onlyDelta();
+		assertEquals(List.of(), delta.getJoined());
+		assertEquals(List.of("bob"), delta.getLeft());
+		assertEquals(3, delta.getFromVersion());
+		assertEquals(5, delta.getVersion());
+	}
+
+	@Test
+	void deltasFollowTheSnapshotWithoutAGap() {
+		service.userJoined("alice", "s1");
+		service.flush();
+		sent.clear();
+
+		// 新加入的用户拿到的快照已包含窗口内尚未广播的变化，增量的版本号从快照之后开始
+		PresenceUpdate snapshot = service.userJoined("bob", "s2");
+		assertEquals(PresenceUpdate.SNAPSHOT, snapshot.getCommand());
+		assertEquals(2, snapshot.getVersion());
+		assertEquals(List.of("alice", "bob"), snapshot.getUsers());
+		service.userJoined("carol", "s3");
+		service.flush();
+		PresenceUpdate delta = onlyDelta();
+		assertEquals(2, delta.getFromVersion());
+		assertEquals(3, delta.getVersion());
+		// 客户端按版本号跳过已经包含在快照里的部分；重复应用bob的JOIN是幂等的
+		assertEquals(List.of("bob", "carol"), delta.getJoined());
+
+		service.userJoined("dave", "s4");
+		service.flush();
+		assertEquals(4, onlyDelta().getFromVersion());
+	}
+
+	@Test
+	void ignoresUnknownSessionsAndTracksRemoteOnes() {
+		service.userLeft("alice", "never-joined");
+		service.flush();
+		assertTrue(sent.isEmpty());
+		assertEquals(0, service.snapshot().getVersion());
+
+		List<String> local = new ArrayList<>();
+		service.setLocalListener(new PresenceService.LocalListener() {
+			@Override
+			public void sessionJoined(String username, String sessionId) {
+				local.add("+" + sessionId);
+			}
+
+			@Override
+			public void sessionLeft(String username, String sessionId) {
+				local.add("-" + sessionId);
+			}
+		});
+		service.remoteJoined("bob", "node-b:s1");
+		service.userJoined("alice", "s1");
+		service.remoteLeft("bob", "node-b:s1");
+		service.flush();
+		// 远程会话的变化也计入版本号，但不通知集群层
+		assertEquals(List.of("+s1"), local);
+		PresenceUpdate delta = onlyDelta();
+		assertEquals(1, delta.getFromVersion());
+		assertEquals(3, delta.getVersion());
+		assertEquals(List.of("alice"), delta.getJoined());
+		assertFalse(service.directory().contains("bob"));
+	}
+
+	/**
+	 * 取出唯一发送的一帧，检查它是发往在线状态主题的增量。
+	 */
+	private PresenceUpdate onlyDelta() {
+		assertEquals(1, sent.size());
+		Message<?> message = sent.remove(0);
+		assertEquals(PresenceService.PRESENCE_TOPIC, SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+		PresenceUpdate delta = (PresenceUpdate) message.getPayload();
+		assertEquals(PresenceUpdate.DELTA, delta.getCommand());
+		return delta;
+	}
+}
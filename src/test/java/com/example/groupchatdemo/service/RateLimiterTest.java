@@ -0,0 +1,78 @@
+package com.example.groupchatdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+	private static final long SECOND = 1_000_000_000L;
+
+	@Test
+	void allowsBurstThenRefillsAtRate() {
+		AtomicLong clock = new AtomicLong();
+		RateLimiter limiter = new RateLimiter(RateLimiter.Rule.parse("/app/chat=2/3"), List.of(), clock::get);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(RateLimiter.Verdict.ALLOWED, limiter.tryAcquire("s1", "alice", "/app/chat.sendMessage"));
+		}
+		assertEquals(RateLimiter.Verdict.SESSION_LIMITED, limiter.tryAcquire("s1", "alice", "/app/chat.sendMessage"));
+		assertEquals(RateLimiter.Verdict.ALLOWED, limiter.tryAcquire("s2", "alice", "/app/chat.sendMessage"));
+		assertEquals(RateLimiter.Verdict.ALLOWED, limiter.tryAcquire("s1", "alice", "/app/other"));
+
+		clock.addAndGet(SECOND / 2);
+		assertEquals(RateLimiter.Verdict.ALLOWED, limiter.tryAcquire("s1", "alice", "/app/chat.sendMessage"));
+		assertEquals(RateLimiter.Verdict.SESSION_LIMITED, limiter.tryAcquire("s1", "alice", "/app/chat.sendMessage"));
+	}
+
+	@Test
+	void userBucketCoversAllSessionsAndRefundsSessionToken() {
+		AtomicLong clock = new AtomicLong();
+		RateLimiter limiter = new RateLimiter(RateLimiter.Rule.parse("/app/=1/2"), RateLimiter.Rule.parse("/app/=1/3"),
+				clock::get);
+		assertEquals(RateLimiter.Verdict.ALLOWED, limiter.tryAcquire("s1", "alice", "/app/a"));
+		assertEquals(RateLimiter.Verdict.ALLOWED, limiter.tryAcquire("s2", "alice", "/app/a"));
+		assertEquals(RateLimiter.Verdict.ALLOWED, limiter.tryAcquire("s3", "alice", "/app/a"));
+		assertEquals(RateLimiter.Verdict.USER_LIMITED, limiter.tryAcquire("s1", "alice", "/app/a"));
+		assertEquals(RateLimiter.Verdict.ALLOWED, limiter.tryAcquire("s1", "bob", "/app/a"));
+		assertEquals(RateLimiter.Verdict.SESSION_LIMITED, limiter.tryAcquire("s1", "bob", "/app/a"));
+	}
+
+	@Test
+	void noticesAtMostOncePerSecond() {
+		AtomicLong clock = new AtomicLong();
+		RateLimiter limiter = new RateLimiter(RateLimiter.Rule.parse("/app/=1/1"), List.of(), clock::get);
+		assertTrue(limiter.claimNotice("s1"));
+		assertFalse(limiter.claimNotice("s1"));
+		clock.addAndGet(SECOND);
+		assertTrue(limiter.claimNotice("s1"));
+	}
+
+	@Test
+	void evictsOnlyRefilledBuckets() {
+		AtomicLong clock = new AtomicLong();
+		RateLimiter limiter = new RateLimiter(RateLimiter.Rule.parse("/app/=1/5"), RateLimiter.Rule.parse("/app/=1/5"),
+				clock::get);
+		limiter.tryAcquire("s1", "alice", "/app/a");
+		limiter.tryAcquire("s2", "bob", "/app/a");
+		limiter.sessionClosed("s1");
+		assertEquals(3, limiter.trackedCount());
+		assertEquals(0, limiter.evictIdle());
+		clock.addAndGet(SECOND);
+		assertEquals(3, limiter.evictIdle());
+		assertEquals(0, limiter.trackedCount());
+	}
+
+	@Test
+	void rejectsMalformedRules() {
+		assertEquals(List.of(), RateLimiter.Rule.parse(" "));
+		assertThrows(IllegalArgumentException.class, () -> RateLimiter.Rule.parse("/app/=5"));
+		assertThrows(IllegalArgumentException.class, () -> RateLimiter.Rule.parse("/app/=x/5"));
+		assertThrows(IllegalArgumentException.class, () -> RateLimiter.Rule.parse("/app/=0/5"));
+	}
+}
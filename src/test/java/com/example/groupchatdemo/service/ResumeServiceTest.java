@@ -0,0 +1,182 @@
+package com.example.groupchatdemo.service;
+
+import com.example.groupchatdemo.model.Conversation;
+import com.example.groupchatdemo.store.MessageStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResumeServiceTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final List<Message<?>> sent = new ArrayList<>();
+	private final ExecutorSubscribableChannel inbound = new ExecutorSubscribableChannel();
+	private final SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(
+			inbound, new ExecutorSubscribableChannel(), new ExecutorSubscribableChannel(), List.of("/topic"));
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private MessageStore store;
+
+	@AfterEach
+	void tearDown() throws Exception {
+		store.destroy();
+	}
+
+	@Test
+	void resumesTheMissingRangeFromTheReplayWindow() throws Exception {
+		ResumeService service = service(10);
+		publish(6);
+		Map<String, Object> attributes = new HashMap<>();
+		subscribe(service, "s1", "4", attributes);
+
+		JsonNode resume = resumeFrame(0);
+		assertEquals("RESUME", resume.get("command").asText());
+		assertEquals(4, resume.get("after").asLong());
+		assertEquals(6, resume.get("latest").asLong());
+		assertTrue(resume.get("complete").asBoolean());
+		assertEquals(List.of(5L, 6L), seqs(resume));
+		assertEquals(Boolean.TRUE, attributes.get(ResumeService.PUBLIC_RESUMED_ATTRIBUTE));
+		assertEquals(1.0, replays(true));
+	}
+
+	@Test
+	void reportsAGapThatTheWindowCanNoLongerFill() throws Exception {
+		// 窗口只保留3条，关闭持久化时日志也无法补齐
+		ResumeService service = service(3);
+		publish(6);
+		subscribe(service, "s1", "1", new HashMap<>());
+
+		JsonNode resume = resumeFrame(0);
+		assertFalse(resume.get("complete").asBoolean());
+		assertEquals(6, resume.get("latest").asLong());
+		// 不完整时补发最近的消息，由客户端提示有消息缺失
+		assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), seqs(resume));
+		assertEquals(1.0, replays(false));
+		assertEquals(0.0, replays(true));
+	}
+
+	@Test
+	void ignoresInvalidResumeHeadersAndSubscriptionsWithoutOne() throws Exception {
+		ResumeService service = service(10);
+		publish(3);
+		subscribe(service, "s1", null, new HashMap<>());
+		assertTrue(sent.isEmpty());
+		assertFalse(service.isResuming(subscribeMessage("s1", null, new HashMap<>())));
+		assertTrue(service.isResuming(subscribeMessage("s1", "2", new HashMap<>())));
+
+		// 无法解析的序号当作不知道收到了哪些消息，补发最近的消息并标记为不完整
+		subscribe(service, "s2", "abc", new HashMap<>());
+		assertFalse(resumeFrame(0).get("complete").asBoolean());
+	}
+
+	@Test
+	void trimsTheReplayWindowToTheSlowestAcknowledgement() throws Exception {
+		ResumeService service = service(10);
+		subscribe(service, "s1", null, new HashMap<>());
+		subscribe(service, "s2", null, new HashMap<>());
+		publish(5);
+		assertEquals(5, store.replayWindowSize());
+
+		service.acknowledge("s1", Conversation.PUBLIC, 4);
+		service.acknowledge("s2", Conversation.PUBLIC, 2);
+		service.acknowledge("s2", Conversation.PUBLIC, 1); // 游标不后退
+		service.trim();
+		assertEquals(3, store.replayWindowSize());
+
+		// 断开的会话在保留时间内仍然占住窗口，等待它重连续传
+		service.handleSessionDisconnect(new SessionDisconnectEvent(this, disconnectMessage("s2"), "s2", CloseStatus.NORMAL));
+		service.trim();
+		assertEquals(3, store.replayWindowSize());
+
+		// 取消订阅立即释放游标
+		service.afterMessageHandled(unsubscribeMessage("s1"), inbound, broker, null);
+		service.trim();
+		assertEquals(3, store.replayWindowSize());
+		service.acknowledge("s2", Conversation.PUBLIC, 5);
+		service.trim();
+		assertEquals(0, store.replayWindowSize());
+	}
+
+	private ResumeService service(int windowMessages) throws Exception {
+		store = new MessageStore(objectMapper, false, null, 64, 64, 10, 50, 32, true, false, windowMessages);
+		MessageFanout fanout = new MessageFanout(new SimpMessagingTemplate(
+				(MessageChannel) (message, timeout) -> sent.add(message)), objectMapper);
+		return new ResumeService(120, store, fanout, inbound, registry);
+	}
+
+	private void publish(int count) {
+		for (int i = 0; i < count; i++) {
+			store.publish(Conversation.PUBLIC, new com.example.groupchatdemo.model.Message("bob", null, "m" + i, false, "CHAT"),
+					json -> {
+					});
+		}
+	}
+
+	private void subscribe(ResumeService service, String sessionId, String resumeFrom, Map<String, Object> attributes) {
+		service.afterMessageHandled(subscribeMessage(sessionId, resumeFrom, attributes), inbound, broker, null);
+	}
+
+	private static Message<byte[]> subscribeMessage(String sessionId, String resumeFrom, Map<String, Object> attributes) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId("sub-0");
+		accessor.setDestination("/topic/public");
+		accessor.setUser(() -> "alice");
+		accessor.setSessionAttributes(attributes);
+		if (resumeFrom != null) {
+			accessor.setNativeHeader(ResumeService.RESUME_HEADER, resumeFrom);
+		}
+		return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+	}
+
+	private static Message<byte[]> unsubscribeMessage(String sessionId) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId("sub-0");
+		return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+	}
+
+	private static Message<byte[]> disconnectMessage(String sessionId) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT);
+		accessor.setSessionId(sessionId);
+		return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+	}
+
+	private JsonNode resumeFrame(int index) throws Exception {
+		Message<?> message = sent.get(index);
+		assertEquals("/user/alice/queue/messages", SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+		return objectMapper.readTree((byte[]) message.getPayload());
+	}
+
+	private static List<Long> seqs(JsonNode resume) {
+		List<Long> seqs = new ArrayList<>();
+		for (JsonNode entry : resume.get("messages")) {
+			seqs.add(entry.get("seq").asLong());
+		}
+		return seqs;
+	}
+
+	private double replays(boolean complete) {
+		return registry.get("chat.resume.replays").tag("complete", String.valueOf(complete)).counter().count();
+	}
+}
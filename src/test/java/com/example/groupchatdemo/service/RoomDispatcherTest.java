@@ -0,0 +1,128 @@
+package com.example.groupchatdemo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomDispatcherTest {
+
+	private final SimpMessagingTemplate template = new SimpMessagingTemplate(
+			(MessageChannel) (message, timeout) -> true);
+	private RoomDispatcher dispatcher;
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		dispatcher.destroy();
+	}
+
+	@Test
+	void keepsPerRoomOrderWhenRoomsShareAShard() throws Exception {
+		dispatcher = new RoomDispatcher(template, 4, 10000);
+		String first = "dev";
+		String second = null;
+		for (int i = 0; second == null; i++) {
+			if (dispatcher.shardOf("room" + i) == dispatcher.shardOf(first)) {
+				second = "room" + i;
+			}
+		}
+		String shared = second;
+		List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+		// 多个入站线程交替提交两个房间的消息，每个线程内的提交顺序就是该线程在房间里的发送顺序
+		ExecutorService senders = Executors.newFixedThreadPool(4);
+		try {
+			for (int t = 0; t < 4; t++) {
+				String room = t % 2 == 0 ? first : shared;
+				String sender = "t" + t;
+				senders.execute(() -> {
+					for (int i = 0; i < 500; i++) {
+						String entry = room + "/" + sender + "/" + i;
+						dispatcher.dispatch(room, () -> delivered.add(entry));
+					}
+				});
+			}
+		} finally {
+			senders.shutdown();
+			assertTrue(senders.awaitTermination(10, TimeUnit.SECONDS));
+		}
+		awaitShard(first);
+
+		assertEquals(2000, delivered.size());
+		for (int t = 0; t < 4; t++) {
+			String prefix = (t % 2 == 0 ? first : shared) + "/t" + t + "/";
+			List<String> ofSender = delivered.stream().filter(entry -> entry.startsWith(prefix)).toList();
+			for (int i = 0; i < ofSender.size(); i++) {
+				assertEquals(prefix + i, ofSender.get(i));
+			}
+		}
+	}
+
+	@Test
+	void spreadsRoomsOverShardsDeterministically() {
+		dispatcher = new RoomDispatcher(template, 4, 10);
+		assertEquals(4, dispatcher.getShardCount());
+		assertEquals(dispatcher.shardOf("dev"), dispatcher.shardOf(new String("dev")));
+		boolean spread = false;
+		for (int i = 0; i < 100 && !spread; i++) {
+			spread = dispatcher.shardOf("room" + i) != dispatcher.shardOf("dev");
+		}
+		assertTrue(spread);
+	}
+
+	@Test
+	void rejectsBroadcastsWhenTheShardQueueIsFull() throws Exception {
+		dispatcher = new RoomDispatcher(template, 2, 1);
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		dispatcher.dispatch("dev", () -> {
+			running.countDown();
+			await(release);
+		});
+		assertTrue(running.await(5, TimeUnit.SECONDS));
+		dispatcher.dispatch("dev", () -> { });
+		assertEquals(1, dispatcher.getQueueSize(dispatcher.shardOf("dev")));
+		assertThrows(RejectedExecutionException.class, () -> dispatcher.dispatch("dev", () -> { }));
+
+		// 另一个分片上的房间不受影响
+		String other = "dev";
+		for (int i = 0; dispatcher.shardOf(other) == dispatcher.shardOf("dev"); i++) {
+			other = "room" + i;
+		}
+		assertNotEquals(dispatcher.shardOf("dev"), dispatcher.shardOf(other));
+		CountDownLatch otherRan = new CountDownLatch(1);
+		dispatcher.dispatch(other, otherRan::countDown);
+		assertTrue(otherRan.await(5, TimeUnit.SECONDS));
+		release.countDown();
+	}
+
+	/**
+	 * 等待房间所在分片上已提交的任务全部执行完。
+	 */
+	private void awaitShard(String roomId) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		dispatcher.dispatch(roomId, done::countDown);
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
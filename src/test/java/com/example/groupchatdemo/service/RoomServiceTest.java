@@ -0,0 +1,79 @@
+package com.example.groupchatdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomServiceTest {
+
+	private final RoomService service = new RoomService();
+
+	@Test
+	void countsSubscriptionsPerUserAcrossSessions() {
+		assertTrue(service.subscribe("s1", "sub-1", "dev", "alice"));
+		// 同一用户的第二个标签页和同一会话的第二个订阅都不是新成员
+		assertFalse(service.subscribe("s2", "sub-1", "dev", "alice"));
+		assertFalse(service.subscribe("s1", "sub-2", "dev", "alice"));
+		assertTrue(service.subscribe("s3", "sub-1", "dev", "bob"));
+		assertEquals(Map.of("dev", 2), service.roomSizes());
+		assertEquals(Set.of("alice", "bob"), service.members("dev"));
+
+		// alice还有两个订阅，取消一个不离开房间
+		assertNull(service.unsubscribe("s1", "sub-1"));
+		assertNull(service.unsubscribe("s2", "sub-1"));
+		assertTrue(service.isMember("dev", "alice"));
+		assertEquals("dev", service.unsubscribe("s1", "sub-2"));
+		assertFalse(service.isMember("dev", "alice"));
+		assertEquals(Map.of("dev", 1), service.roomSizes());
+	}
+
+	@Test
+	void ignoresUnknownSessionsAndSubscriptions() {
+		service.subscribe("s1", "sub-1", "dev", "alice");
+		assertNull(service.unsubscribe("never-subscribed", "sub-1"));
+		assertNull(service.unsubscribe("s1", "not-a-room-subscription"));
+		assertEquals(List.of(), service.sessionClosed("never-subscribed"));
+		// 重复取消同一订阅不会让计数变成负数
+		assertEquals("dev", service.unsubscribe("s1", "sub-1"));
+		assertNull(service.unsubscribe("s1", "sub-1"));
+		assertEquals(Map.of(), service.roomSizes());
+	}
+
+	@Test
+	void closingASessionReleasesAllItsRoomsAndRemovesEmptyRooms() {
+		service.subscribe("s1", "sub-1", "dev", "alice");
+		service.subscribe("s1", "sub-2", "ops", "alice");
+		service.subscribe("s1", "sub-3", "dev", "alice");
+		service.subscribe("s2", "sub-1", "ops", "bob");
+		service.subscribe("s3", "sub-1", "ops", "alice");
+
+		// alice在ops还有另一个会话，只离开dev；dev变空后被移除
+		assertEquals(List.of("dev"), service.sessionClosed("s1"));
+		assertEquals(Map.of("ops", 2), service.roomSizes());
+		assertEquals(Set.of(), service.members("dev"));
+		assertFalse(service.isMember("dev", "alice"));
+
+		assertEquals(List.of("ops"), service.sessionClosed("s2"));
+		assertEquals(List.of("ops"), service.sessionClosed("s3"));
+		assertEquals(Map.of(), service.roomSizes());
+		// 会话已经释放，再次断开不重复离开
+		assertEquals(List.of(), service.sessionClosed("s3"));
+	}
+
+	@Test
+	void parsesOnlyValidRoomTopics() {
+		assertEquals("dev-1_a", RoomService.roomIdOf("/topic/room/dev-1_a"));
+		assertNull(RoomService.roomIdOf("/topic/room/"));
+		assertNull(RoomService.roomIdOf("/topic/room/dev/*"));
+		assertNull(RoomService.roomIdOf("/topic/room/" + "x".repeat(65)));
+		assertNull(RoomService.roomIdOf("/topic/public"));
+		assertNull(RoomService.roomIdOf(null));
+	}
+}
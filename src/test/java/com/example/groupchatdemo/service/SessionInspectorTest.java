@@ -0,0 +1,96 @@
+package com.example.groupchatdemo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SessionInspectorTest {
+
+	private final BackpressureService backpressureService =
+			new BackpressureService(new StandardEnvironment(), 512, 5000, "drop-non-essential", List.of(), 2, 100);
+	private final SessionInspector inspector = new SessionInspector(backpressureService, new DefaultSimpUserRegistry());
+	// 装饰后的处理器交给STOMP处理器的会话（即出站队列），按会话ID保存
+	private final Map<String, WebSocketSession> decorated = new HashMap<>();
+	private final WebSocketHandler handler = backpressureService.decorate(new AbstractWebSocketHandler() {
+		@Override
+		public void afterConnectionEstablished(WebSocketSession session) {
+			decorated.put(session.getId(), session);
+		}
+	});
+
+	@AfterEach
+	void shutdown() {
+		backpressureService.destroy();
+	}
+
+	@Test
+	void pagesSessionsInIdOrder() throws Exception {
+		for (String id : List.of("s4", "s2", "s1", "s3", "s5")) {
+			handler.afterConnectionEstablished(session(id));
+		}
+		assertEquals(List.of("s1", "s2"), ids(inspector.page(null, null, 2)));
+		assertEquals(List.of("s3", "s4"), ids(inspector.page("s2", null, 2)));
+		assertEquals(List.of("s5"), ids(inspector.page("s4", null, 2)));
+		assertEquals(5, inspector.sessionCount());
+		assertNull(inspector.session("s9"));
+	}
+
+	@Test
+	void countsFramesAndBytesInBothDirections() throws Exception {
+		WebSocketSession raw = session("s1");
+		handler.afterConnectionEstablished(raw);
+		handler.afterConnectionEstablished(session("s2"));
+		handler.handleMessage(raw, new TextMessage("SEND\ndestination:/app/chat.sendMessage\n\nhi\0"));
+		handler.handleMessage(raw, new TextMessage("\n"));
+		String connected = "CONNECTED\nversion:1.2\nuser-name:alice\n\n\0";
+		decorated.get("s1").sendMessage(new TextMessage(connected));
+
+		SessionInspector.SessionInfo info = inspector.session("s1");
+		for (int i = 0; i < 100 && info.framesOut() == 0; i++) {
+			Thread.sleep(10); // 出站帧由写线程异步写出
+			info = inspector.session("s1");
+		}
+		assertEquals("alice", info.user());
+		assertEquals(2, info.framesIn());
+		assertEquals(44, info.bytesIn());
+		assertEquals(1, info.framesOut());
+		assertEquals(connected.length(), info.bytesOut());
+		assertEquals(0, info.queuedFrames());
+		assertEquals(List.of("s1"), ids(inspector.page(null, "alice", 10)));
+		assertEquals(0, inspector.session("s2").framesIn());
+	}
+
+	private static List<String> ids(List<SessionInspector.SessionInfo> sessions) {
+		return sessions.stream().map(SessionInspector.SessionInfo::sessionId).toList();
+	}
+
+	/**
+	 * 只实现出站队列用到的方法的会话，写出的帧直接丢弃。
+	 */
+	private static WebSocketSession session(String id) {
+		Map<String, Object> attributes = new HashMap<>();
+		return (WebSocketSession) Proxy.newProxyInstance(SessionInspectorTest.class.getClassLoader(),
+				new Class<?>[]{WebSocketSession.class}, (proxy, method, args) -> switch (method.getName()) {
+					case "getId" -> id;
+					case "isOpen" -> true;
+					case "getAttributes" -> attributes;
+					case "hashCode" -> System.identityHashCode(proxy);
+					case "equals" -> proxy == args[0];
+					case "toString" -> "session " + id;
+					default -> null;
+				});
+	}
+}
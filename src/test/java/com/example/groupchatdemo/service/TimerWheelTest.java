@@ -0,0 +1,79 @@
+package com.example.groupchatdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+
+	private static final long MS = 1_000_000L;
+
+	// 10ms一格，8个槽，一圈80ms
+	private final TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+	private final List<String> fired = new ArrayList<>();
+
+	@Test
+	void firesOnTheFirstTickAfterTheDeadline() {
+		wheel.schedule("a", 25 * MS);
+		assertEquals(0, wheel.advance(0, fired::add));
+		assertEquals(0, wheel.advance(20 * MS, fired::add));
+		assertEquals(0, wheel.advance(29 * MS, fired::add));
+		assertEquals(1, wheel.advance(30 * MS, fired::add));
+		assertEquals(List.of("a"), fired);
+		assertEquals(0, wheel.pending());
+	}
+
+	@Test
+	void countsRoundsForDelaysBeyondOneRevolution() {
+		wheel.schedule("far", 250 * MS); // 25格，超过三圈
+		wheel.schedule("near", 10 * MS);
+		wheel.advance(240 * MS, fired::add);
+		assertEquals(List.of("near"), fired);
+		assertEquals(1, wheel.pending());
+		wheel.advance(250 * MS, fired::add);
+		assertEquals(List.of("near", "far"), fired);
+	}
+
+	@Test
+	void catchesUpMissedTicksAndPastDeadlines() {
+		wheel.schedule("past", -100 * MS);
+		for (int i = 1; i <= 20; i++) {
+			wheel.schedule("t" + i, i * 10 * MS);
+		}
+		// 推进线程落后了一圈多，一次补上全部经过的格
+		assertEquals(21, wheel.advance(200 * MS, fired::add));
+		assertEquals("past", fired.get(0));
+		assertEquals("t20", fired.get(20));
+	}
+
+	@Test
+	void callbackCanRescheduleForALaterTick() {
+		wheel.schedule("a", 10 * MS);
+		List<Long> times = new ArrayList<>();
+		for (long now = 0; now <= 100 * MS; now += 10 * MS) {
+			long tickTime = now;
+			wheel.advance(now, task -> {
+				times.add(tickTime / MS);
+				wheel.schedule(task, tickTime + 30 * MS);
+			});
+		}
+		assertEquals(List.of(10L, 40L, 70L, 100L), times);
+		assertEquals(1, wheel.pending());
+	}
+
+	@Test
+	void roundsSlotCountUpToAPowerOfTwo() {
+		TimerWheel<String> odd = new TimerWheel<>(10, 5, 0); // 8个槽
+		odd.schedule("a", 90 * MS);
+		odd.advance(80 * MS, fired::add);
+		assertTrue(fired.isEmpty());
+		odd.advance(90 * MS, fired::add);
+		assertEquals(List.of("a"), fired);
+		assertThrows(IllegalArgumentException.class, () -> new TimerWheel<>(0, 8, 0));
+	}
+}
@@ -0,0 +1,53 @@
+package com.example.groupchatdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserDirectoryTest {
+
+	@Test
+	void keepsUserOnlineUntilLastSessionLeaves() {
+		UserDirectory directory = new UserDirectory();
+		assertTrue(directory.add("alice", "s1"));
+		assertTrue(directory.add("alice", "s2"));
+		assertFalse(directory.add("alice", "s2"));
+		assertEquals(1, directory.size());
+
+		assertTrue(directory.remove("alice", "s1"));
+		assertTrue(directory.contains("alice"));
+		assertTrue(directory.remove("alice", "s2"));
+		assertFalse(directory.contains("alice"));
+		assertFalse(directory.remove("alice", "s2"));
+		assertEquals(0, directory.size());
+		assertEquals(List.of(), directory.search("a", 10));
+	}
+
+	@Test
+	void pagesInUsernameOrder() {
+		UserDirectory directory = new UserDirectory();
+		for (String name : List.of("dave", "bob", "erin", "alice", "carol")) {
+			directory.add(name, name + "-session");
+		}
+		assertEquals(List.of("alice", "bob"), directory.page(null, 2));
+		assertEquals(List.of("carol", "dave"), directory.page("bob", 2));
+		assertEquals(List.of("erin"), directory.page("dave", 2));
+		assertEquals(List.of(), directory.page("erin", 2));
+	}
+
+	@Test
+	void searchesPrefixIgnoringCase() {
+		UserDirectory directory = new UserDirectory();
+		for (String name : List.of("Alice", "alfred", "ALBERT", "bob", "al")) {
+			directory.add(name, name + "-session");
+		}
+		assertEquals(List.of("al", "ALBERT", "alfred", "Alice"), directory.search("AL", 10));
+		assertEquals(List.of("al", "ALBERT"), directory.search("al", 2));
+		assertEquals(List.of("alfred"), directory.search("alf", 10));
+		assertEquals(List.of(), directory.search("z", 10));
+	}
+}
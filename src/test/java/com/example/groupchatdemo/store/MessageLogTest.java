@@ -0,0 +1,83 @@
+package com.example.groupchatdemo.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageLogTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void pagesBackwardsAcrossSegments() throws Exception {
+		try (MessageLog log = new MessageLog(dir, 4096, 4, 1)) {
+			for (int i = 1; i <= 100; i++) {
+				log.append("public", i, bytes("p" + i));
+				if (i % 3 == 0) {
+					log.append("room:dev", i, bytes("r" + i));
+				}
+			}
+			assertTrue(countSegments() > 1);
+			assertEquals(100, log.count("public"));
+			assertEquals(33, log.count("room:dev"));
+
+			List<LogRecord> latest = log.readBefore("public", 0, 10);
+			assertEquals(10, latest.size());
+			assertEquals(100, latest.get(0).ordinal());
+			assertArrayEquals(bytes("p91"), latest.get(9).payload());
+
+			List<LogRecord> older = log.readBefore("public", 7, 10);
+			assertEquals(6, older.size());
+			assertEquals(6, older.get(0).ordinal());
+			assertEquals(1, older.get(5).ordinal());
+
+			assertTrue(log.readBefore("private:1:a|b", 0, 10).isEmpty());
+		}
+	}
+
+	@Test
+	void recoversAfterReopenAndTruncatesTornTail() throws Exception {
+		try (MessageLog log = new MessageLog(dir, 4096, 4, 1)) {
+			for (int i = 1; i <= 20; i++) {
+				log.append("public", i, bytes(String.format("m%02d", i)));
+			}
+		} // 关闭时执行最后一次刷盘
+
+		// 在最后一条记录之后写入一条只有头部的记录，模拟崩溃时写了一半
+		int recordSize = 34 + "public".length() + 4 + 3;
+		Path segment = dir.resolve(String.format("%020d.log", 0));
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(8).putInt(recordSize).putInt(0xdeadbeef).flip(), 20L * recordSize);
+		}
+
+		try (MessageLog log = new MessageLog(dir, 4096, 4, 1)) {
+			assertEquals(20, log.count("public"));
+			assertEquals(21, log.append("public", 21, bytes("m21")));
+			List<LogRecord> latest = log.readBefore("public", 0, 2);
+			assertArrayEquals(bytes("m21"), latest.get(0).payload());
+			assertArrayEquals(bytes("m20"), latest.get(1).payload());
+		}
+	}
+
+	private long countSegments() throws Exception {
+		try (var files = Files.list(dir)) {
+			return files.filter(p -> p.toString().endsWith(".log")).count();
+		}
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
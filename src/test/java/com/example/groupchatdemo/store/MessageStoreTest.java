@@ -0,0 +1,106 @@
+package com.example.groupchatdemo.store;
+
+import com.example.groupchatdemo.model.Conversation;
+import com.example.groupchatdemo.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageStoreTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final MessageStore store;
+	// 公共的ForkJoinPool在单核机器上只有一个线程，被阻塞的投递会让其他任务无法执行
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	MessageStoreTest() throws Exception {
+		store = new MessageStore(objectMapper, false, null, 64, 64, 10, 50, 32, true, false, 1000);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		executor.shutdownNow();
+		store.destroy();
+	}
+
+	@Test
+	void deliveryInOneRoomDoesNotBlockRoomsOnOtherLockStripes() throws Exception {
+		// 发布锁的数量固定，不随客户端创建的房间增长；落在不同锁上的房间投递时互不阻塞
+		String slow = Conversation.room("slow");
+		String fast = null;
+		for (int i = 0; fast == null; i++) {
+			String candidate = Conversation.room("room" + i);
+			if (MessageStore.publishStripe(candidate) != MessageStore.publishStripe(slow)) {
+				fast = candidate;
+			}
+		}
+		String other = fast;
+
+		CountDownLatch delivering = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Void> slowPublish = CompletableFuture.runAsync(() ->
+				store.publish(slow, message("slow"), json -> {
+					delivering.countDown();
+					await(release);
+				}), executor);
+		assertTrue(delivering.await(5, TimeUnit.SECONDS));
+		try {
+			CompletableFuture<Void> fastPublish = CompletableFuture.runAsync(() ->
+					store.publish(other, message("fast"), json -> {
+					}), executor);
+			fastPublish.get(5, TimeUnit.SECONDS);
+		} finally {
+			release.countDown();
+		}
+		slowPublish.get(5, TimeUnit.SECONDS);
+		assertEquals(1, store.latestSeq(slow));
+		assertEquals(1, store.latestSeq(fast));
+	}
+
+	@Test
+	void deliversEachConversationInSequenceOrder() throws Exception {
+		List<Long> delivered = new ArrayList<>();
+		List<CompletableFuture<Void>> publishers = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			publishers.add(CompletableFuture.runAsync(() -> {
+				for (int i = 0; i < 250; i++) {
+					store.publish(Conversation.PUBLIC, message("m"), json -> {
+						try {
+							delivered.add(objectMapper.readTree(json).get("seq").asLong());
+						} catch (Exception e) {
+							throw new IllegalStateException(e);
+						}
+					});
+				}
+			}, executor));
+		}
+		CompletableFuture.allOf(publishers.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+		assertEquals(1000, delivered.size());
+		for (int i = 0; i < delivered.size(); i++) {
+			assertEquals(i + 1, delivered.get(i));
+		}
+	}
+
+	private static Message message(String content) {
+		return new Message("alice", null, content, false, "CHAT");
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
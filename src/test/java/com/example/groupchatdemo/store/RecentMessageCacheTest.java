@@ -0,0 +1,48 @@
+package com.example.groupchatdemo.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RecentMessageCacheTest {
+
+	@Test
+	void keepsLatestMessagesInOrder() {
+		RecentMessageCache cache = new RecentMessageCache(3, 1 << 20);
+		for (int i = 1; i <= 5; i++) {
+			cache.record("public", record(i, 10));
+		}
+		List<LogRecord> recent = cache.get("public");
+		assertEquals(List.of(3L, 4L, 5L), recent.stream().map(LogRecord::ordinal).toList());
+		assertEquals(1L, cache.stats().get("hits"));
+	}
+
+	@Test
+	void skipsConversationsWithUncachedHistory() {
+		RecentMessageCache cache = new RecentMessageCache(3, 1 << 20);
+		cache.record("room:dev", record(7, 10));
+		assertNull(cache.get("room:dev"));
+		assertEquals(1L, cache.stats().get("misses"));
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedConversation() {
+		RecentMessageCache cache = new RecentMessageCache(3, 1000);
+		cache.record("room:a", record(1, 200));
+		cache.record("room:b", record(1, 200));
+		cache.get("room:a");
+		cache.record("room:c", record(1, 200));
+		cache.record("room:c", record(2, 200));
+
+		assertNull(cache.get("room:b"));
+		assertEquals(1, cache.get("room:a").size());
+		assertEquals(1L, cache.stats().get("evictions"));
+	}
+
+	private static LogRecord record(long ordinal, int size) {
+		return new LogRecord(ordinal, ordinal, new byte[size]);
+	}
+}
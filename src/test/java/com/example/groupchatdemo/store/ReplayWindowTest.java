@@ -0,0 +1,57 @@
+package com.example.groupchatdemo.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReplayWindowTest {
+
+	@Test
+	void replaysOnlyMissingRange() {
+		ReplayWindow window = new ReplayWindow(10);
+		for (int i = 1; i <= 5; i++) {
+			window.record("public", record(i, 1000));
+		}
+		assertEquals(List.of(4L, 5L), ordinals(window.after("public", 3)));
+		assertEquals(List.of(), ordinals(window.after("public", 5)));
+		assertNull(window.after("room:dev", 0));
+	}
+
+	@Test
+	void reportsGapOnceCapacityIsExceeded() {
+		ReplayWindow window = new ReplayWindow(3);
+		for (int i = 1; i <= 5; i++) {
+			window.record("public", record(i, 1000));
+		}
+		assertEquals(3, window.size());
+		assertNull(window.after("public", 1));
+		assertEquals(List.of(3L, 4L, 5L), ordinals(window.after("public", 2)));
+	}
+
+	@Test
+	void trimsAcknowledgedAndExpiredMessages() {
+		ReplayWindow window = new ReplayWindow(10);
+		for (int i = 1; i <= 5; i++) {
+			window.record("public", record(i, 1000 + i));
+		}
+		assertEquals(2, window.trim("public", 2, 0));
+		assertNull(window.after("public", 1));
+		assertEquals(1, window.trim("public", 0, 1004));
+		assertEquals(List.of(4L, 5L), ordinals(window.after("public", 3)));
+
+		assertEquals(2, window.trim("public", Long.MAX_VALUE, 0));
+		assertEquals(0, window.size());
+		assertEquals(0, window.conversations().size());
+	}
+
+	private static LogRecord record(long ordinal, long timestamp) {
+		return new LogRecord(ordinal, timestamp, new byte[] {'{', '}'});
+	}
+
+	private static List<Long> ordinals(List<LogRecord> records) {
+		return records.stream().map(LogRecord::ordinal).toList();
+	}
+}